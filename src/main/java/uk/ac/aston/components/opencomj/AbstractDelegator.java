@@ -23,9 +23,12 @@ package uk.ac.aston.components.opencomj;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
 /**
  * Class of individual delegator objects that are attached to
@@ -44,11 +47,27 @@ public abstract class AbstractDelegator implements InvocationHandler, IDelegator
     */
     protected transient Object obj;
 
+    /**
+    * The table used to call the methods of the original component.
+    */
+    protected transient DispatchTable dispatch;
+
     /**
      * The Outer Proxy of this delegator.
      */
     public transient Object higherObject;
 
+    /**
+     * The single proxy of the component this delegator belongs to; null if the delegator
+     * was not created by the kernel.
+     */
+    private transient volatile OCMComponentProxy componentProxy;
+
+    /**
+     * The name of the component, as named in traces; null until set by the kernel.
+     */
+    private transient volatile String componentName;
+
     /**
      * Getter for the higher object field.
      * @return The higher delegated object.
@@ -65,20 +84,69 @@ public abstract class AbstractDelegator implements InvocationHandler, IDelegator
         higherObject = nHObj;
     }
 
-     /**
-     * List of pre methods stored on this delegator.
+    /**
+     * Set the single proxy of the component, so that QueryInterface can return it without
+     * searching the kernel graph.
+     * @param owner The proxy of the component.
+     */
+    final void setComponentProxy(final OCMComponentProxy owner) {
+        componentProxy = owner;
+    }
+
+    /**
+     * Set the name of the component, as named in the spans of traced calls.
+     * @param name The unique name of the component; null to name it by its class.
+     */
+    final void setComponentName(final String name) {
+        componentName = name;
+    }
+
+    /**
+     * Get the name of the component, as named in the spans of traced calls.
+     * @return The unique name of the component, or the name of its class if it has none.
+     */
+    public final String getComponentName() {
+        final String name = componentName;
+        return name != null ? name : obj.getClass().getSimpleName();
+    }
+
+    /**
+    * The dynamic proxy creation operation - takes the original component and wraps the
+    * dynamic invocation handler around it.
+    * @param origObject The object to delegate
+    * @return The interceptor object.
+    */
+    public abstract Object newInstance(Object origObject);
+
+    /**
+     * The current snapshot of the interceptors attached to this delegator. Calls read it
+     * once without locking; changes publish a new snapshot by compare-and-set.
+     * @see InterceptorChain
+     */
+    protected final transient AtomicReference<InterceptorChain> interceptors =
+            new AtomicReference<>(InterceptorChain.EMPTY);
+
+    /**
+     * The memoization cache of this delegator; null if memoization is not enabled.
      */
-    protected transient List<MethodList> preMethods;
+    private transient volatile OCMMemoCache memo;
 
     /**
-     * List of post methods stored on this delegator.
+     * The call statistics of this delegator; null if recording is not enabled.
      */
-    protected transient List<MethodList> postMethods;
+    private transient volatile OCMLatencyRecorder latency = OCMLatencyRecorder.isEnabledByDefault()
+            ? new OCMLatencyRecorder() : null;
 
     /**
      * Meta data attached to this receptacle.
      */
     protected transient Map<String, TypedAttribute> metaData;
+
+    /**
+     * The listeners told the name of each attribute set on this delegator, e.g. by a
+     * receptacle indexing the attribute values of the interfaces connected to it.
+     */
+    private final transient List<Consumer<String>> attributeListeners = new CopyOnWriteArrayList<>();
     
     /**
      * Pointer to MetaInterception runtime.
@@ -91,93 +159,453 @@ public abstract class AbstractDelegator implements InvocationHandler, IDelegator
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
     }
 
+    /**
+     * Publish a change to the interceptors. The change is applied to the current snapshot
+     * and the result published by compare-and-set, retrying if another change was
+     * published first; callers reading the snapshot are never blocked.
+     * @param change Derives the new snapshot, or null if the change does not apply.
+     * @return true if a new snapshot was published.
+     */
+    private boolean update(final UnaryOperator<InterceptorChain> change) {
+        while (true) {
+            final InterceptorChain current = interceptors.get();
+            final InterceptorChain updated = change.apply(current);
+            if (updated == null) {
+                return false;
+            }
+            if (interceptors.compareAndSet(current, updated)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Get the version of the interceptors attached to this delegator. It changes every
+     * time a pre or post method is added or removed.
+     * @return The version of the current snapshot.
+     */
+    public final long getInterceptorVersion() {
+        return interceptors.get().getVersion();
+    }
+
+    /**
+     * Call a method on the component, answering it from the memoization cache if the
+     * method is memoized.
+     * @param target The dispatch target of the method.
+     * @param method The method invoked.
+     * @param argsList The arguments of the call.
+     * @return The result of the call.
+     * @throws Throwable The exception thrown by the method.
+     */
+    protected final Object invokeTarget(final DispatchTable.Target target, final Method method,
+            final Object[] argsList) throws Throwable {
+        final OCMMemoCache cache = memo;
+        if (cache != null && cache.isMemoized(method)) {
+            return cache.invoke(target, obj, method, argsList);
+        }
+        return target.invoke(obj, argsList);
+    }
+
+    /**
+     * Make a call counted in the statistics of this delegator: straight through to the
+     * component if no interceptor is bound to the method, otherwise through the interceptors.
+     * The latency of a sampled call covers the interceptors as well as the method itself.
+     * @param recorder The call statistics of this delegator.
+     * @param chain The snapshot of the interceptors, read once for the whole call.
+     * @param target The dispatch target of the method.
+     * @param method The method invoked.
+     * @param argsList The arguments of the call.
+     * @return The result of the call.
+     * @throws Throwable The exception thrown by an interceptor or the method.
+     */
+    protected final Object invokeRecorded(final OCMLatencyRecorder recorder, final InterceptorChain chain,
+            final DispatchTable.Target target, final Method method, final Object[] argsList) throws Throwable {
+        final OCMLatencyHistogram histogram = recorder.histogram(method);
+        final boolean timed = histogram.count();
+        final long start = timed ? System.nanoTime() : 0L;
+        try {
+            final Object result = invokeChain(chain, target, method, argsList);
+            if (timed) {
+                histogram.record(System.nanoTime() - start);
+            }
+            return result;
+        } catch (Throwable t) {
+            histogram.error();
+            if (timed) {
+                histogram.record(System.nanoTime() - start);
+            }
+            throw t;
+        }
+    }
+
+    /**
+     * Make a call traced by the tracer started: the call is recorded as a span, a child of
+     * the span of the call in progress on the thread if any, and the calls the component
+     * makes while serving it are recorded as its children.
+     * @param tracer The tracer started.
+     * @param recorder The call statistics of this delegator; null if not recorded.
+     * @param chain The snapshot of the interceptors, read once for the whole call.
+     * @param target The dispatch target of the method.
+     * @param method The method invoked.
+     * @param argsList The arguments of the call.
+     * @return The result of the call.
+     * @throws Throwable The exception thrown by an interceptor or the method.
+     */
+    protected final Object invokeTraced(final OCMTracer tracer, final OCMLatencyRecorder recorder,
+            final InterceptorChain chain, final DispatchTable.Target target, final Method method,
+            final Object[] argsList) throws Throwable {
+        final OCMTracer.Span span = tracer.enter(getComponentName(), method);
+        boolean failed = true;
+        try {
+            final Object result = recorder != null ? invokeRecorded(recorder, chain, target, method, argsList)
+                    : invokeChain(chain, target, method, argsList);
+            failed = false;
+            return result;
+        } finally {
+            OCMTracer.exit(span, failed);
+        }
+    }
+
+    /**
+     * Make a call straight through to the component if no interceptor is bound to the
+     * method, otherwise through the interceptors.
+     * @param chain The snapshot of the interceptors.
+     * @param target The dispatch target of the method.
+     * @param method The method invoked.
+     * @param argsList The arguments of the call.
+     * @return The result of the call.
+     * @throws Throwable The exception thrown by an interceptor or the method.
+     */
+    private Object invokeChain(final InterceptorChain chain, final DispatchTable.Target target, final Method method,
+            final Object[] argsList) throws Throwable {
+        if (chain.isEmpty()) {
+            return invokeTarget(target, method, argsList);
+        }
+        return invokeIntercepted(chain, target, method, argsList);
+    }
+
+    /**
+     * Discard the results memoized by this delegator. Called by the kernel when the
+     * connections the component depends on change.
+     */
+    final void invalidateMemo() {
+        final OCMMemoCache cache = memo;
+        if (cache != null) {
+            cache.invalidate();
+        }
+    }
+
+    /**
+     * Call QueryInterface, which is never intercepted, on the component. The reference
+     * returned is replaced by the proxy of the delegator of the interface requested, so
+     * that callers never hold the original component.
+     * @param target The dispatch target of the QueryInterface method.
+     * @param proxy The proxy called.
+     * @param argsList The interface requested, as a name or a Java interface type.
+     * @return The proxy of the interface, null if the component does not implement it.
+     * @throws Throwable The exception thrown by the component.
+     */
+    protected final Object invokeQueryInterface(final DispatchTable.Target target, final Object proxy,
+            final Object[] argsList) throws Throwable {
+        Object result = target.invoke(obj, argsList);
+        final OCMComponentProxy owner = componentProxy;
+        if (owner != null) {
+            return owner.answerQueryInterface(result, argsList);
+        }
+        final String intfName;
+        if (argsList[0] instanceof Class) {
+            final String fullName = ((Class) argsList[0]).getName();
+            intfName = fullName.substring(fullName.lastIndexOf('.') + 1, fullName.length());
+        } else {
+            intfName = argsList[0].toString();
+        }
+        if ((!(intfName.equalsIgnoreCase(OpenComConstants.CONNECTINTERFACE))
+                 || (intfName.equalsIgnoreCase(OpenComConstants.METAINTERFACE))
+                 || (intfName.equalsIgnoreCase(OpenComConstants.LIFEINTERFACE))) && (result != null)) {
+
+                // Ensure the QI passes back the proxy object not the original component
+                final AbstractDelegator del = (AbstractDelegator) pImInterception.getDelegator((IUnknown) proxy, intfName);
+                if (del != null) {
+                    result = del.higherObject;
+                }
+        }
+        return result;
+    }
+
+    /**
+     * Make an intercepted call: the typed pre-methods, the compiled pre chain, the
+     * method itself, the compiled post chain and then the typed post-methods. Finally
+     * the call is handed to any asynchronous post-methods, which the caller does not wait for.
+     * @param chain The snapshot of the interceptors, read once for the whole call.
+     * @param target The dispatch target of the method.
+     * @param method The method invoked.
+     * @param argsList The arguments of the call.
+     * @return The result of the call.
+     * @throws Throwable The exception thrown by an interceptor or the method.
+     */
+    protected final Object invokeIntercepted(final InterceptorChain chain, final DispatchTable.Target target,
+            final Method method, final Object[] argsList) throws Throwable {
+        final IPreInterceptor[] pres = chain.getPreInterceptors();
+        final IPostInterceptor[] posts = chain.getPostInterceptors();
+        final InvocationContext context = InvocationContext.acquire(method, argsList);
+        try {
+            for (IPreInterceptor pre : pres) {
+                if (pre.before(context) != 0) {
+                    throw new InvocationException("PreMethod halted invocation");
+                }
+            }
+            final String methodName = method.getName();
+            chain.getPreChain().invokeExact(methodName, argsList);
+
+            // Invoke the actual method
+            Object result = invokeTarget(target, method, argsList);
+
+            result = (Object) chain.getPostChain().invokeExact(result, methodName, argsList);
+            if (posts.length != 0) {
+                context.setResult(result);
+                for (IPostInterceptor post : posts) {
+                    post.after(context);
+                }
+                result = context.getResult();
+            }
+            final InterceptorChain.AsyncPostMethod[] asyncPosts = chain.getAsyncPostMethods();
+            if (asyncPosts.length != 0) {
+                // The workers see a copy of the arguments, not the caller's array
+                final Object[] snapshot = argsList.clone();
+                for (InterceptorChain.AsyncPostMethod post : asyncPosts) {
+                    post.submit(methodName, result, snapshot);
+                }
+            }
+            return result;
+        } finally {
+            context.release();
+        }
+    }
+
      //! Implements IDelegator interface of OpenCOM
 
     @Override
     public final boolean addPreMethod(final Object interceptorObject, final String methodName) {
+        return addPreMethod(interceptorObject, methodName, null);
+    }
+
+    @Override
+    public final boolean addPreMethod(final Object interceptorObject, final String methodName, final String methodPattern) {
         // Extract the method off the Interceptor object
+        final MethodList val = findMethod(interceptorObject, methodName, methodPattern);
+        if (val == null) {
+            return false;
+        }
+        return update(chain -> chain.withPreMethod(val));
+    }
+
+    @Override
+    public final boolean addPostMethod(final Object interceptorObject, final String methodName) {
+        return addPostMethod(interceptorObject, methodName, null);
+    }
+
+    @Override
+    public final boolean addPostMethod(final Object interceptorObject, final String methodName, final String methodPattern) {
+        final MethodList val = findMethod(interceptorObject, methodName, methodPattern);
+        if (val == null) {
+            return false;
+        }
+        return update(chain -> chain.withPostMethod(val));
+    }
+
+    @Override
+    public final boolean addAsyncPostMethod(final Object interceptorObject, final String methodName,
+            final String methodPattern) {
+        return addAsyncPostMethod(interceptorObject, methodName, methodPattern, OCMAsyncDispatcher.getDefault());
+    }
+
+    @Override
+    public final boolean addAsyncPostMethod(final Object interceptorObject, final String methodName,
+            final String methodPattern, final OCMAsyncDispatcher dispatcher) {
+        final MethodList val = findMethod(interceptorObject, methodName, methodPattern);
+        if (val == null) {
+            return false;
+        }
+        final InterceptorChain.AsyncPostMethod post = new InterceptorChain.AsyncPostMethod(val, dispatcher);
+        return update(chain -> chain.withAsyncPostMethod(post));
+    }
+
+    @Override
+    public final boolean delAsyncPostMethod(final String methodName) {
+        return update(chain -> chain.withoutAsyncPostMethod(methodName));
+    }
+
+    /**
+     * Extract an interceptor method off its object.
+     * @param interceptorObject The object hosting the method.
+     * @param methodName The name of the method.
+     * @param methodPattern The interface methods it intercepts; null for all.
+     * @return The method, null if the object has no such (String, Object[]) method.
+     */
+    private static MethodList findMethod(final Object interceptorObject, final String methodName,
+            final String methodPattern) {
         final Class cls = interceptorObject.getClass();
         Class[] parameterTypes = new Class[2];
         parameterTypes[0] = String.class;
         parameterTypes[1] = Object[].class;
         try {
-            final Method methodPre = cls.getMethod(methodName, parameterTypes);
-            final MethodList val = new MethodList(methodPre, interceptorObject, methodName);
-            preMethods.add(val);
+            return new MethodList(cls.getMethod(methodName, parameterTypes), interceptorObject, methodName, methodPattern);
         } catch (NoSuchMethodException | SecurityException ex) {
+            return null;
+        }
+    }
+
+
+    @Override
+    public final boolean addPreInterceptor(final IPreInterceptor interceptor) {
+        return addPreInterceptor(interceptor, null);
+    }
+
+    @Override
+    public final boolean addPreInterceptor(final IPreInterceptor interceptor, final String methodPattern) {
+        final OCMMethodPattern pattern = OCMMethodPattern.compile(methodPattern);
+        return update(chain -> chain.withPreInterceptor(interceptor, pattern));
+    }
+
+    @Override
+    public final boolean delPreInterceptor(final IPreInterceptor interceptor) {
+        return update(chain -> chain.withoutPreInterceptor(interceptor));
+    }
+
+    @Override
+    public final boolean addPostInterceptor(final IPostInterceptor interceptor) {
+        return addPostInterceptor(interceptor, null);
+    }
+
+    @Override
+    public final boolean addPostInterceptor(final IPostInterceptor interceptor, final String methodPattern) {
+        final OCMMethodPattern pattern = OCMMethodPattern.compile(methodPattern);
+        return update(chain -> chain.withPostInterceptor(interceptor, pattern));
+    }
+
+    @Override
+    public final boolean delPostInterceptor(final IPostInterceptor interceptor) {
+        return update(chain -> chain.withoutPostInterceptor(interceptor));
+    }
+
+    @Override
+    public final boolean addMemoization(final int maxEntries, final long ttlMillis) {
+        return addMemoization(null, maxEntries, ttlMillis);
+    }
+
+    @Override
+    public final synchronized boolean addMemoization(final String methodPattern, final int maxEntries,
+            final long ttlMillis) {
+        if (memo != null || maxEntries < 1 || ttlMillis < 0) {
             return false;
         }
+        final OCMMemoCache cache = new OCMMemoCache(methodPattern, maxEntries, ttlMillis);
+        cache.attached();
+        memo = cache;
         return true;
     }
 
     @Override
-    public final boolean addPostMethod(final Object interceptorObject, final String methodName) {
+    public final synchronized boolean delMemoization() {
+        final OCMMemoCache cache = memo;
+        if (cache == null) {
+            return false;
+        }
+        memo = null;
+        cache.detached();
+        return true;
+    }
 
-        final Class cls = interceptorObject.getClass();
-        Class[] parameterTypes = new Class[2];
-        parameterTypes[0] = String.class;
-        parameterTypes[1] = Object[].class;
-        try {
-            final Method methodPost = cls.getMethod(methodName, parameterTypes);
-            final MethodList val = new MethodList(methodPost, interceptorObject, methodName);
+    @Override
+    public final OCMMemoCache getMemoCache() {
+        return memo;
+    }
 
-            postMethods.add(val);
-        } catch (NoSuchMethodException | SecurityException ex) {
+    @Override
+    public final boolean addLatencyRecorder() {
+        return addLatencyRecorder(Integer.getInteger(OCMLatencyRecorder.SAMPLE_PROPERTY,
+                OCMLatencyRecorder.DEFAULT_SAMPLE_INTERVAL));
+    }
+
+    @Override
+    public final synchronized boolean addLatencyRecorder(final int sampleInterval) {
+        if (latency != null || sampleInterval < 1) {
             return false;
         }
+        latency = new OCMLatencyRecorder(sampleInterval);
         return true;
     }
 
+    @Override
+    public final synchronized boolean delLatencyRecorder() {
+        if (latency == null) {
+            return false;
+        }
+        latency = null;
+        return true;
+    }
+
+    @Override
+    public final OCMLatencyRecorder getLatencyRecorder() {
+        return latency;
+    }
 
     @Override
     public final boolean delPostMethod(final String methodName) {
-        for (int i = 0; i < postMethods.size(); i++) {
-            if (((MethodList) postMethods.get(i)).getName().equalsIgnoreCase(methodName)) {
-                postMethods.remove(i);
-                return true;
-            }
-        }
-        return false;
+        return update(chain -> chain.withoutPostMethod(methodName));
     }
 
     @Override
     public final boolean delPreMethod(final String methodName) {
-        for (int i = 0; i < preMethods.size(); i++) {
-            if (((MethodList) preMethods.get(i)).getName().equalsIgnoreCase(methodName)) {
-                preMethods.remove(i);
-                return true;
-            }
-        }
-        return false;
+        return update(chain -> chain.withoutPreMethod(methodName));
     }
 
 
     @Override
     public final List<String> viewPostMethods() {
-        final List<String> methodNames = new ArrayList();
-        for (MethodList postMethod : postMethods) {
-            methodNames.add(postMethod.getName());
-        }
-        return methodNames;
+        return interceptors.get().getPostMethodNames();
     }
 
     @Override
     public final List<String> viewPreMethods() {
-        final List<String> methodNames = new ArrayList();
-        for (MethodList preMethod : preMethods) {
-            methodNames.add(preMethod.getName());
-        }
-        return methodNames;
+        return interceptors.get().getPreMethodNames();
     }
 
     @Override
     public final boolean setAttributeValue(final String name, final String type, final Object value) {
         metaData.put(name, new TypedAttribute(type, value));
+        for (Consumer<String> listener : attributeListeners) {
+            listener.accept(name);
+        }
         return true;
     }
 
+    /**
+     * Add a listener told the name of each attribute set on this delegator after the
+     * value is stored.
+     * @param listener The listener.
+     */
+    final void addAttributeListener(final Consumer<String> listener) {
+        attributeListeners.add(listener);
+    }
+
+    /**
+     * Remove a listener added by addAttributeListener.
+     * @param listener The listener.
+     */
+    final void removeAttributeListener(final Consumer<String> listener) {
+        attributeListeners.remove(listener);
+    }
+
     @Override
     public final TypedAttribute getAttributeValue(final String name) {
+        final OCMLatencyRecorder recorder = latency;
+        if (recorder != null && name.startsWith(OCMLatencyRecorder.ATTRIBUTE_PREFIX)) {
+            final TypedAttribute statistic = recorder.getAttribute(name);
+            if (statistic != null) {
+                return statistic;
+            }
+        }
         return (TypedAttribute) metaData.get(name);
     }
 
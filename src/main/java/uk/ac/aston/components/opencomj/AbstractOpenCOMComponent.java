@@ -21,7 +21,6 @@
 
 package uk.ac.aston.components.opencomj;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -69,14 +68,22 @@ public abstract class AbstractOpenCOMComponent implements IUnknown, IMetaInterfa
      **/
     @Override
     public final Object queryInterface(final String interfaceName) {
+        if (OCMInterfaceTable.forClass(getClass()).contains(interfaceName)) {
+            return this;
+        }
+        return null;
+    }
 
-        final List<String> query = new ArrayList();
-        metaIntf.readInterfaceNames(this.getClass(), query);
-        for (String iName : query) {
-            iName = iName.substring(iName.lastIndexOf(".") + 1, iName.length());
-            if (iName.equalsIgnoreCase(interfaceName)) {
-                return this;
-            }
+    /**
+     * Obtain a typed reference to an interface of this component.
+     * @param <T> The interface type.
+     * @param interfaceType The Java interface type.
+     * @return A reference to the component hosting the interface, null if it is not implemented.
+     **/
+    @Override
+    public final <T> T queryInterface(final Class<T> interfaceType) {
+        if (OCMInterfaceTable.forClass(getClass()).contains(interfaceType)) {
+            return interfaceType.cast(this);
         }
         return null;
     }
@@ -0,0 +1,42 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+
+package uk.ac.aston.components.opencomj;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the parameter of an interface operation holding the key a call is routed by,
+ * e.g. a customer id, so that an OCMMultiReceptacleAffinity sends every call for the
+ * same key to the same connection. An operation with no marked parameter is routed by
+ * its first parameter.
+ * @see OCMMultiReceptacleAffinity
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface AffinityKey {
+}
@@ -21,10 +21,8 @@
 
 package uk.ac.aston.components.opencomj;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -39,12 +37,18 @@ import java.util.HashMap;
  */
 public class Delegator extends AbstractDelegator {
 
+    /**
+     * The arguments of a call to a method with no parameters.
+     */
+    private static final Object[] NO_ARGS = new Object[0];
+
     /**
     * The dynamic proxy creation operation - takes the original component and wraps the
     * dynamic invocation handler around it.
     * @param origObject The object to delegate
      * @return The interceptor object.
     */
+    @Override
     public final Object newInstance(final Object origObject) {
         return java.lang.reflect.Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(),
              origObject.getClass().getInterfaces(), (java.lang.reflect.InvocationHandler) this);
@@ -58,10 +62,9 @@ public class Delegator extends AbstractDelegator {
      */
     public Delegator(final Object origObj, final IMetaInterception pIOCM) {
           this.obj = origObj;
-          preMethods = new ArrayList();
-          postMethods = new ArrayList();
+          dispatch = DispatchTable.forClass(origObj.getClass());
           pImInterception = pIOCM;
-          metaData = new HashMap();
+          metaData = new ConcurrentHashMap<>();
     }
 
     /**
@@ -76,62 +79,31 @@ public class Delegator extends AbstractDelegator {
      */
     @Override
     public final Object invoke(final Object proxy, final Method method, Object[] argsList) throws Throwable {
-        Object result = -1;
-
+        final DispatchTable.Target target = dispatch.lookup(method);
         if (argsList == null) {
-            argsList = new Object[0];
+            argsList = NO_ARGS;
         }
 
-        try {
-            // QI is a special case not to intercept
-            if (method.getName().equalsIgnoreCase(OpenComConstants.QUERYI)) {
-                result = method.invoke(obj, argsList);
-                final String intfName = (String) argsList[0].toString();
-                if ((!(intfName.equalsIgnoreCase(OpenComConstants.CONNECTINTERFACE))
-                         || (intfName.equalsIgnoreCase(OpenComConstants.METAINTERFACE))
-                         || (intfName.equalsIgnoreCase(OpenComConstants.LIFEINTERFACE))) && (result != null)) {
-
-                        // Ensure the QI passes back the proxy object not the original component
-                        final AbstractDelegator del = (AbstractDelegator) pImInterception.getDelegator((IUnknown) proxy, argsList[0].toString());
-                        if (del != null) {
-                            result = del.higherObject;
-                        }
-                }
-            } else {
-                // Invoke each of the pre-methods in order (list traversal)
-                Object[] params = new Object[2];
-                params[0] = method.getName();
-                params[1] = argsList;
-                for (MethodList preMethod : preMethods) {
-                    final Integer res = (Integer) preMethod.getMethod().invoke(preMethod.getObject(), params);
-                    if (res != 0) {
-                        throw new InvocationException("PreMethod halted invocation");
-                    }
-                }
-                // Invoke the actual method
-                result = method.invoke(obj, argsList);
+        // Fast path: with no pre or post methods bound to this method, no statistics
+        // recorded and no tracing call straight through
+        final InterceptorChain chain = interceptors.get().forMethod(method);
+        final OCMLatencyRecorder recorder = getLatencyRecorder();
+        final OCMTracer tracer = OCMTracer.getActive();
+        if (chain.isEmpty() && recorder == null && tracer == null && !target.isQueryInterface()) {
+            return invokeTarget(target, method, argsList);
+        }
 
-                // Invoke each of the post-methods in order (list traversal)
-                Object[] arguments = new Object[argsList.length + 1];
-                for (MethodList postMethod : postMethods) {
-                    arguments[0] = result;
-                    System.arraycopy(argsList, 0, arguments, 1, argsList.length);
-                    params[1] = arguments;
-                    final Object tempResult = postMethod.getMethod().invoke(postMethod.getObject(), params);
-                    argsList = (Object[]) params[1];
-                    try {
-                        if (((Integer) tempResult) != 0) {
-                            result = tempResult;
-                        }
-                    } catch (ClassCastException e) {
-                        result = tempResult;
-                    }
-                }
-            }
-        } catch (InvocationTargetException e) {
-             throw e.getTargetException();
+        // QI is a special case not to intercept
+        if (target.isQueryInterface()) {
+            return invokeQueryInterface(target, proxy, argsList);
+        }
+        if (tracer != null) {
+            return invokeTraced(tracer, recorder, chain, target, method, argsList);
+        }
+        if (recorder != null) {
+            return invokeRecorded(recorder, chain, target, method, argsList);
         }
-         return result;
+        return invokeIntercepted(chain, target, method, argsList);
     }
 
    
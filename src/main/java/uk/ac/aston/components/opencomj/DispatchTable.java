@@ -0,0 +1,256 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+package uk.ac.aston.components.opencomj;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The dispatch table used by delegators to call the methods of the component they wrap.
+ * There is one table per component class, built the first time a delegator is attached to
+ * an instance of that class. Two backends are available:
+ * <ul>
+ * <li>methodhandle (the default) - each interface method of the class is bound to a
+ * MethodHandle when the table is built, so a call is a direct handle invocation with no
+ * per call access check and no wrapping of exceptions.</li>
+ * <li>reflection - every call goes through Method.invoke, as delegators always have.</li>
+ * </ul>
+ * The backend is chosen by the opencomj.dispatch system property when a delegator is
+ * created. Any method that cannot be bound to a handle falls back to reflection.
+ *
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class DispatchTable {
+
+    /**
+     * The system property naming the dispatch backend.
+     */
+    public static final String BACKEND_PROPERTY = "opencomj.dispatch";
+
+    /**
+     * The MethodHandle dispatch backend.
+     */
+    public static final String METHODHANDLE = "methodhandle";
+
+    /**
+     * The reflective dispatch backend.
+     */
+    public static final String REFLECTION = "reflection";
+
+    /**
+     * The type every bound handle is adapted to: (target, arguments) returning the result.
+     */
+    private static final MethodType DISPATCH_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    /**
+     * The MethodHandle table of each component class.
+     */
+    private static final ClassValue<DispatchTable> HANDLE_TABLES = new ClassValue<DispatchTable>() {
+        @Override
+        protected DispatchTable computeValue(final Class<?> type) {
+            return new DispatchTable(type, true);
+        }
+    };
+
+    /**
+     * The reflective table of each component class.
+     */
+    private static final ClassValue<DispatchTable> REFLECTION_TABLES = new ClassValue<DispatchTable>() {
+        @Override
+        protected DispatchTable computeValue(final Class<?> type) {
+            return new DispatchTable(type, false);
+        }
+    };
+
+    /**
+     * The target of each interface method bound to a handle; empty for the reflection backend.
+     */
+    private final transient Map<Method, Target> handles;
+
+    /**
+     * The target of each Method instance called so far.
+     */
+    private final transient OCMMethodCache<Target> targets = new OCMMethodCache<>(this::resolve);
+
+    /**
+     * The backend of this table.
+     */
+    private final transient String backend;
+
+    /**
+     * Creates the dispatch table of a component class.
+     * @param type The component class.
+     * @param bind Whether to bind the interface methods to handles.
+     */
+    private DispatchTable(final Class<?> type, final boolean bind) {
+        handles = new HashMap<>();
+        backend = bind ? METHODHANDLE : REFLECTION;
+        if (bind) {
+            final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            for (Class<?> intf : type.getInterfaces()) {
+                for (Method method : intf.getMethods()) {
+                    bind(lookup, method);
+                }
+            }
+            // The proxies also forward these Object methods
+            for (Method method : Object.class.getMethods()) {
+                if (method.getName().equals("hashCode") || method.getName().equals("equals")
+                        || method.getName().equals("toString")) {
+                    bind(lookup, method);
+                }
+            }
+        }
+    }
+
+    /**
+     * Bind a method to a handle adapted to the dispatch type. A method that is not
+     * accessible is left to reflection.
+     * @param lookup The lookup used to find the handle.
+     * @param method The method to bind.
+     */
+    private void bind(final MethodHandles.Lookup lookup, final Method method) {
+        try {
+            final MethodHandle handle = lookup.unreflect(method)
+                    .asSpreader(Object[].class, method.getParameterTypes().length)
+                    .asType(DISPATCH_TYPE);
+            handles.put(method, new Target(method, handle));
+        } catch (IllegalAccessException | IllegalArgumentException ex) {
+            // Dispatched reflectively
+        }
+    }
+
+    /**
+     * Get the dispatch table of a component class for the backend selected by the
+     * opencomj.dispatch system property.
+     * @param type The component class.
+     * @return The dispatch table.
+     */
+    public static DispatchTable forClass(final Class<?> type) {
+        if (REFLECTION.equalsIgnoreCase(System.getProperty(BACKEND_PROPERTY, METHODHANDLE))) {
+            return REFLECTION_TABLES.get(type);
+        }
+        return HANDLE_TABLES.get(type);
+    }
+
+    /**
+     * Get the name of the backend of this table.
+     * @return methodhandle or reflection.
+     */
+    public String getBackend() {
+        return backend;
+    }
+
+    /**
+     * Get the target of a method i.e. how a delegator calls it on the component.
+     * @param method The interface method.
+     * @return The target of the method.
+     */
+    public Target lookup(final Method method) {
+        return targets.get(method);
+    }
+
+    /**
+     * Call a method of a component. Exceptions thrown by the method are rethrown as they are.
+     * @param target The component instance.
+     * @param method The interface method to call.
+     * @param args The arguments of the call.
+     * @return The result of the call, null for a void method.
+     * @throws Throwable The exception thrown by the method.
+     */
+    public Object invoke(final Object target, final Method method, final Object[] args) throws Throwable {
+        return lookup(method).invoke(target, args);
+    }
+
+    /**
+     * Find the target of a Method instance called for the first time.
+     * @param method The interface method.
+     * @return The bound target of the method, or a reflective one.
+     */
+    private Target resolve(final Method method) {
+        final Target target = handles.get(method);
+        return target != null ? target : new Target(method, null);
+    }
+
+    /**
+     * One method of the component class, as resolved by the dispatch table.
+     */
+    public static final class Target {
+
+        /**
+         * The interface method.
+         */
+        private final transient Method method;
+
+        /**
+         * The bound handle of the method; null if it is called reflectively.
+         */
+        private final transient MethodHandle handle;
+
+        /**
+         * Whether this is the QueryInterface method, which delegators never intercept.
+         */
+        private final transient boolean queryInterface;
+
+        /**
+         * Creates a new method target.
+         * @param targetMethod The interface method.
+         * @param boundHandle The bound handle, null to call the method reflectively.
+         */
+        Target(final Method targetMethod, final MethodHandle boundHandle) {
+            method = targetMethod;
+            handle = boundHandle;
+            queryInterface = targetMethod.getName().equalsIgnoreCase(OpenComConstants.QUERYI);
+        }
+
+        /**
+         * Check whether this is the QueryInterface method.
+         * @return true for QueryInterface.
+         */
+        public boolean isQueryInterface() {
+            return queryInterface;
+        }
+
+        /**
+         * Call the method on a component. Exceptions thrown by the method are rethrown as they are.
+         * @param target The component instance.
+         * @param args The arguments of the call.
+         * @return The result of the call, null for a void method.
+         * @throws Throwable The exception thrown by the method.
+         */
+        public Object invoke(final Object target, final Object[] args) throws Throwable {
+            if (handle != null) {
+                return (Object) handle.invokeExact(target, args);
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+
+package uk.ac.aston.components.opencomj;
+
+/**
+ * Combines the outcomes of the calls made by a parallel invocation, one call per
+ * connection of an OCMMultiReceptacleParallel, into a single result. Each time a call
+ * completes the aggregator is asked whether the result is decided; once it is, the calls
+ * still running are cancelled and the result is computed. Standard aggregators are
+ * provided by OCMAggregators.
+ * @param <R> The result type of each call.
+ * @param <A> The type of the aggregated result.
+ * @see OCMAggregators
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public interface IAggregator<R, A> {
+
+    /**
+     * Check whether the calls completed so far decide the result, so that the others
+     * need not be waited for. Called as each call completes, never concurrently.
+     * @param calls The outcomes of the calls so far.
+     * @return true if the result can be computed now.
+     */
+    boolean isDecided(OCMFanOutResult<R> calls);
+
+    /**
+     * Compute the result, once every call has completed or the result is decided.
+     * @param calls The outcomes of the calls.
+     * @return The aggregated result.
+     * @throws InvocationException If the calls do not give a result e.g. a quorum was not reached.
+     */
+    A aggregate(OCMFanOutResult<R> calls) throws InvocationException;
+}
@@ -47,6 +47,17 @@ public interface IDelegator {
      **/
     boolean addPreMethod(Object methodHost, String methodName);
 
+    /**
+     * Inserts a pre-method on this delegator that intercepts only some operations of the
+     * interface; invocations of other operations do not pass through it.
+     * @param methodHost A Java object containing the pre-method to insert.
+     * @param methodName A String describing the name of the pre-method.
+     * @param methodPattern The operations intercepted: comma separated names, ignoring case,
+     * in which * matches any characters e.g. "add" or "get*,set*".
+     * @return A boolean indicating the success of the operation.
+     **/
+    boolean addPreMethod(Object methodHost, String methodName, String methodPattern);
+
     /**
      * Deletes a specified pre-method from this delegator.
      * @param methodName A String describing the name of the pre-method.
@@ -64,6 +75,17 @@ public interface IDelegator {
      **/
     boolean addPostMethod(Object methodHost, String methodName);
 
+    /**
+     * Inserts a post-method on this delegator that intercepts only some operations of the
+     * interface; invocations of other operations do not pass through it.
+     * @param methodHost A Java object containing the post-method to insert.
+     * @param methodName A String describing the name of the post-method.
+     * @param methodPattern The operations intercepted: comma separated names, ignoring case,
+     * in which * matches any characters e.g. "add" or "get*,set*".
+     * @return A boolean indicating the success of the operation.
+     **/
+    boolean addPostMethod(Object methodHost, String methodName, String methodPattern);
+
     /**
      * Deletes a specified post-method from this delegator.
      * @param methodName A String describing the name of the pre-method.
@@ -71,6 +93,148 @@ public interface IDelegator {
      **/
     boolean delPostMethod(String methodName);
 
+    /**
+     * Inserts an asynchronous post-method on this delegator, called by the default
+     * OCMAsyncDispatcher after the invocation has returned. The caller does not wait for it
+     * and the value it returns is discarded, so it suits post-methods such as auditing or
+     * logging. It receives the result followed by a copy of the arguments, as a post-method.
+     * @param methodHost A Java object containing the post-method to insert.
+     * @param methodName A String describing the name of the post-method.
+     * @param methodPattern The operations intercepted, as for addPostMethod; null for all.
+     * @return A boolean indicating the success of the operation.
+     **/
+    boolean addAsyncPostMethod(Object methodHost, String methodName, String methodPattern);
+
+    /**
+     * Inserts an asynchronous post-method on this delegator, called by the given dispatcher.
+     * @param methodHost A Java object containing the post-method to insert.
+     * @param methodName A String describing the name of the post-method.
+     * @param methodPattern The operations intercepted, as for addPostMethod; null for all.
+     * @param dispatcher The dispatcher calling the post-method.
+     * @return A boolean indicating the success of the operation.
+     **/
+    boolean addAsyncPostMethod(Object methodHost, String methodName, String methodPattern,
+            OCMAsyncDispatcher dispatcher);
+
+    /**
+     * Deletes a specified asynchronous post-method from this delegator.
+     * @param methodName A String describing the name of the post-method.
+     * @return A boolean indicating the success of the operation.
+     **/
+    boolean delAsyncPostMethod(String methodName);
+
+    /**
+     * Enables memoization on this delegator for the operations annotated Idempotent: the
+     * result of each call is cached by its arguments and later calls with equal arguments
+     * are answered from the cache, without calling the component. Pre and post methods
+     * still run on every call. The cache is invalidated whenever the connections of the
+     * component, or of any component it depends on, change.
+     * @param maxEntries The maximum number of results cached; the oldest are evicted first.
+     * @param ttlMillis The time to live of a result in milliseconds; 0 for no expiry.
+     * @return A boolean indicating the success of the operation; false if already enabled.
+     **/
+    boolean addMemoization(int maxEntries, long ttlMillis);
+
+    /**
+     * Enables memoization on this delegator for the operations annotated Idempotent and
+     * those matching a method pattern.
+     * @param methodPattern The operations memoized, as for addPreMethod.
+     * @param maxEntries The maximum number of results cached; the oldest are evicted first.
+     * @param ttlMillis The time to live of a result in milliseconds; 0 for no expiry.
+     * @return A boolean indicating the success of the operation; false if already enabled.
+     **/
+    boolean addMemoization(String methodPattern, int maxEntries, long ttlMillis);
+
+    /**
+     * Disables memoization on this delegator and discards the cached results.
+     * @return A boolean indicating the success of the operation.
+     **/
+    boolean delMemoization();
+
+    /**
+     * Gets the memoization cache of this delegator, e.g. to read its hit and miss counters.
+     * @return The cache, null if memoization is not enabled.
+     **/
+    OCMMemoCache getMemoCache();
+
+    /**
+     * Enables the recording of call statistics on this delegator: the number of calls, the
+     * number of errors and a latency histogram for each operation of the interface. The
+     * statistics are read through getAttributeValue, e.g. latency.p99 or latency.add.calls.
+     * Every call is counted and one call in the default sampling interval is timed.
+     * @return A boolean indicating the success of the operation; false if already enabled.
+     * @see OCMLatencyRecorder
+     **/
+    boolean addLatencyRecorder();
+
+    /**
+     * Enables the recording of call statistics on this delegator, timing one call in the
+     * given interval of each thread.
+     * @param sampleInterval One call in this many is timed; 1 to time every call.
+     * @return A boolean indicating the success of the operation.
+     **/
+    boolean addLatencyRecorder(int sampleInterval);
+
+    /**
+     * Disables the recording of call statistics on this delegator and discards them.
+     * @return A boolean indicating the success of the operation; false if not enabled.
+     **/
+    boolean delLatencyRecorder();
+
+    /**
+     * Gets the call statistics of this delegator.
+     * @return The recorder, null if recording is not enabled.
+     **/
+    OCMLatencyRecorder getLatencyRecorder();
+
+    /**
+     * Inserts a typed pre-method on this delegator. Typed pre-methods are traversed in the
+     * order they were inserted, before any pre-method inserted by name.
+     * @param interceptor The pre-method to insert.
+     * @return A boolean indicating the success of the operation.
+     **/
+    boolean addPreInterceptor(IPreInterceptor interceptor);
+
+    /**
+     * Inserts a typed pre-method on this delegator that intercepts only some operations of
+     * the interface.
+     * @param interceptor The pre-method to insert.
+     * @param methodPattern The operations intercepted, as for addPreMethod.
+     * @return A boolean indicating the success of the operation.
+     **/
+    boolean addPreInterceptor(IPreInterceptor interceptor, String methodPattern);
+
+    /**
+     * Deletes a typed pre-method from this delegator.
+     * @param interceptor The pre-method to delete.
+     * @return A boolean indicating the success of the operation.
+     **/
+    boolean delPreInterceptor(IPreInterceptor interceptor);
+
+    /**
+     * Inserts a typed post-method on this delegator. Typed post-methods are traversed in the
+     * order they were inserted, after any post-method inserted by name.
+     * @param interceptor The post-method to insert.
+     * @return A boolean indicating the success of the operation.
+     **/
+    boolean addPostInterceptor(IPostInterceptor interceptor);
+
+    /**
+     * Inserts a typed post-method on this delegator that intercepts only some operations of
+     * the interface.
+     * @param interceptor The post-method to insert.
+     * @param methodPattern The operations intercepted, as for addPostMethod.
+     * @return A boolean indicating the success of the operation.
+     **/
+    boolean addPostInterceptor(IPostInterceptor interceptor, String methodPattern);
+
+    /**
+     * Deletes a typed post-method from this delegator.
+     * @param interceptor The post-method to delete.
+     * @return A boolean indicating the success of the operation.
+     **/
+    boolean delPostInterceptor(IPostInterceptor interceptor);
+
     /**
      * A Meta-Inspection operation. Returns a list of pre-methods attached to the delegator.
      * @return A list of the method names.
@@ -95,7 +259,8 @@ public interface IDelegator {
     boolean setAttributeValue(String name, String type, Object value);
 
     /**
-     * This method retrieves the value of a name-value pair.
+     * This method retrieves the value of a name-value pair. While call statistics are
+     * recorded, the attributes named latency.[method.]statistic answer them.
      * @param name A string describing the meta-data attribute.
      * @return A TypedAttribute Object holding the value and type of the attribute.
      **/
@@ -48,6 +48,28 @@ public interface IOpenCOM extends IUnknown {
      **/
     IUnknown createInstance(String componentType, String componentName) throws InvalidComponentTypeException;
 
+    /**
+     * Create a number of instances of one component type in a single operation. The components are
+     * named with the prefix followed by their index in the batch. If any instance cannot be created
+     * then none of them are inserted into the runtime.
+     * @param componentType the string describing the component type i.e. the Java class of the components.
+     * @param namePrefix the prefix of the unique names of the components.
+     * @param count the number of components to create.
+     * @return the references of the created components in index order.
+     * @throws uk.ac.aston.components.opencomj.InvalidComponentTypeException
+     **/
+    List<IUnknown> createInstances(String componentType, String namePrefix, int count) throws InvalidComponentTypeException;
+
+    /**
+     * Create a list of components, each of its own type, in a single operation. If any instance
+     * cannot be created then none of them are inserted into the runtime.
+     * @param components the type and unique name of each component to create.
+     * @return the references of the created components in list order.
+     * @throws uk.ac.aston.components.opencomj.InvalidComponentTypeException
+     * @see OpenCOM.OCMComponentInfo
+     **/
+    List<IUnknown> createInstances(List<OCMComponentInfo> components) throws InvalidComponentTypeException;
+
      /**
      * Deletes a component instance which has been previously created.
      * @param pCompIUnknown an IUnknown reference of the component to delete.
@@ -66,6 +88,15 @@ public interface IOpenCOM extends IUnknown {
      **/
     long connect(IUnknown pSourceIUnk, IUnknown pComponentIUnk, String interfaceType);
 
+    /**
+     * Makes a list of connections in a single operation. If any connection fails then those
+     * already made by the operation are disconnected again.
+     * @param bindings the source component, sink component and interface type of each connection.
+     * @return the unique connection identifiers in list order. Null indicates the operation failed.
+     * @see OpenCOM.OCMConnInfo
+     **/
+    List<Long> connect(List<OCMConnInfo> bindings);
+
     /**
      * Disconnects a receptacle from an interface.
      * @param connID a long describing the unique identifier of the connection to destroy.
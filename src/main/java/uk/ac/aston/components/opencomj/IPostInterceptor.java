@@ -0,0 +1,40 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+package uk.ac.aston.components.opencomj;
+
+/**
+ * A typed post-method. Unlike a post-method named through addPostMethod, it is called
+ * directly rather than reflectively, and receives the call through a reusable
+ * InvocationContext, so intercepting a call allocates nothing.
+ * @see IDelegator#addPostInterceptor(IPostInterceptor)
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public interface IPostInterceptor {
+
+    /**
+     * Called after each invocation of an interface operation. The result of the call
+     * may be replaced through the context.
+     * @param context The context of the invocation; only valid for the duration of the call.
+     */
+    void after(InvocationContext context);
+}
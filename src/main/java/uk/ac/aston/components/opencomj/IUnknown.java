@@ -43,5 +43,22 @@ public interface IUnknown {
      * @return an Object representing a reference to the component hosting the interface requested.
      **/
     Object queryInterface(String interfaceName);
+
+    /**
+     * Obtain a typed reference to an interface; there is no need to cast the result.
+     * Components extending AbstractOpenCOMComponent answer it without looking up the
+     * interface by name.
+     * @param <T> The interface type.
+     * @param interfaceType The Java interface type e.g. ICalculator.class.
+     * @return A reference to the component hosting the interface, null if it is not implemented.
+     **/
+    default <T> T queryInterface(final Class<T> interfaceType) {
+        final String fullName = interfaceType.getName();
+        final Object intf = queryInterface(fullName.substring(fullName.lastIndexOf('.') + 1, fullName.length()));
+        if (interfaceType.isInstance(intf)) {
+            return interfaceType.cast(intf);
+        }
+        return null;
+    }
 }
 
@@ -0,0 +1,781 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+package uk.ac.aston.components.opencomj;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable, versioned snapshot of the interceptors attached to a delegator: the
+ * pre and post methods added by name, compiled into single composed MethodHandle
+ * chains, and the typed pre and post interceptors. A delegator holds its current
+ * snapshot in an atomic reference. Each call reads the snapshot once, without locking,
+ * and uses it for the whole call; adding or removing an interceptor builds a new
+ * snapshot with the next version number and publishes it with compare-and-set, so
+ * callers are never blocked and never see a list being modified.
+ * <p>
+ * The pre chain has the type (String methodName, Object[] args)void. Each pre method
+ * is called in order with the method name and arguments, and must return 0 for the
+ * invocation to continue; any other value halts it with an InvocationException.
+ * <p>
+ * The post chain has the type (Object result, String methodName, Object[] args)Object.
+ * Each post method is called in order with the method name and an array holding the
+ * current result followed by the arguments. A post method returning anything other than
+ * the Integer 0 replaces the result of the invocation.
+ * <p>
+ * Asynchronous post methods take the same arguments but are called after the
+ * invocation has returned, by the worker threads of an OCMAsyncDispatcher; the value
+ * they return is discarded.
+ * <p>
+ * Each interceptor may be bound to a pattern of the methods it intercepts. A snapshot
+ * resolves the interceptors matching a method once, into a chain compiled for that
+ * method alone, so a method no interceptor is bound to goes straight through to the
+ * component however many interceptors are bound to the other methods.
+ *
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class InterceptorChain {
+
+    /**
+     * The type of an interceptor method: (String methodName, Object[] args)Object.
+     */
+    private static final MethodType INTERCEPTOR_TYPE = MethodType.methodType(Object.class, String.class, Object[].class);
+
+    /**
+     * The type of a compiled pre chain.
+     */
+    private static final MethodType PRE_TYPE = MethodType.methodType(void.class, String.class, Object[].class);
+
+    /**
+     * The type of a compiled post chain.
+     */
+    private static final MethodType POST_TYPE = MethodType.methodType(Object.class, Object.class, String.class, Object[].class);
+
+    /**
+     * Checks the value returned by a pre method.
+     */
+    private static final MethodHandle CHECK_PRE;
+
+    /**
+     * Builds the argument array passed to a post method.
+     */
+    private static final MethodHandle PREPEND_RESULT;
+
+    /**
+     * Merges the value returned by a post method into the result.
+     */
+    private static final MethodHandle MERGE_RESULT;
+
+    /**
+     * Calls an interceptor method that cannot be bound to a handle.
+     */
+    private static final MethodHandle REFLECT;
+
+    /**
+     * The compiled pre chain with no pre methods.
+     */
+    private static final MethodHandle EMPTY_PRE;
+
+    /**
+     * The compiled post chain with no post methods.
+     */
+    private static final MethodHandle EMPTY_POST;
+
+    static {
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            CHECK_PRE = lookup.findStatic(InterceptorChain.class, "checkPre",
+                    MethodType.methodType(void.class, Object.class));
+            PREPEND_RESULT = lookup.findStatic(InterceptorChain.class, "prependResult",
+                    MethodType.methodType(Object[].class, Object.class, String.class, Object[].class));
+            MERGE_RESULT = lookup.findStatic(InterceptorChain.class, "mergeResult",
+                    MethodType.methodType(Object.class, Object.class, Object.class));
+            REFLECT = lookup.findStatic(InterceptorChain.class, "reflect",
+                    MethodType.methodType(Object.class, Method.class, Object.class, String.class, Object[].class));
+            EMPTY_PRE = lookup.findStatic(InterceptorChain.class, "noPreMethods", PRE_TYPE);
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+        EMPTY_POST = MethodHandles.dropArguments(MethodHandles.identity(Object.class), 1, String.class, Object[].class);
+    }
+
+    /**
+     * The snapshot of a delegator with no interceptors attached.
+     */
+    public static final InterceptorChain EMPTY = new InterceptorChain(0, new MethodList[0], new MethodList[0],
+            new IPreInterceptor[0], new OCMMethodPattern[0], new IPostInterceptor[0], new OCMMethodPattern[0],
+            new AsyncPostMethod[0], false);
+
+    /**
+     * The version of this snapshot; each change to the interceptors increments it.
+     */
+    private final transient long version;
+
+    /**
+     * The pre methods added by name, in order.
+     */
+    private final transient MethodList[] preMethods;
+
+    /**
+     * The post methods added by name, in order.
+     */
+    private final transient MethodList[] postMethods;
+
+    /**
+     * The typed pre methods, in order.
+     */
+    private final transient IPreInterceptor[] preInterceptors;
+
+    /**
+     * The typed post methods, in order.
+     */
+    private final transient IPostInterceptor[] postInterceptors;
+
+    /**
+     * The methods each typed pre method is bound to.
+     */
+    private final transient OCMMethodPattern[] prePatterns;
+
+    /**
+     * The methods each typed post method is bound to.
+     */
+    private final transient OCMMethodPattern[] postPatterns;
+
+    /**
+     * The asynchronous post methods, in order.
+     */
+    private final transient AsyncPostMethod[] asyncPostMethods;
+
+    /**
+     * The compiled pre chain.
+     */
+    private final transient MethodHandle preChain;
+
+    /**
+     * The compiled post chain.
+     */
+    private final transient MethodHandle postChain;
+
+    /**
+     * True if no interceptor at all is attached.
+     */
+    private final transient boolean empty;
+
+    /**
+     * True if some interceptor is bound to a pattern other than every method, so calls
+     * must use the chain resolved for their method.
+     */
+    private final transient boolean selective;
+
+    /**
+     * The chain resolved for each method called on this snapshot.
+     */
+    private final transient OCMMethodCache<InterceptorChain> resolved = new OCMMethodCache<>(this::resolve);
+
+    /**
+     * Creates a new snapshot, compiling the chains of the pre and post methods.
+     * @param newVersion The version of the snapshot.
+     * @param pres The pre methods added by name.
+     * @param posts The post methods added by name.
+     * @param typedPres The typed pre methods.
+     * @param typedPrePatterns The methods each typed pre method is bound to.
+     * @param typedPosts The typed post methods.
+     * @param typedPostPatterns The methods each typed post method is bound to.
+     * @param asyncPosts The asynchronous post methods.
+     * @param forMethod True if this is the chain already resolved for one method.
+     */
+    private InterceptorChain(final long newVersion, final MethodList[] pres, final MethodList[] posts,
+            final IPreInterceptor[] typedPres, final OCMMethodPattern[] typedPrePatterns,
+            final IPostInterceptor[] typedPosts, final OCMMethodPattern[] typedPostPatterns,
+            final AsyncPostMethod[] asyncPosts, final boolean forMethod) {
+        version = newVersion;
+        preMethods = pres;
+        postMethods = posts;
+        preInterceptors = typedPres;
+        prePatterns = typedPrePatterns;
+        postInterceptors = typedPosts;
+        postPatterns = typedPostPatterns;
+        asyncPostMethods = asyncPosts;
+        preChain = compilePre(pres);
+        postChain = compilePost(posts);
+        empty = pres.length == 0 && posts.length == 0 && typedPres.length == 0 && typedPosts.length == 0
+                && asyncPosts.length == 0;
+        selective = !forMethod && (isSelective(pres) || isSelective(posts) || isSelective(typedPrePatterns)
+                || isSelective(typedPostPatterns) || isSelective(asyncPosts));
+    }
+
+    /**
+     * Derive the next snapshot, with the version following this one.
+     * @param pres The pre methods added by name.
+     * @param posts The post methods added by name.
+     * @param typedPres The typed pre methods.
+     * @param typedPrePatterns The methods each typed pre method is bound to.
+     * @param typedPosts The typed post methods.
+     * @param typedPostPatterns The methods each typed post method is bound to.
+     * @param asyncPosts The asynchronous post methods.
+     * @return The next snapshot.
+     */
+    private InterceptorChain next(final MethodList[] pres, final MethodList[] posts,
+            final IPreInterceptor[] typedPres, final OCMMethodPattern[] typedPrePatterns,
+            final IPostInterceptor[] typedPosts, final OCMMethodPattern[] typedPostPatterns,
+            final AsyncPostMethod[] asyncPosts) {
+        return new InterceptorChain(version + 1, pres, posts, typedPres, typedPrePatterns, typedPosts, typedPostPatterns,
+                asyncPosts, false);
+    }
+
+    /**
+     * Get the version of this snapshot.
+     * @return The number of changes made to the interceptors of the delegator.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Check whether no interceptor at all is attached.
+     * @return true if calls may go straight through to the component.
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Get the chain of the interceptors bound to a method. The chain of each method is
+     * resolved and compiled the first time the method is called on this snapshot.
+     * @param method The method called.
+     * @return The chain to use for the call; empty if no interceptor is bound to the method.
+     */
+    public InterceptorChain forMethod(final Method method) {
+        if (!selective) {
+            return this;
+        }
+        return resolved.get(method);
+    }
+
+    /**
+     * Resolve the chain of a method that has not been called before on this snapshot.
+     * Interceptors are bound by method name, so overloads of a name resolve equal chains.
+     * @param method The method called.
+     * @return The chain of the interceptors bound to the method.
+     */
+    private InterceptorChain resolve(final Method method) {
+        final String methodName = method.getName();
+        final List<MethodList> pres = new ArrayList<>();
+        for (MethodList pre : preMethods) {
+            if (pre.getPattern().matches(methodName)) {
+                pres.add(pre);
+            }
+        }
+        final List<MethodList> posts = new ArrayList<>();
+        for (MethodList post : postMethods) {
+            if (post.getPattern().matches(methodName)) {
+                posts.add(post);
+            }
+        }
+        final List<IPreInterceptor> typedPres = new ArrayList<>();
+        for (int i = 0; i < preInterceptors.length; i++) {
+            if (prePatterns[i].matches(methodName)) {
+                typedPres.add(preInterceptors[i]);
+            }
+        }
+        final List<IPostInterceptor> typedPosts = new ArrayList<>();
+        for (int i = 0; i < postInterceptors.length; i++) {
+            if (postPatterns[i].matches(methodName)) {
+                typedPosts.add(postInterceptors[i]);
+            }
+        }
+        final List<AsyncPostMethod> asyncPosts = new ArrayList<>();
+        for (AsyncPostMethod post : asyncPostMethods) {
+            if (post.getMethod().getPattern().matches(methodName)) {
+                asyncPosts.add(post);
+            }
+        }
+        return new InterceptorChain(version, pres.toArray(new MethodList[pres.size()]),
+                posts.toArray(new MethodList[posts.size()]), typedPres.toArray(new IPreInterceptor[typedPres.size()]),
+                new OCMMethodPattern[0], typedPosts.toArray(new IPostInterceptor[typedPosts.size()]),
+                new OCMMethodPattern[0], asyncPosts.toArray(new AsyncPostMethod[asyncPosts.size()]), true);
+    }
+
+    /**
+     * Get the compiled pre chain.
+     * @return The handle of type (String, Object[])void.
+     */
+    MethodHandle getPreChain() {
+        return preChain;
+    }
+
+    /**
+     * Get the compiled post chain.
+     * @return The handle of type (Object, String, Object[])Object.
+     */
+    MethodHandle getPostChain() {
+        return postChain;
+    }
+
+    /**
+     * Get the typed pre methods; the array must not be modified.
+     * @return The typed pre methods in order.
+     */
+    IPreInterceptor[] getPreInterceptors() {
+        return preInterceptors;
+    }
+
+    /**
+     * Get the typed post methods; the array must not be modified.
+     * @return The typed post methods in order.
+     */
+    IPostInterceptor[] getPostInterceptors() {
+        return postInterceptors;
+    }
+
+    /**
+     * Get the asynchronous post methods; the array must not be modified.
+     * @return The asynchronous post methods in order.
+     */
+    AsyncPostMethod[] getAsyncPostMethods() {
+        return asyncPostMethods;
+    }
+
+    /**
+     * Get the names of the pre methods added by name.
+     * @return A list of the method names.
+     */
+    List<String> getPreMethodNames() {
+        return names(preMethods);
+    }
+
+    /**
+     * Get the names of the post methods added by name.
+     * @return A list of the method names.
+     */
+    List<String> getPostMethodNames() {
+        return names(postMethods);
+    }
+
+    /**
+     * Derive the snapshot with a pre method added at the end.
+     * @param method The pre method.
+     * @return The new snapshot.
+     */
+    InterceptorChain withPreMethod(final MethodList method) {
+        return next(append(preMethods, method), postMethods, preInterceptors, prePatterns, postInterceptors, postPatterns, asyncPostMethods);
+    }
+
+    /**
+     * Derive the snapshot with a post method added at the end.
+     * @param method The post method.
+     * @return The new snapshot.
+     */
+    InterceptorChain withPostMethod(final MethodList method) {
+        return next(preMethods, append(postMethods, method), preInterceptors, prePatterns, postInterceptors, postPatterns, asyncPostMethods);
+    }
+
+    /**
+     * Derive the snapshot with the first pre method of a name removed.
+     * @param methodName The name of the pre method.
+     * @return The new snapshot, null if there is no such pre method.
+     */
+    InterceptorChain withoutPreMethod(final String methodName) {
+        final int index = indexOf(preMethods, methodName);
+        if (index < 0) {
+            return null;
+        }
+        return next(remove(preMethods, index), postMethods, preInterceptors, prePatterns, postInterceptors, postPatterns, asyncPostMethods);
+    }
+
+    /**
+     * Derive the snapshot with the first post method of a name removed.
+     * @param methodName The name of the post method.
+     * @return The new snapshot, null if there is no such post method.
+     */
+    InterceptorChain withoutPostMethod(final String methodName) {
+        final int index = indexOf(postMethods, methodName);
+        if (index < 0) {
+            return null;
+        }
+        return next(preMethods, remove(postMethods, index), preInterceptors, prePatterns, postInterceptors, postPatterns, asyncPostMethods);
+    }
+
+    /**
+     * Derive the snapshot with an asynchronous post method added at the end.
+     * @param method The asynchronous post method.
+     * @return The new snapshot.
+     */
+    InterceptorChain withAsyncPostMethod(final AsyncPostMethod method) {
+        return next(preMethods, postMethods, preInterceptors, prePatterns, postInterceptors, postPatterns,
+                append(asyncPostMethods, method));
+    }
+
+    /**
+     * Derive the snapshot with the first asynchronous post method of a name removed.
+     * @param methodName The name of the post method.
+     * @return The new snapshot, null if there is no such post method.
+     */
+    InterceptorChain withoutAsyncPostMethod(final String methodName) {
+        for (int i = 0; i < asyncPostMethods.length; i++) {
+            if (asyncPostMethods[i].getMethod().getName().equalsIgnoreCase(methodName)) {
+                return next(preMethods, postMethods, preInterceptors, prePatterns, postInterceptors, postPatterns,
+                        remove(asyncPostMethods, i));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Derive the snapshot with a typed pre method added at the end.
+     * @param interceptor The typed pre method.
+     * @param pattern The methods the pre method is bound to.
+     * @return The new snapshot.
+     */
+    InterceptorChain withPreInterceptor(final IPreInterceptor interceptor, final OCMMethodPattern pattern) {
+        return next(preMethods, postMethods, append(preInterceptors, interceptor), append(prePatterns, pattern),
+                postInterceptors, postPatterns, asyncPostMethods);
+    }
+
+    /**
+     * Derive the snapshot with a typed post method added at the end.
+     * @param interceptor The typed post method.
+     * @param pattern The methods the post method is bound to.
+     * @return The new snapshot.
+     */
+    InterceptorChain withPostInterceptor(final IPostInterceptor interceptor, final OCMMethodPattern pattern) {
+        return next(preMethods, postMethods, preInterceptors, prePatterns, append(postInterceptors, interceptor),
+                append(postPatterns, pattern), asyncPostMethods);
+    }
+
+    /**
+     * Derive the snapshot with a typed pre method removed.
+     * @param interceptor The typed pre method.
+     * @return The new snapshot, null if the interceptor is not attached.
+     */
+    InterceptorChain withoutPreInterceptor(final IPreInterceptor interceptor) {
+        final int index = indexOf(preInterceptors, interceptor);
+        if (index < 0) {
+            return null;
+        }
+        return next(preMethods, postMethods, remove(preInterceptors, index), remove(prePatterns, index),
+                postInterceptors, postPatterns, asyncPostMethods);
+    }
+
+    /**
+     * Derive the snapshot with a typed post method removed.
+     * @param interceptor The typed post method.
+     * @return The new snapshot, null if the interceptor is not attached.
+     */
+    InterceptorChain withoutPostInterceptor(final IPostInterceptor interceptor) {
+        final int index = indexOf(postInterceptors, interceptor);
+        if (index < 0) {
+            return null;
+        }
+        return next(preMethods, postMethods, preInterceptors, prePatterns, remove(postInterceptors, index),
+                remove(postPatterns, index), asyncPostMethods);
+    }
+
+    /**
+     * Copy an array with an element added at the end.
+     * @param <T> The element type.
+     * @param array The original array.
+     * @param element The element to add.
+     * @return The new array.
+     */
+    private static <T> T[] append(final T[] array, final T element) {
+        final T[] updated = Arrays.copyOf(array, array.length + 1);
+        updated[array.length] = element;
+        return updated;
+    }
+
+    /**
+     * Copy an array with one element removed.
+     * @param <T> The element type.
+     * @param array The original array.
+     * @param index The position of the element to remove.
+     * @return The new array.
+     */
+    private static <T> T[] remove(final T[] array, final int index) {
+        final T[] updated = Arrays.copyOf(array, array.length - 1);
+        System.arraycopy(array, index + 1, updated, index, array.length - index - 1);
+        return updated;
+    }
+
+    /**
+     * Find the first method of a name, ignoring case.
+     * @param methods The methods to search.
+     * @param methodName The method name.
+     * @return The position of the method, -1 if not found.
+     */
+    private static int indexOf(final MethodList[] methods, final String methodName) {
+        for (int i = 0; i < methods.length; i++) {
+            if (methods[i].getName().equalsIgnoreCase(methodName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find an interceptor by identity.
+     * @param interceptors The interceptors to search.
+     * @param interceptor The interceptor.
+     * @return The position of the interceptor, -1 if not found.
+     */
+    private static int indexOf(final Object[] interceptors, final Object interceptor) {
+        for (int i = 0; i < interceptors.length; i++) {
+            if (interceptors[i] == interceptor) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Check whether any pre or post method is bound to a pattern other than every method.
+     * @param methods The methods.
+     * @return true if a method is bound to a narrower pattern.
+     */
+    private static boolean isSelective(final MethodList[] methods) {
+        for (MethodList method : methods) {
+            if (!method.getPattern().matchesAll()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether any asynchronous post method is bound to a pattern other than every method.
+     * @param methods The asynchronous post methods.
+     * @return true if a method is bound to a narrower pattern.
+     */
+    private static boolean isSelective(final AsyncPostMethod[] methods) {
+        for (AsyncPostMethod method : methods) {
+            if (!method.getMethod().getPattern().matchesAll()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether any pattern is other than every method.
+     * @param patterns The patterns.
+     * @return true if a pattern is narrower than every method.
+     */
+    private static boolean isSelective(final OCMMethodPattern[] patterns) {
+        for (OCMMethodPattern pattern : patterns) {
+            if (!pattern.matchesAll()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * List the names of methods.
+     * @param methods The methods.
+     * @return A list of the method names.
+     */
+    private static List<String> names(final MethodList[] methods) {
+        final List<String> methodNames = new ArrayList<>(methods.length);
+        for (MethodList method : methods) {
+            methodNames.add(method.getName());
+        }
+        return methodNames;
+    }
+
+    /**
+     * Compile pre methods into one chain.
+     * @param methods The pre methods in the order they are to be called.
+     * @return The compiled pre chain.
+     */
+    private static MethodHandle compilePre(final MethodList[] methods) {
+        MethodHandle chain = EMPTY_PRE;
+        for (int i = methods.length - 1; i >= 0; i--) {
+            // Call the pre method, check its value, then continue down the chain
+            final MethodHandle checked = MethodHandles.filterReturnValue(bind(methods[i]), CHECK_PRE);
+            chain = MethodHandles.foldArguments(chain, checked);
+        }
+        return chain;
+    }
+
+    /**
+     * Compile post methods into one chain.
+     * @param methods The post methods in the order they are to be called.
+     * @return The compiled post chain.
+     */
+    private static MethodHandle compilePost(final MethodList[] methods) {
+        MethodHandle chain = EMPTY_POST;
+        for (int i = methods.length - 1; i >= 0; i--) {
+            // (Object[] postArgs, Object result, String name, Object[] args) -> post(name, postArgs)
+            final MethodHandle call = MethodHandles.permuteArguments(bind(methods[i]),
+                    MethodType.methodType(Object.class, Object[].class, Object.class, String.class, Object[].class), 2, 0);
+            // (Object result, String name, Object[] args) -> post(name, [result, args...])
+            final MethodHandle intercepted = MethodHandles.foldArguments(call, PREPEND_RESULT);
+            // (Object returned, Object result, String name, Object[] args) -> merged result
+            final MethodHandle merge = MethodHandles.permuteArguments(MERGE_RESULT,
+                    MethodType.methodType(Object.class, Object.class, Object.class, String.class, Object[].class), 1, 0);
+            final MethodHandle step = MethodHandles.foldArguments(merge, intercepted);
+            // (Object merged, Object result, String name, Object[] args) -> rest of the chain
+            final MethodHandle next = MethodHandles.permuteArguments(chain,
+                    MethodType.methodType(Object.class, Object.class, Object.class, String.class, Object[].class), 0, 2, 3);
+            chain = MethodHandles.foldArguments(next, step);
+        }
+        return chain;
+    }
+
+    /**
+     * Bind an interceptor method to its object, adapted to the interceptor type.
+     * @param interceptor The stored pre or post method.
+     * @return The bound handle.
+     */
+    private static MethodHandle bind(final MethodList interceptor) {
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.publicLookup().unreflect(interceptor.getMethod());
+        } catch (IllegalAccessException ex) {
+            // e.g. a public method of a non-public class; call it reflectively instead
+            handle = REFLECT.bindTo(interceptor.getMethod());
+        }
+        return handle.bindTo(interceptor.getObject()).asType(INTERCEPTOR_TYPE);
+    }
+
+    /**
+     * The pre chain with no pre methods.
+     * @param methodName The method intercepted.
+     * @param args The arguments of the call.
+     */
+    private static void noPreMethods(final String methodName, final Object[] args) {
+    }
+
+    /**
+     * Halt the invocation unless a pre method returned 0.
+     * @param value The value returned by the pre method.
+     * @throws InvocationException The pre method halted the invocation.
+     */
+    private static void checkPre(final Object value) throws InvocationException {
+        if (!(value instanceof Integer) || ((Integer) value) != 0) {
+            throw new InvocationException("PreMethod halted invocation");
+        }
+    }
+
+    /**
+     * Build the arguments of a post method: the result followed by the call arguments.
+     * @param result The current result of the invocation.
+     * @param methodName The method intercepted.
+     * @param args The arguments of the call.
+     * @return The post method arguments.
+     */
+    private static Object[] prependResult(final Object result, final String methodName, final Object[] args) {
+        final Object[] arguments = new Object[args.length + 1];
+        arguments[0] = result;
+        System.arraycopy(args, 0, arguments, 1, args.length);
+        return arguments;
+    }
+
+    /**
+     * Keep the current result if a post method returned the Integer 0, otherwise take
+     * the value it returned.
+     * @param result The current result of the invocation.
+     * @param returned The value returned by the post method.
+     * @return The new result.
+     */
+    private static Object mergeResult(final Object result, final Object returned) {
+        if (returned instanceof Integer && ((Integer) returned) == 0) {
+            return result;
+        }
+        return returned;
+    }
+
+    /**
+     * Call an interceptor method reflectively.
+     * @param method The interceptor method.
+     * @param target The interceptor object.
+     * @param methodName The method intercepted.
+     * @param args The arguments of the call.
+     * @return The value returned by the interceptor.
+     * @throws Throwable The exception thrown by the interceptor.
+     */
+    private static Object reflect(final Method method, final Object target, final String methodName, final Object[] args)
+            throws Throwable {
+        try {
+            return method.invoke(target, methodName, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    /**
+     * An asynchronous post method and the dispatcher that calls it.
+     */
+    static final class AsyncPostMethod {
+
+        /**
+         * The post method.
+         */
+        private final transient MethodList method;
+
+        /**
+         * The post method bound to its object, of type (String, Object[])Object.
+         */
+        private final transient MethodHandle handle;
+
+        /**
+         * The dispatcher calling the post method.
+         */
+        private final transient OCMAsyncDispatcher dispatcher;
+
+        /**
+         * Creates a new asynchronous post method.
+         * @param postMethod The post method.
+         * @param postDispatcher The dispatcher calling it.
+         */
+        AsyncPostMethod(final MethodList postMethod, final OCMAsyncDispatcher postDispatcher) {
+            method = postMethod;
+            handle = bind(postMethod);
+            dispatcher = postDispatcher;
+        }
+
+        /**
+         * Get the post method.
+         * @return The post method.
+         */
+        MethodList getMethod() {
+            return method;
+        }
+
+        /**
+         * Hand an intercepted call to the dispatcher.
+         * @param methodName The name of the method called.
+         * @param result The result of the call.
+         * @param args A copy of the arguments of the call, not modified afterwards.
+         */
+        void submit(final String methodName, final Object result, final Object[] args) {
+            dispatcher.submit(new OCMAsyncDispatcher.Event(handle, methodName, result, args));
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+package uk.ac.aston.components.opencomj;
+
+import java.lang.reflect.Method;
+
+/**
+ * The context of one intercepted invocation, passed to typed pre and post interceptors.
+ * Contexts are pooled per thread and reused, one for each level of nested intercepted
+ * calls, so a context must not be kept once the interceptor returns.
+ * @see IPreInterceptor
+ * @see IPostInterceptor
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class InvocationContext {
+
+    /**
+     * The next free context of each thread.
+     */
+    private static final ThreadLocal<InvocationContext> FREE = ThreadLocal.withInitial(InvocationContext::new);
+
+    /**
+     * The context used by a call nested inside this one; created on first use.
+     */
+    private transient InvocationContext nested;
+
+    /**
+     * The method invoked.
+     */
+    private transient Method method;
+
+    /**
+     * The arguments of the call.
+     */
+    private transient Object[] arguments;
+
+    /**
+     * The result of the call, once made.
+     */
+    private transient Object result;
+
+    /**
+     * Creates a new pooled context.
+     */
+    private InvocationContext() {
+    }
+
+    /**
+     * Take the next free context of the current thread.
+     * @param invoked The method invoked.
+     * @param args The arguments of the call.
+     * @return The context, which must be released when the call completes.
+     */
+    static InvocationContext acquire(final Method invoked, final Object[] args) {
+        final InvocationContext context = FREE.get();
+        if (context.nested == null) {
+            context.nested = new InvocationContext();
+        }
+        FREE.set(context.nested);
+        context.method = invoked;
+        context.arguments = args;
+        context.result = null;
+        return context;
+    }
+
+    /**
+     * Return this context to the pool of the current thread.
+     */
+    void release() {
+        method = null;
+        arguments = null;
+        result = null;
+        FREE.set(this);
+    }
+
+    /**
+     * Get the method invoked.
+     * @return The java reflect method.
+     */
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * Get the name of the method invoked.
+     * @return The method name.
+     */
+    public String getMethodName() {
+        return method.getName();
+    }
+
+    /**
+     * Get the number of arguments of the call.
+     * @return The number of arguments.
+     */
+    public int getArgumentCount() {
+        return arguments.length;
+    }
+
+    /**
+     * Get an argument of the call.
+     * @param index The position of the argument.
+     * @return The argument value.
+     */
+    public Object getArgument(final int index) {
+        return arguments[index];
+    }
+
+    /**
+     * Replace an argument of the call; only effective before the method is invoked.
+     * @param index The position of the argument.
+     * @param value The new argument value.
+     */
+    public void setArgument(final int index, final Object value) {
+        arguments[index] = value;
+    }
+
+    /**
+     * Get the result of the call; null before the method is invoked.
+     * @return The result.
+     */
+    public Object getResult() {
+        return result;
+    }
+
+    /**
+     * Replace the result of the call.
+     * @param value The new result.
+     */
+    public void setResult(final Object value) {
+        result = value;
+    }
+}
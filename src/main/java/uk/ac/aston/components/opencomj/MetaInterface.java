@@ -208,7 +208,7 @@ public class MetaInterface {
      */
     public final TypedAttribute getAttributeValue(final String iid, final String kind, final String name) {
         if (kind.equalsIgnoreCase("Interface")) {
-            final IMetaInterception pMetaIc = (IMetaInterception) mpRTintf.queryInterface("OpenCOM.IMetaInterception");
+            final IMetaInterception pMetaIc = (IMetaInterception) mpRTintf.queryInterface("IMetaInterception");
             final IDelegator pIDel =  pMetaIc.getDelegator(mComp, iid);
             return pIDel.getAttributeValue(name);
         } else if (kind.equalsIgnoreCase("Receptacle")) {
@@ -42,6 +42,11 @@ public class MethodList {
      */
     private final transient String name;
 
+    /**
+     * The methods of the interface the pre/post method is bound to.
+     */
+    private final transient OCMMethodPattern pattern;
+
     /**
      * Constructor.
      * @param newMethod The reflection method of the corresponding physical method.
@@ -49,9 +54,22 @@ public class MethodList {
      * @param methodName Name of the method as a string.
      */
     public MethodList(final Method newMethod, final Object interceptorObject, final String methodName) {
+       this(newMethod, interceptorObject, methodName, null);
+    }
+
+    /**
+     * Constructor for a pre/post method bound to some methods of the interface only.
+     * @param newMethod The reflection method of the corresponding physical method.
+     * @param interceptorObject Reference to instance hosting the interceptor method.
+     * @param methodName Name of the method as a string.
+     * @param methodPattern The interface methods intercepted e.g. "add" or "get*,set*"; null for all.
+     */
+    public MethodList(final Method newMethod, final Object interceptorObject, final String methodName,
+            final String methodPattern) {
        method = newMethod;
        object = interceptorObject;
        name = methodName;
+       pattern = OCMMethodPattern.compile(methodPattern);
     }
 
     /**
@@ -77,4 +95,12 @@ public class MethodList {
     public final String getName() {
         return name;
     }
+
+    /**
+     * Get the methods of the interface the pre/post method is bound to.
+     * @return The method pattern.
+     */
+    final OCMMethodPattern getPattern() {
+        return pattern;
+    }
 }
@@ -0,0 +1,291 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+
+package uk.ac.aston.components.opencomj;
+
+import java.util.List;
+import java.util.function.BinaryOperator;
+
+/**
+ * The standard aggregators of parallel invocations.
+ * <ul>
+ * <li>collectAll - the results of every call; fails as soon as a call fails.</li>
+ * <li>outcomes - the outcome of every call, succeeded or failed; never fails.</li>
+ * <li>firstSuccess - the first result returned; fails only if every call fails.</li>
+ * <li>reduce - the results of every call combined by an operator; fails as soon as a call fails.</li>
+ * <li>quorum - the first n results returned; fails once n calls can no longer succeed.</li>
+ * <li>broadcast - the result of the first connection once every call succeeded; fails as
+ * soon as a call fails. This is how the interface of the receptacle is called by default.</li>
+ * </ul>
+ * Failures are reported by a ParallelInvocationException holding the outcome of each call.
+ *
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class OCMAggregators {
+
+    /**
+     * The shared collectAll aggregator.
+     */
+    private static final IAggregator<Object, List<Object>> COLLECT_ALL = new CollectAll();
+
+    /**
+     * The shared outcomes aggregator.
+     */
+    private static final IAggregator<Object, OCMFanOutResult<Object>> OUTCOMES = new Outcomes();
+
+    /**
+     * The shared firstSuccess aggregator.
+     */
+    private static final IAggregator<Object, Object> FIRST_SUCCESS = new FirstSuccess();
+
+    /**
+     * The shared broadcast aggregator.
+     */
+    private static final IAggregator<Object, Object> BROADCAST = new Broadcast();
+
+    /**
+     * Creates a new instance of OCMAggregators.
+     */
+    private OCMAggregators() {
+    }
+
+    /**
+     * Collect the results of every call.
+     * @param <R> The result type of each call.
+     * @return The aggregator of the results in connection order.
+     */
+    @SuppressWarnings("unchecked")
+    public static <R> IAggregator<R, List<R>> collectAll() {
+        return (IAggregator<R, List<R>>) (IAggregator<?, ?>) COLLECT_ALL;
+    }
+
+    /**
+     * Wait for every call and report the outcome of each, so that partial failures can be
+     * handled by the caller.
+     * @param <R> The result type of each call.
+     * @return The aggregator of the outcomes.
+     */
+    @SuppressWarnings("unchecked")
+    public static <R> IAggregator<R, OCMFanOutResult<R>> outcomes() {
+        return (IAggregator<R, OCMFanOutResult<R>>) (IAggregator<?, ?>) OUTCOMES;
+    }
+
+    /**
+     * Take the first result returned, cancelling the other calls.
+     * @param <R> The result type of each call.
+     * @return The aggregator of the first result.
+     */
+    @SuppressWarnings("unchecked")
+    public static <R> IAggregator<R, R> firstSuccess() {
+        return (IAggregator<R, R>) (IAggregator<?, ?>) FIRST_SUCCESS;
+    }
+
+    /**
+     * Combine the results of every call in connection order.
+     * @param <R> The result type of each call.
+     * @param identity The result when there are no results to combine.
+     * @param operator The operator combining two results e.g. Integer::sum.
+     * @return The aggregator of the combined result.
+     */
+    public static <R> IAggregator<R, R> reduce(final R identity, final BinaryOperator<R> operator) {
+        return new Reduce<>(identity, operator);
+    }
+
+    /**
+     * Take the first results returned once enough calls have succeeded, cancelling the
+     * other calls.
+     * @param <R> The result type of each call.
+     * @param required The number of calls that must succeed.
+     * @return The aggregator of the results of the quorum in connection order.
+     */
+    public static <R> IAggregator<R, List<R>> quorum(final int required) {
+        if (required < 1) {
+            throw new IllegalArgumentException("A quorum needs at least one call");
+        }
+        return new Quorum<>(required);
+    }
+
+    /**
+     * Call every connection and require each call to succeed, returning the result of the
+     * first connection.
+     * @param <R> The result type of each call.
+     * @return The aggregator of the first connection's result.
+     */
+    @SuppressWarnings("unchecked")
+    public static <R> IAggregator<R, R> broadcast() {
+        return (IAggregator<R, R>) (IAggregator<?, ?>) BROADCAST;
+    }
+
+    /**
+     * Fail unless every call succeeded.
+     * @param calls The outcomes of the calls.
+     * @throws ParallelInvocationException If a call failed.
+     */
+    private static void requireAll(final OCMFanOutResult<?> calls) throws ParallelInvocationException {
+        if (calls.getSucceeded() < calls.getSize()) {
+            throw new ParallelInvocationException("Parallel invocation failed", calls);
+        }
+    }
+
+    /**
+     * The results of every call.
+     */
+    private static final class CollectAll implements IAggregator<Object, List<Object>> {
+
+        @Override
+        public boolean isDecided(final OCMFanOutResult<Object> calls) {
+            return calls.getFailed() > 0;
+        }
+
+        @Override
+        public List<Object> aggregate(final OCMFanOutResult<Object> calls) throws InvocationException {
+            requireAll(calls);
+            return calls.getResults();
+        }
+    }
+
+    /**
+     * The outcome of every call.
+     */
+    private static final class Outcomes implements IAggregator<Object, OCMFanOutResult<Object>> {
+
+        @Override
+        public boolean isDecided(final OCMFanOutResult<Object> calls) {
+            return false;
+        }
+
+        @Override
+        public OCMFanOutResult<Object> aggregate(final OCMFanOutResult<Object> calls) {
+            return calls;
+        }
+    }
+
+    /**
+     * The first result returned.
+     */
+    private static final class FirstSuccess implements IAggregator<Object, Object> {
+
+        @Override
+        public boolean isDecided(final OCMFanOutResult<Object> calls) {
+            return calls.getSucceeded() > 0;
+        }
+
+        @Override
+        public Object aggregate(final OCMFanOutResult<Object> calls) throws InvocationException {
+            if (calls.getSucceeded() == 0) {
+                throw new ParallelInvocationException("No call succeeded", calls);
+            }
+            return calls.getResults().get(0);
+        }
+    }
+
+    /**
+     * The results of every call combined by an operator.
+     */
+    private static final class Reduce<R> implements IAggregator<R, R> {
+
+        /**
+         * The result when there are no results to combine.
+         */
+        private final transient R identity;
+
+        /**
+         * The operator combining two results.
+         */
+        private final transient BinaryOperator<R> operator;
+
+        /**
+         * Creates a new reduce aggregator.
+         * @param initial The result when there are no results to combine.
+         * @param combiner The operator combining two results.
+         */
+        Reduce(final R initial, final BinaryOperator<R> combiner) {
+            identity = initial;
+            operator = combiner;
+        }
+
+        @Override
+        public boolean isDecided(final OCMFanOutResult<R> calls) {
+            return calls.getFailed() > 0;
+        }
+
+        @Override
+        public R aggregate(final OCMFanOutResult<R> calls) throws InvocationException {
+            requireAll(calls);
+            R result = identity;
+            for (int i = 0; i < calls.getSize(); i++) {
+                result = operator.apply(result, calls.getResult(i));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The first results returned by a quorum of calls.
+     */
+    private static final class Quorum<R> implements IAggregator<R, List<R>> {
+
+        /**
+         * The number of calls that must succeed.
+         */
+        private final transient int required;
+
+        /**
+         * Creates a new quorum aggregator.
+         * @param count The number of calls that must succeed.
+         */
+        Quorum(final int count) {
+            required = count;
+        }
+
+        @Override
+        public boolean isDecided(final OCMFanOutResult<R> calls) {
+            return calls.getSucceeded() >= required || calls.getFailed() > calls.getSize() - required;
+        }
+
+        @Override
+        public List<R> aggregate(final OCMFanOutResult<R> calls) throws InvocationException {
+            if (calls.getSucceeded() < required) {
+                throw new ParallelInvocationException("Quorum of " + required + " not reached", calls);
+            }
+            return calls.getResults();
+        }
+    }
+
+    /**
+     * The result of the first connection, once every call succeeded.
+     */
+    private static final class Broadcast implements IAggregator<Object, Object> {
+
+        @Override
+        public boolean isDecided(final OCMFanOutResult<Object> calls) {
+            return calls.getFailed() > 0;
+        }
+
+        @Override
+        public Object aggregate(final OCMFanOutResult<Object> calls) throws InvocationException {
+            requireAll(calls);
+            return calls.getResult(0);
+        }
+    }
+}
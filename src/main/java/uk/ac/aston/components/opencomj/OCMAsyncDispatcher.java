@@ -0,0 +1,496 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+package uk.ac.aston.components.opencomj;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs asynchronous post-methods off the calling thread. A delegator hands each
+ * intercepted call to the dispatcher as an immutable event holding the method name,
+ * a copy of the arguments and the result; the event is placed on a bounded, lock-free
+ * queue and the post-method is called later by one of the dispatcher's worker threads.
+ * The caller never waits for the post-method, and the value it returns is discarded.
+ * <p>
+ * When the queue is full the overflow policy decides what happens to new events:
+ * <ul>
+ * <li>drop (the default) - the event is discarded and counted as dropped.</li>
+ * <li>block - the caller waits until there is space on the queue.</li>
+ * <li>sample - once the queue is half full only one event in every sample rate is
+ * queued, the others are counted as dropped; a full queue drops every event.</li>
+ * </ul>
+ * The default dispatcher, shared by all delegators, is configured by the system
+ * properties opencomj.async.capacity, opencomj.async.workers, opencomj.async.overflow
+ * and opencomj.async.sample when it is first used.
+ *
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class OCMAsyncDispatcher {
+
+    /**
+     * The system property giving the capacity of the default dispatcher's queue.
+     */
+    public static final String CAPACITY_PROPERTY = "opencomj.async.capacity";
+
+    /**
+     * The system property giving the number of worker threads of the default dispatcher.
+     */
+    public static final String WORKERS_PROPERTY = "opencomj.async.workers";
+
+    /**
+     * The system property naming the overflow policy of the default dispatcher.
+     */
+    public static final String OVERFLOW_PROPERTY = "opencomj.async.overflow";
+
+    /**
+     * The system property giving the sample rate of the default dispatcher.
+     */
+    public static final String SAMPLE_PROPERTY = "opencomj.async.sample";
+
+    /**
+     * Overflow policy discarding new events when the queue is full.
+     */
+    public static final String DROP = "drop";
+
+    /**
+     * Overflow policy making callers wait for space on the queue.
+     */
+    public static final String BLOCK = "block";
+
+    /**
+     * Overflow policy queueing one event in every sample rate once the queue is half full.
+     */
+    public static final String SAMPLE = "sample";
+
+    /**
+     * The default capacity of the queue.
+     */
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * The default sample rate.
+     */
+    private static final int DEFAULT_SAMPLE_RATE = 10;
+
+    /**
+     * The number of times an idle worker looks at the queue again before parking.
+     */
+    private static final int SPINS = 64;
+
+    /**
+     * The longest time an idle worker parks before looking at the queue again.
+     */
+    private static final long PARK_NANOS = 10000000L;
+
+    /**
+     * The time a blocked caller waits before trying the queue again.
+     */
+    private static final long BLOCK_NANOS = 10000L;
+
+    /**
+     * The dispatcher shared by all delegators, created when first used.
+     */
+    private static OCMAsyncDispatcher defaultDispatcher;
+
+    /**
+     * The slots of the queue.
+     */
+    private final transient AtomicReferenceArray<Event> slots;
+
+    /**
+     * The sequence number of each slot, telling producers and consumers whose turn it is.
+     */
+    private final transient AtomicLongArray sequences;
+
+    /**
+     * The capacity of the queue minus one; the capacity is a power of two.
+     */
+    private final transient int mask;
+
+    /**
+     * The position of the next event to be queued.
+     */
+    private final transient AtomicLong tail = new AtomicLong();
+
+    /**
+     * The position of the next event to be taken off the queue.
+     */
+    private final transient AtomicLong head = new AtomicLong();
+
+    /**
+     * The overflow policy.
+     */
+    private final transient String overflow;
+
+    /**
+     * One event in this many is queued by the sample policy once the queue is half full.
+     */
+    private final transient int sampleRate;
+
+    /**
+     * The worker threads.
+     */
+    private final transient Thread[] workers;
+
+    /**
+     * The number of workers parked waiting for events.
+     */
+    private final transient AtomicInteger idle = new AtomicInteger();
+
+    /**
+     * False once the dispatcher is shut down.
+     */
+    private transient volatile boolean running = true;
+
+    /**
+     * The number of events queued.
+     */
+    private final transient LongAdder submitted = new LongAdder();
+
+    /**
+     * The number of events discarded by the overflow policy or after shut down.
+     */
+    private final transient LongAdder dropped = new LongAdder();
+
+    /**
+     * The number of post-methods called.
+     */
+    private final transient LongAdder processed = new LongAdder();
+
+    /**
+     * The number of post-methods that threw an exception.
+     */
+    private final transient LongAdder failed = new LongAdder();
+
+    /**
+     * Creates a new dispatcher and starts its worker threads.
+     * @param capacity The capacity of the queue; rounded up to a power of two.
+     * @param workerCount The number of worker threads.
+     * @param overflowPolicy The overflow policy: drop, block or sample.
+     * @param rate The sample rate of the sample policy.
+     */
+    public OCMAsyncDispatcher(final int capacity, final int workerCount, final String overflowPolicy, final int rate) {
+        if (capacity < 1 || workerCount < 1 || rate < 1) {
+            throw new IllegalArgumentException("Capacity, workers and sample rate must be positive");
+        }
+        if (!DROP.equalsIgnoreCase(overflowPolicy) && !BLOCK.equalsIgnoreCase(overflowPolicy)
+                && !SAMPLE.equalsIgnoreCase(overflowPolicy)) {
+            throw new IllegalArgumentException("Unknown overflow policy " + overflowPolicy);
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        slots = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+        if (BLOCK.equalsIgnoreCase(overflowPolicy)) {
+            overflow = BLOCK;
+        } else if (SAMPLE.equalsIgnoreCase(overflowPolicy)) {
+            overflow = SAMPLE;
+        } else {
+            overflow = DROP;
+        }
+        sampleRate = rate;
+        workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Thread(this::drain, "opencomj-async-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Get the dispatcher shared by all delegators, creating it from the system properties
+     * the first time it is used.
+     * @return The default dispatcher.
+     */
+    public static synchronized OCMAsyncDispatcher getDefault() {
+        if (defaultDispatcher == null) {
+            defaultDispatcher = new OCMAsyncDispatcher(Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY),
+                    Integer.getInteger(WORKERS_PROPERTY, 1), System.getProperty(OVERFLOW_PROPERTY, DROP),
+                    Integer.getInteger(SAMPLE_PROPERTY, DEFAULT_SAMPLE_RATE));
+        }
+        return defaultDispatcher;
+    }
+
+    /**
+     * Queue an event, applying the overflow policy if the queue is full.
+     * @param event The event.
+     * @return true if the event was queued, false if it was dropped.
+     */
+    boolean submit(final Event event) {
+        if (!running) {
+            dropped.increment();
+            return false;
+        }
+        if (overflow == SAMPLE && tail.get() - head.get() > mask >> 1
+                && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            dropped.increment();
+            return false;
+        }
+        while (!offer(event)) {
+            if (overflow != BLOCK || !running) {
+                dropped.increment();
+                return false;
+            }
+            LockSupport.parkNanos(this, BLOCK_NANOS);
+        }
+        submitted.increment();
+        if (idle.get() != 0) {
+            for (Thread worker : workers) {
+                LockSupport.unpark(worker);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Place an event in the next free slot of the queue.
+     * @param event The event.
+     * @return false if the queue is full.
+     */
+    private boolean offer(final Event event) {
+        long position = tail.get();
+        while (true) {
+            final int index = (int) position & mask;
+            final long distance = sequences.get(index) - position;
+            if (distance == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.set(index, event);
+                    // Hand the slot to the consumers
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (distance < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Take the next event off the queue.
+     * @return The event, null if the queue is empty.
+     */
+    private Event poll() {
+        long position = head.get();
+        while (true) {
+            final int index = (int) position & mask;
+            final long distance = sequences.get(index) - (position + 1);
+            if (distance == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    final Event event = slots.get(index);
+                    slots.set(index, null);
+                    // Hand the slot back to the producers for the next lap
+                    sequences.set(index, position + mask + 1);
+                    return event;
+                }
+                position = head.get();
+            } else if (distance < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * The loop of each worker thread: call the post-method of each event taken off the
+     * queue, parking when the queue is empty.
+     */
+    private void drain() {
+        int spins = 0;
+        while (true) {
+            final Event event = poll();
+            if (event != null) {
+                spins = 0;
+                try {
+                    event.deliver();
+                    processed.increment();
+                } catch (Throwable ex) {
+                    failed.increment();
+                }
+            } else if (!running) {
+                return;
+            } else if (spins < SPINS) {
+                spins++;
+                Thread.yield();
+            } else {
+                idle.incrementAndGet();
+                // Look again once counted as idle so that a new event cannot be missed
+                if (getPending() == 0 && running) {
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+                idle.decrementAndGet();
+                spins = 0;
+            }
+        }
+    }
+
+    /**
+     * Stop the dispatcher. Events already queued are still delivered; new events are dropped.
+     */
+    public void shutdown() {
+        running = false;
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    /**
+     * Get the number of slots of the queue.
+     * @return The capacity.
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Get the overflow policy.
+     * @return drop, block or sample.
+     */
+    public String getOverflowPolicy() {
+        return overflow;
+    }
+
+    /**
+     * Get the number of events waiting on the queue.
+     * @return The number of events queued and not yet taken by a worker.
+     */
+    public long getPending() {
+        return Math.max(0, tail.get() - head.get());
+    }
+
+    /**
+     * Get the number of events queued.
+     * @return The count of events accepted.
+     */
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    /**
+     * Get the number of events discarded.
+     * @return The count of events dropped by the overflow policy or after shut down.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Get the number of post-methods called.
+     * @return The count of events delivered.
+     */
+    public long getProcessed() {
+        return processed.sum();
+    }
+
+    /**
+     * Get the number of post-methods that threw an exception.
+     * @return The count of failed deliveries.
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * One intercepted call waiting for an asynchronous post-method. The event is never
+     * modified once created; the arguments are a copy of those of the call.
+     */
+    static final class Event {
+
+        /**
+         * The post-method bound to its object, of type (String, Object[])Object.
+         */
+        private final transient MethodHandle postMethod;
+
+        /**
+         * The name of the method called.
+         */
+        private final transient String methodName;
+
+        /**
+         * The result of the call.
+         */
+        private final transient Object result;
+
+        /**
+         * The arguments of the call.
+         */
+        private final transient Object[] args;
+
+        /**
+         * The trace in progress when the call was made; null if none.
+         */
+        private final transient OCMTracer.Span trace;
+
+        /**
+         * Creates a new event.
+         * @param handle The post-method.
+         * @param name The name of the method called.
+         * @param callResult The result of the call.
+         * @param callArgs A copy of the arguments of the call, not modified afterwards.
+         */
+        Event(final MethodHandle handle, final String name, final Object callResult, final Object[] callArgs) {
+            postMethod = handle;
+            methodName = name;
+            result = callResult;
+            args = callArgs;
+            trace = OCMTracer.capture();
+        }
+
+        /**
+         * Call the post-method with the result followed by the arguments, as a post-method
+         * inserted by addPostMethod would be. Calls made by the post-method join the trace
+         * of the call, if any.
+         * @throws Throwable The exception thrown by the post-method.
+         */
+        void deliver() throws Throwable {
+            final Object[] postArgs = new Object[args.length + 1];
+            postArgs[0] = result;
+            System.arraycopy(args, 0, postArgs, 1, args.length);
+            if (trace == null) {
+                final Object ignored = (Object) postMethod.invokeExact(methodName, postArgs);
+                return;
+            }
+            final OCMTracer.Span previous = OCMTracer.resume(trace);
+            try {
+                final Object ignored = (Object) postMethod.invokeExact(methodName, postArgs);
+            } finally {
+                OCMTracer.restore(previous);
+            }
+        }
+    }
+}
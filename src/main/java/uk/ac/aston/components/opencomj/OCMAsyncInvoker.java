@@ -0,0 +1,263 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+package uk.ac.aston.components.opencomj;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Asynchronous invocation of component interfaces. A call made through an interface
+ * reference, typically the delegated proxy held by a receptacle, is run on an executor
+ * and its outcome returned as a CompletableFuture; the call still passes through the
+ * delegator, so pre and post methods run as usual, on the executor's thread.
+ * <ul>
+ * <li>Cancelling the future interrupts the call if it is running.</li>
+ * <li>A call given a timeout fails with a TimeoutException, and is interrupted, if it
+ * has not completed in time.</li>
+ * <li>A call halted by a pre method fails with the InvocationException itself, rather
+ * than the UndeclaredThrowableException thrown by the proxy.</li>
+ * </ul>
+ * Calls run on the executor given, or on the default executor: a shared pool of daemon
+ * threads on Java 8, or a virtual thread per call on Java 21 and later.
+ *
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class OCMAsyncInvoker {
+
+    /**
+     * The executor used when none is given, created when first used.
+     */
+    private static ExecutorService defaultExecutor;
+
+    /**
+     * The timer failing calls that time out, created when first used.
+     */
+    private static ScheduledThreadPoolExecutor timer;
+
+    /**
+     * Creates a new instance of OCMAsyncInvoker.
+     */
+    private OCMAsyncInvoker() {
+    }
+
+    /**
+     * Get the executor used when none is given, suited to calls that block on I/O: a pool
+     * of daemon threads created as needed or, on Java 21 and later, a virtual thread per call.
+     * @return The default executor.
+     */
+    public static synchronized Executor getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = OCMExecutors.newInvocationExecutor();
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * Check whether the default executor runs calls on virtual threads.
+     * @return true on Java 21 and later.
+     */
+    public static boolean isVirtual() {
+        return OCMExecutors.isVirtual();
+    }
+
+    /**
+     * Get the timer failing calls that time out.
+     * @return The timer.
+     */
+    private static synchronized ScheduledThreadPoolExecutor getTimer() {
+        if (timer == null) {
+            timer = new ScheduledThreadPoolExecutor(1, OCMExecutors.daemonThreads("opencomj-timeout-"));
+            timer.setRemoveOnCancelPolicy(true);
+        }
+        return timer;
+    }
+
+    /**
+     * Call an interface asynchronously on the default executor.
+     * @param <T> The interface type.
+     * @param <R> The result type.
+     * @param intf The interface reference.
+     * @param call The call to make on the interface e.g. calc -> calc.add(1, 2).
+     * @return The future outcome of the call.
+     */
+    public static <T, R> CompletableFuture<R> invokeAsync(final T intf, final Function<T, R> call) {
+        return invokeAsync(intf, call, null, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Call an interface asynchronously.
+     * @param <T> The interface type.
+     * @param <R> The result type.
+     * @param intf The interface reference.
+     * @param call The call to make on the interface e.g. calc -> calc.add(1, 2).
+     * @param executor The executor running the call; null for the default executor.
+     * @param timeout The time allowed for the call; 0 for no limit.
+     * @param unit The unit of the timeout.
+     * @return The future outcome of the call.
+     */
+    public static <T, R> CompletableFuture<R> invokeAsync(final T intf, final Function<T, R> call,
+            final Executor executor, final long timeout, final TimeUnit unit) {
+        final Call<T, R> future = new Call<>(intf, call);
+        if (intf == null) {
+            future.completeExceptionally(new InvocationException("Interface not connected"));
+            return future;
+        }
+        try {
+            if (executor == null) {
+                getDefaultExecutor().execute(future);
+            } else {
+                executor.execute(future);
+            }
+        } catch (RejectedExecutionException ex) {
+            future.completeExceptionally(ex);
+            return future;
+        }
+        if (timeout > 0) {
+            final ScheduledFuture<?> expiry = getTimer().schedule(future::expire, timeout, unit);
+            future.whenComplete((result, failure) -> expiry.cancel(false));
+        }
+        return future;
+    }
+
+    /**
+     * An asynchronous call, run by the executor and completing itself.
+     * @param <T> The interface type.
+     * @param <R> The result type.
+     */
+    private static final class Call<T, R> extends CompletableFuture<R> implements Runnable {
+
+        /**
+         * The interface reference.
+         */
+        private final transient T intf;
+
+        /**
+         * The call to make on the interface.
+         */
+        private final transient Function<T, R> call;
+
+        /**
+         * The trace in progress when the call was made; null if none.
+         */
+        private final transient OCMTracer.Span trace;
+
+        /**
+         * Guards the running thread, so that it is never interrupted once the call is over.
+         */
+        private final transient Object lock = new Object();
+
+        /**
+         * The thread running the call, null when it is not running.
+         */
+        private transient Thread runner;
+
+        /**
+         * Creates a new asynchronous call.
+         * @param target The interface reference.
+         * @param function The call to make on the interface.
+         */
+        Call(final T target, final Function<T, R> function) {
+            intf = target;
+            call = function;
+            trace = OCMTracer.capture();
+        }
+
+        /**
+         * Make the call on the interface, as part of the trace of the caller.
+         * @return The result of the call.
+         */
+        private R apply() {
+            if (trace == null) {
+                return call.apply(intf);
+            }
+            final OCMTracer.Span previous = OCMTracer.resume(trace);
+            try {
+                return call.apply(intf);
+            } finally {
+                OCMTracer.restore(previous);
+            }
+        }
+
+        @Override
+        public void run() {
+            synchronized (lock) {
+                if (isDone()) {
+                    // Cancelled or timed out before it started
+                    return;
+                }
+                runner = Thread.currentThread();
+            }
+            try {
+                complete(apply());
+            } catch (UndeclaredThrowableException ex) {
+                // e.g. the InvocationException of a pre method halting the call
+                completeExceptionally(ex.getUndeclaredThrowable());
+            } catch (Throwable ex) {
+                completeExceptionally(ex);
+            } finally {
+                synchronized (lock) {
+                    runner = null;
+                }
+                // Clear an interrupt meant for this call before the thread runs other tasks
+                Thread.interrupted();
+            }
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            final boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                interrupt();
+            }
+            return cancelled;
+        }
+
+        /**
+         * Fail the call with a TimeoutException if it has not completed.
+         */
+        void expire() {
+            if (completeExceptionally(new TimeoutException("Invocation timed out"))) {
+                interrupt();
+            }
+        }
+
+        /**
+         * Interrupt the thread running the call, if it is running.
+         */
+        private void interrupt() {
+            synchronized (lock) {
+                if (runner != null) {
+                    runner.interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+package uk.ac.aston.components.opencomj;
+
+/**
+ * The OCMComponentInfo class describes a component to be created by the batch
+ * createInstances operation of the OpenCOM runtime i.e. its type and unique name.
+ *
+ * @author  Paul Grace
+ * @version 1.2.3
+ **/
+
+public class OCMComponentInfo {
+
+    /** A string describing the component type i.e. the Java class of the component. **/
+    private final transient String componentType;
+
+    /**
+     * Getter for the component type field.
+     * @return The component type string.
+     */
+    public final String getComponentType() {
+        return this.componentType;
+    }
+
+    /** The unique (user defined) name of the component. **/
+    private final transient String componentName;
+
+    /**
+     * Getter for the component name field.
+     * @return The component name.
+     */
+    public final String getComponentName() {
+        return this.componentName;
+    }
+
+    /**
+     * Default constructor that allows the component type & name to be set.
+     * @param type The component type.
+     * @param name The unique component name.
+     **/
+    public OCMComponentInfo(final String type, final String name) {
+        componentType = type;
+        componentName = name;
+    }
+
+}
@@ -0,0 +1,269 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+
+package uk.ac.aston.components.opencomj;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import uk.ac.aston.components.privacy.PrivacyDelegator;
+
+/**
+ * The single proxy of a component created by the kernel. One dynamic proxy implements
+ * every interface of the component, and each call is routed to the delegator of the
+ * interface declaring the method. The delegator of an interface is only created the
+ * first time it is needed: when it is asked for through IMetaInterception.getDelegator,
+ * when the interface has private parameters, or when a tracer is started or latency
+ * recording is enabled, on the first call after that. Until then
+ * calls on the interface go straight to the component through the dispatch table of
+ * its class, so components that are never intercepted carry no delegator state at all.
+ *
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+final class OCMComponentProxy implements InvocationHandler {
+
+    /**
+     * The arguments of a call to a method with no parameters.
+     */
+    private static final Object[] NO_ARGS = new Object[0];
+
+    /**
+     * The original component.
+     */
+    private final transient Object obj;
+
+    /**
+     * The resolved description of the component type.
+     */
+    private final transient OCMComponentType type;
+
+    /**
+     * The table used to call the methods of the component.
+     */
+    private final transient DispatchTable dispatch;
+
+    /**
+     * The kernel, passed to the delegators created.
+     */
+    private final transient IMetaInterception kernel;
+
+    /**
+     * The unique name of the component, null if it has none.
+     */
+    private final transient String componentName;
+
+    /**
+     * The list of delegators of the graph node, to which each delegator is added when created.
+     */
+    private final transient List<OCMDelegatorInfo> delegatorList;
+
+    /**
+     * The delegator of each delegated interface, by slot; null until created.
+     */
+    private final transient AtomicReferenceArray<AbstractDelegator> delegators;
+
+    /**
+     * The proxy implementing every interface of the component.
+     */
+    private final transient Object proxy;
+
+    /**
+     * Whether every delegator records latency statistics, in which case an interface gets
+     * its delegator on its first call.
+     */
+    private final transient boolean recorded = OCMLatencyRecorder.isEnabledByDefault();
+
+    /**
+     * Creates the proxy of a component.
+     * @param component The original component.
+     * @param componentType The resolved description of its type.
+     * @param pIOCM The kernel.
+     * @param name The unique name of the component.
+     * @param delegatorInfo The list recording the delegators of the component's graph node.
+     */
+    OCMComponentProxy(final Object component, final OCMComponentType componentType, final IMetaInterception pIOCM,
+            final String name, final List<OCMDelegatorInfo> delegatorInfo) {
+        obj = component;
+        type = componentType;
+        dispatch = DispatchTable.forClass(component.getClass());
+        kernel = pIOCM;
+        componentName = name;
+        delegatorList = delegatorInfo;
+        delegators = new AtomicReferenceArray<>(componentType.getSlotCount());
+        proxy = Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(),
+                component.getClass().getInterfaces(), this);
+    }
+
+    /**
+     * Get the proxy of the component.
+     * @return The proxy implementing every interface of the component.
+     */
+    Object getProxy() {
+        return proxy;
+    }
+
+    /**
+     * Get the invocation handler of a component created by the runtime.
+     * @param component The component proxy.
+     * @return The handler; null if the component is not an OpenCOM component proxy.
+     */
+    static OCMComponentProxy forComponent(final Object component) {
+        if (component != null && Proxy.isProxyClass(component.getClass())) {
+            final InvocationHandler handler = Proxy.getInvocationHandler(component);
+            if (handler instanceof OCMComponentProxy) {
+                return (OCMComponentProxy) handler;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the type of the component.
+     * @return The component type description.
+     */
+    OCMComponentType getType() {
+        return type;
+    }
+
+    /**
+     * Get the original component.
+     * @return The component instance the proxy calls.
+     */
+    Object getComponent() {
+        return obj;
+    }
+
+    /**
+     * Get the delegator of an interface, creating it the first time.
+     * @param intfName The interface name, ignoring case.
+     * @return The delegator, null if the component has no such delegated interface.
+     */
+    AbstractDelegator getDelegator(final String intfName) {
+        final OCMComponentType.Interface intf = type.getDelegatedInterface(intfName);
+        if (intf == null) {
+            return null;
+        }
+        return delegator(intf);
+    }
+
+    /**
+     * Get the delegators created so far.
+     * @return The delegators, in slot order.
+     */
+    List<AbstractDelegator> getDelegators() {
+        final List<AbstractDelegator> created = new ArrayList<>();
+        for (int i = 0; i < delegators.length(); i++) {
+            final AbstractDelegator del = delegators.get(i);
+            if (del != null) {
+                created.add(del);
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Get the delegator of an interface, creating it the first time. Two threads may both
+     * create one; only the first published is kept.
+     * @param intf The delegated interface.
+     * @return The delegator.
+     */
+    private AbstractDelegator delegator(final OCMComponentType.Interface intf) {
+        final AbstractDelegator existing = delegators.get(intf.getSlot());
+        if (existing != null) {
+            return existing;
+        }
+        final AbstractDelegator del;
+        if (intf.isPrivateMethod()) {
+            del = new PrivacyDelegator(obj, kernel);
+        } else {
+            del = new Delegator(obj, kernel);
+        }
+        del.setHigherObject(proxy);
+        del.setComponentProxy(this);
+        del.setComponentName(componentName);
+        if (!delegators.compareAndSet(intf.getSlot(), null, del)) {
+            return delegators.get(intf.getSlot());
+        }
+        synchronized (delegatorList) {
+            delegatorList.add(new OCMDelegatorInfo(del, intf.getName()));
+        }
+        return del;
+    }
+
+    /**
+     * Route a call on the proxy to the delegator of the interface declaring the method, or
+     * straight to the component if the interface has no delegator and needs none.
+     * @param target The proxy called.
+     * @param method The method invoked.
+     * @param argsList The arguments of the call.
+     * @return The result of the call.
+     * @throws Throwable The exception thrown by an interceptor or the method.
+     */
+    @Override
+    public Object invoke(final Object target, final Method method, final Object[] argsList) throws Throwable {
+        final OCMComponentType.Interface intf = type.route(method);
+        if (intf != null) {
+            AbstractDelegator del = delegators.get(intf.getSlot());
+            if (del == null && (recorded || intf.isPrivateMethod() || OCMTracer.getActive() != null)) {
+                del = delegator(intf);
+            }
+            if (del != null) {
+                return del.invoke(target, method, argsList);
+            }
+        }
+        final DispatchTable.Target call = dispatch.lookup(method);
+        final Object[] args = argsList == null ? NO_ARGS : argsList;
+        final Object result = call.invoke(obj, args);
+        if (call.isQueryInterface()) {
+            return answerQueryInterface(result, args);
+        }
+        return result;
+    }
+
+    /**
+     * Replace the reference returned by QueryInterface by the proxy, so that callers never
+     * hold the original component; IConnections is the exception.
+     * @param result The reference returned by the component.
+     * @param argsList The interface requested, as a name or a Java interface type.
+     * @return The proxy, or the result if the interface is not delegated.
+     */
+    Object answerQueryInterface(final Object result, final Object[] argsList) {
+        if (result == null) {
+            return null;
+        }
+        final String intfName;
+        if (argsList[0] instanceof Class) {
+            final String fullName = ((Class) argsList[0]).getName();
+            intfName = fullName.substring(fullName.lastIndexOf('.') + 1, fullName.length());
+        } else {
+            intfName = argsList[0].toString();
+        }
+        if (type.getDelegatedInterface(intfName) != null) {
+            return proxy;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,335 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+package uk.ac.aston.components.opencomj;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import uk.ac.aston.components.security.dataflow.DataProcess;
+import uk.ac.aston.components.security.dataflow.MetaDataFlow;
+
+/**
+ * The resolved reflective meta-information about a component type. Resolving a
+ * type means loading its class, finding its constructor, walking its interface
+ * hierarchy and reading the privacy annotations of each interface. None of this
+ * changes between instances, so the kernel resolves each type once and reuses the
+ * result for every later createInstance of the same type. Instances are immutable,
+ * apart from the cache of the interface each method is routed to.
+ *
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+final class OCMComponentType {
+
+    /**
+     * The component type name i.e. the fully qualified class name.
+     */
+    private final transient String typeName;
+
+    /**
+     * The constructor of the component taking the kernel's IUnknown reference.
+     */
+    private final transient Constructor<?> constructor;
+
+    /**
+     * True if the component type implements the IUnknown interface.
+     */
+    private final transient boolean valid;
+
+    /**
+     * The interfaces of the component type in the order they are found.
+     */
+    private final transient List<Interface> interfaces;
+
+    /**
+     * The delegated interfaces keyed by lower case name.
+     */
+    private final transient Map<String, Interface> delegatedByName;
+
+    /**
+     * The delegated interfaces keyed by Java type.
+     */
+    private final transient Map<Class<?>, Interface> delegatedByType;
+
+    /**
+     * The number of delegated interfaces, i.e. of delegators a component may have.
+     */
+    private final transient int slotCount;
+
+    /**
+     * The interface each Method instance called so far is routed to.
+     */
+    private final transient OCMMethodCache<Interface> routes = new OCMMethodCache<>(this::resolveRoute);
+
+    /**
+     * Creates a new component type description.
+     * @param type The component type name.
+     * @param cons The component constructor.
+     * @param isValid Whether the type implements IUnknown.
+     * @param intfs The interfaces of the type.
+     */
+    private OCMComponentType(final String type, final Constructor<?> cons, final boolean isValid, final List<Interface> intfs) {
+        typeName = type;
+        constructor = cons;
+        valid = isValid;
+        interfaces = Collections.unmodifiableList(intfs);
+        delegatedByName = new HashMap<>();
+        delegatedByType = new IdentityHashMap<>();
+        int slots = 0;
+        for (Interface intf : intfs) {
+            if (!intf.isDelegated()) {
+                continue;
+            }
+            // An interface reached twice through the hierarchy shares one delegator
+            final Interface first = delegatedByName.get(intf.getName().toLowerCase(Locale.ROOT));
+            if (first != null) {
+                intf.slot = first.slot;
+            } else {
+                intf.slot = slots++;
+                delegatedByName.put(intf.getName().toLowerCase(Locale.ROOT), intf);
+            }
+            delegatedByType.putIfAbsent(intf.type, intf);
+        }
+        slotCount = slots;
+    }
+
+    /**
+     * Resolve the meta-information about a component type.
+     * @param componentType The fully qualified class name of the component.
+     * @return The component type description.
+     * @throws InvalidComponentTypeException The class cannot be found or has no valid constructor.
+     */
+    static OCMComponentType resolve(final String componentType) throws InvalidComponentTypeException {
+        final Class<?> componentClass;
+        try {
+            componentClass = Class.forName(componentType);
+        } catch (ClassNotFoundException ex) {
+            throw new InvalidComponentTypeException("Unknown component type" + componentType + "; check class name");
+        }
+
+        final Constructor<?> intArgsConst;
+        try {
+            intArgsConst = componentClass.getConstructor(new Class<?>[] {IUnknown.class});
+        } catch (NoSuchMethodException | SecurityException excep) {
+            throw new InvalidComponentTypeException("Invalid opencom component constructor in "+ componentType + "; check implementation");
+        }
+
+        // Find the interfaces of the component type, we need to make sure this is a valid
+        // OpenCOM component i.e. it implements the IUnknown interface
+        final List<Class<?>> interfaceList = new ArrayList<>();
+        addInterfaces(componentClass, interfaceList);
+        boolean validComponent = false;
+        final List<Interface> intfs = new ArrayList<>(interfaceList.size());
+        for (Class<?> intf : interfaceList) {
+            final Interface entry = new Interface(intf);
+            if (entry.getName().equalsIgnoreCase("IUnknown")) {
+                validComponent = true;
+            }
+            intfs.add(entry);
+        }
+        return new OCMComponentType(componentType, intArgsConst, validComponent, intfs);
+    }
+
+    /**
+     * Fill a list with the interfaces of a type, including the interfaces they extend.
+     * @param component The component type.
+     * @param interfaceList The list of interfaces to be filled.
+     */
+    private static void addInterfaces(final Class<?> component, final List<Class<?>> interfaceList) {
+        final Class<?>[] theInterfaces = component.getInterfaces();
+        for (Class<?> theInterface : theInterfaces) {
+            interfaceList.add(theInterface);
+            addInterfaces(theInterface, interfaceList);
+        }
+    }
+
+    /**
+     * Get the component type name.
+     * @return The fully qualified class name.
+     */
+    String getTypeName() {
+        return typeName;
+    }
+
+    /**
+     * Get the constructor of the component type.
+     * @return The constructor taking the kernel's IUnknown reference.
+     */
+    Constructor<?> getConstructor() {
+        return constructor;
+    }
+
+    /**
+     * Check whether this is a valid OpenCOM component type.
+     * @return true if the type implements IUnknown.
+     */
+    boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Get the interfaces of the component type.
+     * @return An unmodifiable list of the interfaces.
+     */
+    List<Interface> getInterfaces() {
+        return interfaces;
+    }
+
+    /**
+     * Get the number of delegated interfaces.
+     * @return The number of delegators a component of the type may have.
+     */
+    int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * Get a delegated interface by name.
+     * @param intfName The interface name, ignoring case.
+     * @return The interface, null if the type has no such delegated interface.
+     */
+    Interface getDelegatedInterface(final String intfName) {
+        return delegatedByName.get(intfName.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Get the delegated interface a call to a method is routed to: the interface declaring
+     * the method, or IUnknown for the methods of Object.
+     * @param method The method called on a component proxy.
+     * @return The interface, null if the method belongs to an interface that is not delegated.
+     */
+    Interface route(final Method method) {
+        return routes.get(method);
+    }
+
+    /**
+     * Find the interface a Method instance called for the first time is routed to.
+     * @param method The method.
+     * @return The interface, null if it is not delegated.
+     */
+    private Interface resolveRoute(final Method method) {
+        if (method.getDeclaringClass() == Object.class) {
+            return getDelegatedInterface("IUnknown");
+        }
+        return delegatedByType.get(method.getDeclaringClass());
+    }
+
+    /**
+     * The resolved meta-information about one interface of a component type.
+     */
+    static final class Interface {
+
+        /**
+         * The short interface name, as recorded against delegators.
+         */
+        private final transient String name;
+
+        /**
+         * The interface type.
+         */
+        private final transient Class<?> type;
+
+        /**
+         * The index of the delegator of the interface among those of a component; -1 if
+         * the interface is not delegated. Set once when the component type is built.
+         */
+        private transient int slot = -1;
+
+        /**
+         * Whether a delegator is attached to the interface.
+         */
+        private final transient boolean delegated;
+
+        /**
+         * Whether any method of the interface has private parameters.
+         */
+        private final transient boolean privateMethod;
+
+        /**
+         * The data process of a privacy function interface, null otherwise.
+         */
+        private final transient DataProcess process;
+
+        /**
+         * Creates a new interface description.
+         * @param intf The interface type.
+         */
+        Interface(final Class<?> intf) {
+            final String fullName = intf.getName();
+            name = fullName.substring(fullName.lastIndexOf('.') + 1, fullName.length());
+            type = intf;
+            // do not attach delegators to standard OpenCOM interfaces
+            delegated = !name.equalsIgnoreCase(OpenComConstants.CONNECTINTERFACE);
+            privateMethod = MetaDataFlow.isPrivateMethod(intf);
+            process = MetaDataFlow.isPrivateInterface(intf) ? MetaDataFlow.getProcessFromInterface(intf) : null;
+        }
+
+        /**
+         * Get the short interface name.
+         * @return The interface name without its package.
+         */
+        String getName() {
+            return name;
+        }
+
+        /**
+         * Get the index of the delegator of the interface among those of a component.
+         * @return The slot, -1 if the interface is not delegated.
+         */
+        int getSlot() {
+            return slot;
+        }
+
+        /**
+         * Check whether a delegator is attached to this interface.
+         * @return true if the interface is delegated.
+         */
+        boolean isDelegated() {
+            return delegated;
+        }
+
+        /**
+         * Check whether the interface has private parameters.
+         * @return true if a privacy delegator is needed.
+         */
+        boolean isPrivateMethod() {
+            return privateMethod;
+        }
+
+        /**
+         * Get a new data process for a privacy function interface.
+         * @return A new data process element, null if the interface is not a privacy function.
+         */
+        DataProcess newDataProcess() {
+            if (process == null) {
+                return null;
+            }
+            return new DataProcess(process.getProcessName(), process.getComponent());
+        }
+    }
+}
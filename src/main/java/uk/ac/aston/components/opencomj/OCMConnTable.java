@@ -0,0 +1,280 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+package uk.ac.aston.components.opencomj;
+
+/**
+ * The kernel's table of live connections, mapping each unique connection id onto
+ * the immutable meta-information about that connection. The table is an open
+ * addressing hash map on primitive long keys so that lookups neither box the id
+ * nor allocate. It is split into independently locked segments so that threads
+ * connecting and disconnecting concurrently rarely contend.
+ *
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+final class OCMConnTable {
+
+    /**
+     * The number of independently locked segments; always a power of two.
+     */
+    private static final int SEGMENTS = 32;
+
+    /**
+     * The initial number of slots in each segment; always a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Marker for an empty slot. Connection id 0 is stored separately.
+     */
+    private static final long EMPTY = 0L;
+
+    /**
+     * The segments of the table.
+     */
+    private final transient Segment[] segments;
+
+    /**
+     * Creates a new empty connection table.
+     */
+    OCMConnTable() {
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Get the information about a connection.
+     * @param connID The unique connection id.
+     * @return The connection information, null if there is no such connection.
+     */
+    OCMConnInfo get(final long connID) {
+        final int hash = hash(connID);
+        return segmentFor(hash).get(connID, hash);
+    }
+
+    /**
+     * Store the information about a connection.
+     * @param connID The unique connection id.
+     * @param info The connection information.
+     */
+    void put(final long connID, final OCMConnInfo info) {
+        final int hash = hash(connID);
+        segmentFor(hash).put(connID, hash, info);
+    }
+
+    /**
+     * Remove the information about a connection.
+     * @param connID The unique connection id.
+     * @return The removed connection information, null if there was no such connection.
+     */
+    OCMConnInfo remove(final long connID) {
+        final int hash = hash(connID);
+        return segmentFor(hash).remove(connID, hash);
+    }
+
+    /**
+     * Select the segment holding a hash value; the high bits choose the segment
+     * and the low bits the slot within it.
+     * @param hash The mixed hash of the connection id.
+     * @return The segment.
+     */
+    private Segment segmentFor(final int hash) {
+        return segments[(hash >>> 27) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Spread the bits of a connection id; ids are allocated sequentially.
+     * @param connID The connection id.
+     * @return The mixed hash value.
+     */
+    private static int hash(final long connID) {
+        final long mixed = connID * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+
+    /**
+     * One independently locked segment of the connection table.
+     */
+    private static final class Segment {
+
+        /**
+         * The connection id of each slot.
+         */
+        private transient long[] keys;
+
+        /**
+         * The connection information of each slot.
+         */
+        private transient OCMConnInfo[] values;
+
+        /**
+         * The mixed hash of the key in each slot.
+         */
+        private transient int[] hashes;
+
+        /**
+         * The connection information stored against id 0, if any.
+         */
+        private transient OCMConnInfo zeroValue;
+
+        /**
+         * The number of connections held in the slots.
+         */
+        private transient int size;
+
+        /**
+         * Creates a new empty segment.
+         */
+        Segment() {
+            keys = new long[INITIAL_CAPACITY];
+            values = new OCMConnInfo[INITIAL_CAPACITY];
+            hashes = new int[INITIAL_CAPACITY];
+        }
+
+        /**
+         * Get the information about a connection.
+         * @param connID The unique connection id.
+         * @param hash The mixed hash of the id.
+         * @return The connection information, null if there is no such connection.
+         */
+        synchronized OCMConnInfo get(final long connID, final int hash) {
+            if (connID == EMPTY) {
+                return zeroValue;
+            }
+            final int mask = keys.length - 1;
+            int slot = hash & mask;
+            while (keys[slot] != EMPTY) {
+                if (keys[slot] == connID) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        /**
+         * Store the information about a connection.
+         * @param connID The unique connection id.
+         * @param hash The mixed hash of the id.
+         * @param info The connection information.
+         */
+        synchronized void put(final long connID, final int hash, final OCMConnInfo info) {
+            if (connID == EMPTY) {
+                zeroValue = info;
+                return;
+            }
+            if ((size + 1) * 4 > keys.length * 3) {
+                resize(keys.length * 2);
+            }
+            final int mask = keys.length - 1;
+            int slot = hash & mask;
+            while (keys[slot] != EMPTY) {
+                if (keys[slot] == connID) {
+                    values[slot] = info;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = connID;
+            values[slot] = info;
+            hashes[slot] = hash;
+            size++;
+        }
+
+        /**
+         * Remove the information about a connection.
+         * @param connID The unique connection id.
+         * @param hash The mixed hash of the id.
+         * @return The removed connection information, null if there was no such connection.
+         */
+        synchronized OCMConnInfo remove(final long connID, final int hash) {
+            if (connID == EMPTY) {
+                final OCMConnInfo old = zeroValue;
+                zeroValue = null;
+                return old;
+            }
+            final int mask = keys.length - 1;
+            int slot = hash & mask;
+            while (keys[slot] != EMPTY) {
+                if (keys[slot] == connID) {
+                    final OCMConnInfo old = values[slot];
+                    shiftBack(slot);
+                    size--;
+                    return old;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        /**
+         * Close the gap left by a removed slot by moving back the entries of the
+         * same probe sequence, so that no tombstones are needed.
+         * @param removed The slot that has been emptied.
+         */
+        private void shiftBack(final int removed) {
+            final int mask = keys.length - 1;
+            int gap = removed;
+            int slot = (gap + 1) & mask;
+            while (keys[slot] != EMPTY) {
+                final int home = hashes[slot] & mask;
+                // Move the entry if its home slot does not lie cyclically in (gap, slot]
+                if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                    keys[gap] = keys[slot];
+                    values[gap] = values[slot];
+                    hashes[gap] = hashes[slot];
+                    gap = slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[gap] = EMPTY;
+            values[gap] = null;
+        }
+
+        /**
+         * Rehash the segment into a new number of slots.
+         * @param capacity The new number of slots; a power of two.
+         */
+        private void resize(final int capacity) {
+            final long[] oldKeys = keys;
+            final OCMConnInfo[] oldValues = values;
+            final int[] oldHashes = hashes;
+            keys = new long[capacity];
+            values = new OCMConnInfo[capacity];
+            hashes = new int[capacity];
+            final int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = oldHashes[i] & mask;
+                    while (keys[slot] != EMPTY) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                    hashes[slot] = oldHashes[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+
+package uk.ac.aston.components.opencomj;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcomes of the calls made by a parallel invocation, one per connection of the
+ * receptacle in connection order. A call is either completed, with a result or a failure,
+ * or still pending when the result was decided without it, in which case it was cancelled.
+ * A call that timed out failed with a TimeoutException.
+ * @param <R> The result type of each call.
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class OCMFanOutResult<R> {
+
+    /**
+     * The id of the connection of each call.
+     */
+    private final transient long[] connIDs;
+
+    /**
+     * The result of each call that succeeded.
+     */
+    private final transient Object[] results;
+
+    /**
+     * The failure of each call that failed.
+     */
+    private final transient Throwable[] failures;
+
+    /**
+     * Whether each call has completed.
+     */
+    private final transient boolean[] completed;
+
+    /**
+     * The number of calls that succeeded.
+     */
+    private transient int succeeded;
+
+    /**
+     * The number of calls that failed.
+     */
+    private transient int failed;
+
+    /**
+     * Creates the outcomes of a parallel invocation, with every call pending.
+     * @param connections The id of the connection of each call.
+     */
+    OCMFanOutResult(final long[] connections) {
+        connIDs = connections;
+        results = new Object[connections.length];
+        failures = new Throwable[connections.length];
+        completed = new boolean[connections.length];
+    }
+
+    /**
+     * Record the outcome of a call.
+     * @param index The index of the call.
+     * @param result The result of the call.
+     * @param failure The failure of the call; null if it succeeded.
+     */
+    void complete(final int index, final R result, final Throwable failure) {
+        completed[index] = true;
+        if (failure == null) {
+            results[index] = result;
+            succeeded++;
+        } else {
+            failures[index] = failure;
+            failed++;
+        }
+    }
+
+    /**
+     * Get the number of calls made i.e. the number of connections.
+     * @return The number of calls.
+     */
+    public int getSize() {
+        return connIDs.length;
+    }
+
+    /**
+     * Get the number of calls that have completed.
+     * @return The number of calls that succeeded or failed.
+     */
+    public int getCompleted() {
+        return succeeded + failed;
+    }
+
+    /**
+     * Get the number of calls that succeeded.
+     * @return The number of calls that succeeded.
+     */
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    /**
+     * Get the number of calls that failed, including those that timed out.
+     * @return The number of calls that failed.
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * Get the number of calls that were still running when the result was decided.
+     * @return The number of calls cancelled.
+     */
+    public int getPending() {
+        return connIDs.length - succeeded - failed;
+    }
+
+    /**
+     * Get the id of the connection a call was made on.
+     * @param index The index of the call.
+     * @return The connection id.
+     */
+    public long getConnectionID(final int index) {
+        return connIDs[index];
+    }
+
+    /**
+     * Check whether a call has completed.
+     * @param index The index of the call.
+     * @return true if the call succeeded or failed, false if it is pending.
+     */
+    public boolean isCompleted(final int index) {
+        return completed[index];
+    }
+
+    /**
+     * Get the result of a call.
+     * @param index The index of the call.
+     * @return The result; null if the call failed or is pending.
+     */
+    public R getResult(final int index) {
+        return result(index);
+    }
+
+    /**
+     * Get the result of a call from the array of results.
+     * @param index The index of the call.
+     * @return The result; complete only stores results of type R.
+     */
+    @SuppressWarnings("unchecked")
+    private R result(final int index) {
+        return (R) results[index];
+    }
+
+    /**
+     * Get the failure of a call.
+     * @param index The index of the call.
+     * @return The exception thrown by the call; null if it succeeded or is pending.
+     */
+    public Throwable getFailure(final int index) {
+        return failures[index];
+    }
+
+    /**
+     * Get the results of the calls that succeeded.
+     * @return The results in connection order.
+     */
+    public List<R> getResults() {
+        final List<R> list = new ArrayList<>(succeeded);
+        for (int i = 0; i < results.length; i++) {
+            if (completed[i] && failures[i] == null) {
+                list.add(result(i));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Get the failures of the calls that failed.
+     * @return The exception thrown by each call, keyed by connection id in connection order.
+     */
+    public Map<Long, Throwable> getFailures() {
+        final Map<Long, Throwable> map = new LinkedHashMap<>();
+        for (int i = 0; i < failures.length; i++) {
+            if (failures[i] != null) {
+                map.put(connIDs[i], failures[i]);
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return succeeded + " of " + connIDs.length + " calls succeeded, " + failed + " failed, "
+                + getPending() + " cancelled";
+    }
+}
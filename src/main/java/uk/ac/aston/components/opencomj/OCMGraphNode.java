@@ -57,6 +57,28 @@ public class OCMGraphNode {
         return this.type;
     }
 
+    /**
+     * The position of the component in the kernel's creation order.
+     */
+    private transient long position;
+
+    /**
+     * Getter for the creation order position field.
+     * @return The position of the node in the system graph.
+     */
+    public final long getPosition() {
+        return this.position;
+    }
+
+    /**
+     * Setter for the creation order position field. Only set by the kernel
+     * when the node is placed in the system graph.
+     * @param pos The position of the node in the system graph.
+     */
+    final void setPosition(final long pos) {
+        this.position = pos;
+    }
+
     /**
      * The reference to the physical instance of the component.
      */
@@ -0,0 +1,131 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+package uk.ac.aston.components.opencomj;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The interfaces of a component class, as answered by queryInterface: the interfaces
+ * the class declares and the interfaces they extend. The table of each class is built
+ * once, the first time an instance is queried, and then looked up by interface name or
+ * type without scanning the interfaces again.
+ *
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+final class OCMInterfaceTable {
+
+    /**
+     * The interface table of each component class.
+     */
+    private static final ClassValue<OCMInterfaceTable> TABLES = new ClassValue<OCMInterfaceTable>() {
+        @Override
+        protected OCMInterfaceTable computeValue(final Class<?> type) {
+            return new OCMInterfaceTable(type);
+        }
+    };
+
+    /**
+     * Each interface keyed by its name without the package, both as declared and in lower case.
+     */
+    private final transient Map<String, Class<?>> byName;
+
+    /**
+     * The interfaces of the class, keyed by identity.
+     */
+    private final transient Map<Class<?>, Boolean> byType;
+
+    /**
+     * Creates the interface table of a component class.
+     * @param type The component class.
+     */
+    private OCMInterfaceTable(final Class<?> type) {
+        final Map<String, Class<?>> named = new HashMap<>();
+        final Map<Class<?>, Boolean> typed = new IdentityHashMap<>();
+        addInterfaces(type, named, typed);
+        byName = Collections.unmodifiableMap(named);
+        byType = Collections.unmodifiableMap(typed);
+    }
+
+    /**
+     * Get the interface table of a component class.
+     * @param type The component class.
+     * @return The interface table.
+     */
+    static OCMInterfaceTable forClass(final Class<?> type) {
+        return TABLES.get(type);
+    }
+
+    /**
+     * Find an interface by its name without the package, ignoring case.
+     * @param interfaceName The name of the interface e.g. "IUnknown".
+     * @return The interface type, null if the class does not implement it.
+     */
+    Class<?> getInterface(final String interfaceName) {
+        final Class<?> intf = byName.get(interfaceName);
+        if (intf != null || interfaceName == null) {
+            return intf;
+        }
+        return byName.get(interfaceName.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Check whether the class implements an interface given by its name without the package.
+     * @param interfaceName The name of the interface, ignoring case.
+     * @return true if the interface is in the table.
+     */
+    boolean contains(final String interfaceName) {
+        return getInterface(interfaceName) != null;
+    }
+
+    /**
+     * Check whether the class implements an interface.
+     * @param interfaceType The interface type.
+     * @return true if the interface is in the table.
+     */
+    boolean contains(final Class<?> interfaceType) {
+        return byType.containsKey(interfaceType);
+    }
+
+    /**
+     * Add the interfaces of a type, and those they extend, to the table.
+     * @param type The class or interface.
+     * @param named The interfaces by name.
+     * @param typed The interfaces by type.
+     */
+    private static void addInterfaces(final Class<?> type, final Map<String, Class<?>> named,
+            final Map<Class<?>, Boolean> typed) {
+        for (Class<?> intf : type.getInterfaces()) {
+            if (typed.put(intf, Boolean.TRUE) == null) {
+                final String fullName = intf.getName();
+                final String name = fullName.substring(fullName.lastIndexOf('.') + 1, fullName.length());
+                named.putIfAbsent(name, intf);
+                named.putIfAbsent(name.toLowerCase(Locale.ROOT), intf);
+                addInterfaces(intf, named, typed);
+            }
+        }
+    }
+}
@@ -0,0 +1,364 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+
+package uk.ac.aston.components.opencomj;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram of the calls to one interface method. Latencies are
+ * counted in log-linear buckets in the manner of an HDR histogram: each power of two
+ * is split into eight buckets, so a recorded latency is known to within 12.5% whatever
+ * its magnitude, and latencies up to 2^40 nanoseconds (about 18 minutes) are told apart.
+ * <p>
+ * Every call is counted, but reading the clock twice costs more than the rest of a
+ * delegated call, so only one call in a sampling interval of each thread stripe is timed;
+ * the percentiles are those of the calls timed. An interval of 1 times every call.
+ * <p>
+ * The counters are striped by thread so that concurrent callers mostly increment counters
+ * of their own; counting a call is a single atomic increment, with no lock. Every thread
+ * shares the first stripe until two count a call at the same moment, and only then does
+ * the thread that lost get a stripe of its own, so a method that is never called
+ * concurrently holds a single stripe. Reading the histogram sums the stripes, so a
+ * snapshot taken while calls are recorded may miss the calls in progress.
+ *
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class OCMLatencyHistogram {
+
+    /**
+     * The number of bits of a latency kept below its highest bit.
+     */
+    private static final int SUB_BITS = 3;
+
+    /**
+     * The number of buckets per power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /**
+     * The highest power of two told apart; longer latencies share the last bucket.
+     */
+    private static final int MAX_EXPONENT = 40;
+
+    /**
+     * The number of buckets of a stripe.
+     */
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    /**
+     * The most stripes of a histogram, however many processors there are.
+     */
+    private static final int MAX_STRIPES = 16;
+
+    /**
+     * The number of stripes a histogram may grow to, the smallest power of two not below
+     * the number of processors.
+     */
+    private static final int STRIPES = Math.min(MAX_STRIPES,
+            Integer.highestOneBit((Runtime.getRuntime().availableProcessors() << 1) - 1));
+
+    /**
+     * The index of the call count of a stripe, after its bucket counts.
+     */
+    private static final int CALLS = BUCKETS;
+
+    /**
+     * The name of the method recorded.
+     */
+    private final transient String methodName;
+
+    /**
+     * The sampling interval less one; the interval is a power of two.
+     */
+    private final transient long sampleMask;
+
+    /**
+     * The bucket counts of the calls timed by each stripe, followed by its call count; null
+     * for a stripe not yet needed. The first stripe is always present.
+     */
+    private final transient AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<>(STRIPES);
+
+    /**
+     * The number of calls that threw an exception.
+     */
+    private final transient LongAdder errors = new LongAdder();
+
+    /**
+     * Creates a new, empty histogram.
+     * @param name The name of the method recorded.
+     * @param sampleInterval One call in this many is timed; rounded up to a power of two.
+     */
+    public OCMLatencyHistogram(final String name, final int sampleInterval) {
+        if (sampleInterval < 1) {
+            throw new IllegalArgumentException("Invalid sampling interval");
+        }
+        methodName = name;
+        sampleMask = Integer.highestOneBit((sampleInterval << 1) - 1) - 1;
+        stripes.set(0, new AtomicLongArray(BUCKETS + 1));
+    }
+
+    /**
+     * Get the name of the method recorded.
+     * @return The method name.
+     */
+    public String getMethodName() {
+        return methodName;
+    }
+
+    /**
+     * Get the sampling interval.
+     * @return One call in this many is timed.
+     */
+    public long getSampleInterval() {
+        return sampleMask + 1;
+    }
+
+    /**
+     * Count a call about to be made.
+     * @return true if the call is to be timed and its latency recorded.
+     */
+    public boolean count() {
+        final int index = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        AtomicLongArray stripe = stripes.get(index);
+        if (stripe == null) {
+            stripe = stripes.get(0);
+            final long seen = stripe.get(CALLS);
+            if (stripe.compareAndSet(CALLS, seen, seen + 1)) {
+                return (seen & sampleMask) == 0;
+            }
+            // Another thread counted a call at the same moment, so give this one its own stripe
+            stripes.compareAndSet(index, null, new AtomicLongArray(BUCKETS + 1));
+            stripe = stripes.get(index);
+        }
+        return (stripe.getAndIncrement(CALLS) & sampleMask) == 0;
+    }
+
+    /**
+     * Record the latency of a call that was timed.
+     * @param nanos The latency of the call in nanoseconds.
+     */
+    public void record(final long nanos) {
+        final AtomicLongArray stripe = stripes.get((int) Thread.currentThread().getId() & (STRIPES - 1));
+        (stripe != null ? stripe : stripes.get(0)).getAndIncrement(bucket(nanos));
+    }
+
+    /**
+     * Count a call that threw an exception.
+     */
+    public void error() {
+        errors.increment();
+    }
+
+    /**
+     * Take a snapshot of the histogram.
+     * @return The calls recorded so far.
+     */
+    public Snapshot snapshot() {
+        final long[] sums = new long[BUCKETS];
+        long total = 0;
+        for (int index = 0; index < STRIPES; index++) {
+            final AtomicLongArray stripe = stripes.get(index);
+            if (stripe != null) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    sums[i] += stripe.get(i);
+                }
+                total += stripe.get(CALLS);
+            }
+        }
+        return new Snapshot(sums, total, errors.sum());
+    }
+
+    /**
+     * Get the bucket of a latency.
+     * @param nanos The latency in nanoseconds.
+     * @return The bucket index.
+     */
+    static int bucket(final long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return nanos < 0 ? 0 : (int) nanos;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        final int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Get the lowest latency counted in a bucket.
+     * @param bucket The bucket index.
+     * @return The latency in nanoseconds.
+     */
+    static long lowest(final int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    }
+
+    /**
+     * Get the highest latency counted in a bucket.
+     * @param bucket The bucket index.
+     * @return The latency in nanoseconds.
+     */
+    static long highest(final int bucket) {
+        return lowest(bucket + 1) - 1;
+    }
+
+    /**
+     * The calls recorded by a histogram up to some point in time.
+     */
+    public static final class Snapshot {
+
+        /**
+         * The number of calls timed in each bucket.
+         */
+        private final transient long[] buckets;
+
+        /**
+         * The number of calls timed.
+         */
+        private final transient long timed;
+
+        /**
+         * The number of calls made.
+         */
+        private final transient long count;
+
+        /**
+         * The number of calls that threw an exception.
+         */
+        private final transient long errors;
+
+        /**
+         * Creates a new snapshot.
+         * @param bucketCounts The number of calls timed in each bucket.
+         * @param callCount The number of calls made.
+         * @param errorCount The number of calls that threw an exception.
+         */
+        Snapshot(final long[] bucketCounts, final long callCount, final long errorCount) {
+            long total = 0;
+            for (long bucketCount : bucketCounts) {
+                total += bucketCount;
+            }
+            buckets = bucketCounts;
+            timed = total;
+            count = callCount;
+            errors = errorCount;
+        }
+
+        /**
+         * Combine this snapshot with another, e.g. to total the methods of an interface.
+         * @param other The other snapshot.
+         * @return A snapshot of the calls of both.
+         */
+        public Snapshot merge(final Snapshot other) {
+            final long[] sums = buckets.clone();
+            for (int i = 0; i < sums.length; i++) {
+                sums[i] += other.buckets[i];
+            }
+            return new Snapshot(sums, count + other.count, errors + other.errors);
+        }
+
+        /**
+         * Get the number of calls made.
+         * @return The call count.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Get the number of calls that threw an exception.
+         * @return The error count.
+         */
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * Get the number of calls timed, from which the latencies are computed.
+         * @return The sample count.
+         */
+        public long getSampled() {
+            return timed;
+        }
+
+        /**
+         * Get a percentile of the latencies, e.g. 99 for the latency that 99% of the calls
+         * did not exceed. The value is the highest latency of the bucket it falls in.
+         * @param percentile The percentile, between 0 and 100.
+         * @return The latency in nanoseconds, 0 if no calls were timed.
+         */
+        public long getPercentile(final double percentile) {
+            if (timed == 0) {
+                return 0;
+            }
+            final double bounded = Math.min(100.0, Math.max(0.0, percentile));
+            final long rank = Math.max(1, (long) Math.ceil(bounded / 100.0 * timed));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return highest(i);
+                }
+            }
+            return highest(buckets.length - 1);
+        }
+
+        /**
+         * Get the mean latency, taking each call at the middle of its bucket.
+         * @return The latency in nanoseconds, 0 if no calls were timed.
+         */
+        public double getMean() {
+            if (timed == 0) {
+                return 0;
+            }
+            double total = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                if (buckets[i] != 0) {
+                    total += buckets[i] * ((lowest(i) + highest(i)) / 2.0);
+                }
+            }
+            return total / timed;
+        }
+
+        /**
+         * Get the highest latency of the calls timed, to within its bucket.
+         * @return The latency in nanoseconds, 0 if no calls were timed.
+         */
+        public long getMax() {
+            for (int i = buckets.length - 1; i >= 0; i--) {
+                if (buckets[i] != 0) {
+                    return highest(i);
+                }
+            }
+            return 0;
+        }
+    }
+}
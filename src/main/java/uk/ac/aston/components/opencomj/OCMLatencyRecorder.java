@@ -0,0 +1,221 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+
+package uk.ac.aston.components.opencomj;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The call statistics of a delegator: a latency histogram, call count and error count
+ * for each operation of the interface. Recording is enabled per delegator through
+ * IDelegator.addLatencyRecorder, or for every delegator created by setting the
+ * opencomj.latency system property to true. Every call is counted; one call in the
+ * sampling interval, 16 unless set by the opencomj.latency.sample system property, is
+ * timed for the latency histogram.
+ * <p>
+ * The statistics are read as attributes of the delegator, or of the interface through
+ * IMetaInterface, named latency.[method.]statistic where the statistic is one of:
+ * <ul>
+ * <li>calls - the number of calls (long).</li>
+ * <li>errors - the number of calls that threw an exception (long).</li>
+ * <li>sampled - the number of calls timed (long).</li>
+ * <li>mean - the mean latency in nanoseconds (double).</li>
+ * <li>max - the highest latency in nanoseconds (long).</li>
+ * <li>pN - a percentile of the latency in nanoseconds, the digits read after a decimal
+ * point so that p50 is the median, p99 the 99th and p999 the 99.9th percentile (long).</li>
+ * </ul>
+ * Without a method name the statistic covers every operation of the interface, e.g.
+ * latency.p99; with one it covers that operation only, e.g. latency.add.p99.
+ *
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class OCMLatencyRecorder {
+
+    /**
+     * The system property enabling recording on every delegator created.
+     */
+    public static final String ENABLED_PROPERTY = "opencomj.latency";
+
+    /**
+     * The prefix of the names of the attributes answered by the recorder.
+     */
+    public static final String ATTRIBUTE_PREFIX = "latency.";
+
+    /**
+     * The system property setting the default sampling interval.
+     */
+    public static final String SAMPLE_PROPERTY = "opencomj.latency.sample";
+
+    /**
+     * The default sampling interval.
+     */
+    public static final int DEFAULT_SAMPLE_INTERVAL = 16;
+
+    /**
+     * One call in this many is timed.
+     */
+    private final transient int sampleInterval;
+
+    /**
+     * The histogram of each Method instance called so far.
+     */
+    private final transient OCMMethodCache<OCMLatencyHistogram> resolved = new OCMMethodCache<>(this::resolve);
+
+    /**
+     * The histogram of each operation, keyed by name in the order first called; overloaded
+     * methods share a histogram. Only the resolver of the method cache adds to it, replacing
+     * the map so that statistics can be read without locking.
+     */
+    private transient volatile Map<String, OCMLatencyHistogram> histograms = new LinkedHashMap<>();
+
+    /**
+     * Creates a new recorder with the sampling interval of the opencomj.latency.sample
+     * system property.
+     */
+    public OCMLatencyRecorder() {
+        this(Integer.getInteger(SAMPLE_PROPERTY, DEFAULT_SAMPLE_INTERVAL));
+    }
+
+    /**
+     * Creates a new recorder.
+     * @param interval One call in this many is timed; 1 to time every call.
+     */
+    public OCMLatencyRecorder(final int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Invalid sampling interval");
+        }
+        sampleInterval = interval;
+    }
+
+    /**
+     * Check whether the opencomj.latency system property enables recording.
+     * @return true to attach a recorder to every delegator created.
+     */
+    static boolean isEnabledByDefault() {
+        return Boolean.getBoolean(ENABLED_PROPERTY);
+    }
+
+    /**
+     * Get the histogram a call to a method is recorded in.
+     * @param method The interface method.
+     * @return The histogram of the operation.
+     */
+    OCMLatencyHistogram histogram(final Method method) {
+        return resolved.get(method);
+    }
+
+    /**
+     * Find the histogram of a Method instance called for the first time, creating the
+     * histogram of its operation if needed.
+     * @param method The interface method.
+     * @return The histogram of the operation.
+     */
+    private OCMLatencyHistogram resolve(final Method method) {
+        OCMLatencyHistogram histogram = histograms.get(method.getName());
+        if (histogram == null) {
+            histogram = new OCMLatencyHistogram(method.getName(), sampleInterval);
+            final Map<String, OCMLatencyHistogram> named = new LinkedHashMap<>(histograms);
+            named.put(method.getName(), histogram);
+            histograms = named;
+        }
+        return histogram;
+    }
+
+    /**
+     * Get the names of the operations called so far.
+     * @return The method names, in the order first called.
+     */
+    public List<String> getMethodNames() {
+        return new ArrayList<>(histograms.keySet());
+    }
+
+    /**
+     * Get the histogram of an operation.
+     * @param methodName The method name.
+     * @return The histogram, null if the operation has not been called.
+     */
+    public OCMLatencyHistogram getHistogram(final String methodName) {
+        return histograms.get(methodName);
+    }
+
+    /**
+     * Take a snapshot of the calls to every operation of the interface.
+     * @return The calls recorded so far.
+     */
+    public OCMLatencyHistogram.Snapshot snapshot() {
+        OCMLatencyHistogram.Snapshot total = new OCMLatencyHistogram.Snapshot(new long[OCMLatencyHistogram.BUCKETS], 0, 0);
+        for (OCMLatencyHistogram histogram : histograms.values()) {
+            total = total.merge(histogram.snapshot());
+        }
+        return total;
+    }
+
+    /**
+     * Read a statistic as a typed attribute.
+     * @param name The attribute name, latency.[method.]statistic.
+     * @return The statistic, null if the name is not a statistic of this recorder.
+     */
+    public TypedAttribute getAttribute(final String name) {
+        if (!name.startsWith(ATTRIBUTE_PREFIX)) {
+            return null;
+        }
+        final int dot = name.lastIndexOf('.');
+        final String statistic = name.substring(dot + 1);
+        final OCMLatencyHistogram.Snapshot snapshot;
+        if (dot < ATTRIBUTE_PREFIX.length()) {
+            snapshot = snapshot();
+        } else {
+            final OCMLatencyHistogram histogram = histograms.get(name.substring(ATTRIBUTE_PREFIX.length(), dot));
+            if (histogram == null) {
+                return null;
+            }
+            snapshot = histogram.snapshot();
+        }
+        switch (statistic) {
+            case "calls":
+                return new TypedAttribute("long", snapshot.getCount());
+            case "errors":
+                return new TypedAttribute("long", snapshot.getErrors());
+            case "sampled":
+                return new TypedAttribute("long", snapshot.getSampled());
+            case "mean":
+                return new TypedAttribute("double", snapshot.getMean());
+            case "max":
+                return new TypedAttribute("long", snapshot.getMax());
+            default:
+                if (statistic.length() < 2 || statistic.charAt(0) != 'p') {
+                    return null;
+                }
+                final String digits = statistic.substring(1);
+                if (!digits.chars().allMatch(Character::isDigit)) {
+                    return null;
+                }
+                final double percentile = Double.parseDouble("0." + digits) * 100.0;
+                return new TypedAttribute("long", snapshot.getPercentile(percentile));
+        }
+    }
+}
@@ -0,0 +1,375 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+package uk.ac.aston.components.opencomj;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The memoization cache of a delegator. The results of the memoized methods of the
+ * interface are cached by method and arguments, so that repeated calls with equal
+ * arguments are answered without calling the component. A method is memoized if it
+ * is annotated {@link Idempotent} or matches the method pattern of the cache.
+ * <p>
+ * The cache holds at most a given number of results, evicting the oldest first, and
+ * a result expires after its time to live. The kernel invalidates the cache whenever
+ * the connections of the component, or of any component it depends on, change, so a
+ * result computed before a reconfiguration is never returned after it; a call still
+ * running when the cache is invalidated does not store its result.
+ *
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class OCMMemoCache {
+
+    /**
+     * The number of caches attached to delegators; while it is zero the kernel need not
+     * look for caches to invalidate.
+     */
+    private static final AtomicInteger ACTIVE = new AtomicInteger();
+
+    /**
+     * The methods memoized besides those annotated Idempotent; null for none.
+     */
+    private final transient OCMMethodPattern pattern;
+
+    /**
+     * The maximum number of results held.
+     */
+    private final transient int maxEntries;
+
+    /**
+     * The time to live of a result in nanoseconds; 0 for no expiry.
+     */
+    private final transient long ttlNanos;
+
+    /**
+     * The cached results.
+     */
+    private final transient ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * The cached results in the order they were stored, for eviction.
+     */
+    private final transient ConcurrentLinkedQueue<Entry> order = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The number of results on the eviction queue.
+     */
+    private final transient AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * The generation of the cache; invalidating the cache starts a new generation and
+     * results of older generations are never returned.
+     */
+    private final transient AtomicLong generation = new AtomicLong();
+
+    /**
+     * Whether each method called so far is memoized.
+     */
+    private final transient OCMMethodCache<Boolean> memoized = new OCMMethodCache<>(this::resolve);
+
+    /**
+     * The number of calls answered from the cache.
+     */
+    private final transient LongAdder hits = new LongAdder();
+
+    /**
+     * The number of calls to memoized methods passed to the component.
+     */
+    private final transient LongAdder misses = new LongAdder();
+
+    /**
+     * The number of results evicted to bound the size of the cache.
+     */
+    private final transient LongAdder evictions = new LongAdder();
+
+    /**
+     * The number of times the cache was invalidated.
+     */
+    private final transient LongAdder invalidations = new LongAdder();
+
+    /**
+     * Creates a new memoization cache.
+     * @param methodPattern The methods memoized besides those annotated Idempotent, as for
+     * addPreMethod; null for the annotated methods only.
+     * @param maximum The maximum number of results held.
+     * @param ttlMillis The time to live of a result in milliseconds; 0 for no expiry.
+     */
+    public OCMMemoCache(final String methodPattern, final int maximum, final long ttlMillis) {
+        if (maximum < 1 || ttlMillis < 0) {
+            throw new IllegalArgumentException("Invalid cache size or time to live");
+        }
+        pattern = methodPattern == null ? null : OCMMethodPattern.compile(methodPattern);
+        maxEntries = maximum;
+        ttlNanos = ttlMillis * 1000000L;
+    }
+
+    /**
+     * Check whether any cache is attached to a delegator.
+     * @return true if the kernel must invalidate caches on reconfiguration.
+     */
+    static boolean isActive() {
+        return ACTIVE.get() != 0;
+    }
+
+    /**
+     * Record that the cache was attached to a delegator.
+     */
+    void attached() {
+        ACTIVE.incrementAndGet();
+    }
+
+    /**
+     * Record that the cache was removed from its delegator.
+     */
+    void detached() {
+        ACTIVE.decrementAndGet();
+        invalidate();
+    }
+
+    /**
+     * Check whether calls to a method are memoized.
+     * @param method The interface method.
+     * @return true if the method is annotated Idempotent or matches the method pattern.
+     */
+    boolean isMemoized(final Method method) {
+        return memoized.get(method);
+    }
+
+    /**
+     * Decide whether a method called for the first time is memoized.
+     * @param method The interface method.
+     * @return true if the method is memoized.
+     */
+    private Boolean resolve(final Method method) {
+        return method.isAnnotationPresent(Idempotent.class) || (pattern != null && pattern.matches(method.getName()));
+    }
+
+    /**
+     * Answer a call to a memoized method from the cache, or call the component and cache
+     * the result. Exceptions are not cached.
+     * @param target The dispatch target of the method.
+     * @param component The component instance.
+     * @param method The interface method.
+     * @param args The arguments of the call.
+     * @return The result of the call.
+     * @throws Throwable The exception thrown by the method.
+     */
+    Object invoke(final DispatchTable.Target target, final Object component, final Method method, final Object[] args)
+            throws Throwable {
+        final long current = generation.get();
+        // Copy the arguments; interceptors may change the caller's array afterwards
+        final Key key = new Key(method, args.clone());
+        final Entry cached = entries.get(key);
+        if (cached != null) {
+            if (cached.generation == current && !cached.isExpired()) {
+                hits.increment();
+                return cached.value;
+            }
+            entries.remove(key, cached);
+        }
+        misses.increment();
+        final Object result = target.invoke(component, args);
+        // A reconfiguration during the call makes the result stale
+        if (generation.get() == current) {
+            final Entry entry = new Entry(key, result, current, ttlNanos == 0 ? 0 : System.nanoTime() + ttlNanos);
+            entries.put(key, entry);
+            order.add(entry);
+            if (queued.incrementAndGet() > maxEntries) {
+                evict();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Evict the oldest results until the cache is within its size.
+     */
+    private void evict() {
+        while (queued.get() > maxEntries) {
+            final Entry oldest = order.poll();
+            if (oldest == null) {
+                return;
+            }
+            queued.decrementAndGet();
+            if (entries.remove(oldest.key, oldest)) {
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Discard every cached result. Calls in progress do not store their results.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        entries.clear();
+        // Release the discarded results held by the eviction queue; a result stored
+        // meanwhile may be drained too, and is then simply not cached
+        Entry discarded;
+        while ((discarded = order.poll()) != null) {
+            queued.decrementAndGet();
+            entries.remove(discarded.key, discarded);
+        }
+        invalidations.increment();
+    }
+
+    /**
+     * Get the number of results held.
+     * @return The size of the cache.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get the number of calls answered from the cache.
+     * @return The hit count.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of calls to memoized methods passed to the component.
+     * @return The miss count.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of results evicted to bound the size of the cache.
+     * @return The eviction count.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Get the number of times the cache was invalidated.
+     * @return The invalidation count.
+     */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * The method and arguments of a call.
+     */
+    private static final class Key {
+
+        /**
+         * The interface method.
+         */
+        private final transient Method method;
+
+        /**
+         * The arguments of the call.
+         */
+        private final transient Object[] args;
+
+        /**
+         * The hash code of the call.
+         */
+        private final transient int hash;
+
+        /**
+         * Creates a new key.
+         * @param keyMethod The interface method.
+         * @param keyArgs The arguments of the call, not modified afterwards.
+         */
+        Key(final Method keyMethod, final Object[] keyArgs) {
+            method = keyMethod;
+            args = keyArgs;
+            hash = 31 * keyMethod.hashCode() + Arrays.deepHashCode(keyArgs);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) other;
+            return hash == key.hash && method.equals(key.method) && Arrays.deepEquals(args, key.args);
+        }
+    }
+
+    /**
+     * A cached result.
+     */
+    private static final class Entry {
+
+        /**
+         * The call the result is for.
+         */
+        private final transient Key key;
+
+        /**
+         * The result, which may be null.
+         */
+        private final transient Object value;
+
+        /**
+         * The generation of the cache the result was computed in.
+         */
+        private final transient long generation;
+
+        /**
+         * The time the result expires, as System.nanoTime; 0 for never.
+         */
+        private final transient long expires;
+
+        /**
+         * Creates a new cached result.
+         * @param entryKey The call.
+         * @param result The result.
+         * @param entryGeneration The generation of the cache.
+         * @param expiry The expiry time, 0 for never.
+         */
+        Entry(final Key entryKey, final Object result, final long entryGeneration, final long expiry) {
+            key = entryKey;
+            value = result;
+            generation = entryGeneration;
+            expires = expiry;
+        }
+
+        /**
+         * Check whether the result has expired.
+         * @return true once the time to live has passed.
+         */
+        boolean isExpired() {
+            return expires != 0 && System.nanoTime() - expires > 0;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+
+package uk.ac.aston.components.opencomj;
+
+import java.lang.reflect.Method;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A cache of a value per interface method, used on the call path of delegators and
+ * proxies. A proxy class passes the same Method instance on every call to an operation,
+ * so the cache is keyed by identity rather than by comparing method signatures. Its map
+ * is copied when a method is first seen and never changed once published, so a lookup
+ * is a single volatile read with no lock; only the first call of each method pays for
+ * resolving its value.
+ * <p>
+ * Entries are never removed, so a cache should belong to an object whose lifetime
+ * covers the classes of its methods, e.g. a component class or a delegator.
+ * @param <V> The type of the cached values.
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class OCMMethodCache<V> {
+
+    /**
+     * The value cached for a method whose resolved value is null.
+     */
+    private static final Object NULL = new Object();
+
+    /**
+     * Resolves the value of a method seen for the first time.
+     */
+    private final transient Function<Method, ? extends V> resolver;
+
+    /**
+     * The value of each Method instance seen so far, NULL for a null value.
+     */
+    private transient volatile Map<Method, Object> values = new IdentityHashMap<>();
+
+    /**
+     * Creates a new empty cache.
+     * @param methodResolver Resolves the value of a method the first time it is looked up;
+     * called under the lock of the cache, so at most once per Method instance.
+     */
+    public OCMMethodCache(final Function<Method, ? extends V> methodResolver) {
+        resolver = methodResolver;
+    }
+
+    /**
+     * Get the value of a method, resolving it if the method has not been seen before.
+     * @param method The method.
+     * @return The value, as resolved.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(final Method method) {
+        Object value = values.get(method);
+        if (value == null) {
+            value = resolve(method);
+        }
+        return value == NULL ? null : (V) value;
+    }
+
+    /**
+     * Get the number of methods seen so far.
+     * @return The number of cached values.
+     */
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * Resolve the value of a Method instance not seen before and publish it.
+     * @param method The method.
+     * @return The value, NULL for a null value.
+     */
+    private synchronized Object resolve(final Method method) {
+        Object value = values.get(method);
+        if (value == null) {
+            final V resolved = resolver.apply(method);
+            value = resolved == null ? NULL : resolved;
+            final Map<Method, Object> updated = new IdentityHashMap<>(values);
+            updated.put(method, value);
+            values = updated;
+        }
+        return value;
+    }
+}
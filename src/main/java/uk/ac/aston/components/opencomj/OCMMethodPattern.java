@@ -0,0 +1,136 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+package uk.ac.aston.components.opencomj;
+
+import java.util.Locale;
+
+/**
+ * The methods of an interface that an interceptor is bound to. A pattern is a comma
+ * separated list of method names, matched ignoring case, in which * matches any run of
+ * characters; e.g. "add", "get*,set*" or "*" for every method. Patterns are immutable.
+ *
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+final class OCMMethodPattern {
+
+    /**
+     * The pattern matching every method.
+     */
+    static final OCMMethodPattern ALL = new OCMMethodPattern("*", new String[] {"*"});
+
+    /**
+     * The pattern as given.
+     */
+    private final transient String pattern;
+
+    /**
+     * The lower case alternatives of the pattern.
+     */
+    private final transient String[] alternatives;
+
+    /**
+     * Creates a new method pattern.
+     * @param source The pattern as given.
+     * @param alts The lower case alternatives.
+     */
+    private OCMMethodPattern(final String source, final String[] alts) {
+        pattern = source;
+        alternatives = alts;
+    }
+
+    /**
+     * Compile a method pattern.
+     * @param source The pattern; null or "*" for every method.
+     * @return The compiled pattern.
+     */
+    static OCMMethodPattern compile(final String source) {
+        if (source == null || source.trim().equals("*")) {
+            return ALL;
+        }
+        final String[] alts = source.split(",");
+        for (int i = 0; i < alts.length; i++) {
+            alts[i] = alts[i].trim().toLowerCase(Locale.ROOT);
+            if (alts[i].equals("*")) {
+                return ALL;
+            }
+        }
+        return new OCMMethodPattern(source, alts);
+    }
+
+    /**
+     * Check whether this pattern matches every method.
+     * @return true for the pattern "*".
+     */
+    boolean matchesAll() {
+        return this == ALL;
+    }
+
+    /**
+     * Check whether a method is matched by this pattern.
+     * @param methodName The method name.
+     * @return true if any alternative of the pattern matches the name.
+     */
+    boolean matches(final String methodName) {
+        if (this == ALL) {
+            return true;
+        }
+        final String name = methodName.toLowerCase(Locale.ROOT);
+        for (String alternative : alternatives) {
+            if (glob(alternative, name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Match a name against one alternative, in which * matches any run of characters.
+     * @param glob The alternative.
+     * @param name The lower case method name.
+     * @return true if the name matches.
+     */
+    private static boolean glob(final String glob, final String name) {
+        final String[] parts = glob.split("\\*", -1);
+        if (parts.length == 1) {
+            return glob.equals(name);
+        }
+        if (!name.startsWith(parts[0])) {
+            return false;
+        }
+        int from = parts[0].length();
+        for (int i = 1; i < parts.length - 1; i++) {
+            final int at = name.indexOf(parts[i], from);
+            if (at < 0) {
+                return false;
+            }
+            from = at + parts[i].length();
+        }
+        final String last = parts[parts.length - 1];
+        return name.length() - from >= last.length() && name.endsWith(last);
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
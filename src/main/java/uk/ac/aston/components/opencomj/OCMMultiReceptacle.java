@@ -19,40 +19,138 @@
 //
 /////////////////////////////////////////////////////////////////////////
 
+
 package uk.ac.aston.components.opencomj;
 
-import java.util.ArrayList;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 /**
  * OpenCOM defines a Multi Receptacle to contain multiple
  * pointers to interface implementations of the same type. Hence, it can
  * be used to invoke selected connected and/or parallel connections.
+ * <p>
+ * The receptacle also balances calls across its connections, so that replicas of a
+ * stateless component can be bound to it and each call made on one of them, chosen by
+ * one of the strategies:
+ * <ul>
+ * <li>roundrobin (the default) - each connection in turn.</li>
+ * <li>random - a connection chosen at random.</li>
+ * <li>leastoutstanding - the connection with the fewest calls in progress.</li>
+ * <li>poweroftwo - the one of two connections chosen at random with the fewer calls in
+ * progress, close to leastoutstanding without looking at every connection.</li>
+ * </ul>
+ * The default is set by the opencomj.balance system property. Calls in progress are
+ * counted per connection without locks, and each call is balanced across the
+ * connections at the time it is made, so connecting or disconnecting a replica
+ * rebalances the calls that follow.
  * @param <InterfaceType> The receptacle type.
  * @author  Paul Grace
- * @version 1.2.3 (Untested)
+ * @version 1.2.3
  *
  */
 public class OCMMultiReceptacle<InterfaceType> implements IReceptacle {
 
-    /** List of interface pointers this receptacle is connected to. */
-    private final transient List<Object> interfaceList;
+    /**
+     * The system property naming the default balancing strategy.
+     */
+    public static final String BALANCE_PROPERTY = "opencomj.balance";
+
+    /**
+     * The round robin balancing strategy.
+     */
+    public static final String ROUND_ROBIN = "roundrobin";
+
+    /**
+     * The random balancing strategy.
+     */
+    public static final String RANDOM = "random";
 
-    /** List of connIDS for each connection of this receptacle. */
-    private final transient  List<Long> connIDS;
+    /**
+     * The least outstanding requests balancing strategy.
+     */
+    public static final String LEAST_OUTSTANDING = "leastoutstanding";
 
-    /** List of components that this receptacle is connected to. */
-    private final transient  List<IUnknown> components;
+    /**
+     * The power of two choices balancing strategy.
+     */
+    public static final String POWER_OF_TWO = "poweroftwo";
+
+    /**
+     * The handler of the interface of the receptacle, balancing each call.
+     */
+    final class BalancingProxy implements java.lang.reflect.InvocationHandler {
+
+        /**
+         * The invoke operation overridden by reflection when invoking the
+         * proxy object.
+         * @param proxy The proxy object.
+         * @param meth The method to call.
+         * @param args The method arguments.
+         * @return The result of the call.
+         * @throws Throwable The exception thrown by the call.
+         */
+        @Override
+        public Object invoke(final Object proxy, final Method meth, final Object[] args) throws Throwable {
+            if (meth.getDeclaringClass() == Object.class) {
+                // Answered by the receptacle rather than its connections
+                if (meth.getName().equals("equals")) {
+                    return proxy == args[0];
+                }
+                return meth.invoke(OCMMultiReceptacle.this, args);
+            }
+            final OCMRecpConnection conn = select();
+            if (conn == null) {
+                throw new InvocationException("Interface not connected");
+            }
+            conn.enter();
+            try {
+                return meth.invoke(conn.getInterface(), args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getTargetException();
+            } finally {
+                conn.exit();
+            }
+        }
+    }
+
+    /**
+     * The connections of this receptacle.
+     */
+    private transient volatile OCMRecpConnection[] connections;
 
     /** Interface type (IID in traditional OpenCOM) of this receptacle. */
     private final transient String iidType;
 
     /**
-     * The number of connection on the receptacle.
+     * The balancing strategy.
+     */
+    private transient volatile String strategy;
+
+    /**
+     * The number of calls balanced round robin.
+     */
+    private final transient AtomicInteger turn = new AtomicInteger();
+
+    /**
+     * The reference to the interface type balancing each call; created on the first
+     * connection.
+     */
+    private transient volatile InterfaceType mpIntf;
+
+    /**
+     * The executor running asynchronous calls; null for the default executor.
      */
-    private transient int noConnections;
+    private transient volatile Executor executor;
 
     /**
      * The set of meta data attached to the receptacle.
@@ -65,12 +163,192 @@ public class OCMMultiReceptacle<InterfaceType> implements IReceptacle {
      * @param interfaceType The type of interface to initialse this receptacle to
      */
     public OCMMultiReceptacle(final String interfaceType) {
-        interfaceList = new ArrayList();
-        connIDS = new ArrayList();
-        components = new ArrayList();
-        noConnections = 0;
+        connections = OCMRecpConnection.NONE;
         iidType = interfaceType;
         metaData = new HashMap();
+        setStrategy(System.getProperty(BALANCE_PROPERTY, ROUND_ROBIN));
+    }
+
+    /**
+     * Set the strategy balancing calls across the connections.
+     * @param balance roundrobin, random, leastoutstanding or poweroftwo.
+     */
+    public final void setStrategy(final String balance) {
+        if (ROUND_ROBIN.equalsIgnoreCase(balance)) {
+            strategy = ROUND_ROBIN;
+        } else if (RANDOM.equalsIgnoreCase(balance)) {
+            strategy = RANDOM;
+        } else if (LEAST_OUTSTANDING.equalsIgnoreCase(balance)) {
+            strategy = LEAST_OUTSTANDING;
+        } else if (POWER_OF_TWO.equalsIgnoreCase(balance)) {
+            strategy = POWER_OF_TWO;
+        } else {
+            throw new IllegalArgumentException("Unknown balancing strategy " + balance);
+        }
+    }
+
+    /**
+     * Get the strategy balancing calls across the connections.
+     * @return roundrobin, random, leastoutstanding or poweroftwo.
+     */
+    public final String getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Get the interface reference of the receptacle. Each method called on it is called
+     * on one of the connections, chosen by the balancing strategy.
+     * @return The interface reference; null until the receptacle is first connected.
+     */
+    public final InterfaceType getInterface() {
+        return mpIntf;
+    }
+
+    /**
+     * Get the number of connections of the receptacle.
+     * @return The number of connections.
+     */
+    public final int getConnectionCount() {
+        return connections.length;
+    }
+
+    /**
+     * Get the number of calls in progress on a connection.
+     * @param connID The id of the connection.
+     * @return The number of calls; -1 if there is no such connection.
+     */
+    public final int getOutstanding(final long connID) {
+        for (OCMRecpConnection conn : connections) {
+            if (conn.getConnID() == connID) {
+                return conn.getOutstanding();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Set the executor running the asynchronous calls made through this receptacle.
+     * @param callExecutor The executor; null for the default executor.
+     */
+    public final void setExecutor(final Executor callExecutor) {
+        executor = callExecutor;
+    }
+
+    /**
+     * Get the executor running the asynchronous calls made through this receptacle.
+     * @return The executor; null if the default executor is used.
+     */
+    public final Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Call one of the connected interfaces, chosen by the balancing strategy.
+     * @param <R> The result type.
+     * @param call The call to make on the interface e.g. calc -> calc.add(1, 2).
+     * @return The result of the call.
+     * @throws InvocationException If the receptacle is not connected.
+     */
+    public final <R> R invoke(final Function<InterfaceType, R> call) throws InvocationException {
+        final OCMRecpConnection conn = select();
+        if (conn == null) {
+            throw new InvocationException("Interface not connected");
+        }
+        conn.enter();
+        try {
+            return call.apply(intf(conn));
+        } finally {
+            conn.exit();
+        }
+    }
+
+    /**
+     * Call one of the connected interfaces asynchronously. The call counts as outstanding
+     * on its connection until the future completes.
+     * @param <R> The result type.
+     * @param call The call to make on the interface.
+     * @return The future outcome of the call; it fails with an InvocationException if the
+     * receptacle is not connected.
+     * @see OCMAsyncInvoker
+     */
+    public final <R> CompletableFuture<R> invokeAsync(final Function<InterfaceType, R> call) {
+        final OCMRecpConnection conn = select();
+        if (conn == null) {
+            return OCMAsyncInvoker.invokeAsync(null, call, executor, 0, TimeUnit.NANOSECONDS);
+        }
+        conn.enter();
+        final CompletableFuture<R> future = OCMAsyncInvoker.invokeAsync(intf(conn), call, executor,
+                0, TimeUnit.NANOSECONDS);
+        future.whenComplete((result, failure) -> conn.exit());
+        return future;
+    }
+
+    /**
+     * Get the interface reference of a connection as the receptacle's interface type.
+     * @param conn The connection.
+     * @return The interface reference; connectToRecp only accepts references of the type.
+     */
+    @SuppressWarnings("unchecked")
+    private InterfaceType intf(final OCMRecpConnection conn) {
+        return (InterfaceType) conn.getInterface();
+    }
+
+    /**
+     * Choose the connection to call.
+     * @return The connection; null if the receptacle is not connected.
+     */
+    private OCMRecpConnection select() {
+        final OCMRecpConnection[] current = connections;
+        final int count = current.length;
+        if (count <= 1) {
+            return count == 0 ? null : current[0];
+        }
+        final String balance = strategy;
+        if (balance == ROUND_ROBIN) {
+            return current[(turn.getAndIncrement() & Integer.MAX_VALUE) % count];
+        }
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (balance == RANDOM) {
+            return current[random.nextInt(count)];
+        }
+        if (balance == POWER_OF_TWO) {
+            final OCMRecpConnection first = current[random.nextInt(count)];
+            final int other = random.nextInt(count - 1);
+            OCMRecpConnection second = current[other];
+            if (second == first) {
+                second = current[count - 1];
+            }
+            return second.getOutstanding() < first.getOutstanding() ? second : first;
+        }
+        // Least outstanding, starting at a random connection to spread ties
+        final int start = random.nextInt(count);
+        OCMRecpConnection least = current[start];
+        int fewest = least.getOutstanding();
+        for (int i = 1; i < count && fewest > 0; i++) {
+            final OCMRecpConnection conn = current[(start + i) % count];
+            final int calls = conn.getOutstanding();
+            if (calls < fewest) {
+                least = conn;
+                fewest = calls;
+            }
+        }
+        return least;
+    }
+
+    /**
+     * Create the interface reference of the receptacle from the type of a connected interface.
+     * @param pIntf The connected interface reference.
+     */
+    @SuppressWarnings("unchecked")
+    private void createInterface(final Object pIntf) {
+        for (Class<?> type : pIntf.getClass().getInterfaces()) {
+            if (type.getSimpleName().equalsIgnoreCase(iidType)) {
+                // The proxy implements the receptacle's interface type, the one named iidType
+                mpIntf = (InterfaceType) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+                        new BalancingProxy());
+                return;
+            }
+        }
     }
 
     //! Implementation of IReceptacle interface
@@ -78,16 +356,19 @@ public class OCMMultiReceptacle<InterfaceType> implements IReceptacle {
     //! This method stores the reference to the component hosting the interface
     //!
     @Override
-    public final boolean connectToRecp(final IUnknown pIUnkSink, final String riid, final long provConnID) {
+    public final synchronized boolean connectToRecp(final IUnknown pIUnkSink, final String riid, final long provConnID) {
         // Get the reference to the component hosting the interface
         if (riid.equalsIgnoreCase(iidType)) {
+            final Object pIntf = pIUnkSink.queryInterface(riid);
+            if (pIntf == null) {
+                return false;
+            }
+            if (mpIntf == null) {
+                createInterface(pIntf);
+            }
 
-            // Add the component, reference and id to the receptacles object stores
-            components.add(pIUnkSink);
-            interfaceList.add(pIUnkSink.queryInterface(riid));
-            connIDS.add(provConnID);
-
-            noConnections++;
+            // Add the component, reference and id to the receptacle's connections
+            connections = OCMRecpConnection.add(connections, new OCMRecpConnection(pIUnkSink, pIntf, provConnID));
             return true;
         } else {
             return false;
@@ -98,19 +379,14 @@ public class OCMMultiReceptacle<InterfaceType> implements IReceptacle {
     //! This method destroys the existing connection data
     //!
     @Override
-    public final boolean disconnectFromRecp(final long connID) {
-        // Traverse the receptacle data looking for the required connection ID
-        for (int i = 0; i < noConnections; i++) {
-            if (connIDS.get(i) == connID) {
-                // Found it - now remove all pieces of information about that connection
-                noConnections--;
-                interfaceList.remove(i);
-                connIDS.remove(i);
-                return true;
-            }
-	}
-
-	return false;
+    public final synchronized boolean disconnectFromRecp(final long connID) {
+        // Find the connection and remove all pieces of information about it
+        final OCMRecpConnection[] updated = OCMRecpConnection.remove(connections, connID);
+        if (updated == connections) {
+            return false;
+        }
+        connections = updated;
+        return true;
     }
 
     /**
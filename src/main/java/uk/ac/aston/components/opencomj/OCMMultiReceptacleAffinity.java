@@ -0,0 +1,420 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+
+package uk.ac.aston.components.opencomj;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * OpenCOM defines a Multi Receptacle to contain multiple
+ * pointers to interface implementations of the same type. This receptacle routes
+ * each call by key to one of its connections, so that the shards of a component
+ * partitioned by key, e.g. by customer id, can be bound to one receptacle and every
+ * call for a key reaches the same shard.
+ * <p>
+ * The connections are placed on a consistent hash ring, each at a number of virtual
+ * nodes, and a key is routed to the connection owning the first virtual node at or
+ * after the hash of the key. The virtual nodes of a connection depend only on its
+ * connection id, so connecting a shard only moves to it the keys it now owns, and
+ * disconnecting a shard only moves the keys it owned. Calls made through getInterface
+ * are routed by the parameter marked {@link AffinityKey}, or by the first parameter of
+ * the operation if none is marked.
+ * @param <InterfaceType> The receptacle interface type.
+ * @author  Paul Grace
+ * @version 1.2.3
+ *
+ */
+public class OCMMultiReceptacleAffinity<InterfaceType> implements IReceptacle {
+
+    /**
+     * The default number of virtual nodes of each connection.
+     */
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    /**
+     * The increment between the virtual nodes of a connection.
+     */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * The handler of the interface of the receptacle, routing each call by key.
+     */
+    final class AffinityProxy implements java.lang.reflect.InvocationHandler {
+
+        /**
+         * The invoke operation overridden by reflection when invoking the
+         * proxy object.
+         * @param proxy The proxy object.
+         * @param meth The method to call.
+         * @param args The method arguments.
+         * @return The result of the call.
+         * @throws Throwable The exception thrown by the call.
+         */
+        @Override
+        public Object invoke(final Object proxy, final Method meth, final Object[] args) throws Throwable {
+            if (meth.getDeclaringClass() == Object.class) {
+                // Answered by the receptacle rather than its connections
+                if (meth.getName().equals("equals")) {
+                    return proxy == args[0];
+                }
+                return meth.invoke(OCMMultiReceptacleAffinity.this, args);
+            }
+            final int keyIndex = keyParameter(meth);
+            final OCMRecpConnection conn = ring.locate(keyIndex < 0 ? null : args[keyIndex]);
+            if (conn == null) {
+                throw new InvocationException("Interface not connected");
+            }
+            try {
+                return meth.invoke(conn.getInterface(), args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getTargetException();
+            }
+        }
+    }
+
+    /**
+     * The consistent hash ring of the connections. A ring is rebuilt, never changed, when
+     * a connection is made or removed.
+     */
+    private static final class Ring {
+
+        /**
+         * The empty ring.
+         */
+        static final Ring EMPTY = new Ring(OCMRecpConnection.NONE, new long[0], OCMRecpConnection.NONE);
+
+        /**
+         * The connections on the ring, in connection order.
+         */
+        private final transient OCMRecpConnection[] connections;
+
+        /**
+         * The hash of each virtual node, in increasing order.
+         */
+        private final transient long[] points;
+
+        /**
+         * The connection owning each virtual node.
+         */
+        private final transient OCMRecpConnection[] owners;
+
+        /**
+         * Creates a new ring.
+         * @param members The connections on the ring.
+         * @param nodePoints The hash of each virtual node, in increasing order.
+         * @param nodeOwners The connection owning each virtual node.
+         */
+        private Ring(final OCMRecpConnection[] members, final long[] nodePoints, final OCMRecpConnection[] nodeOwners) {
+            connections = members;
+            points = nodePoints;
+            owners = nodeOwners;
+        }
+
+        /**
+         * Build the ring of a set of connections.
+         * @param members The connections.
+         * @param virtualNodes The number of virtual nodes of each connection.
+         * @return The ring.
+         */
+        static Ring build(final OCMRecpConnection[] members, final int virtualNodes) {
+            final int size = members.length * virtualNodes;
+            final long[] unsorted = new long[size];
+            final Integer[] order = new Integer[size];
+            for (int i = 0; i < members.length; i++) {
+                final long seed = mix(members[i].getConnID());
+                for (int v = 0; v < virtualNodes; v++) {
+                    final int node = i * virtualNodes + v;
+                    unsorted[node] = mix(seed + v * GOLDEN_GAMMA);
+                    order[node] = node;
+                }
+            }
+            // Ties are broken by connection order, so that the ring does not depend on the order of sorting
+            Arrays.sort(order, (left, right) -> {
+                final int compared = Long.compare(unsorted[left], unsorted[right]);
+                return compared != 0 ? compared : Long.compare(members[left / virtualNodes].getConnID(),
+                        members[right / virtualNodes].getConnID());
+            });
+            final long[] points = new long[size];
+            final OCMRecpConnection[] owners = new OCMRecpConnection[size];
+            for (int i = 0; i < size; i++) {
+                points[i] = unsorted[order[i]];
+                owners[i] = members[order[i] / virtualNodes];
+            }
+            return new Ring(members, points, owners);
+        }
+
+        /**
+         * Find the connection a key is routed to.
+         * @param key The key; null is routed like any other key.
+         * @return The connection; null if the ring is empty.
+         */
+        OCMRecpConnection locate(final Object key) {
+            if (points.length == 0) {
+                return null;
+            }
+            int node = Arrays.binarySearch(points, mix(key == null ? 0 : key.hashCode()));
+            if (node < 0) {
+                node = -node - 1;
+            }
+            if (node == points.length) {
+                // Past the last virtual node, back to the first
+                node = 0;
+            }
+            return owners[node];
+        }
+    }
+
+    /**
+     * The interface type of the receptacle.
+     */
+    private final transient Class<InterfaceType> intfType;
+
+    /**
+     * The reference to the interface type, routing each call by key.
+     */
+    private final transient InterfaceType mpIntf;
+
+    /**
+     * The number of virtual nodes of each connection.
+     */
+    private final transient int virtualNodes;
+
+    /**
+     * The ring of the current connections, replaced when a connection is made or removed.
+     */
+    private transient volatile Ring ring;
+
+    /**
+     * The index of the key parameter of each Method instance called so far; -1 for a
+     * method without parameters.
+     */
+    private final transient OCMMethodCache<Integer> keyParameters = new OCMMethodCache<>(
+            OCMMultiReceptacleAffinity::resolveKeyParameter);
+
+    /**
+     * List of meta data attached to receptacle.
+     */
+    private final transient Map<String, TypedAttribute> metaData;
+
+    /**
+     * Constructor creates a new instance of the receptacle with the default number of
+     * virtual nodes. Usually called from within OpenCOM component constructors.
+     * @param interfaceType The type of interface to initialse this receptacle to
+     */
+    public OCMMultiReceptacleAffinity(final Class<InterfaceType> interfaceType) {
+        this(interfaceType, DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * Constructor creates a new instance of the receptacle. More virtual nodes spread the
+     * keys more evenly across the connections, at the cost of a larger ring.
+     * @param interfaceType The type of interface to initialse this receptacle to
+     * @param nodes The number of virtual nodes of each connection.
+     */
+    public OCMMultiReceptacleAffinity(final Class<InterfaceType> interfaceType, final int nodes) {
+        if (nodes < 1) {
+            throw new IllegalArgumentException("A connection needs at least one virtual node");
+        }
+        intfType = interfaceType;
+        virtualNodes = nodes;
+        ring = Ring.EMPTY;
+        metaData = new HashMap<>();
+        mpIntf = interfaceType.cast(Proxy.newProxyInstance(interfaceType.getClassLoader(),
+                new Class<?>[] {interfaceType}, new AffinityProxy()));
+    }
+
+    /**
+     * Get the interface reference of the receptacle. Each method called on it is called
+     * on the connection its key is routed to.
+     * @return The interface reference.
+     */
+    public final InterfaceType getInterface() {
+        return mpIntf;
+    }
+
+    /**
+     * Get the interface reference of the connection a key is routed to.
+     * @param key The key.
+     * @return The interface reference; null if the receptacle is not connected.
+     */
+    public final InterfaceType getInterface(final Object key) {
+        final OCMRecpConnection conn = ring.locate(key);
+        return conn == null ? null : intfType.cast(conn.getInterface());
+    }
+
+    /**
+     * Get the id of the connection a key is routed to.
+     * @param key The key.
+     * @return The connection id; -1 if the receptacle is not connected.
+     */
+    public final long getConnectionID(final Object key) {
+        final OCMRecpConnection conn = ring.locate(key);
+        return conn == null ? -1 : conn.getConnID();
+    }
+
+    /**
+     * Get the number of connections of the receptacle.
+     * @return The number of connections.
+     */
+    public final int getConnectionCount() {
+        return ring.connections.length;
+    }
+
+    /**
+     * Get the number of virtual nodes of each connection.
+     * @return The number of virtual nodes.
+     */
+    public final int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    /**
+     * Call the connected interface a key is routed to.
+     * @param <R> The result type.
+     * @param key The key.
+     * @param call The call to make on the interface e.g. store -> store.get(id).
+     * @return The result of the call.
+     * @throws InvocationException If the receptacle is not connected.
+     */
+    public final <R> R invoke(final Object key, final Function<InterfaceType, R> call) throws InvocationException {
+        final OCMRecpConnection conn = ring.locate(key);
+        if (conn == null) {
+            throw new InvocationException("Interface not connected");
+        }
+        return call.apply(intfType.cast(conn.getInterface()));
+    }
+
+    /**
+     * Get the index of the parameter a method is routed by.
+     * @param meth The interface method.
+     * @return The index of the parameter; -1 if the method has no parameters.
+     */
+    private int keyParameter(final Method meth) {
+        return keyParameters.get(meth);
+    }
+
+    /**
+     * Find the parameter a method called for the first time is routed by.
+     * @param meth The interface method.
+     * @return The index of the parameter; -1 if the method has no parameters.
+     */
+    private static Integer resolveKeyParameter(final Method meth) {
+        final Annotation[][] annotations = meth.getParameterAnnotations();
+        int index = annotations.length > 0 ? 0 : -1;
+        for (int i = 0; i < annotations.length; i++) {
+            for (Annotation annotation : annotations[i]) {
+                if (annotation instanceof AffinityKey) {
+                    index = i;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Mix the bits of a value, so that close values hash far apart (the finalizer of SplitMix64).
+     * @param value The value.
+     * @return The hash.
+     */
+    private static long mix(final long value) {
+        long hash = value;
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 31);
+    }
+
+    //! Implementation of IReceptacle interface
+    ////////////////////////////////////////////////////////////////////////////////
+    //! This method stores the reference to the component hosting the interface
+    //!
+    @Override
+    public final synchronized boolean connectToRecp(final IUnknown pIUnkSink, final String riid, final long provConnID) {
+        // Get the reference to the component hosting the interface
+        final Object pIntf = pIUnkSink.queryInterface(riid);
+        if (!intfType.isInstance(pIntf)) {
+            return false;
+        }
+
+        // Add the connection and place it on the ring
+        ring = Ring.build(OCMRecpConnection.add(ring.connections, new OCMRecpConnection(pIUnkSink, pIntf, provConnID)),
+                virtualNodes);
+        return true;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //! This method destroys the existing connection data
+    //!
+    @Override
+    public final synchronized boolean disconnectFromRecp(final long connID) {
+        // Find the connection and remove it from the ring
+        final OCMRecpConnection[] updated = OCMRecpConnection.remove(ring.connections, connID);
+        if (updated == ring.connections) {
+            return false;
+        }
+        ring = updated.length == 0 ? Ring.EMPTY : Ring.build(updated, virtualNodes);
+        return true;
+    }
+
+    /**
+     * This method adds meta-data name-value pair attributes to the receptacle instance.
+     * @param name The attribute name.
+     * @param type The attribute name.
+     * @param value An Object holding the attribute value.
+     * @return A boolean describing if the pair was added or not.
+     */
+    @Override
+    public final boolean putData(final String name, final String type, final Object value) {
+        try {
+            metaData.put(name, new TypedAttribute(type, value));
+        } catch (NullPointerException n) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * This method gets the value of a named meta-data attribute.
+     * @param name The attribute name.
+     * @return The TypedAttribute object storing the value.
+     */
+    @Override
+    public final TypedAttribute getValue(final String name) {
+        return metaData.get(name);
+    }
+
+    /**
+    * This method returns all name-value meta-data pairs on this receptacle instance.
+    * @return A Map storing the pairs.
+    */
+    @Override
+    public final Map<String, TypedAttribute> getValues() {
+        return metaData;
+    }
+
+}
@@ -19,38 +19,62 @@
 //
 /////////////////////////////////////////////////////////////////////////
 
+
 package uk.ac.aston.components.opencomj;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * OpenCOM defines a Multi Receptacle to contain multiple
  * pointers to interface implementations of the same type. Hence, it can
  * be used to invoke selected connected and/or parallel connections.
+ * <p>
+ * This receptacle routes calls by context: the connection chosen is the one whose
+ * interface has a given value of a meta-data attribute. For each attribute name routed
+ * on, the receptacle keeps an index from attribute value to connection, so routing is a
+ * hash lookup. An index is rebuilt on the first lookup after a connection is made or
+ * removed, or after the attribute is set on the delegator of a connected interface; the
+ * receptacle listens only to the delegators of its own connections. Attributes computed
+ * by the delegator, such as its latency statistics, are read when the index is built.
  * @param <InterfaceType> The type of the receptacle.
  * @author  Paul Grace
- * @version 1.2.3 (Untested)
+ * @version 1.2.3
  *
  */
 public class OCMMultiReceptacleContext<InterfaceType> implements IReceptacle {
 
     /**
-     * List of interface pointers this receptacle is connected to.
+     * The index of the values of one attribute.
      */
-    private final transient List<Object> interfaceList;
+    private static final class ContextIndex {
 
-    /**
-     * List of connIDS for each connection of this receptacle.
-     */
-    private final transient List<Long> connIDS;
+        /**
+         * The connections indexed.
+         */
+        private final transient OCMRecpConnection[] indexed;
+
+        /**
+         * The position of the first connection with each attribute value.
+         */
+        private final transient Map<Object, Integer> positions;
+
+        /**
+         * Creates a new index.
+         * @param targets The connections indexed.
+         * @param valuePositions The position of the first connection with each value.
+         */
+        ContextIndex(final OCMRecpConnection[] targets, final Map<Object, Integer> valuePositions) {
+            indexed = targets;
+            positions = valuePositions;
+        }
+    }
 
     /**
-     * List of components that this receptacle is connected to.
+     * The connections of this receptacle.
      */
-    private final transient List<IUnknown> components;
+    private transient volatile OCMRecpConnection[] connections;
 
     /**
      * Interface type (IID in traditional OpenCOM) of this receptacle.
@@ -58,9 +82,26 @@ public class OCMMultiReceptacleContext<InterfaceType> implements IReceptacle {
     private final transient String iidType;
 
     /**
-     * Number of connection using this receptacle.
+     * The index of each attribute routed on, keyed by attribute name. Lookups read it
+     * without locking, so it is replaced rather than changed.
      */
-    private transient int noConnections;
+    private transient volatile Map<String, ContextIndex> indexes;
+
+    /**
+     * The delegator of the interface of each connection, keyed by connection id.
+     */
+    private final transient Map<Long, AbstractDelegator> watched;
+
+    /**
+     * The number of connections to components not created by the runtime, whose attribute
+     * changes cannot be listened to; while there are any, indexes are not kept.
+     */
+    private transient int unwatched;
+
+    /**
+     * Told the name of each attribute set on the delegator of a connected interface.
+     */
+    private final transient Consumer<String> attributeListener = this::invalidate;
 
     /**
      * The meta data attached to the receptacle.
@@ -73,11 +114,10 @@ public class OCMMultiReceptacleContext<InterfaceType> implements IReceptacle {
      * @param interfaceType The type of interface to initialse this receptacle to
      */
     public OCMMultiReceptacleContext(final String interfaceType) {
-        interfaceList = new ArrayList();
-        connIDS = new ArrayList();
-        components = new ArrayList();
-        noConnections = 0;
+        connections = OCMRecpConnection.NONE;
         iidType = interfaceType;
+        indexes = new HashMap<>();
+        watched = new HashMap<>();
         metaData = new HashMap();
     }
 
@@ -86,16 +126,21 @@ public class OCMMultiReceptacleContext<InterfaceType> implements IReceptacle {
     //! This method stores the reference to the component hosting the interface
     //!
     @Override
-    public final boolean connectToRecp(final IUnknown pIUnkSink, final String riid, final long provConnID) {
+    public final synchronized boolean connectToRecp(final IUnknown pIUnkSink, final String riid, final long provConnID) {
         // Get the reference to the component hosting the interface
         if (riid.equalsIgnoreCase(iidType)) {
 
-            // Add the component, reference and id to the receptacles object stores
-            components.add(pIUnkSink);
-            interfaceList.add(pIUnkSink.queryInterface(riid));
-            connIDS.add(provConnID);
-
-            noConnections++;
+            // Listen for attribute changes on the interface, then add the connection
+            final OCMComponentProxy handler = OCMComponentProxy.forComponent(pIUnkSink);
+            final AbstractDelegator del = handler == null ? null : handler.getDelegator(iidType);
+            if (del == null) {
+                unwatched++;
+            } else {
+                del.addAttributeListener(attributeListener);
+                watched.put(provConnID, del);
+            }
+            connections = OCMRecpConnection.add(connections,
+                    new OCMRecpConnection(pIUnkSink, pIUnkSink.queryInterface(riid), provConnID));
             return true;
         } else {
             return false;
@@ -106,21 +151,43 @@ public class OCMMultiReceptacleContext<InterfaceType> implements IReceptacle {
     //! This method destroys the existing connection data
     //!
     @Override
-    public final boolean disconnectFromRecp(final long connID) {
-        // Traverse the receptacle data looking for the required connection ID
-        for (int i = 0; i < noConnections; i++) {
-
-            if (connIDS.get(i) == connID) {
-                // Found it - now remove all pieces of information about that connection
-                noConnections--;
-                interfaceList.remove(i);
-                connIDS.remove(i);
-                return true;
-            }
-	}
+    public final synchronized boolean disconnectFromRecp(final long connID) {
+        // Find the connection and remove all pieces of information about it
+        final OCMRecpConnection[] updated = OCMRecpConnection.remove(connections, connID);
+        if (updated == connections) {
+            return false;
+        }
+        connections = updated;
+        final AbstractDelegator del = watched.remove(connID);
+        if (del == null) {
+            unwatched--;
+        } else {
+            del.removeAttributeListener(attributeListener);
+        }
+        return true;
+    }
 
-	return false;
+    /**
+     * Get the number of connections of the receptacle.
+     * @return The number of connections.
+     */
+    public final int getConnectionCount() {
+        return connections.length;
+    }
+
+    /**
+     * Get the interface reference of a connection.
+     * @param index The index number of the connection, as returned by getInterfaceContextIndex.
+     * @return The interface reference; null if there is no such connection.
+     */
+    public final InterfaceType getInterface(final int index) {
+        final OCMRecpConnection[] current = connections;
+        if (index < 0 || index >= current.length) {
+            return null;
+        }
+        return intf(current[index]);
     }
+
     /**
      * This method is unique to multiple receptacles. It finds the index number
      * of a particular connection based upon context information i.e. meta-data
@@ -133,19 +200,99 @@ public class OCMMultiReceptacleContext<InterfaceType> implements IReceptacle {
      * context based connection.
      */
     public final int getInterfaceContextIndex(final String name, final Object value) {
-        // Traverse the list of connections
-        for (int i = 0; i < noConnections; i++) {
+        final Integer position = index(name).positions.get(value);
+        if (position == null) {
+            return -1;  // The context connection isn't here
+        }
+        return position;
+    }
+
+    /**
+     * Find the interface reference of the connection with a given value of a meta-data
+     * attribute of its interface.
+     * @param name The name of the attribute.
+     * @param value The required value of the meta-data pair.
+     * @return The interface reference of the first such connection; null if there is none.
+     */
+    public final InterfaceType getInterfaceContext(final String name, final Object value) {
+        final ContextIndex index = index(name);
+        final Integer position = index.positions.get(value);
+        if (position == null) {
+            return null;
+        }
+        return intf(index.indexed[position]);
+    }
+
+    /**
+     * Get the up to date index of an attribute, building it if needed.
+     * @param name The name of the attribute.
+     * @return The index of the attribute's values.
+     */
+    private ContextIndex index(final String name) {
+        final ContextIndex index = indexes.get(name);
+        if (index != null && index.indexed == connections) {
+            return index;
+        }
+        return rebuild(name);
+    }
+
+    /**
+     * Get the interface reference of a connection as the receptacle's interface type.
+     * @param conn The connection.
+     * @return The interface reference; connectToRecp only accepts references of the type.
+     */
+    @SuppressWarnings("unchecked")
+    private InterfaceType intf(final OCMRecpConnection conn) {
+        return (InterfaceType) conn.getInterface();
+    }
+
+    /**
+     * Build the index of an attribute from the current connections and publish it.
+     * An attribute set while the index is built waits for it to be published and then
+     * invalidates it.
+     * @param name The name of the attribute.
+     * @return The index of the attribute's values.
+     */
+    private synchronized ContextIndex rebuild(final String name) {
+        final OCMRecpConnection[] current = connections;
+        final ContextIndex existing = indexes.get(name);
+        if (existing != null && existing.indexed == current) {
+            return existing;
+        }
+        final Map<Object, Integer> positions = new HashMap<>();
+        for (int i = 0; i < current.length; i++) {
+            if (!(current[i].getComponent() instanceof IMetaInterface)) {
+                continue;
+            }
             // Get the IMetaInterface from the component at the other end of connection
-            final IMetaInterface pGetAtts = (IMetaInterface) components.get(i);
+            final IMetaInterface pGetAtts = (IMetaInterface) current[i].getComponent();
 
             // Read the meta-value from the Interface
-            final TypedAttribute attrVal =  (TypedAttribute) pGetAtts.getAttributeValue(iidType, "Interface", name);
-            // If this matches the given value - then this is the connection index to return
-            if (attrVal.getValue().equals(value)) {
-                return i;
+            final TypedAttribute attrVal = pGetAtts.getAttributeValue(iidType, "Interface", name);
+            // The first connection with a value is the one routed to
+            if (attrVal != null && attrVal.getValue() != null) {
+                positions.putIfAbsent(attrVal.getValue(), i);
             }
         }
-        return -1;  // The context connection isn't here
+        final ContextIndex index = new ContextIndex(current, positions);
+        if (unwatched == 0) {
+            final Map<String, ContextIndex> updated = new HashMap<>(indexes);
+            updated.put(name, index);
+            indexes = updated;
+        }
+        return index;
+    }
+
+    /**
+     * Drop the index of an attribute set on the delegator of a connected interface.
+     * @param name The name of the attribute.
+     */
+    private synchronized void invalidate(final String name) {
+        if (indexes.containsKey(name)) {
+            final Map<String, ContextIndex> updated = new HashMap<>(indexes);
+            updated.remove(name);
+            indexes = updated;
+        }
     }
 
     /**
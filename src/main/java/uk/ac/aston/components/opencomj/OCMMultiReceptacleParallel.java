@@ -19,56 +19,52 @@
 //
 /////////////////////////////////////////////////////////////////////////
 
+
 package uk.ac.aston.components.opencomj;
 
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.ArrayList;
+import java.lang.reflect.UndeclaredThrowableException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
  * OpenCOM defines a Multi Receptacle to contain multiple
- * pointers to interface implementations of the same type. Hence, it can
- * be used to invoke selected connected and/or parallel connections.
+ * pointers to interface implementations of the same type. This receptacle invokes
+ * all of its connections in parallel: each call is made on every connected interface
+ * at once, on an executor, and the outcomes combined by an aggregator.
+ * <ul>
+ * <li>invokeParallel calls every connection with a given aggregator, e.g. collect
+ * all, first success, reduce or quorum (see OCMAggregators), and returns the future
+ * aggregated result.</li>
+ * <li>getInterface returns a reference to the interface type that does the same for
+ * each method called on it, waiting for the result of the receptacle's aggregator,
+ * broadcast by default. A failure the method does not declare is thrown as the first
+ * call's unchecked exception, or else wrapped in a CompletionException.</li>
+ * </ul>
+ * Each call passes through the delegator of its connection as usual. Calls run on the
+ * executor of the receptacle, which may be a ForkJoinPool for calls that use the CPU,
+ * or on the default executor of OCMAsyncInvoker. A call that has not completed within
+ * the timeout fails with a TimeoutException and is interrupted; failures are reported
+ * by a ParallelInvocationException holding the outcome of every call.
  * @param <InterfaceType> The receptacle interface type.
  * @author  Paul Grace
- * @version 1.2.3 (Untested)
+ * @version 1.2.3
  *
  */
 public class OCMMultiReceptacleParallel<InterfaceType> implements IReceptacle {
 
     /**
-     * The debug proxy class that is used to create a proxy for the
-     * instance.
+     * The handler of the interface of the receptacle, invoking every connection.
      */
-    final class DebugProxy implements java.lang.reflect.InvocationHandler {
-
-        /**
-         * The proxy instance.
-         */
-        private final transient Object obj;
-
-        /**
-         * Creates a proxy from the original object instance.
-         * @param nObj The original object
-         * @return The proxy
-         */
-        public Object newInstance(final Object nObj) {
-            return java.lang.reflect.Proxy.newProxyInstance(
-                Thread.currentThread().getContextClassLoader(),
-                obj.getClass().getInterfaces(),
-                new DebugProxy(obj));
-        }
-
-        /**
-         * Create the proxy object.
-         * @param oObj The object to create a proxy of.
-         */
-        private DebugProxy(final Object oObj) {
-            this.obj = oObj;
-        }
+    final class FanOutProxy implements java.lang.reflect.InvocationHandler {
 
         /**
          * The invoke operation overridden by reflection when invoking the
@@ -76,35 +72,86 @@ public class OCMMultiReceptacleParallel<InterfaceType> implements IReceptacle {
          * @param proxy The proxy object.
          * @param meth The method to call.
          * @param args The method arguments.
-         * @return The result of the operation.
-         * @throws Throwable General exception thrown.
+         * @return The aggregated result of the calls.
+         * @throws Throwable The failure of the invocation.
          */
         @Override
         public Object invoke(final Object proxy, final Method meth, final Object[] args) throws Throwable {
-            return meth.invoke(obj, args);
+            if (meth.getDeclaringClass() == Object.class) {
+                // Answered by the receptacle rather than its connections
+                if (meth.getName().equals("equals")) {
+                    return proxy == args[0];
+                }
+                return meth.invoke(OCMMultiReceptacleParallel.this, args);
+            }
+            final CompletableFuture<?> outcome = invokeParallel(intf -> call(meth, intf, args), aggregator);
+            try {
+                return outcome.get();
+            } catch (ExecutionException ex) {
+                throw failure(meth, ex.getCause());
+            } catch (InterruptedException ex) {
+                outcome.cancel(true);
+                Thread.currentThread().interrupt();
+                throw failure(meth, new InvocationException("Parallel invocation interrupted", ex));
+            }
+        }
+
+        /**
+         * Get the exception to throw to the caller of an interface method for a failed
+         * invocation. An exception the method cannot throw is not thrown as is, or the caller
+         * would get an UndeclaredThrowableException: the first call's unchecked failure is
+         * thrown instead, or else the failure is wrapped in a CompletionException.
+         * @param meth The method called.
+         * @param failure The failure of the invocation, e.g. a ParallelInvocationException.
+         * @return The exception to throw.
+         */
+        private Throwable failure(final Method meth, final Throwable failure) {
+            if (failure instanceof RuntimeException || failure instanceof Error) {
+                return failure;
+            }
+            for (Class<?> declared : meth.getExceptionTypes()) {
+                if (declared.isInstance(failure)) {
+                    return failure;
+                }
+            }
+            final Throwable first = failure.getCause();
+            if (failure instanceof ParallelInvocationException
+                    && (first instanceof RuntimeException || first instanceof Error)) {
+                return first;
+            }
+            return new CompletionException(failure.getMessage(), failure);
         }
     }
 
     /**
      * The interface type of the receptacle.
      */
-    private transient InterfaceType mpIntf;
+    private final transient Class<InterfaceType> intfType;
+
+    /**
+     * The reference to the interface type, invoking every connection.
+     */
+    private final transient InterfaceType mpIntf;
 
     /**
-     * List of interface pointers this receptacle is connected to.
+     * The connections of this receptacle.
      */
-    private final transient List<Object> interfaceList;
+    private transient volatile OCMRecpConnection[] connections;
 
-    /** List of connIDS for each connection of this receptacle. */
-    private final transient List<Long> connIDS;
+    /**
+     * The executor running the calls; null for the default executor.
+     */
+    private transient volatile Executor executor;
 
-    /** List of components that this receptacle is connected to. */
-    private final transient List<IUnknown> components;
+    /**
+     * The time allowed for each call in nanoseconds; 0 for no limit.
+     */
+    private transient volatile long timeoutNanos;
 
     /**
-     * Current number of connections to the receptacle.
+     * The aggregator of calls made through the interface reference.
      */
-    private transient int noConnections;
+    private transient volatile IAggregator<Object, ?> aggregator;
 
     /**
      * List of meta data attached to receptacle.
@@ -117,22 +164,265 @@ public class OCMMultiReceptacleParallel<InterfaceType> implements IReceptacle {
      * @param interfaceType The type of interface to initialse this receptacle to
      */
     public OCMMultiReceptacleParallel(final Class<InterfaceType> interfaceType) {
-        interfaceList = new ArrayList();
-        connIDS = new ArrayList();
-        components = new ArrayList();
-        noConnections = 0;
-
-        Object object = null;
-        ClassLoader cl2 = null;
-        metaData = new HashMap();
+        intfType = interfaceType;
+        connections = OCMRecpConnection.NONE;
+        aggregator = OCMAggregators.broadcast();
+        metaData = new HashMap<>();
+        mpIntf = interfaceType.cast(Proxy.newProxyInstance(interfaceType.getClassLoader(),
+                new Class<?>[] {interfaceType}, new FanOutProxy()));
+    }
+
+    /**
+     * Get the interface reference of the receptacle. Each method called on it is called
+     * on every connection in parallel, and returns the result of the receptacle's aggregator.
+     * @return The interface reference.
+     */
+    public final InterfaceType getInterface() {
+        return mpIntf;
+    }
+
+    /**
+     * Get the number of connections of the receptacle.
+     * @return The number of connections.
+     */
+    public final int getConnectionCount() {
+        return connections.length;
+    }
+
+    /**
+     * Set the executor running the calls made through this receptacle.
+     * @param callExecutor The executor; null for the default executor.
+     */
+    public final void setExecutor(final Executor callExecutor) {
+        executor = callExecutor;
+    }
+
+    /**
+     * Get the executor running the calls made through this receptacle.
+     * @return The executor; null if the default executor is used.
+     */
+    public final Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Set the time allowed for each call made through this receptacle.
+     * @param timeout The time allowed; 0 for no limit.
+     * @param unit The unit of the timeout.
+     */
+    public final void setTimeout(final long timeout, final TimeUnit unit) {
+        timeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Get the time allowed for each call made through this receptacle.
+     * @param unit The unit of the result.
+     * @return The time allowed; 0 for no limit.
+     */
+    public final long getTimeout(final TimeUnit unit) {
+        return unit.convert(timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Set the aggregator of the calls made through the interface reference. Its result
+     * must be of the return type of the methods called.
+     * @param callAggregator The aggregator e.g. OCMAggregators.firstSuccess().
+     */
+    public final void setAggregator(final IAggregator<Object, ?> callAggregator) {
+        if (callAggregator == null) {
+            throw new IllegalArgumentException("An aggregator is required");
+        }
+        aggregator = callAggregator;
+    }
+
+    /**
+     * Get the aggregator of the calls made through the interface reference.
+     * @return The aggregator; broadcast by default.
+     */
+    public final IAggregator<Object, ?> getAggregator() {
+        return aggregator;
+    }
+
+    /**
+     * Call every connected interface in parallel, within the timeout of the receptacle.
+     * @param <R> The result type of each call.
+     * @param <A> The type of the aggregated result.
+     * @param call The call to make on each interface e.g. calc -> calc.add(1, 2).
+     * @param callAggregator The aggregator of the outcomes of the calls.
+     * @return The future aggregated result; it fails with an InvocationException if the
+     * receptacle is not connected or the aggregator fails.
+     */
+    public final <R, A> CompletableFuture<A> invokeParallel(final Function<InterfaceType, R> call,
+            final IAggregator<R, A> callAggregator) {
+        return invokeParallel(call, callAggregator, timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Call every connected interface in parallel. Once the aggregator has decided the
+     * result, the calls still running are cancelled; cancelling the future cancels them all.
+     * @param <R> The result type of each call.
+     * @param <A> The type of the aggregated result.
+     * @param call The call to make on each interface e.g. calc -> calc.add(1, 2).
+     * @param callAggregator The aggregator of the outcomes of the calls.
+     * @param timeout The time allowed for each call; 0 for no limit.
+     * @param unit The unit of the timeout.
+     * @return The future aggregated result.
+     */
+    public final <R, A> CompletableFuture<A> invokeParallel(final Function<InterfaceType, R> call,
+            final IAggregator<R, A> callAggregator, final long timeout, final TimeUnit unit) {
+        final OCMRecpConnection[] current = connections;
+        final FanOut<R, A> fanOut = new FanOut<>(current, callAggregator);
+        if (current.length == 0) {
+            fanOut.completeExceptionally(new InvocationException("Interface not connected"));
+            return fanOut;
+        }
+        for (int i = 0; i < current.length; i++) {
+            final int index = i;
+            final CompletableFuture<R> future = OCMAsyncInvoker.invokeAsync(intfType.cast(current[i].getInterface()), call,
+                    executor, timeout, unit);
+            fanOut.started(index, future);
+            future.whenComplete((result, failure) -> fanOut.arrived(index, result, failure));
+        }
+        return fanOut;
+    }
+
+    /**
+     * Call a method on an interface reference, rethrowing what the method throws.
+     * @param meth The method.
+     * @param intf The interface reference.
+     * @param args The arguments of the call.
+     * @return The result of the call.
+     */
+    private static Object call(final Method meth, final Object intf, final Object[] args) {
         try {
-            object = interfaceType.newInstance();
-            cl2 = interfaceType.getClassLoader();
-        } catch (Exception e) {
-            e.printStackTrace();
+            return meth.invoke(intf, args);
+        } catch (InvocationTargetException ex) {
+            final Throwable cause = ex.getTargetException();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new UndeclaredThrowableException(cause);
+        } catch (IllegalAccessException ex) {
+            throw new UndeclaredThrowableException(ex);
+        }
+    }
+
+    /**
+     * A parallel invocation in progress, completing with the aggregated result.
+     * @param <R> The result type of each call.
+     * @param <A> The type of the aggregated result.
+     */
+    private static final class FanOut<R, A> extends CompletableFuture<A> {
+
+        /**
+         * The future of each call; null until it is started.
+         */
+        private final transient CompletableFuture<?>[] calls;
+
+        /**
+         * The outcomes of the calls.
+         */
+        private final transient OCMFanOutResult<R> outcomes;
+
+        /**
+         * The aggregator of the outcomes.
+         */
+        private final transient IAggregator<R, A> aggregator;
+
+        /**
+         * True once the outcomes have been aggregated, before the invocation completes.
+         */
+        private transient boolean decided;
+
+        /**
+         * Creates a new parallel invocation.
+         * @param targets The connections called.
+         * @param callAggregator The aggregator of the outcomes.
+         */
+        FanOut(final OCMRecpConnection[] targets, final IAggregator<R, A> callAggregator) {
+            final long[] ids = new long[targets.length];
+            for (int i = 0; i < targets.length; i++) {
+                ids[i] = targets[i].getConnID();
+            }
+            calls = new CompletableFuture<?>[targets.length];
+            outcomes = new OCMFanOutResult<>(ids);
+            aggregator = callAggregator;
+        }
+
+        /**
+         * Record a call that has started, cancelling it if the result is already decided.
+         * @param index The index of the call.
+         * @param future The future of the call.
+         */
+        synchronized void started(final int index, final CompletableFuture<R> future) {
+            calls[index] = future;
+            if (isDone()) {
+                future.cancel(true);
+            }
+        }
+
+        /**
+         * Record the outcome of a call, completing the invocation once the aggregator
+         * has decided the result or every call has completed.
+         * @param index The index of the call.
+         * @param result The result of the call.
+         * @param failure The failure of the call; null if it succeeded.
+         */
+        void arrived(final int index, final R result, final Throwable failure) {
+            A aggregated = null;
+            Throwable aggregateFailure = null;
+            synchronized (this) {
+                if (decided || isDone()) {
+                    // Decided without this call
+                    return;
+                }
+                outcomes.complete(index, result, failure);
+                if (outcomes.getPending() > 0 && !aggregator.isDecided(outcomes)) {
+                    return;
+                }
+                decided = true;
+                try {
+                    aggregated = aggregator.aggregate(outcomes);
+                } catch (InvocationException | RuntimeException ex) {
+                    aggregateFailure = ex;
+                }
+            }
+            // Complete outside the lock: the caller's dependent stages run here
+            if (aggregateFailure == null) {
+                complete(aggregated);
+            } else {
+                completeExceptionally(aggregateFailure);
+            }
+            cancelCalls();
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            final boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                cancelCalls();
+            }
+            return cancelled;
+        }
+
+        /**
+         * Cancel the calls still running, interrupting them. A call started after the
+         * invocation completed is cancelled by started.
+         */
+        private void cancelCalls() {
+            final CompletableFuture<?>[] running;
+            synchronized (this) {
+                running = calls.clone();
+            }
+            for (CompletableFuture<?> call : running) {
+                if (call != null) {
+                    call.cancel(true);
+                }
+            }
         }
-        mpIntf = (InterfaceType) Proxy.newProxyInstance(cl2,
-                new Class[] {interfaceType}, new DebugProxy(object));
     }
 
     //! Implementation of IReceptacle interface
@@ -140,20 +430,15 @@ public class OCMMultiReceptacleParallel<InterfaceType> implements IReceptacle {
     //! This method stores the reference to the component hosting the interface
     //!
     @Override
-    public final boolean connectToRecp(final IUnknown pIUnkSink, final String riid, final long provConnID) {
+    public final synchronized boolean connectToRecp(final IUnknown pIUnkSink, final String riid, final long provConnID) {
         // Get the reference to the component hosting the interface
-        try {
-            mpIntf = (InterfaceType) pIUnkSink.queryInterface(riid);
-        } catch (ClassCastException e) {
+        final Object pIntf = pIUnkSink.queryInterface(riid);
+        if (!intfType.isInstance(pIntf)) {
             return false;
         }
 
-        // Add the component, reference and id to the receptacles object stores
-        components.add(pIUnkSink);
-        interfaceList.add(mpIntf);
-        connIDS.add(provConnID);
-
-        noConnections++;
+        // Add the component, reference and id to the receptacle's connections
+        connections = OCMRecpConnection.add(connections, new OCMRecpConnection(pIUnkSink, pIntf, provConnID));
         return true;
     }
 
@@ -161,23 +446,14 @@ public class OCMMultiReceptacleParallel<InterfaceType> implements IReceptacle {
     //! This method destroys the existing connection data
     //!
     @Override
-    public final boolean disconnectFromRecp(final long connID) {
-        // Traverse the receptacle data looking for the required connection ID
-        for (int i = 0; i < noConnections; i++) {
-            if (connIDS.get(i) == connID) {
-                // Found it - now remove all pieces of information about that connection
-                noConnections--;
-                interfaceList.remove(i);
-                connIDS.remove(i);
-            }
-            if (noConnections == 0) {
-                mpIntf = null;
-                return true;
-            }
-            return true;
-	}
-
-	return false;
+    public final synchronized boolean disconnectFromRecp(final long connID) {
+        // Find the connection and remove all pieces of information about it
+        final OCMRecpConnection[] updated = OCMRecpConnection.remove(connections, connID);
+        if (updated == connections) {
+            return false;
+        }
+        connections = updated;
+        return true;
     }
 
 
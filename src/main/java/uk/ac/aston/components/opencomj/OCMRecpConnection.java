@@ -0,0 +1,150 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+
+package uk.ac.aston.components.opencomj;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One connection of a multi receptacle. A receptacle holds its connections in an array
+ * that is replaced, never modified, when a connection is made or removed. A call reads
+ * the array once without locking and works on the connections at the time it was made;
+ * making and removing connections is serialized by the receptacle.
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+final class OCMRecpConnection {
+
+    /**
+     * The connections of a receptacle with none.
+     */
+    static final OCMRecpConnection[] NONE = new OCMRecpConnection[0];
+
+    /**
+     * The component hosting the interface.
+     */
+    private final transient IUnknown component;
+
+    /**
+     * The interface reference.
+     */
+    private final transient Object intf;
+
+    /**
+     * The id of the connection.
+     */
+    private final transient long connID;
+
+    /**
+     * The number of calls in progress on the connection, counted by receptacles that balance calls.
+     */
+    private final transient AtomicInteger outstanding = new AtomicInteger();
+
+    /**
+     * Creates a new connection.
+     * @param pIUnk The component hosting the interface.
+     * @param pIntf The interface reference.
+     * @param id The id of the connection.
+     */
+    OCMRecpConnection(final IUnknown pIUnk, final Object pIntf, final long id) {
+        component = pIUnk;
+        intf = pIntf;
+        connID = id;
+    }
+
+    /**
+     * Get the component hosting the interface.
+     * @return The component.
+     */
+    IUnknown getComponent() {
+        return component;
+    }
+
+    /**
+     * Get the interface reference.
+     * @return The interface reference.
+     */
+    Object getInterface() {
+        return intf;
+    }
+
+    /**
+     * Get the id of the connection.
+     * @return The connection id.
+     */
+    long getConnID() {
+        return connID;
+    }
+
+    /**
+     * Count a call starting on the connection.
+     */
+    void enter() {
+        outstanding.incrementAndGet();
+    }
+
+    /**
+     * Count a call on the connection completing.
+     */
+    void exit() {
+        outstanding.decrementAndGet();
+    }
+
+    /**
+     * Get the number of calls in progress on the connection.
+     * @return The number of calls.
+     */
+    int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Add a connection to the connections of a receptacle.
+     * @param current The current connections.
+     * @param connection The new connection.
+     * @return The new connections, with the new one last.
+     */
+    static OCMRecpConnection[] add(final OCMRecpConnection[] current, final OCMRecpConnection connection) {
+        final OCMRecpConnection[] updated = new OCMRecpConnection[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = connection;
+        return updated;
+    }
+
+    /**
+     * Remove a connection from the connections of a receptacle.
+     * @param current The current connections.
+     * @param id The id of the connection to remove.
+     * @return The new connections; the current ones if there is no such connection.
+     */
+    static OCMRecpConnection[] remove(final OCMRecpConnection[] current, final long id) {
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].connID == id) {
+                final OCMRecpConnection[] updated = new OCMRecpConnection[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                return updated;
+            }
+        }
+        return current;
+    }
+}
@@ -23,6 +23,10 @@ package uk.ac.aston.components.opencomj;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
  * OpenCOM defines a Single Receptacle to be " a single pointer to an
@@ -56,6 +60,11 @@ public class OCMSingleReceptacle<InterfaceType> implements IReceptacle {
      */
     private transient long mConnID;
 
+    /**
+     * The executor running asynchronous calls; null for the default executor.
+     */
+    private transient volatile Executor executor;
+
     /**
      * The set of meta data attached to the receptacle.
      */
@@ -71,6 +80,51 @@ public class OCMSingleReceptacle<InterfaceType> implements IReceptacle {
         metaData = new HashMap();
     }
 
+    /**
+     * Set the executor running the asynchronous calls made through this receptacle, e.g.
+     * an executor per component or one shared by a framework.
+     * @param callExecutor The executor; null for the default executor.
+     */
+    public final void setExecutor(final Executor callExecutor) {
+        executor = callExecutor;
+    }
+
+    /**
+     * Get the executor running the asynchronous calls made through this receptacle.
+     * @return The executor; null if the default executor is used.
+     */
+    public final Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Call the connected interface asynchronously, so that a slow component does not
+     * block the caller. The call passes through the delegator of the interface as usual.
+     * @param <R> The result type.
+     * @param call The call to make on the interface e.g. calc -> calc.add(1, 2).
+     * @return The future outcome of the call; it fails with an InvocationException if the
+     * receptacle is not connected or a pre method halts the call.
+     * @see OCMAsyncInvoker
+     */
+    public final <R> CompletableFuture<R> invokeAsync(final Function<InterfaceType, R> call) {
+        return OCMAsyncInvoker.invokeAsync(mpIntf, call, executor, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Call the connected interface asynchronously with a time limit. A call that has not
+     * completed in time fails with a TimeoutException and is interrupted.
+     * @param <R> The result type.
+     * @param call The call to make on the interface.
+     * @param timeout The time allowed for the call.
+     * @param unit The unit of the timeout.
+     * @return The future outcome of the call.
+     * @see OCMAsyncInvoker
+     */
+    public final <R> CompletableFuture<R> invokeAsync(final Function<InterfaceType, R> call, final long timeout,
+            final TimeUnit unit) {
+        return OCMAsyncInvoker.invokeAsync(mpIntf, call, executor, timeout, unit);
+    }
+
     //! Implementation of IReceptacle interface
     ////////////////////////////////////////////////////////////////////////////////
     //! This method stores the reference to the component hosting the interface
@@ -0,0 +1,582 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+
+package uk.ac.aston.components.opencomj;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A sampling tracer of the calls made through delegators. While a tracer is started,
+ * each call through a delegator is recorded as a span naming the component, the
+ * interface and the method; a call made by a component while serving another call is
+ * recorded as a child of the span of the outer call, so a trace holds the whole tree of
+ * calls through the component graph.
+ * <p>
+ * Only one trace in the sampling interval is recorded: the decision is taken when a call
+ * is made with no trace in progress on the thread, and the calls nested in it follow the
+ * decision. The trace in progress is carried into asynchronous post-methods and into calls
+ * made through OCMAsyncInvoker, so the calls they make join the trace of the caller.
+ * <p>
+ * The tracer keeps a bounded number of spans; further spans are counted as dropped. The
+ * spans can be exported as folded stacks, the input of flame graph tools, or as a JSON
+ * trace in the Chrome trace event format. A tracer is started by calling start, or when
+ * the class is loaded if the opencomj.trace system property gives a sampling interval; in
+ * that case the spans are written on exit to the files named by opencomj.trace.output
+ * followed by .folded and .json, if that property is set.
+ *
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class OCMTracer {
+
+    /**
+     * The system property giving the sampling interval of a tracer started when the class is loaded.
+     */
+    public static final String TRACE_PROPERTY = "opencomj.trace";
+
+    /**
+     * The system property giving the path, without extension, the spans are written to on exit.
+     */
+    public static final String OUTPUT_PROPERTY = "opencomj.trace.output";
+
+    /**
+     * The default number of spans kept.
+     */
+    public static final int DEFAULT_MAX_SPANS = 100000;
+
+    /**
+     * The span in progress on each thread: null if none, UNSAMPLED inside a trace not recorded.
+     */
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Marks the calls of a trace that is not recorded.
+     */
+    private static final Span UNSAMPLED = new Span(null, null, 0, "", "", "");
+
+    /**
+     * The tracer started; null if tracing is off.
+     */
+    private static volatile OCMTracer active;
+
+    /**
+     * One trace in this many is recorded.
+     */
+    private final transient int sampleInterval;
+
+    /**
+     * The maximum number of spans kept.
+     */
+    private final transient int maxSpans;
+
+    /**
+     * The System.nanoTime the tracer was started at; span times are relative to it.
+     */
+    private final transient long origin;
+
+    /**
+     * The spans ended so far, in the order they ended.
+     */
+    private final transient ConcurrentLinkedQueue<Span> spans = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The number of spans kept.
+     */
+    private final transient AtomicInteger kept = new AtomicInteger();
+
+    /**
+     * The number of spans discarded because the tracer was full.
+     */
+    private final transient LongAdder dropped = new LongAdder();
+
+    static {
+        final int interval = Integer.getInteger(TRACE_PROPERTY, 0);
+        if (interval > 0) {
+            final OCMTracer tracer = start(interval, DEFAULT_MAX_SPANS);
+            final String output = System.getProperty(OUTPUT_PROPERTY);
+            if (output != null) {
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        tracer.writeFolded(output + ".folded");
+                        tracer.writeJson(output + ".json");
+                    } catch (IOException ex) {
+                        System.err.println("Trace not written: " + ex.getMessage());
+                    }
+                }, "opencomj-trace-output"));
+            }
+        }
+    }
+
+    /**
+     * Creates a new tracer.
+     * @param interval One trace in this many is recorded.
+     * @param capacity The maximum number of spans kept.
+     */
+    private OCMTracer(final int interval, final int capacity) {
+        sampleInterval = interval;
+        maxSpans = capacity;
+        origin = System.nanoTime();
+    }
+
+    /**
+     * Start tracing the calls through every delegator, replacing any tracer already started.
+     * @param sampleInterval One trace in this many is recorded; 1 to record every trace.
+     * @param maxSpans The maximum number of spans kept.
+     * @return The tracer started.
+     */
+    public static OCMTracer start(final int sampleInterval, final int maxSpans) {
+        if (sampleInterval < 1 || maxSpans < 1) {
+            throw new IllegalArgumentException("Invalid sampling interval or capacity");
+        }
+        final OCMTracer tracer = new OCMTracer(sampleInterval, maxSpans);
+        active = tracer;
+        return tracer;
+    }
+
+    /**
+     * Stop tracing. The spans of the tracer can still be read and exported.
+     * @return The tracer stopped, null if none was started.
+     */
+    public static OCMTracer stop() {
+        final OCMTracer tracer = active;
+        active = null;
+        return tracer;
+    }
+
+    /**
+     * Get the tracer started.
+     * @return The tracer, null if tracing is off.
+     */
+    public static OCMTracer getActive() {
+        return active;
+    }
+
+    /**
+     * Get the span in progress on the calling thread, to carry it to another thread.
+     * @return The span, null if there is no trace in progress or tracing is off.
+     */
+    static Span capture() {
+        return active == null ? null : CURRENT.get();
+    }
+
+    /**
+     * Continue a trace on the calling thread, e.g. in a worker running an asynchronous call.
+     * @param context The span captured on the calling thread.
+     * @return The span in progress before, to pass to restore.
+     */
+    static Span resume(final Span context) {
+        final Span previous = CURRENT.get();
+        CURRENT.set(context);
+        return previous;
+    }
+
+    /**
+     * Return the calling thread to the span in progress before a trace was resumed.
+     * @param previous The span returned by resume.
+     */
+    static void restore(final Span previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Start the span of a call through a delegator.
+     * @param component The name of the component called.
+     * @param method The interface method called.
+     * @return The span to pass to exit.
+     */
+    Span enter(final String component, final Method method) {
+        final Span parent = CURRENT.get();
+        if (parent == UNSAMPLED) {
+            return null;
+        }
+        if (parent == null && ThreadLocalRandom.current().nextInt(sampleInterval) != 0) {
+            CURRENT.set(UNSAMPLED);
+            return UNSAMPLED;
+        }
+        final Span span = new Span(this, parent, parent == null ? nextId() : parent.traceId, component,
+                method.getDeclaringClass().getSimpleName(), method.getName());
+        CURRENT.set(span);
+        span.start = System.nanoTime();
+        return span;
+    }
+
+    /**
+     * End the span of a call through a delegator.
+     * @param span The span returned by enter.
+     * @param failed Whether the call threw an exception.
+     */
+    static void exit(final Span span, final boolean failed) {
+        if (span == null) {
+            return;
+        }
+        if (span == UNSAMPLED) {
+            CURRENT.remove();
+            return;
+        }
+        span.duration = System.nanoTime() - span.start;
+        span.error = failed;
+        restore(span.parent);
+        span.tracer.add(span);
+    }
+
+    /**
+     * Keep a span that has ended, unless the tracer is full.
+     * @param span The span.
+     */
+    private void add(final Span span) {
+        if (kept.incrementAndGet() > maxSpans) {
+            kept.decrementAndGet();
+            dropped.increment();
+            return;
+        }
+        spans.add(span);
+    }
+
+    /**
+     * Get a new span or trace identifier.
+     * @return A random non-zero identifier.
+     */
+    private static long nextId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        return id;
+    }
+
+    /**
+     * Get the spans kept so far.
+     * @return The spans in the order they ended.
+     */
+    public List<Span> getSpans() {
+        return new ArrayList<>(spans);
+    }
+
+    /**
+     * Get the number of spans discarded because the tracer was full.
+     * @return The dropped count.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Get the sampling interval.
+     * @return One trace in this many is recorded.
+     */
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    /**
+     * Discard the spans kept so far.
+     */
+    public void clear() {
+        Span span;
+        while ((span = spans.poll()) != null) {
+            kept.decrementAndGet();
+        }
+    }
+
+    /**
+     * Write the spans as folded stacks: one line per distinct call path, the frames
+     * component:Interface.method from the root separated by semicolons, followed by the
+     * nanoseconds spent in the last frame itself, i.e. less the calls it made on the same thread.
+     * @param file The path of the file written.
+     * @throws IOException The file could not be written.
+     */
+    public void writeFolded(final String file) throws IOException {
+        final List<Span> all = getSpans();
+        final Map<Long, Span> byId = new HashMap<>();
+        for (Span span : all) {
+            byId.put(span.spanId, span);
+        }
+        final Map<Long, Long> nested = new HashMap<>();
+        for (Span span : all) {
+            final Span parent = span.parent;
+            if (parent != null && parent.threadId == span.threadId && byId.containsKey(parent.spanId)) {
+                nested.merge(parent.spanId, span.duration, Long::sum);
+            }
+        }
+        final Map<String, Long> stacks = new LinkedHashMap<>();
+        for (Span span : all) {
+            final StringBuilder path = new StringBuilder(span.getFrame());
+            for (Span parent = span.parent; parent != null && byId.containsKey(parent.spanId); parent = parent.parent) {
+                path.insert(0, ';').insert(0, parent.getFrame());
+            }
+            final long self = Math.max(0, span.duration - nested.getOrDefault(span.spanId, 0L));
+            stacks.merge(path.toString(), self, Long::sum);
+        }
+        try (Writer out = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Long> stack : stacks.entrySet()) {
+                out.write(stack.getKey());
+                out.write(' ');
+                out.write(Long.toString(stack.getValue()));
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Write the spans as a JSON trace in the Chrome trace event format, one complete
+     * event per span with times in microseconds since the tracer was started.
+     * @param file The path of the file written.
+     * @throws IOException The file could not be written.
+     */
+    public void writeJson(final String file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8)) {
+            out.write("{\"traceEvents\":[");
+            boolean first = true;
+            for (Span span : getSpans()) {
+                if (!first) {
+                    out.write(',');
+                }
+                first = false;
+                out.newLine();
+                out.write("{\"name\":" + quote(span.getFrame()) + ",\"cat\":" + quote(span.component)
+                        + ",\"ph\":\"X\",\"ts\":" + (span.start - origin) / 1000.0 + ",\"dur\":" + span.duration / 1000.0
+                        + ",\"pid\":1,\"tid\":" + span.threadId + ",\"args\":{\"thread\":" + quote(span.thread)
+                        + ",\"trace\":\"" + Long.toHexString(span.traceId)
+                        + "\",\"span\":\"" + Long.toHexString(span.spanId) + "\",\"parent\":\""
+                        + Long.toHexString(span.getParentId()) + "\",\"error\":" + span.error + "}}");
+            }
+            out.newLine();
+            out.write("],\"displayTimeUnit\":\"ns\"}");
+            out.newLine();
+        }
+    }
+
+    /**
+     * Quote a string as a JSON string.
+     * @param value The string.
+     * @return The JSON string literal.
+     */
+    private static String quote(final String value) {
+        final StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < ' ') {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * One call through a delegator.
+     */
+    public static final class Span {
+
+        /**
+         * The tracer the span is kept by.
+         */
+        private final transient OCMTracer tracer;
+
+        /**
+         * The span of the call this call was made in; null for the root of a trace.
+         */
+        private final transient Span parent;
+
+        /**
+         * The identifier of the trace.
+         */
+        private final transient long traceId;
+
+        /**
+         * The identifier of the span.
+         */
+        private final transient long spanId;
+
+        /**
+         * The name of the component called.
+         */
+        private final transient String component;
+
+        /**
+         * The name of the interface called.
+         */
+        private final transient String intf;
+
+        /**
+         * The name of the method called.
+         */
+        private final transient String method;
+
+        /**
+         * The name of the thread that made the call.
+         */
+        private final transient String thread;
+
+        /**
+         * The identifier of the thread that made the call.
+         */
+        private final transient long threadId;
+
+        /**
+         * The System.nanoTime the call started at.
+         */
+        private transient long start;
+
+        /**
+         * The duration of the call in nanoseconds.
+         */
+        private transient long duration;
+
+        /**
+         * Whether the call threw an exception.
+         */
+        private transient boolean error;
+
+        /**
+         * Creates a new span.
+         * @param owner The tracer keeping the span.
+         * @param parentSpan The span of the enclosing call, null for a root.
+         * @param trace The trace identifier.
+         * @param componentName The component called.
+         * @param intfName The interface called.
+         * @param methodName The method called.
+         */
+        Span(final OCMTracer owner, final Span parentSpan, final long trace, final String componentName,
+                final String intfName, final String methodName) {
+            tracer = owner;
+            parent = parentSpan;
+            traceId = trace;
+            spanId = owner == null ? 0 : nextId();
+            component = componentName;
+            intf = intfName;
+            method = methodName;
+            thread = Thread.currentThread().getName();
+            threadId = Thread.currentThread().getId();
+        }
+
+        /**
+         * Get the flame graph frame of the span.
+         * @return component:Interface.method
+         */
+        public String getFrame() {
+            return component + ':' + intf + '.' + method;
+        }
+
+        /**
+         * Get the identifier of the trace.
+         * @return The trace identifier.
+         */
+        public long getTraceId() {
+            return traceId;
+        }
+
+        /**
+         * Get the identifier of the span.
+         * @return The span identifier.
+         */
+        public long getSpanId() {
+            return spanId;
+        }
+
+        /**
+         * Get the identifier of the span of the enclosing call.
+         * @return The parent identifier, 0 for the root of a trace.
+         */
+        public long getParentId() {
+            return parent == null ? 0 : parent.spanId;
+        }
+
+        /**
+         * Get the name of the component called.
+         * @return The component name.
+         */
+        public String getComponent() {
+            return component;
+        }
+
+        /**
+         * Get the name of the interface called.
+         * @return The interface name.
+         */
+        public String getInterface() {
+            return intf;
+        }
+
+        /**
+         * Get the name of the method called.
+         * @return The method name.
+         */
+        public String getMethod() {
+            return method;
+        }
+
+        /**
+         * Get the name of the thread that made the call.
+         * @return The thread name.
+         */
+        public String getThread() {
+            return thread;
+        }
+
+        /**
+         * Get the time the call started at.
+         * @return The start in nanoseconds since the tracer was started.
+         */
+        public long getStart() {
+            return tracer == null ? 0 : start - tracer.origin;
+        }
+
+        /**
+         * Get the duration of the call.
+         * @return The duration in nanoseconds.
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        /**
+         * Check whether the call threw an exception.
+         * @return true for a failed call.
+         */
+        public boolean isError() {
+            return error;
+        }
+    }
+}
@@ -21,13 +21,24 @@
 
 package uk.ac.aston.components.opencomj;
 
-import uk.ac.aston.components.privacy.PrivacyDelegator;
 import java.lang.annotation.Annotation;
-import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 import uk.ac.aston.components.security.dataflow.DataProcess;
 import uk.ac.aston.components.security.dataflow.MetaDataFlow;
 import uk.ac.aston.components.security.dataflow.PrivacyFunction;
@@ -43,6 +54,10 @@ import uk.ac.aston.components.security.dataflow.Private;
  * to support the capabilities of the three meta-models proposed by the Open ORB philosopy i.e. interface,
  * architecture and interception meta-models. Not that this is a prototype version of OpenCOM version 1 as
  * described in Clarke,01. There is a C++ implementation offering identical operations.
+ * The kernel is thread-safe: components may be created, connected, disconnected and
+ * deleted from many threads at once. The graph indexes are concurrent maps, the
+ * connection table is segmented, and per component connection lists are locked
+ * individually, so threads working on different components do not contend.
  *
  * @author  Paul Grace
  * @version 1.2.3
@@ -55,14 +70,36 @@ import uk.ac.aston.components.security.dataflow.Private;
 public class OpenCOM implements IOpenCOM, IMetaArchitecture, IUnknown, IMetaInterception {
 
     /**
-     * The complete kernel system graph.
+     * The complete kernel system graph. Keyed by creation position so that
+     * enumComponents reports components in the order they were created.
      */
-    private final transient List<OCMGraphNode> mGraph;
+    private final transient ConcurrentMap<Long, OCMGraphNode> mGraph;
+
+    /**
+     * The creation position generator for the system graph.
+     */
+    private final transient AtomicLong mcPosition;
+
+    /**
+     * Index of the system graph keyed on the identity of the original component
+     * instance (i.e. beneath any delegator proxies).
+     */
+    private final transient ConcurrentMap<ComponentKey, OCMGraphNode> componentIndex;
+
+    /**
+     * Index of the system graph keyed on the lower case unique component name.
+     */
+    private final transient ConcurrentMap<String, OCMGraphNode> nameIndex;
+
+    /**
+     * The table of live connections in the system graph, keyed by connection id.
+     */
+    private final transient OCMConnTable connections;
 
     /**
      * The unique id generator for the system graph.
      */
-    private transient long mcConnID;
+    private final transient AtomicLong mcConnID;
 
     /**
      * The internal meta interface object for the kernel.
@@ -74,14 +111,25 @@ public class OpenCOM implements IOpenCOM, IMetaArchitecture, IUnknown, IMetaInte
      */
     private final transient MetaDataFlow metaDFD;
 
+    /**
+     * The resolved meta-information of each component type instantiated so far,
+     * keyed by the fully qualified type name.
+     */
+    private final transient ConcurrentMap<String, OCMComponentType> typeCache;
+
     /**
      * Constructor that creates a new instance of the OpenCOM runtime kernel.
      */
     public OpenCOM() {
-        mGraph = new ArrayList();
-        mcConnID = 1;
+        mGraph = new ConcurrentSkipListMap<>();
+        mcPosition = new AtomicLong();
+        componentIndex = new ConcurrentHashMap<>();
+        nameIndex = new ConcurrentHashMap<>();
+        connections = new OCMConnTable();
+        mcConnID = new AtomicLong(1);
         metaObject = new MetaInterface((IOpenCOM) this, this);
         metaDFD = new MetaDataFlow();
+        typeCache = new ConcurrentHashMap<>();
     }
 
     // Implementation for the IMetaArchitecture interface of the OpenCOM runtime
@@ -97,14 +145,13 @@ public class OpenCOM implements IOpenCOM, IMetaArchitecture, IUnknown, IMetaInte
     */
     @Override
     public final int enumConnsFromRecp(final IUnknown pIUnknown, final String riid, final List<Long> ppConnsFromRecp) {
-        // Traverse the system graph, we are looking for pIUnknown component first
-        for (OCMGraphNode mGraph1 : mGraph) {
-            if (mGraph1.getComponent().hashCode() == pIUnknown.hashCode()) {
-                // Found the component, now we will traverse its list of connections on its riid receptacle
-                final List<OCMGraphRecpInfo> recpIterator = mGraph1.getReceptacles();
-                OCMGraphRecpInfo tempRecpInfo;
-                for (OCMGraphRecpInfo recpIterator1 : recpIterator) {
-                    tempRecpInfo = recpIterator1;
+        // Look up the pIUnknown component in the system graph
+        final OCMGraphNode node = findNode(pIUnknown);
+        if (node != null) {
+            // Found the component, now we will traverse its list of connections on its riid receptacle
+            final List<OCMGraphRecpInfo> recps = node.getReceptacles();
+            synchronized (recps) {
+                for (OCMGraphRecpInfo tempRecpInfo : recps) {
                     if (tempRecpInfo.getInterfaceType().equalsIgnoreCase(riid)) {
                         // For matching receptacle-interface type we add the connection ID to the output parameter
                         ppConnsFromRecp.add(tempRecpInfo.getConnectionID());
@@ -125,13 +172,13 @@ public class OpenCOM implements IOpenCOM, IMetaArchitecture, IUnknown, IMetaInte
     */
     @Override
     public final int enumConnsToIntf(final IUnknown pIUnknown, final String riid, final List<Long> ppConnsToIntf) {
-        // Traverse the system graph, we are looking for pIUnknown component first
-        for (OCMGraphNode mGraph1 : mGraph) {
-            if (mGraph1.getComponent().hashCode() == pIUnknown.hashCode()) {
-                // Found the component, now we will traverse its list of interfaces
-                final List<OCMGraphIntfInfo> interfaceIterator = mGraph1.getInterfaces();
-
-                for (OCMGraphIntfInfo interfaceIterator1 : interfaceIterator) {
+        // Look up the pIUnknown component in the system graph
+        final OCMGraphNode node = findNode(pIUnknown);
+        if (node != null) {
+            // Found the component, now we will traverse its list of interfaces
+            final List<OCMGraphIntfInfo> intfs = node.getInterfaces();
+            synchronized (intfs) {
+                for (OCMGraphIntfInfo interfaceIterator1 : intfs) {
                     if (interfaceIterator1.getInterfaceType().equalsIgnoreCase(riid)) {
                         // Found the interface type, add the connection ID to the output parameter
                         ppConnsToIntf.add(interfaceIterator1.getConnID());
@@ -154,15 +201,22 @@ public class OpenCOM implements IOpenCOM, IMetaArchitecture, IUnknown, IMetaInte
     */
     @Override
     public final Object queryInterface(final String iName) {
-        final List<String> query = new ArrayList();
-        metaObject.readInterfaceNames(this.getClass(), query);
-        String interfaceName;
-        for (String query1 : query) {
-            interfaceName = query1;
-            interfaceName = interfaceName.substring(interfaceName.lastIndexOf('.') + 1, interfaceName.length());
-            if (interfaceName.equalsIgnoreCase(iName)) {
-                return this;
-            }
+        if (OCMInterfaceTable.forClass(getClass()).contains(iName)) {
+            return this;
+        }
+        return null;
+    }
+
+    /**
+     * Obtain a typed reference to an interface of the runtime.
+     * @param <T> The interface type.
+     * @param interfaceType The Java interface type e.g. IOpenCOM.class.
+     * @return The runtime, null if it does not implement the interface.
+     */
+    @Override
+    public final <T> T queryInterface(final Class<T> interfaceType) {
+        if (OCMInterfaceTable.forClass(getClass()).contains(interfaceType)) {
+            return interfaceType.cast(this);
         }
         return null;
     }
@@ -185,26 +239,99 @@ public class OpenCOM implements IOpenCOM, IMetaArchitecture, IUnknown, IMetaInte
         // Get pIConnections interface from the source component
         final IConnections pIConnections = (IConnections) pIUnkSource.queryInterface(OpenComConstants.CONNECTINTERFACE);
 
+        // Allocate the unique ConnID; an id is never reused even if the connection fails
+        final long pConnID = mcConnID.getAndIncrement();
+
         // Register the information about the new connection to the system graph
-        boolean success = registerConnection(pIUnkSource, pIUnkSink, iid, mcConnID);
+        boolean success = registerConnection(pIUnkSource, pIUnkSink, iid, pConnID);
         if (!success) {
             return -1;
         }
         // Make the connection between the two components
-        success = pIConnections.connect(pIUnkSink, iid, mcConnID);
+        try {
+            success = pIConnections.connect(pIUnkSink, iid, pConnID);
+        } catch (RuntimeException | Error ex) {
+            deRegisterConnection(pConnID);
+            throw ex;
+        }
 
         // If the connection fails we must remove the meta-data
         if (!success) {
-            deRegisterConnection(mcConnID);
+            deRegisterConnection(pConnID);
             return -1;
         }
+        invalidateMemoized(pIUnkSource);
 
-        final long pConnID = mcConnID;
-        //Increment unique ConnID as connection succeeded
-        mcConnID++;
         return pConnID;		// Return the ID of the created connection
     }
 
+    /**
+    * Applies a list of bindings in one operation. Each binding connects the receptacle of
+    * its source component to the interface of its sink component. Either every binding
+    * is made or, if any of them fails or throws, those already made are undone and none
+    * remain; an exception thrown by a receptacle is rethrown after the undo.
+    * @param bindings The source, sink and interface type of each connection.
+    * @return The unique connection ids in the order of the list, null if the batch failed.
+    */
+    @Override
+    public final List<Long> connect(final List<OCMConnInfo> bindings) {
+
+        // Check every source can be connected before touching the graph
+        final IConnections[] sources = new IConnections[bindings.size()];
+        for (int i = 0; i < sources.length; i++) {
+            final OCMConnInfo binding = bindings.get(i);
+            if (binding.getSource() == null || binding.getSink() == null) {
+                return null;
+            }
+            sources[i] = (IConnections) binding.getSource().queryInterface(OpenComConstants.CONNECTINTERFACE);
+            if (sources[i] == null) {
+                return null;
+            }
+        }
+
+        // Reserve a contiguous range of unique ConnIDs for the batch
+        final long firstID = mcConnID.getAndAdd(sources.length);
+        final List<Long> connIDs = new ArrayList<>(sources.length);
+        for (int i = 0; i < sources.length; i++) {
+            final OCMConnInfo binding = bindings.get(i);
+            final long pConnID = firstID + i;
+            final boolean connected;
+            try {
+                registerConnection(binding.getSource(), binding.getSink(), binding.getInterfaceType(), pConnID);
+                connected = sources[i].connect(binding.getSink(), binding.getInterfaceType(), pConnID);
+            } catch (RuntimeException | Error ex) {
+                rollback(sources, bindings, connIDs, pConnID);
+                throw ex;
+            }
+            if (!connected) {
+                rollback(sources, bindings, connIDs, pConnID);
+                return null;
+            }
+            connIDs.add(pConnID);
+        }
+        for (OCMConnInfo binding : bindings) {
+            invalidateMemoized(binding.getSource());
+        }
+        return connIDs;
+    }
+
+    /**
+    * Undo a batch of connections that failed: removes the meta-data of the connection
+    * that failed, then disconnects every connection made before it in reverse order.
+    * @param sources The connections interface of each source in the batch.
+    * @param bindings The bindings of the batch.
+    * @param connIDs The ids of the connections made so far.
+    * @param failedID The id of the connection that failed.
+    */
+    private void rollback(final IConnections[] sources, final List<OCMConnInfo> bindings, final List<Long> connIDs,
+            final long failedID) {
+        deRegisterConnection(failedID);
+        for (int j = connIDs.size() - 1; j >= 0; j--) {
+            sources[j].disconnect(bindings.get(j).getInterfaceType(), connIDs.get(j));
+            deRegisterConnection(connIDs.get(j));
+        }
+    }
+
     /**
     * Private method of the runtime, which is used to add meta-data information abot connections
     * to the run-time graph. This is only ever invoked by the connect method of OpenCOM.
@@ -222,24 +349,26 @@ public class OpenCOM implements IOpenCOM, IMetaArchitecture, IUnknown, IMetaInte
         // Add interface info to front of pGIntfInfo on sink
         final OCMGraphIntfInfo pGIntfInfo = new OCMGraphIntfInfo(connID, pIUnkSource, riid);
 
-        for (int i = 0; i < mGraph.size(); i++) {
-            // Copy IntfInfo onto list
-            if (mGraph.get(i).getComponent().hashCode() == pIUnkSink.hashCode()) {
-                final OCMGraphNode tempP =  mGraph.get(i);
-                tempP.getInterfaces().add(pGIntfInfo);
-                mGraph.set(i, tempP);
-                break;
+        // Copy IntfInfo onto list
+        final OCMGraphNode sinkNode = findNode(pIUnkSink);
+        if (sinkNode != null) {
+            final List<OCMGraphIntfInfo> intfs = sinkNode.getInterfaces();
+            synchronized (intfs) {
+                intfs.add(pGIntfInfo);
             }
         }
-        for (int i = 0; i < mGraph.size(); i++) {
-            // Copy RecpInfo onto list
-            if (mGraph.get(i).getComponent().hashCode() == pIUnkSource.hashCode()) {
-                final OCMGraphNode tempP = mGraph.get(i);
-                tempP.getReceptacles().add(pGRecpInfo);
-                mGraph.set(i, tempP);
-                break;
+        // Copy RecpInfo onto list
+        final OCMGraphNode sourceNode = findNode(pIUnkSource);
+        IUnknown pSource = pIUnkSource;
+        if (sourceNode != null) {
+            final List<OCMGraphRecpInfo> recps = sourceNode.getReceptacles();
+            synchronized (recps) {
+                recps.add(pGRecpInfo);
             }
+            pSource = (IUnknown) sourceNode.getComponent();
         }
+        // Record the connection in the connection table
+        connections.put(connID, new OCMConnInfo(pSource, pIUnkSink, riid));
 
         return true;
     }
@@ -250,133 +379,163 @@ public class OpenCOM implements IOpenCOM, IMetaArchitecture, IUnknown, IMetaInte
     public final IUnknown createInstance(final String componentType, final String componentName)
             throws InvalidComponentTypeException{
 
-        Object pIUnknown = null;                                        // Original version of component before delegators added
-        Class componentClass = null;                                    // Java Class type corresponding to componentType string
-        final List<String> interfaceList = new ArrayList();             // List of interface types provided by the new component
-        Object delComponent = null;                                     // Version of component after delegators are added
-        boolean validComponent = false;
-
         //Has an optional name been supplied ?
         if (componentName != null) {
             //Make sure name is unique
-            for (OCMGraphNode mGraph1 : mGraph) {
-                final OCMGraphNode listElement = (OCMGraphNode) mGraph1;
-                if (listElement.getComponentName().equalsIgnoreCase(componentName)) {
-                    throw new InvalidComponentTypeException(componentName + " is not unique");
-                }
+            if (nameIndex.containsKey(nameKey(componentName))) {
+                throw new InvalidComponentTypeException(componentName + " is not unique");
             }
         }
-        //Now Create component
-        try {
-            componentClass = Class.forName(componentType);
-        } catch (ClassNotFoundException ex) {
-            throw new InvalidComponentTypeException("Unknown component type" + componentType + "; check class name");
+        final OCMGraphNode newVectorElement = newNode(componentType, componentName);
+        //Record it at next free position on graph
+        if (!addNode(newVectorElement, newVectorElement.getComponent())) {
+            // Another thread registered the same name first
+            throw new InvalidComponentTypeException(componentName + " is not unique");
         }
+        addDataProcesses(newVectorElement);
+        return (IUnknown) newVectorElement.getComponent();
+    }
 
-        final Class[] intArgsClass = new Class[] {IUnknown.class};
-        final Object[] intArgs = new Object[] {(IUnknown) this};
-
-        // Use java reflection the instantiate an instance of this component type
-        try {
-            Constructor intArgsConst;
-            intArgsConst = componentClass.getConstructor(intArgsClass);
-            pIUnknown = (IUnknown) intArgsConst.newInstance(intArgs);
-        } catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException excep) {
-           throw new InvalidComponentTypeException("Invalid opencom component constructor in "+ componentType + "; check implementation");
+    /**
+    * Create a number of instances of the same component type in one operation. The
+    * components are named with the given prefix followed by their index in the batch.
+    * Either every component is placed in the graph or, if any of them fails, none is.
+    * @param componentType The Java class of the components.
+    * @param namePrefix The prefix of the unique component names.
+    * @param count The number of components to create.
+    * @return The created components in index order.
+    * @throws InvalidComponentTypeException The type is invalid or a name is not unique.
+    */
+    @Override
+    public final List<IUnknown> createInstances(final String componentType, final String namePrefix, final int count)
+            throws InvalidComponentTypeException {
+        final List<OCMComponentInfo> specs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            specs.add(new OCMComponentInfo(componentType, namePrefix + i));
         }
+        return createInstances(specs);
+    }
 
-        //pIUnknown = componentClass.newInstance();
-        // Find the interfaces of the component type, we need to make sure this is a valid
-        // OpenCOM component i.e. it implements the IUnknown interface
-        addInterfaces(componentClass, interfaceList);
-        String traverseString;
-        for (String interfaceList1 : interfaceList) {
-            traverseString = interfaceList1;
-            traverseString = traverseString.substring(traverseString.lastIndexOf('.') + 1, traverseString.length());
-            if (traverseString.equalsIgnoreCase("IUnknown")) {
-                validComponent = true;
-                break;
+    /**
+    * Create a list of components, each of its own type, in one operation. The components
+    * are built outside the system graph and then added to it together, so that either
+    * every component is placed in the graph or, if any of them fails, none is.
+    * @param components The type and unique name of each component.
+    * @return The created components in the order of the list.
+    * @throws InvalidComponentTypeException A type is invalid or a name is not unique.
+    */
+    @Override
+    public final List<IUnknown> createInstances(final List<OCMComponentInfo> components)
+            throws InvalidComponentTypeException {
+        // Build every node before any of them is visible in the graph
+        final List<OCMGraphNode> nodes = new ArrayList<>(components.size());
+        for (OCMComponentInfo spec : components) {
+            if (spec.getComponentName() != null && nameIndex.containsKey(nameKey(spec.getComponentName()))) {
+                throw new InvalidComponentTypeException(spec.getComponentName() + " is not unique");
             }
+            nodes.add(newNode(spec.getComponentType(), spec.getComponentName()));
         }
 
-        // If it's a valid component then we can add delegators and place it in the graph
-        if (validComponent) {
-            //Record it at next free position on graph
-            final OCMGraphNode newVectorElement = new OCMGraphNode(componentName, componentType, pIUnknown);
-            mGraph.add(newVectorElement);
-            final int index = mGraph.indexOf(newVectorElement);
-            for (String interfaceList1 : interfaceList) {
-                String intfName = interfaceList1;
-                intfName = intfName.substring(intfName.lastIndexOf('.') + 1, intfName.length());
-                if (!(intfName.equalsIgnoreCase(OpenComConstants.CONNECTINTERFACE))
-                        || (intfName.equalsIgnoreCase("IMetaInterface"))
-                        || (intfName.equalsIgnoreCase("ILifeCycle"))) {
-                    // do not attach delegators to standard OpenCOM interfaces
-                    
-                    boolean isPrivate = MetaDataFlow.isPrivateMethod(interfaceList1);
-                    IDelegator pDel = null;
-                    if(isPrivate){
-                        final PrivacyDelegator del = new PrivacyDelegator(pIUnknown, (IMetaInterception) this);
-                        pDel = (IDelegator) del;
-                        final Object tempDel = del.newInstance(pIUnknown);
-                        del.setHigherObject(tempDel);
-                        if (intfName.equalsIgnoreCase("IUnknown")) {
-                            // This is the special case - we need to replace the Component reference
-                            // in the graph with the delegated component reference
-                            delComponent = tempDel;
-                            mGraph.get(index).setComponent(delComponent);
-                        }
+        // Claim all of the names; on a clash release those already claimed
+        for (int i = 0; i < nodes.size(); i++) {
+            final String name = nodes.get(i).getComponentName();
+            if (name != null && nameIndex.putIfAbsent(nameKey(name), nodes.get(i)) != null) {
+                for (int j = 0; j < i; j++) {
+                    final String claimed = nodes.get(j).getComponentName();
+                    if (claimed != null) {
+                        nameIndex.remove(nameKey(claimed), nodes.get(j));
                     }
-                    else {
-                        // We now need to attach delegators to each of the "non-component" interfaces
-                        // Create a new delegator to be attached
-                        final Delegator del = new Delegator(pIUnknown, (IMetaInterception) this);
-                        pDel = (IDelegator) del;
-                        final Object tempDel = del.newInstance(pIUnknown);
-                        del.setHigherObject(tempDel);
-                        if (intfName.equalsIgnoreCase("IUnknown")) {
-                            // This is the special case - we need to replace the Component reference
-                            // in the graph with the delegated component reference
-                            delComponent = tempDel;
-                            mGraph.get(index).setComponent(delComponent);
-                        }
-                    }
-                    
-                    //
-                    boolean isPrivateInterface = MetaDataFlow.isPrivateInterface(interfaceList1);
-                    if (isPrivateInterface) {
-                        DataProcess dProcess = MetaDataFlow.getProcessFromInterface(interfaceList1);
-                        metaDFD.addDataFunction(dProcess);
-                    }
-                    
-                    //Create OCMDelegatorInfo structure for new list entry
-                    //Add it to the list
-                    mGraph.get(index).getDelegators().add(new OCMDelegatorInfo(pDel, intfName));
                 }
+                throw new InvalidComponentTypeException(name + " is not unique");
             }
-        } else {
+        }
+
+        // Reserve a contiguous range of graph positions and publish the nodes
+        long position = mcPosition.getAndAdd(nodes.size());
+        final List<IUnknown> created = new ArrayList<>(nodes.size());
+        for (OCMGraphNode node : nodes) {
+            node.setPosition(position++);
+            componentIndex.put(new ComponentKey(componentKey(node.getComponent())), node);
+            mGraph.put(node.getPosition(), node);
+            addDataProcesses(node);
+            created.add((IUnknown) node.getComponent());
+        }
+        return created;
+    }
+
+    /**
+    * private method that is used by the createInstance methods of OpenCOM. It instantiates
+    * a component and wraps it in its single proxy, returning the graph node describing it.
+    * The node is not placed in the graph, and its data processes are not yet registered.
+    * @param componentType The Java class of the component.
+    * @param componentName The unique name of the component.
+    * @return The new graph node.
+    * @throws InvalidComponentTypeException The type is not a valid OpenCOM component.
+    */
+    private OCMGraphNode newNode(final String componentType, final String componentName)
+            throws InvalidComponentTypeException {
+
+        Object pIUnknown = null;                                        // Original version of component before delegators added
+        Object delComponent = null;                                     // Version of component after delegators are added
+
+        // Find the meta-information about the component type; we need to make sure
+        // this is a valid OpenCOM component i.e. it implements the IUnknown interface
+        final OCMComponentType type = getComponentTypeInfo(componentType);
+        if (!type.isValid()) {
             throw new InvalidComponentTypeException("Component " + componentType +" does not implement IUnknown interface");
         }
-        return (IUnknown) delComponent;
+
+        // Use java reflection the instantiate an instance of this component type
+        try {
+            pIUnknown = (IUnknown) type.getConstructor().newInstance(new Object[] {(IUnknown) this});
+        } catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException excep) {
+           throw new InvalidComponentTypeException("Invalid opencom component constructor in "+ componentType + "; check implementation");
+        }
+
+        // Build the graph node; it is only placed in the graph once complete. The component
+        // is replaced by its single proxy, whose delegators are created when first needed
+        final OCMGraphNode newVectorElement = new OCMGraphNode(componentName, componentType, pIUnknown);
+        final OCMComponentProxy handler = new OCMComponentProxy(pIUnknown, type, (IMetaInterception) this,
+                componentName, newVectorElement.getDelegators());
+        delComponent = handler.getProxy();
+        newVectorElement.setComponent(delComponent);
+        return newVectorElement;
     }
 
     /**
-    * private method that is used only by the createInstance method of OpenCOM. It allows
-    * the list of interfaces of a particular component to be stored in the list passed
-    * as a parameter.
-    * @param component The component type.
-    * @param interfaceList The list of interfaces to be filled.
+    * private method that registers the data process of each interface of a component
+    * with the data flow meta-model, once the component has been placed in the graph.
+    * @param node The graph node of the component.
     */
-    private void addInterfaces(final Class component, final List<String> interfaceList) {
-        final Class[] theInterfaces = component.getInterfaces();
-        if (theInterfaces.length != 0) {
-            for (Class theInterface : theInterfaces) {
-                interfaceList.add(theInterface.getName());
-                addInterfaces(theInterface, interfaceList);
+    private void addDataProcesses(final OCMGraphNode node) {
+        for (OCMComponentType.Interface intf : OCMComponentProxy.forComponent(node.getComponent()).getType().getInterfaces()) {
+            final DataProcess dProcess = intf.newDataProcess();
+            if (dProcess != null) {
+                synchronized (metaDFD) {
+                    metaDFD.addDataFunction(dProcess);
+                }
             }
         }
     }
 
+    /**
+    * private method that is used only by the createInstance method of OpenCOM. It returns
+    * the cached meta-information about a component type, resolving the type the first
+    * time it is instantiated. Types that fail to resolve are not cached.
+    * @param componentType The fully qualified class name of the component.
+    * @return The component type description.
+    * @throws InvalidComponentTypeException The type cannot be resolved.
+    */
+    private OCMComponentType getComponentTypeInfo(final String componentType) throws InvalidComponentTypeException {
+        final OCMComponentType cached = typeCache.get(componentType);
+        if (cached != null) {
+            return cached;
+        }
+        final OCMComponentType resolved = OCMComponentType.resolve(componentType);
+        final OCMComponentType raced = typeCache.putIfAbsent(componentType, resolved);
+        return raced == null ? resolved : raced;
+    }
+
     /**
     * This method deletes the information about a component from the system graph. It does not attempt
     * to delete the instance of the component itself. At present this is left to Garbage Collection. In
@@ -387,61 +546,64 @@ public class OpenCOM implements IOpenCOM, IMetaArchitecture, IUnknown, IMetaInte
     */
     @Override
     public final boolean deleteInstance(final IUnknown pCompToDelete) {
-        for (int i = 0; i < mGraph.size(); i++) {
-            // Find the component in the system graph
-            if (((OCMGraphNode) mGraph.get(i)).getComponent().hashCode() == pCompToDelete.hashCode()) {
-                // Once found, first Call its shutdown() method
-                final ILifeCycle pILifeCycle = (ILifeCycle)   pCompToDelete.queryInterface("ILifeCycle");
-                pILifeCycle.shutdown();
-                // Delete all Connections made to its Interfaces
-                final IMetaInterface pIMetaI = (IMetaInterface)   pCompToDelete.queryInterface(OpenComConstants.METAINTERFACE);
-                // First enumerate the interfaces
-                final List<Class> ppIntf = new ArrayList();
-                final int length = pIMetaI.enumIntfs(ppIntf);
-                // For each interface find if its connected
-                Class interfaceClass;
-                String interfaceName;
-                for (int y = 0; y < length; y++) {
-                    interfaceClass = (Class) ppIntf.get(y);
-                    interfaceName = interfaceClass.getName();
-                    final List<Long> list = new ArrayList();
-                    final int connections = enumConnsToIntf(pCompToDelete, interfaceName, list);
-                    // connections tells us how many connections to delete for this interface
-                    for (int z = 0; z < connections; z++) {
-                        disconnect(list.get(z));
-                    }
-                }
-                //Disconnect all of connections on the receptacles of this component
-                final IConnections pIConnections = (IConnections) pCompToDelete.queryInterface(OpenComConstants.CONNECTINTERFACE);
-                if (pIConnections == null) {
-                        // Can safely remove component node from graph
-                    mGraph.remove(i);
-                    return true;
-                }
-                // If we are here, the IConnections interface IS implemented by the component
-                final List<OCMGraphRecpInfo> recpListVector = mGraph.get(i).getReceptacles();
-                // Travese the list, disconnecting connections directly and removing the meta-data
-                for (OCMGraphRecpInfo recpListVector1 : recpListVector) {
-                    pIConnections.disconnect(recpListVector1.getInterfaceType(), recpListVector1.getConnectionID());
-                    deRegisterConnection(recpListVector1.getConnectionID());
-                }
-                // Disconnect all receptacles bound to this components interfaces.
-                final List<OCMGraphIntfInfo> intfListVector = mGraph.get(i).getInterfaces();
-                IUnknown pParent;
-                IConnections pIntfConnections;
-                for (OCMGraphIntfInfo intfListVector1 : intfListVector) {
-                    pParent = intfListVector1.getSource();
-                    pIntfConnections = (IConnections) pParent.queryInterface("OpenCOM.IConnections");
-                    if (pIntfConnections.disconnect(intfListVector1.getInterfaceType(), intfListVector1.getConnID())) {
-                        deRegisterConnection(intfListVector1.getConnID());
-                    }
-                }
-                // Remove component node from graph
-                mGraph.remove(i);
-                return true;
+        // Find the component in the system graph
+        final OCMGraphNode node = findNode(pCompToDelete);
+        if (node == null) {
+            return false; // Component not in the graph
+        }
+        // Once found, first Call its shutdown() method
+        final ILifeCycle pILifeCycle = (ILifeCycle)   pCompToDelete.queryInterface("ILifeCycle");
+        pILifeCycle.shutdown();
+        // Delete all Connections made to its Interfaces
+        final IMetaInterface pIMetaI = (IMetaInterface)   pCompToDelete.queryInterface(OpenComConstants.METAINTERFACE);
+        // First enumerate the interfaces
+        final List<Class> ppIntf = new ArrayList();
+        final int length = pIMetaI.enumIntfs(ppIntf);
+        // For each interface find if its connected
+        Class interfaceClass;
+        String interfaceName;
+        for (int y = 0; y < length; y++) {
+            interfaceClass = (Class) ppIntf.get(y);
+            interfaceName = interfaceClass.getName();
+            final List<Long> list = new ArrayList();
+            final int connections = enumConnsToIntf(pCompToDelete, interfaceName, list);
+            // connections tells us how many connections to delete for this interface
+            for (int z = 0; z < connections; z++) {
+                disconnect(list.get(z));
             }
         }
-        return false; // Component not in the graph
+        //Disconnect all of connections on the receptacles of this component, if it has any
+        final IConnections pIConnections = (IConnections) pCompToDelete.queryInterface(OpenComConstants.CONNECTINTERFACE);
+        if (pIConnections != null) {
+            // Copy the list as deregistering a connection removes it from the node
+            final List<OCMGraphRecpInfo> recpListVector;
+            synchronized (node.getReceptacles()) {
+                recpListVector = new ArrayList<>(node.getReceptacles());
+            }
+            // Travese the list, disconnecting connections directly and removing the meta-data
+            for (OCMGraphRecpInfo recpListVector1 : recpListVector) {
+                pIConnections.disconnect(recpListVector1.getInterfaceType(), recpListVector1.getConnectionID());
+                deRegisterConnection(recpListVector1.getConnectionID());
+            }
+        }
+        // Disconnect all receptacles bound to this components interfaces, whether or not
+        // the component has receptacles of its own.
+        final List<OCMGraphIntfInfo> intfListVector;
+        synchronized (node.getInterfaces()) {
+            intfListVector = new ArrayList<>(node.getInterfaces());
+        }
+        IUnknown pParent;
+        IConnections pIntfConnections;
+        for (OCMGraphIntfInfo intfListVector1 : intfListVector) {
+            pParent = intfListVector1.getSource();
+            pIntfConnections = (IConnections) pParent.queryInterface(OpenComConstants.CONNECTINTERFACE);
+            pIntfConnections.disconnect(intfListVector1.getInterfaceType(), intfListVector1.getConnID());
+            deRegisterConnection(intfListVector1.getConnID());
+        }
+        // Remove component node from graph
+        invalidateMemoized(node.getComponent());
+        removeNode(node);
+        return true;
     }
 
     /**
@@ -453,7 +615,10 @@ public class OpenCOM implements IOpenCOM, IMetaArchitecture, IUnknown, IMetaInte
     public final boolean disconnect(final long connID) {
 
             // Obtain meta-information about the connection (source, sink, type) using the id
-            final OCMConnInfo pConnInfo = getConnectionInfo(connID);
+            final OCMConnInfo pConnInfo = connections.get(connID);
+            if (pConnInfo == null) {
+                return false;
+            }
 
             // Get the connections interface of receptacle component so we can call its disconnect operation
             final IConnections pIConnections = (IConnections) pConnInfo.getSource().queryInterface(OpenComConstants.CONNECTINTERFACE);
@@ -474,49 +639,91 @@ public class OpenCOM implements IOpenCOM, IMetaArchitecture, IUnknown, IMetaInte
     * @return The connection id, -1 if failed.
     */
     private long deRegisterConnection(final long connID) {
-        OCMConnInfo pConnInfo;
-
-        pConnInfo = getConnectionInfo(connID);
-        List<OCMGraphIntfInfo> kernelIntfs = new ArrayList();
+        // Remove the connection from the connection table
+        final OCMConnInfo pConnInfo = connections.remove(connID);
+        if (pConnInfo == null) {
+            return -1;
+        }
         // Find the sink component (hosting the interface)
         // and remove its meta data for this connection ID
-        for (OCMGraphNode mGraph1 : mGraph) {
-            if (mGraph1.getComponent().hashCode() == pConnInfo.getSink().hashCode()) {
-                // Extract the list of interface connection information stored for the sink component
-                kernelIntfs = mGraph1.getInterfaces();
-                break;
-            }
-        }
-        // Find the Interface information element within the list and remove it
-        for (int i = 0; i < kernelIntfs.size(); i++) {
-            if (kernelIntfs.get(i).getConnID() == connID) {
-                kernelIntfs.remove(i);
-                break;
+        final OCMGraphNode sinkNode = findNode(pConnInfo.getSink());
+        if (sinkNode != null) {
+            // Extract the list of interface connection information stored for the sink component
+            final List<OCMGraphIntfInfo> kernelIntfs = sinkNode.getInterfaces();
+            synchronized (kernelIntfs) {
+                // Find the Interface information element within the list and remove it
+                for (int i = 0; i < kernelIntfs.size(); i++) {
+                    if (kernelIntfs.get(i).getConnID() == connID) {
+                        kernelIntfs.remove(i);
+                        break;
+                    }
+                }
             }
         }
 
         // Find the source component (hosting the receptacle) of this connection ID
         // and remove its meta data for this connection ID
-        List<OCMGraphRecpInfo> kernelRecps = new ArrayList();
-        for (OCMGraphNode mGraph1 : mGraph) {
-            if (mGraph1.getComponent().hashCode() == pConnInfo.getSource().hashCode()) {
-                kernelRecps = mGraph1.getReceptacles();
-                break;
+        final OCMGraphNode sourceNode = findNode(pConnInfo.getSource());
+        if (sourceNode != null) {
+            final List<OCMGraphRecpInfo> kernelRecps = sourceNode.getReceptacles();
+            synchronized (kernelRecps) {
+                for (int i = 0; i < kernelRecps.size(); i++) {
+                    if (kernelRecps.get(i).getConnectionID() == connID) {
+                        kernelRecps.remove(i);
+                        break;
+                    }
+                }
             }
         }
-        for (int i = 0; i < kernelRecps.size(); i++) {
-            if (kernelRecps.get(i).getConnectionID() == connID) {
-                kernelRecps.remove(i);
-                break;
+        invalidateMemoized(pConnInfo.getSource());
+        return connID;
+    }
+
+    /**
+    * Discards the results memoized by the delegators of a component and of every component
+    * that depends on it, i.e. is connected directly or indirectly to its interfaces, so that
+    * no memoized result computed through the old connections is returned. Called once the
+    * connections of the component's receptacles have changed.
+    * @param component The source component of the changed connection.
+    */
+    private void invalidateMemoized(final Object component) {
+        if (!OCMMemoCache.isActive()) {
+            return;
+        }
+        final Set<OCMGraphNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Deque<OCMGraphNode> pending = new ArrayDeque<>();
+        OCMGraphNode node = findNode(component);
+        if (node != null) {
+            pending.add(node);
+        }
+        while ((node = pending.poll()) != null) {
+            if (!visited.add(node)) {
+                continue;
+            }
+            final OCMComponentProxy handler = OCMComponentProxy.forComponent(node.getComponent());
+            if (handler != null) {
+                for (AbstractDelegator del : handler.getDelegators()) {
+                    del.invalidateMemo();
+                }
+            }
+            // Walk back along the connections made to this component's interfaces
+            final List<OCMGraphIntfInfo> intfs;
+            synchronized (node.getInterfaces()) {
+                intfs = new ArrayList<>(node.getInterfaces());
+            }
+            for (OCMGraphIntfInfo intfInfo : intfs) {
+                final OCMGraphNode sourceNode = findNode(intfInfo.getSource());
+                if (sourceNode != null) {
+                    pending.add(sourceNode);
+                }
             }
         }
-        return 0;
     }
 
     @Override
     public final List<IUnknown> enumComponents() {
         List<IUnknown> ppComps = new ArrayList();
-        for (OCMGraphNode mGraph1 : mGraph) {
+        for (OCMGraphNode mGraph1 : mGraph.values()) {
             ppComps.add((IUnknown) mGraph1.getComponent());
         }
         return ppComps;
@@ -529,15 +736,11 @@ public class OpenCOM implements IOpenCOM, IMetaArchitecture, IUnknown, IMetaInte
     */
     @Override
     public final String getComponentName(final IUnknown pIUnknown) {
-        if (pIUnknown == null) {
+        final OCMGraphNode node = findNode(pIUnknown);
+        if (node == null) {
             return null;
         }
-        for (OCMGraphNode mGraph1 : mGraph) {
-            if (mGraph1.getComponent().hashCode() == pIUnknown.hashCode()) {
-                return mGraph1.getComponentName();
-            }
-        }
-        return null;
+        return node.getComponentName();
     }
 
     /**
@@ -551,22 +754,20 @@ public class OpenCOM implements IOpenCOM, IMetaArchitecture, IUnknown, IMetaInte
             return null;
         }
 
-        for (OCMGraphNode mGraph1 : mGraph) {
-            if (mGraph1.getComponentName().equalsIgnoreCase(compName)) {
-                return (IUnknown) mGraph1.getComponent();
-            }
+        final OCMGraphNode node = nameIndex.get(nameKey(compName));
+        if (node == null) {
+            return null;
         }
-        return null;
+        return (IUnknown) node.getComponent();
     }
 
     @Override
     public final String getComponentType(final IUnknown pIUnknown) {
-        for (OCMGraphNode mGraph1 : mGraph) {
-            if (mGraph1.getComponent().hashCode() == pIUnknown.hashCode()) {
-                return mGraph1.getComponentType();
-            }
+        final OCMGraphNode node = findNode(pIUnknown);
+        if (node == null) {
+            return null;
         }
-        return null;
+        return node.getComponentType();
     }
 
     /**
@@ -578,19 +779,7 @@ public class OpenCOM implements IOpenCOM, IMetaArchitecture, IUnknown, IMetaInte
     */
     @Override
     public final OCMConnInfo getConnectionInfo(final long connID) {
-
-        List<OCMGraphRecpInfo> recpInfos;
-        for (OCMGraphNode mGraph1 : mGraph) {
-            recpInfos = mGraph1.getReceptacles();
-            for (OCMGraphRecpInfo recpInfo : recpInfos) {
-                if (recpInfo.getConnectionID() == connID) {
-                    final IUnknown pSinkID = recpInfo.getSinkComponent();
-                    return new OCMConnInfo((IUnknown) mGraph1.getComponent(), pSinkID, recpInfo.getInterfaceType());
-                }
-            }
-        }
-
-        return null;
+        return connections.get(connID);
     }
 
 
@@ -609,21 +798,23 @@ public class OpenCOM implements IOpenCOM, IMetaArchitecture, IUnknown, IMetaInte
     */
     @Override
     public final IDelegator getDelegator(final IUnknown pIUnkParent, final String riid) {
-        //Search components
-        for (OCMGraphNode mGraph1 : mGraph) {
-            //Look for specified component
-            if (mGraph1.getComponent().hashCode() == pIUnkParent.hashCode()) {
-                //Component found!
-                //Search the component's pGDelInfo list
-                final List<OCMDelegatorInfo> pGDelInfo = mGraph1.getDelegators();
-                for (OCMDelegatorInfo delinfo : pGDelInfo) {
-                    if (delinfo.getInterfaceType().equalsIgnoreCase(riid)) {
-                        //There is already a delegator associated to the
-                        //specified interface of this component
-
-                        //Return existing delegator component interface
-                        return delinfo.getDelegator();
-                    }
+        //Look for specified component
+        final OCMGraphNode node = findNode(pIUnkParent);
+        if (node != null) {
+            //Component found! Its delegators are created the first time they are asked for
+            final OCMComponentProxy handler = OCMComponentProxy.forComponent(node.getComponent());
+            if (handler != null) {
+                return handler.getDelegator(riid);
+            }
+            //Search the component's pGDelInfo list
+            final List<OCMDelegatorInfo> pGDelInfo = node.getDelegators();
+            for (OCMDelegatorInfo delinfo : pGDelInfo) {
+                if (delinfo.getInterfaceType().equalsIgnoreCase(riid)) {
+                    //There is already a delegator associated to the
+                    //specified interface of this component
+
+                    //Return existing delegator component interface
+                    return delinfo.getDelegator();
                 }
             }
         }
@@ -631,6 +822,114 @@ public class OpenCOM implements IOpenCOM, IMetaArchitecture, IUnknown, IMetaInte
     }
     
     
+    //! Maintenance of the system graph indexes
+    //////////////////////////////////////////////////////////////////////////
+
+    /**
+    * Finds the node of the system graph for a given component reference. The reference
+    * may be the original component or any of the delegated proxies of that component.
+    * @param component The component reference.
+    * @return The graph node, null if the component is not in the graph.
+    */
+    private OCMGraphNode findNode(final Object component) {
+        if (component == null) {
+            return null;
+        }
+        return componentIndex.get(new ComponentKey(componentKey(component)));
+    }
+
+    /**
+    * Adds a new, fully built node to the system graph and its indexes. The
+    * component name is claimed atomically so that concurrent creations of the
+    * same name cannot both succeed.
+    * @param node The new graph node.
+    * @param component The original (undelegated) component instance.
+    * @return false if the component name is already in use.
+    */
+    private boolean addNode(final OCMGraphNode node, final Object component) {
+        if (node.getComponentName() != null
+                && nameIndex.putIfAbsent(nameKey(node.getComponentName()), node) != null) {
+            return false;
+        }
+        node.setPosition(mcPosition.getAndIncrement());
+        componentIndex.put(new ComponentKey(componentKey(component)), node);
+        mGraph.put(node.getPosition(), node);
+        return true;
+    }
+
+    /**
+    * Removes a node from the system graph and its indexes.
+    * @param node The graph node to remove.
+    */
+    private void removeNode(final OCMGraphNode node) {
+        if (componentIndex.remove(new ComponentKey(componentKey(node.getComponent())), node)) {
+            mGraph.remove(node.getPosition(), node);
+            if (node.getComponentName() != null) {
+                nameIndex.remove(nameKey(node.getComponentName()), node);
+            }
+        }
+    }
+
+    /**
+    * Returns the key of a component in the identity index. Delegated proxies are
+    * resolved to the original component they wrap, so that every reference to the
+    * same component maps onto the same graph node.
+    * @param component The component reference.
+    * @return The original component instance.
+    */
+    private static Object componentKey(final Object component) {
+        if (Proxy.isProxyClass(component.getClass())) {
+            final InvocationHandler handler = Proxy.getInvocationHandler(component);
+            if (handler instanceof OCMComponentProxy) {
+                return ((OCMComponentProxy) handler).getComponent();
+            }
+            if (handler instanceof AbstractDelegator) {
+                return ((AbstractDelegator) handler).obj;
+            }
+        }
+        return component;
+    }
+
+    /**
+    * Returns the key of a component name in the name index. Component names
+    * are unique regardless of case.
+    * @param componentName The component name.
+    * @return The lower case name.
+    */
+    private static String nameKey(final String componentName) {
+        return componentName.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Key of the identity index. Components are compared by reference, whatever
+     * their own equals and hashCode implementations do.
+     */
+    private static final class ComponentKey {
+
+        /**
+         * The original component instance.
+         */
+        private final transient Object component;
+
+        /**
+         * Creates the key of a component.
+         * @param comp The original component instance.
+         */
+        ComponentKey(final Object comp) {
+            component = comp;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(component);
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof ComponentKey && ((ComponentKey) other).component == component;
+        }
+    }
+
     // IUpdateMetaDataFlow
     
 }
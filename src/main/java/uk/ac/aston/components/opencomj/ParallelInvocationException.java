@@ -0,0 +1,75 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+
+package uk.ac.aston.components.opencomj;
+
+/**
+ * Exception identifying the failure of a parallel invocation made through an
+ * OCMMultiReceptacleParallel. It reports the outcome of every call, so that the caller
+ * can tell which connections failed and why.
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public class ParallelInvocationException extends InvocationException {
+
+    /**
+     * The serialization version; the outcomes of the calls are not serialized.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The outcomes of the calls.
+     */
+    private final transient OCMFanOutResult<?> calls;
+
+    /**
+     * Exception identifying the failure of a parallel invocation.
+     * @param exceptionMessage The corresponding error message to tag.
+     * @param outcomes The outcomes of the calls.
+     */
+    public ParallelInvocationException(final String exceptionMessage, final OCMFanOutResult<?> outcomes) {
+        super(exceptionMessage + ": " + outcomes, firstFailure(outcomes));
+        calls = outcomes;
+    }
+
+    /**
+     * Get the outcomes of the calls of the invocation.
+     * @return The result or failure of each call.
+     */
+    public OCMFanOutResult<?> getCalls() {
+        return calls;
+    }
+
+    /**
+     * Find the first exception thrown by a call, reported as the cause.
+     * @param outcomes The outcomes of the calls.
+     * @return The first failure; null if none is an Exception.
+     */
+    private static Exception firstFailure(final OCMFanOutResult<?> outcomes) {
+        for (int i = 0; i < outcomes.getSize(); i++) {
+            if (outcomes.getFailure(i) instanceof Exception) {
+                return (Exception) outcomes.getFailure(i);
+            }
+        }
+        return null;
+    }
+}
@@ -22,15 +22,17 @@ package uk.ac.aston.components.opencomj;
 
 /**
  * Implementation of a semaphore object or use in frameworks readers/writers lock.
+ * It is built on java.util.concurrent rather than on monitor wait/notify, so threads
+ * blocked on a framework lock, virtual threads included, never pin their carrier.
  * @author pjg
  */
 
 public  class Semaphore {
 
     /**
-     * Counter of number of read accesses on the semaphore.
+     * The permits, one per read access available on the semaphore.
      */
-    private transient int counter;
+    private final transient java.util.concurrent.Semaphore permits;
 
     /**
      * Construct the semaphore.
@@ -47,34 +49,24 @@ public  class Semaphore {
         if (iCount < 0) {
             throw new IllegalArgumentException(iCount + " < 0");
         }
-        counter = iCount;
+        permits = new java.util.concurrent.Semaphore(iCount);
     }
 
     /**
      * Increments internal counter, possibly awakening a thread
-     * wait()ing in acquire().
+     * waiting in acquire().
      */
     public final void release() {
-        synchronized (this) {
-            if (counter == 0) {
-                this.notify();
-            }
-            counter++;
-        }
+        permits.release();
     }
 
     /**
      * Decrements internal counter, blocking if the counter is already
      * zero.
      *
-     * @exception InterruptedException passed from this.wait().
+     * @exception InterruptedException if the thread is interrupted while waiting.
      */
     public final void acquire() throws InterruptedException {
-        synchronized (this) {
-            while (counter == 0) {
-                this.wait();
-            }
-            counter--;
-        }
+        permits.acquire();
     }
 }
@@ -0,0 +1,44 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+
+package uk.ac.aston.components.privacy;
+
+/**
+ * Receives the privacy events of PrivacyDelegators: one event for each parameter
+ * annotated Private of each call through the delegator. Events are delivered on the
+ * calling thread, so a sink should do little work per event.
+ * @see PrivacyDelegator#setDefaultSink(IPrivacySink)
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public interface IPrivacySink {
+
+    /**
+     * Called when private data is passed to a component.
+     * @param component The name of the component called.
+     * @param method The name of the method called.
+     * @param parameter The index of the private parameter.
+     * @param action The action declared by the Private annotation.
+     * @param id The data item declared by the Private annotation.
+     */
+    void privateParameter(String component, String method, int parameter, String action, String id);
+}
@@ -21,18 +21,14 @@
 
 package uk.ac.aston.components.privacy;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import uk.ac.aston.components.opencomj.AbstractDelegator;
+import uk.ac.aston.components.opencomj.DispatchTable;
 import uk.ac.aston.components.opencomj.IMetaInterception;
-import uk.ac.aston.components.opencomj.IUnknown;
-import uk.ac.aston.components.opencomj.InvocationException;
-import uk.ac.aston.components.opencomj.MethodList;
-import uk.ac.aston.components.opencomj.OpenComConstants;
-import uk.ac.aston.components.security.dataflow.Private;
+import uk.ac.aston.components.opencomj.InterceptorChain;
+import uk.ac.aston.components.opencomj.OCMLatencyRecorder;
+import uk.ac.aston.components.opencomj.OCMTracer;
 
 
 /**
@@ -46,18 +42,77 @@ import uk.ac.aston.components.security.dataflow.Private;
  * @version 1.2.3
  */
 public class PrivacyDelegator extends AbstractDelegator{
-    
+
     /**
-    * The original Component that we are delegating from.
-    */
-    private final transient Object originalComponent;
- 
+     * The arguments of a call to a method with no parameters.
+     */
+    private static final Object[] NO_ARGS = new Object[0];
+
+    /**
+     * The sink of the delegators that have none of their own.
+     */
+    private static volatile IPrivacySink defaultSink = new PrivacyLogSink();
+
+    /**
+     * The sink of this delegator; null to use the default sink.
+     */
+    private transient volatile IPrivacySink sink;
+
+    /**
+     * The enforcement plans of the methods of the component.
+     */
+    private transient volatile PrivacyPlan.Table plans;
+
+    /**
+     * Set the sink of the privacy events of every delegator that has none of its own.
+     * @param privacySink The sink; null to restore the logging sink.
+     */
+    public static void setDefaultSink(final IPrivacySink privacySink) {
+        defaultSink = privacySink == null ? new PrivacyLogSink() : privacySink;
+    }
+
+    /**
+     * Set the sink of the privacy events of this delegator.
+     * @param privacySink The sink; null to use the default sink.
+     */
+    public final void setPrivacySink(final IPrivacySink privacySink) {
+        sink = privacySink;
+    }
+
+    /**
+     * Enforce a privacy policy on the calls through this delegator, compiling the plans
+     * of the methods of the component if the policy has not seen its class before.
+     * @param policy The policy.
+     */
+    public final void setPolicy(final PrivacyPolicy policy) {
+        plans = policy.plans(obj.getClass());
+    }
+
+    /**
+     * Get the enforcement plan of a method under the policy of this delegator.
+     * @param method The interface method.
+     * @return The plan; a plan with no private parameters if the method has none.
+     */
+    public final PrivacyPlan getPlan(final Method method) {
+        return plans.lookup(method);
+    }
+
+    /**
+     * Get the sink the privacy events of this delegator are reported to.
+     * @return The sink of this delegator, or the default sink if it has none.
+     */
+    public final IPrivacySink getPrivacySink() {
+        final IPrivacySink own = sink;
+        return own != null ? own : defaultSink;
+    }
+
     /**
     * The dynamic proxy creation operation - takes the original component and wraps the
     * dynamic invocation handler around it.
     * @param origObject The object to delegate
      * @return The interceptor object.
     */
+    @Override
     public final Object newInstance(final Object origObject) {
         return java.lang.reflect.Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(),
              origObject.getClass().getInterfaces(), (java.lang.reflect.InvocationHandler) this);
@@ -70,17 +125,18 @@ public class PrivacyDelegator extends AbstractDelegator{
      * @see OpenCOM.IMetaInterception
      */
     public PrivacyDelegator(final Object origObj, final IMetaInterception pIOCM) {
-                    this.originalComponent = origObj;
-          preMethods = new ArrayList();
-          postMethods = new ArrayList();
+          this.obj = origObj;
+          dispatch = DispatchTable.forClass(origObj.getClass());
           pImInterception = pIOCM;
-          metaData = new HashMap();
+          metaData = new ConcurrentHashMap<>();
+          plans = PrivacyPolicy.getDefault().plans(origObj.getClass());
     }
 
     /**
      * invoke is called on this dynamic proxy whenever a method of the "inner" component
      * is invoked. Therefore, it will ensure that the pre methods are called before the actual
-     * operation and the post methods afterwards.
+     * operation and the post methods afterwards. Each private parameter of the method is
+     * first reported to the privacy sink and then treated as the privacy policy requires.
      * @param proxy the proxy component.
      * @param method The method to be invoked.
      * @param argsList An object array with all the arguments of the original invocation.
@@ -89,76 +145,45 @@ public class PrivacyDelegator extends AbstractDelegator{
      */
     @Override
     public final Object invoke(final Object proxy, final Method method, Object[] argsList) throws Throwable {
-        Object result = -1;
-
+        final DispatchTable.Target target = dispatch.lookup(method);
         if (argsList == null) {
-            argsList = new Object[0];
+            argsList = NO_ARGS;
+        }
+
+        // QI is a special case not to intercept
+        if (target.isQueryInterface()) {
+            return invokeQueryInterface(target, proxy, argsList);
+        }
+
+        final PrivacyPlan plan = plans.lookup(method);
+        if (plan.isPrivate()) {
+            report(plan.getDescriptor(), method);
+            plan.apply(argsList);
         }
 
-        try {
-            // QI is a special case not to intercept
-            if (method.getName().equalsIgnoreCase(OpenComConstants.QUERYI)) {
-                result = method.invoke(originalComponent, argsList);
-                final String intfName = (String) argsList[0].toString();
-                if ((!(intfName.equalsIgnoreCase(OpenComConstants.CONNECTINTERFACE))
-                         || (intfName.equalsIgnoreCase(OpenComConstants.METAINTERFACE))
-                         || (intfName.equalsIgnoreCase(OpenComConstants.LIFEINTERFACE))) && (result != null)) {
-
-                        // Ensure the QI passes back the proxy object not the original component
-                        final AbstractDelegator del = (AbstractDelegator) pImInterception.getDelegator((IUnknown) proxy, argsList[0].toString());
-                        if (del != null) {
-                            result = del.higherObject;
-                        }
-                }
-            } else {
-            
-                Annotation[][] parameterAnnotations = method.getParameterAnnotations();
-
-                for(Annotation[] annotations : parameterAnnotations){
-                  for(Annotation annotation : annotations){
-                    if(annotation instanceof Private){
-                        Private myAnnotation = (Private) annotation;
-                        System.out.println("action : " + myAnnotation.action());
-                        System.out.println("field : " + myAnnotation.id());
-                    }
-                  }
-                }
-
-                // Invoke each of the pre-methods in order (list traversal)
-                Object[] params = new Object[2];
-                params[0] = method.getName();
-                params[1] = argsList;
-                for (MethodList preMethod : preMethods) {
-                    final Integer res = (Integer) preMethod.getMethod().invoke(preMethod.getObject(), params);
-                    if (res != 0) {
-                        throw new InvocationException("PreMethod halted invocation");
-                    }
-                }
-                // Invoke the actual method
-                result = method.invoke(originalComponent, argsList);
-
-                // Invoke each of the post-methods in order (list traversal)
-                Object[] arguments = new Object[argsList.length + 1];
-                for (MethodList postMethod : postMethods) {
-                    arguments[0] = result;
-                    System.arraycopy(argsList, 0, arguments, 1, argsList.length);
-                    params[1] = arguments;
-                    final Object tempResult = postMethod.getMethod().invoke(postMethod.getObject(), params);
-                    argsList = (Object[]) params[1];
-                    try {
-                        if (((Integer) tempResult) != 0) {
-                            result = tempResult;
-                        }
-                    } catch (ClassCastException e) {
-                        result = tempResult;
-                    }
-                }
-
-            }
-        } catch (InvocationTargetException e) {
-             throw e.getTargetException();
+        final InterceptorChain chain = interceptors.get().forMethod(method);
+        final OCMLatencyRecorder recorder = getLatencyRecorder();
+        final OCMTracer tracer = OCMTracer.getActive();
+        if (tracer != null) {
+            return invokeTraced(tracer, recorder, chain, target, method, argsList);
+        } else if (recorder != null) {
+            return invokeRecorded(recorder, chain, target, method, argsList);
+        }
+        return invokeIntercepted(chain, target, method, argsList);
+    }
+
+    /**
+     * Report the private parameters of a call to the privacy sink.
+     * @param privacy The privacy descriptor of the method.
+     * @param method The method invoked.
+     */
+    private void report(final PrivacyDescriptor privacy, final Method method) {
+        final IPrivacySink target = getPrivacySink();
+        final String component = getComponentName();
+        for (int i = 0; i < privacy.size(); i++) {
+            target.privateParameter(component, method.getName(), privacy.getParameter(i), privacy.getAction(i),
+                    privacy.getId(i));
         }
-         return result;
     }
 
 }
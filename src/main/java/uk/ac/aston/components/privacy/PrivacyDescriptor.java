@@ -0,0 +1,147 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+
+package uk.ac.aston.components.privacy;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import uk.ac.aston.components.security.dataflow.Private;
+
+/**
+ * The privacy metadata of an interface method: which of its parameters are annotated
+ * Private, with the action and data item of each. The annotations of a method are read
+ * once, when its PrivacyPlan is compiled, and the descriptor is kept by the plan, so calls
+ * never scan them.
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class PrivacyDescriptor {
+
+    /**
+     * The descriptor of a method with no private parameters.
+     */
+    private static final PrivacyDescriptor NONE = new PrivacyDescriptor(new int[0], new String[0], new String[0]);
+
+    /**
+     * The indices of the private parameters.
+     */
+    private final transient int[] parameters;
+
+    /**
+     * The action of each private parameter.
+     */
+    private final transient String[] actions;
+
+    /**
+     * The data item of each private parameter.
+     */
+    private final transient String[] ids;
+
+    /**
+     * Creates a new descriptor.
+     * @param indices The indices of the private parameters.
+     * @param parameterActions The action of each.
+     * @param parameterIds The data item of each.
+     */
+    private PrivacyDescriptor(final int[] indices, final String[] parameterActions, final String[] parameterIds) {
+        parameters = indices;
+        actions = parameterActions;
+        ids = parameterIds;
+    }
+
+    /**
+     * Read the descriptor of a method from the annotations of its parameters. The result
+     * is not cached here; a PrivacyPlan keeps the descriptor of its method.
+     * @param method The interface method.
+     * @return The descriptor, with no parameters if none is private.
+     */
+    public static PrivacyDescriptor forMethod(final Method method) {
+        final List<Integer> indices = new ArrayList<>();
+        final List<Private> annotations = new ArrayList<>();
+        final Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+        for (int i = 0; i < parameterAnnotations.length; i++) {
+            for (Annotation annotation : parameterAnnotations[i]) {
+                if (annotation instanceof Private) {
+                    indices.add(i);
+                    annotations.add((Private) annotation);
+                }
+            }
+        }
+        if (indices.isEmpty()) {
+            return NONE;
+        }
+        final int[] parameterIndices = new int[indices.size()];
+        final String[] parameterActions = new String[indices.size()];
+        final String[] parameterIds = new String[indices.size()];
+        for (int i = 0; i < parameterIndices.length; i++) {
+            parameterIndices[i] = indices.get(i);
+            parameterActions[i] = annotations.get(i).action();
+            parameterIds[i] = annotations.get(i).id();
+        }
+        return new PrivacyDescriptor(parameterIndices, parameterActions, parameterIds);
+    }
+
+    /**
+     * Check whether the method has private parameters.
+     * @return true if any parameter is annotated Private.
+     */
+    public boolean isPrivate() {
+        return parameters.length != 0;
+    }
+
+    /**
+     * Get the number of private parameters.
+     * @return The count.
+     */
+    public int size() {
+        return parameters.length;
+    }
+
+    /**
+     * Get the index of a private parameter in the parameter list of the method.
+     * @param entry The private parameter, from 0 to size() - 1.
+     * @return The parameter index.
+     */
+    public int getParameter(final int entry) {
+        return parameters[entry];
+    }
+
+    /**
+     * Get the action of a private parameter.
+     * @param entry The private parameter, from 0 to size() - 1.
+     * @return The action declared by the annotation.
+     */
+    public String getAction(final int entry) {
+        return actions[entry];
+    }
+
+    /**
+     * Get the data item of a private parameter.
+     * @param entry The private parameter, from 0 to size() - 1.
+     * @return The id declared by the annotation.
+     */
+    public String getId(final int entry) {
+        return ids[entry];
+    }
+}
@@ -0,0 +1,49 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+
+package uk.ac.aston.components.privacy;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The default privacy sink, logging each event at level FINE to the logger
+ * uk.ac.aston.components.privacy. Nothing is formatted unless that level is enabled.
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class PrivacyLogSink implements IPrivacySink {
+
+    /**
+     * The logger the events are written to.
+     */
+    private static final Logger LOGGER = Logger.getLogger("uk.ac.aston.components.privacy");
+
+    @Override
+    public void privateParameter(final String component, final String method, final int parameter,
+            final String action, final String id) {
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.log(Level.FINE, "component={0} method={1} parameter={2} action={3} id={4}",
+                    new Object[] {component, method, parameter, action, id});
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+
+package uk.ac.aston.components.privacy;
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+import uk.ac.aston.components.opencomj.OCMMethodCache;
+
+/**
+ * The enforcement plan of one interface method under a privacy policy: the treatment of
+ * each of its private parameters, compiled into the transform applied to the argument.
+ * Masking and dropping replace an argument by a constant and never allocate; hashing
+ * allocates the hashed value. A method with no private parameters has an empty plan and
+ * its calls are not changed.
+ * @see PrivacyPolicy
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class PrivacyPlan {
+
+    /**
+     * The plan of a method with no private parameters.
+     */
+    static final PrivacyPlan NONE = new PrivacyPlan(null, new int[0], operatorArray(new ArrayList<>()), null);
+
+    /**
+     * The mask of a string parameter.
+     */
+    public static final String MASKED = "****";
+
+    /**
+     * The digest used to hash strings by each thread.
+     */
+    private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    });
+
+    /**
+     * The privacy metadata of the method; null for the empty plan.
+     */
+    private final transient PrivacyDescriptor descriptor;
+
+    /**
+     * The indices of the parameters transformed.
+     */
+    private final transient int[] indices;
+
+    /**
+     * The transform of each parameter transformed.
+     */
+    private final transient UnaryOperator<Object>[] transforms;
+
+    /**
+     * The message of the SecurityException refusing every call; null if calls are allowed.
+     */
+    private final transient String denied;
+
+    /**
+     * Creates a new plan.
+     * @param privacy The privacy metadata of the method.
+     * @param parameters The indices of the parameters transformed.
+     * @param operators The transform of each.
+     * @param denial The reason calls are refused, null if they are allowed.
+     */
+    private PrivacyPlan(final PrivacyDescriptor privacy, final int[] parameters, final UnaryOperator<Object>[] operators,
+            final String denial) {
+        descriptor = privacy;
+        indices = parameters;
+        transforms = operators;
+        denied = denial;
+    }
+
+    /**
+     * Compile the plan of a method.
+     * @param policy The privacy policy.
+     * @param method The interface method.
+     * @return The plan; NONE if the method has no private parameters.
+     */
+    static PrivacyPlan compile(final PrivacyPolicy policy, final Method method) {
+        final PrivacyDescriptor privacy = PrivacyDescriptor.forMethod(method);
+        if (!privacy.isPrivate()) {
+            return NONE;
+        }
+        final Class<?>[] types = method.getParameterTypes();
+        final List<Integer> parameters = new ArrayList<>();
+        final List<UnaryOperator<Object>> operators = new ArrayList<>();
+        String denial = null;
+        for (int i = 0; i < privacy.size(); i++) {
+            final String treatment = policy.getTreatment(privacy.getAction(i), privacy.getId(i));
+            if (treatment.equals(PrivacyPolicy.DENY)) {
+                if (denial == null) {
+                    denial = "Privacy policy denies " + privacy.getAction(i) + " of " + privacy.getId(i);
+                }
+            } else if (!treatment.equals(PrivacyPolicy.ALLOW)) {
+                parameters.add(privacy.getParameter(i));
+                operators.add(transform(treatment, types[privacy.getParameter(i)], policy.getSalt()));
+            }
+        }
+        final int[] parameterIndices = new int[parameters.size()];
+        for (int i = 0; i < parameterIndices.length; i++) {
+            parameterIndices[i] = parameters.get(i);
+        }
+        return new PrivacyPlan(privacy, parameterIndices, operatorArray(operators), denial);
+    }
+
+    /**
+     * Copy the transforms of a plan to an array, which cannot be created with its type
+     * argument.
+     * @param operators The transforms.
+     * @return The array of the transforms.
+     */
+    @SuppressWarnings("unchecked")
+    private static UnaryOperator<Object>[] operatorArray(final List<UnaryOperator<Object>> operators) {
+        return (UnaryOperator<Object>[]) operators.toArray(new UnaryOperator<?>[operators.size()]);
+    }
+
+    /**
+     * Compile the transform of a parameter.
+     * @param treatment mask, hash or drop.
+     * @param type The declared type of the parameter.
+     * @param salt The key of the hash treatment.
+     * @return The transform of the argument.
+     */
+    private static UnaryOperator<Object> transform(final String treatment, final Class<?> type, final long salt) {
+        final boolean text = type == String.class || type == CharSequence.class;
+        if (treatment.equals(PrivacyPolicy.MASK)) {
+            final Object mask = text ? MASKED : (type == char.class || type == Character.class) ? (Object) '*' : zero(type);
+            return value -> value == null ? null : mask;
+        }
+        if (treatment.equals(PrivacyPolicy.HASH)) {
+            if (text) {
+                return value -> value == null ? null : hash(value.toString(), salt);
+            }
+            if (type == int.class || type == Integer.class) {
+                return value -> value == null ? null : (int) mix(((Integer) value) ^ salt);
+            } else if (type == long.class || type == Long.class) {
+                return value -> value == null ? null : mix(((Long) value) ^ salt);
+            } else if (type == short.class || type == Short.class) {
+                return value -> value == null ? null : (short) mix(((Short) value) ^ salt);
+            } else if (type == byte.class || type == Byte.class) {
+                return value -> value == null ? null : (byte) mix(((Byte) value) ^ salt);
+            } else if (type == char.class || type == Character.class) {
+                return value -> value == null ? null : (char) mix(((Character) value) ^ salt);
+            }
+        }
+        // Dropped, or a value that cannot be hashed to its own type
+        final Object empty = zero(type);
+        return value -> empty;
+    }
+
+    /**
+     * Get the value replacing a dropped argument.
+     * @param type The declared type of the parameter.
+     * @return Zero of a primitive type, null otherwise.
+     */
+    private static Object zero(final Class<?> type) {
+        if (!type.isPrimitive() && !Number.class.isAssignableFrom(type) && type != Boolean.class) {
+            return null;
+        }
+        if (type == int.class || type == Integer.class) {
+            return 0;
+        } else if (type == long.class || type == Long.class) {
+            return 0L;
+        } else if (type == double.class || type == Double.class) {
+            return 0.0d;
+        } else if (type == float.class || type == Float.class) {
+            return 0.0f;
+        } else if (type == short.class || type == Short.class) {
+            return (short) 0;
+        } else if (type == byte.class || type == Byte.class) {
+            return (byte) 0;
+        } else if (type == char.class) {
+            return (char) 0;
+        } else if (type == boolean.class || type == Boolean.class) {
+            return Boolean.FALSE;
+        }
+        return null;
+    }
+
+    /**
+     * Mix the bits of a number, the finaliser of MurmurHash3.
+     * @param value The number.
+     * @return The mixed number.
+     */
+    private static long mix(final long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Hash a string with a key.
+     * @param value The string.
+     * @param salt The key.
+     * @return The hex SHA-256 digest of the key and the string.
+     */
+    private static String hash(final String value, final long salt) {
+        final MessageDigest digest = DIGESTS.get();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            digest.update((byte) (salt >>> shift));
+        }
+        final byte[] bytes = digest.digest(value.getBytes(StandardCharsets.UTF_8));
+        final char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = Character.forDigit((bytes[i] >> 4) & 0xf, 16);
+            hex[2 * i + 1] = Character.forDigit(bytes[i] & 0xf, 16);
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Check whether the method has private parameters.
+     * @return false for the empty plan.
+     */
+    public boolean isPrivate() {
+        return descriptor != null;
+    }
+
+    /**
+     * Get the privacy metadata of the method.
+     * @return The descriptor; null for the empty plan.
+     */
+    public PrivacyDescriptor getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * Check whether the plan refuses every call.
+     * @return true if a private parameter is denied.
+     */
+    public boolean isDenied() {
+        return denied != null;
+    }
+
+    /**
+     * Apply the plan to the arguments of a call, replacing them in place.
+     * @param args The arguments of the call.
+     * @throws SecurityException The policy denies the call; it is unchecked, so that it
+     * reaches the caller of any interface method as it is.
+     */
+    public void apply(final Object[] args) {
+        if (denied != null) {
+            throw new SecurityException(denied);
+        }
+        for (int i = 0; i < indices.length; i++) {
+            args[indices[i]] = transforms[i].apply(args[indices[i]]);
+        }
+    }
+
+    /**
+     * The plans of the interface methods of a component class under a policy. The plans
+     * are compiled when the table is built, i.e. when the first delegator of the class
+     * is created under the policy.
+     */
+    static final class Table {
+
+        /**
+         * The plan of each interface method of the class.
+         */
+        private final transient Map<Method, PrivacyPlan> compiled = new HashMap<>();
+
+        /**
+         * The plan of each Method instance called so far.
+         */
+        private final transient OCMMethodCache<PrivacyPlan> resolved = new OCMMethodCache<>(this::resolve);
+
+        /**
+         * The policy the plans are compiled under.
+         */
+        private final transient PrivacyPolicy policy;
+
+        /**
+         * Compile the plans of a component class.
+         * @param owner The policy.
+         * @param type The component class.
+         */
+        Table(final PrivacyPolicy owner, final Class<?> type) {
+            policy = owner;
+            for (Class<?> intf : type.getInterfaces()) {
+                for (Method method : intf.getMethods()) {
+                    compiled.put(method, compile(owner, method));
+                }
+            }
+        }
+
+        /**
+         * Get the plan of a method.
+         * @param method The interface method.
+         * @return The plan, NONE if the method has no private parameters.
+         */
+        PrivacyPlan lookup(final Method method) {
+            return resolved.get(method);
+        }
+
+        /**
+         * Find the plan of a Method instance called for the first time.
+         * @param method The interface method.
+         * @return The plan compiled with the table, or compiled now for a method of another class.
+         */
+        private PrivacyPlan resolve(final Method method) {
+            final PrivacyPlan plan = compiled.get(method);
+            return plan != null ? plan : compile(policy, method);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+
+package uk.ac.aston.components.privacy;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The privacy policy enforced by PrivacyDelegators on the parameters annotated Private.
+ * A rule gives the treatment of the parameters with a given action and data item:
+ * <ul>
+ * <li>allow (the default) - the value is passed unchanged.</li>
+ * <li>mask - the value is replaced by a constant: **** for a string, zero for a number,
+ * false for a boolean, * for a character and null for any other object.</li>
+ * <li>hash - the value is replaced by a keyed hash of itself, so equal values remain equal:
+ * a hex digest for a string, a number of the same type for an integral number; other
+ * values are dropped.</li>
+ * <li>drop - the value is replaced by null, or zero for a primitive parameter.</li>
+ * <li>deny - the call is refused with a SecurityException.</li>
+ * </ul>
+ * The action or data item of a rule may be *, matching any; the most specific rule
+ * applies. Each PrivacyDelegator compiles the plan of every method of its component
+ * when it is created, from the default policy unless given another; a change to the
+ * rules applies to the delegators created, or given the policy, afterwards. The default
+ * policy is read from the opencomj.privacy.policy system property, a comma separated list
+ * of action:id=treatment rules, e.g. read:age=mask,*:ssn=deny.
+ *
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class PrivacyPolicy {
+
+    /**
+     * The system property giving the rules of the default policy.
+     */
+    public static final String POLICY_PROPERTY = "opencomj.privacy.policy";
+
+    /**
+     * Treatment passing the value unchanged.
+     */
+    public static final String ALLOW = "allow";
+
+    /**
+     * Treatment replacing the value by a constant.
+     */
+    public static final String MASK = "mask";
+
+    /**
+     * Treatment replacing the value by a keyed hash of itself.
+     */
+    public static final String HASH = "hash";
+
+    /**
+     * Treatment replacing the value by null or zero.
+     */
+    public static final String DROP = "drop";
+
+    /**
+     * Treatment refusing the call.
+     */
+    public static final String DENY = "deny";
+
+    /**
+     * Matches any action or data item in a rule.
+     */
+    public static final String ANY = "*";
+
+    /**
+     * The policy of the delegators given no other.
+     */
+    private static volatile PrivacyPolicy defaultPolicy;
+
+    /**
+     * The treatment of each action and data item, keyed action:id.
+     */
+    private final transient Map<String, String> rules = new HashMap<>();
+
+    /**
+     * The key of the hash treatment.
+     */
+    private final transient long salt;
+
+    /**
+     * The plans of each component class compiled under the current rules; replaced when
+     * the rules change.
+     */
+    private transient volatile ClassValue<PrivacyPlan.Table> plans = newPlans();
+
+    /**
+     * Creates a new policy allowing everything, hashing with a random key.
+     */
+    public PrivacyPolicy() {
+        this(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Creates a new policy allowing everything.
+     * @param hashKey The key of the hash treatment, so that hashes are stable across runs.
+     */
+    public PrivacyPolicy(final long hashKey) {
+        salt = hashKey;
+    }
+
+    /**
+     * Get the policy of the delegators given no other, created from the
+     * opencomj.privacy.policy system property the first time it is used.
+     * @return The default policy.
+     */
+    public static synchronized PrivacyPolicy getDefault() {
+        if (defaultPolicy == null) {
+            defaultPolicy = parse(System.getProperty(POLICY_PROPERTY, ""));
+        }
+        return defaultPolicy;
+    }
+
+    /**
+     * Set the policy of the delegators created from now on and given no other.
+     * @param policy The policy.
+     */
+    public static synchronized void setDefault(final PrivacyPolicy policy) {
+        defaultPolicy = policy;
+    }
+
+    /**
+     * Create a policy from a list of rules.
+     * @param spec Comma separated action:id=treatment rules.
+     * @return The policy.
+     * @throws IllegalArgumentException A rule is malformed.
+     */
+    public static PrivacyPolicy parse(final String spec) {
+        final PrivacyPolicy policy = new PrivacyPolicy();
+        for (String rule : spec.split(",")) {
+            final String trimmed = rule.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            final int colon = trimmed.indexOf(':');
+            final int equals = trimmed.indexOf('=');
+            if (colon < 0 || equals < colon) {
+                throw new IllegalArgumentException("Invalid privacy rule " + trimmed);
+            }
+            policy.addRule(trimmed.substring(0, colon).trim(), trimmed.substring(colon + 1, equals).trim(),
+                    trimmed.substring(equals + 1).trim());
+        }
+        return policy;
+    }
+
+    /**
+     * Add a rule, replacing any rule for the same action and data item.
+     * @param action The action of the Private annotation, or * for any.
+     * @param id The data item of the Private annotation, or * for any.
+     * @param treatment allow, mask, hash, drop or deny.
+     * @throws IllegalArgumentException The treatment is unknown.
+     */
+    public synchronized void addRule(final String action, final String id, final String treatment) {
+        rules.put(action + ':' + id, normalise(treatment));
+        plans = newPlans();
+    }
+
+    /**
+     * Get the treatment of the parameters with a given action and data item.
+     * @param action The action of the Private annotation.
+     * @param id The data item of the Private annotation.
+     * @return The treatment of the most specific rule; allow if no rule matches.
+     */
+    public synchronized String getTreatment(final String action, final String id) {
+        final String[] keys = {action + ':' + id, action + ':' + ANY, ANY + ':' + id, ANY + ':' + ANY};
+        for (String key : keys) {
+            final String treatment = rules.get(key);
+            if (treatment != null) {
+                return treatment;
+            }
+        }
+        return ALLOW;
+    }
+
+    /**
+     * Get the key of the hash treatment.
+     * @return The key.
+     */
+    long getSalt() {
+        return salt;
+    }
+
+    /**
+     * Get the plans of the methods of a component class under the current rules.
+     * @param type The component class.
+     * @return The plans, compiled the first time the class is seen.
+     */
+    PrivacyPlan.Table plans(final Class<?> type) {
+        return plans.get(type);
+    }
+
+    /**
+     * Create an empty cache of plans under the current rules.
+     * @return The cache.
+     */
+    private ClassValue<PrivacyPlan.Table> newPlans() {
+        return new ClassValue<PrivacyPlan.Table>() {
+            @Override
+            protected PrivacyPlan.Table computeValue(final Class<?> type) {
+                return new PrivacyPlan.Table(PrivacyPolicy.this, type);
+            }
+        };
+    }
+
+    /**
+     * Check a treatment name and return its constant.
+     * @param treatment The treatment, in any case.
+     * @return The constant naming it.
+     * @throws IllegalArgumentException The treatment is unknown.
+     */
+    private static String normalise(final String treatment) {
+        final String name = treatment.toLowerCase(Locale.ROOT);
+        for (String known : new String[] {ALLOW, MASK, HASH, DROP, DENY}) {
+            if (known.equals(name)) {
+                return known;
+            }
+        }
+        throw new IllegalArgumentException("Unknown privacy treatment " + treatment);
+    }
+}
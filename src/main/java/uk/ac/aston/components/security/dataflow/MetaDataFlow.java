@@ -82,18 +82,7 @@ public class MetaDataFlow implements IUpdateMetaDataFlow, IQueryMetaDataFlow{
     
     public static DataProcess getProcessFromInterface(String interfaceClass){
         try {
-            Class<?> cls = Class.forName(interfaceClass);
-            Annotation[] annotations = cls.getAnnotations();
-
-            for(Annotation annotation : annotations){
-                if(annotation instanceof PrivacyFunction){
-                    String function = ((PrivacyFunction) annotation).function();
-                    String id = ((PrivacyFunction) annotation).id();
-                    return new DataProcess(id, function);
-                }
-            }
-            
-            return null;
+            return getProcessFromInterface(Class.forName(interfaceClass));
         }
         catch(ClassNotFoundException e){
             System.err.println("Error reading Class interface from string - " + e.getMessage());
@@ -101,16 +90,47 @@ public class MetaDataFlow implements IUpdateMetaDataFlow, IQueryMetaDataFlow{
         }
     }
     
+    /**
+     * Read the data process described by the PrivacyFunction annotation of
+     * an interface.
+     * @param cls The interface type.
+     * @return The data process, null if the interface is not annotated.
+     */
+    public static DataProcess getProcessFromInterface(Class<?> cls){
+        Annotation[] annotations = cls.getAnnotations();
+
+        for(Annotation annotation : annotations){
+            if(annotation instanceof PrivacyFunction){
+                String function = ((PrivacyFunction) annotation).function();
+                String id = ((PrivacyFunction) annotation).id();
+                return new DataProcess(id, function);
+            }
+        }
+        
+        return null;
+    }
+    
     public static boolean isPrivateMethod(String interfaceClass){
         
         try {
-            Class<?> cls = Class.forName(interfaceClass);
+            return isPrivateMethod(Class.forName(interfaceClass));
+        }
+        catch(ClassNotFoundException e){
+            return false;
+        }
+    }
+    
+    /**
+     * Check if any method of an interface has a Private parameter.
+     * @param cls The interface type.
+     * @return true if a parameter of a method is annotated as Private.
+     */
+    public static boolean isPrivateMethod(Class<?> cls){
+        
+        try {
             Method[] methods = cls.getDeclaredMethods();
             for (Method method: methods) {
                 Annotation[][] parameterAnnotations = method.getParameterAnnotations();
-                Class[] parameterTypes = method.getParameterTypes();
-                
-                int i=0;
                 for(Annotation[] annotations : parameterAnnotations){
                     for(Annotation annotation : annotations){
                         if(annotation instanceof Private){
@@ -121,7 +141,7 @@ public class MetaDataFlow implements IUpdateMetaDataFlow, IQueryMetaDataFlow{
             }  
             return false;
         }
-        catch(ClassNotFoundException | SecurityException e){
+        catch(SecurityException e){
             return false;
         }
     }
@@ -129,7 +149,21 @@ public class MetaDataFlow implements IUpdateMetaDataFlow, IQueryMetaDataFlow{
     public static boolean isPrivateInterface(String interfaceClass){
         
         try {
-            Class<?> cls = Class.forName(interfaceClass);
+            return isPrivateInterface(Class.forName(interfaceClass));
+        }
+        catch(ClassNotFoundException e){
+            return false;
+        }
+    }
+    
+    /**
+     * Check if an interface is annotated as a PrivacyFunction.
+     * @param cls The interface type.
+     * @return true if the interface is a privacy function.
+     */
+    public static boolean isPrivateInterface(Class<?> cls){
+        
+        try {
             Annotation[] annotations = cls.getAnnotations();
 
             for(Annotation annotation : annotations){
@@ -140,7 +174,7 @@ public class MetaDataFlow implements IUpdateMetaDataFlow, IQueryMetaDataFlow{
             
             return false;
         }
-        catch(ClassNotFoundException | SecurityException e){
+        catch(SecurityException e){
             return false;
         }
     }
@@ -0,0 +1,74 @@
+/////////////////////////////////////////////////////////////////////////
+//
+// © Aston University 2022
+//
+// This software may not be used, sold, licensed, transferred, copied
+// or reproduced in whole or in part in any manner or form or in or
+// on any media by any person other than in accordance with the terms
+// of the Licence Agreement supplied with the software, or otherwise
+// without the prior written consent of the copyright owners.
+//
+// This software is distributed WITHOUT ANY WARRANTY, without even the
+// implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+// PURPOSE, except where stated in the Licence Agreement supplied with
+// the software.
+//
+/////////////////////////////////////////////////////////////////////////
+//
+//  License : GNU Lesser General Public License, version 3
+//
+/////////////////////////////////////////////////////////////////////////
+
+package uk.ac.aston.components.opencomj;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The executors used to run component invocations. This is the Java 21 version, taken
+ * from the multi-release jar: each call runs on its own virtual thread, so many
+ * thousands of blocking component calls can be in progress at once.
+ *
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+final class OCMExecutors {
+
+    /**
+     * Creates a new instance of OCMExecutors.
+     */
+    private OCMExecutors() {
+    }
+
+    /**
+     * Create the executor of asynchronous invocations.
+     * @return An executor starting a virtual thread per call.
+     */
+    static ExecutorService newInvocationExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("opencomj-invoke-", 0).factory());
+    }
+
+    /**
+     * Check whether invocations run on virtual threads.
+     * @return true on this version.
+     */
+    static boolean isVirtual() {
+        return true;
+    }
+
+    /**
+     * Create a factory of named daemon threads.
+     * @param prefix The prefix of the thread names.
+     * @return The thread factory.
+     */
+    static ThreadFactory daemonThreads(final String prefix) {
+        final AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, prefix + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
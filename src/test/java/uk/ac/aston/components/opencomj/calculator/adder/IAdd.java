@@ -17,6 +17,7 @@ package uk.ac.aston.components.opencomj.calculator.adder;
 import uk.ac.aston.components.security.dataflow.PrivacyFunction;
 import uk.ac.aston.components.security.dataflow.Private;
 import uk.ac.aston.components.security.dataflow.Purpose;
+import uk.ac.aston.components.opencomj.Idempotent;
 
 /**
  * Interface containing addition operations.
@@ -32,5 +33,6 @@ public interface IAdd {
      * @return The added values.
      */
     @Purpose(description = "optimization")
+    @Idempotent
     int add(int leftOperand, @Private(action="read", id="age") int rightOperand);
 }
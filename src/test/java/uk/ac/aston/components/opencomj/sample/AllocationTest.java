@@ -0,0 +1,172 @@
+/*
+ * AllocationTest.java
+ *
+ * OpenCOMJ is a flexible component model for reconfigurable reflection developed at Lancaster University.
+ * Copyright (C) 2022 Paul Grace
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program; if not,
+ * write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package uk.ac.aston.components.opencomj.sample;
+
+import java.lang.management.ManagementFactory;
+import uk.ac.aston.components.opencomj.IDelegator;
+import uk.ac.aston.components.opencomj.IMetaInterception;
+import uk.ac.aston.components.opencomj.IOpenCOM;
+import uk.ac.aston.components.opencomj.IPostInterceptor;
+import uk.ac.aston.components.opencomj.IPreInterceptor;
+import uk.ac.aston.components.opencomj.IUnknown;
+import uk.ac.aston.components.opencomj.InvalidComponentTypeException;
+import uk.ac.aston.components.opencomj.InvocationContext;
+import uk.ac.aston.components.opencomj.OpenCOM;
+import uk.ac.aston.components.opencomj.calculator.subtract.ISubtract;
+
+
+/**
+ * Allocation regression test for intercepted calls. It measures the bytes allocated
+ * per call through a delegator with no interceptors, with typed interceptors and with
+ * interceptors named through addPreMethod/addPostMethod. Typed interceptors must not
+ * allocate anything beyond the un-intercepted call, whose only allocation is the
+ * argument array built by the dynamic proxy.
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class AllocationTest {
+
+    /**
+     * The number of calls measured.
+     */
+    private static final int CALLS = 1000000;
+
+    /**
+     * The number of calls made first to reach a steady state.
+     */
+    private static final int WARMUP = 200000;
+
+    /**
+     * Creates a new instance of AllocationTest.
+     */
+    private AllocationTest() {
+    }
+
+    /**
+     * Typed interceptors that count the calls they see.
+     */
+    static final class Counter implements IPreInterceptor, IPostInterceptor {
+
+        /**
+         * The number of calls intercepted.
+         */
+        private transient int count;
+
+        @Override
+        public int before(final InvocationContext context) {
+            count++;
+            return 0;
+        }
+
+        @Override
+        public void after(final InvocationContext context) {
+            count++;
+        }
+    }
+
+    /**
+     * Interceptors attached by name.
+     */
+    public static final class Named {
+
+        /**
+         * Pre method allowing the call.
+         * @param method The method intercepted.
+         * @param args The arguments of the call.
+         * @return Always 0.
+         */
+        public int pre(final String method, final Object[] args) {
+            return 0;
+        }
+
+        /**
+         * Post method keeping the result.
+         * @param method The method intercepted.
+         * @param args The result followed by the arguments of the call.
+         * @return Always 0.
+         */
+        public int post(final String method, final Object[] args) {
+            return 0;
+        }
+    }
+
+    /**
+     * Measure the bytes allocated per call by the current thread.
+     * @param pSub The subtract interface to call.
+     * @return The average number of bytes allocated per call.
+     */
+    private static double bytesPerCall(final ISubtract pSub) {
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long thread = Thread.currentThread().getId();
+        int sum = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sum += pSub.subtract(i & 63, 1);
+        }
+        final long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < CALLS; i++) {
+            // Small operands so that the boxed values come from the Integer cache
+            sum += pSub.subtract(i & 63, 1);
+        }
+        final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        if (sum == 1) {
+            System.out.println();
+        }
+        return (double) allocated / CALLS;
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(final String[] args) {
+        final OpenCOM runtime = new OpenCOM();
+        final IOpenCOM pIOCM =  (IOpenCOM) runtime.queryInterface("IOpenCOM");
+        final IMetaInterception pIMeta = (IMetaInterception) runtime.queryInterface("IMetaInterception");
+
+        try {
+            final IUnknown pSubIUnk = pIOCM.createInstance("uk.ac.aston.components.opencomj.calculator.subtract.Subtract", "Subtract");
+            final ISubtract pSub = (ISubtract) pSubIUnk.queryInterface("ISubtract");
+            final IDelegator pDel = pIMeta.getDelegator(pSubIUnk, "ISubtract");
+
+            final double plain = bytesPerCall(pSub);
+            System.out.println("No interceptors: " + String.format("%.1f", plain) + " bytes/call");
+
+            final Counter counter = new Counter();
+            pDel.addPreInterceptor(counter);
+            pDel.addPostInterceptor(counter);
+            final double typed = bytesPerCall(pSub);
+            System.out.println("Typed interceptors: " + String.format("%.1f", typed) + " bytes/call");
+            pDel.delPreInterceptor(counter);
+            pDel.delPostInterceptor(counter);
+
+            final Named named = new Named();
+            pDel.addPreMethod(named, "pre");
+            pDel.addPostMethod(named, "post");
+            final double reflective = bytesPerCall(pSub);
+            System.out.println("Named interceptors: " + String.format("%.1f", reflective) + " bytes/call");
+            pDel.delPreMethod("pre");
+            pDel.delPostMethod("post");
+
+            // Allow a byte per call of noise from the measurement itself
+            if (typed <= plain + 1) {
+                System.out.println("PASS: typed interceptors allocate nothing per call");
+            } else {
+                System.out.println("FAIL: typed interceptors allocate " + String.format("%.1f", typed - plain) + " bytes per call");
+            }
+        } catch (InvalidComponentTypeException ex) {
+            System.err.println(ex.getMessage());
+        }
+    }
+
+}
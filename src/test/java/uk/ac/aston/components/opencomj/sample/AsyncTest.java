@@ -0,0 +1,376 @@
+/*
+ * AsyncTest.java
+ *
+ * OpenCOMJ is a flexible component model for reconfigurable reflection developed at Lancaster University.
+ * Copyright (C) 2022 Paul Grace
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program; if not,
+ * write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package uk.ac.aston.components.opencomj.sample;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import uk.ac.aston.components.opencomj.IDelegator;
+import uk.ac.aston.components.opencomj.IMetaInterception;
+import uk.ac.aston.components.opencomj.IOpenCOM;
+import uk.ac.aston.components.opencomj.IUnknown;
+import uk.ac.aston.components.opencomj.InvalidComponentTypeException;
+import uk.ac.aston.components.opencomj.InvocationException;
+import uk.ac.aston.components.opencomj.OCMAsyncDispatcher;
+import uk.ac.aston.components.opencomj.OCMAsyncInvoker;
+import uk.ac.aston.components.opencomj.OCMSingleReceptacle;
+import uk.ac.aston.components.opencomj.OpenCOM;
+import uk.ac.aston.components.opencomj.calculator.adder.IAdd;
+
+
+/**
+ * Test of asynchronous interception. It checks the drop, block and sample overflow policies
+ * of an OCMAsyncDispatcher and its counters: the post-method is held until a gate opens,
+ * so that the calls of the adder fill the dispatcher's queue. It then checks asynchronous
+ * invocation through a receptacle: a call that times out or is cancelled must complete its
+ * future at once and interrupt the thread still running it.
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class AsyncTest {
+
+    /**
+     * Creates a new instance of AsyncTest.
+     */
+    private AsyncTest() {
+    }
+
+    /**
+     * An asynchronous post-method held until a gate opens.
+     */
+    public static final class Audit {
+
+        /**
+         * Opened to let the post-method return.
+         */
+        private final transient CountDownLatch gate;
+
+        /**
+         * True if the post-method throws an exception.
+         */
+        private final transient boolean fail;
+
+        /**
+         * The number of calls of the post-method.
+         */
+        private final transient AtomicInteger seen = new AtomicInteger();
+
+        /**
+         * Creates a new audit post-method.
+         * @param open The gate to wait for.
+         * @param failing True if the post-method throws an exception.
+         */
+        Audit(final CountDownLatch open, final boolean failing) {
+            gate = open;
+            fail = failing;
+        }
+
+        /**
+         * Post method waiting for the gate.
+         * @param method The method intercepted.
+         * @param args The result followed by the arguments of the call.
+         * @return Always 0.
+         * @throws InterruptedException Interrupted waiting for the gate.
+         */
+        public int post(final String method, final Object[] args) throws InterruptedException {
+            gate.await();
+            seen.incrementAndGet();
+            if (fail) {
+                throw new IllegalStateException("Audit failed");
+            }
+            return 0;
+        }
+
+        /**
+         * Get the number of calls of the post-method.
+         * @return The number of calls.
+         */
+        int getSeen() {
+            return seen.get();
+        }
+    }
+
+    /**
+     * A pre-method taking two seconds, recording whether it was interrupted.
+     */
+    public static final class Blocker {
+
+        /**
+         * Opened when the pre-method starts.
+         */
+        private final transient CountDownLatch started = new CountDownLatch(1);
+
+        /**
+         * Opened when the pre-method is interrupted.
+         */
+        private final transient CountDownLatch interrupted = new CountDownLatch(1);
+
+        /**
+         * Pre method sleeping for two seconds.
+         * @param method The method intercepted.
+         * @param args The arguments of the call.
+         * @return 0, or 1 to halt the call if interrupted.
+         */
+        public int pre(final String method, final Object[] args) {
+            started.countDown();
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException ex) {
+                interrupted.countDown();
+                return 1;
+            }
+            return 0;
+        }
+
+        /**
+         * Wait for the pre-method to start.
+         * @return true if it started within a second.
+         * @throws InterruptedException Interrupted waiting.
+         */
+        boolean awaitStarted() throws InterruptedException {
+            return started.await(1, TimeUnit.SECONDS);
+        }
+
+        /**
+         * Wait for the pre-method to be interrupted.
+         * @return true if it was interrupted within a second.
+         * @throws InterruptedException Interrupted waiting.
+         */
+        boolean awaitInterrupted() throws InterruptedException {
+            return interrupted.await(1, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Wait until the dispatcher has called the post-method for every event it queued.
+     * @param dispatcher The dispatcher.
+     * @throws InterruptedException Interrupted waiting.
+     */
+    private static void awaitDrained(final OCMAsyncDispatcher dispatcher) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (dispatcher.getProcessed() + dispatcher.getFailed() < dispatcher.getSubmitted()
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Make calls of the adder from a new thread.
+     * @param pAdd The adder.
+     * @param calls The number of calls.
+     * @return The thread, started.
+     */
+    private static Thread caller(final IAdd pAdd, final int calls) {
+        final Thread caller = new Thread(() -> {
+            for (int i = 0; i < calls; i++) {
+                pAdd.add(i, 1);
+            }
+        });
+        caller.start();
+        return caller;
+    }
+
+    /**
+     * Check that the drop policy discards the calls made while the queue of four is full.
+     * @param pDel The delegator of the adder.
+     * @param pAdd The adder.
+     * @throws InterruptedException Interrupted waiting for the post-methods.
+     */
+    private static void checkDrop(final IDelegator pDel, final IAdd pAdd) throws InterruptedException {
+        final OCMAsyncDispatcher dispatcher = new OCMAsyncDispatcher(4, 1, OCMAsyncDispatcher.DROP, 1);
+        final CountDownLatch gate = new CountDownLatch(1);
+        final Audit audit = new Audit(gate, false);
+        pDel.addAsyncPostMethod(audit, "post", "add", dispatcher);
+
+        // The worker holds one event and the queue four: the rest are dropped
+        for (int i = 0; i < 20; i++) {
+            pAdd.add(i, 1);
+        }
+        SampleChecks.expect("drop submitted and dropped", 20L, dispatcher.getSubmitted() + dispatcher.getDropped());
+        SampleChecks.expect("drop dropped 15 or 16", true, dispatcher.getDropped() >= 15 && dispatcher.getDropped() <= 16);
+        gate.countDown();
+        awaitDrained(dispatcher);
+        SampleChecks.expect("drop processed every submitted event", dispatcher.getSubmitted(), dispatcher.getProcessed());
+        SampleChecks.expect("drop post-method calls", dispatcher.getSubmitted(), (long) audit.getSeen());
+        SampleChecks.expect("drop pending", 0L, dispatcher.getPending());
+        pDel.delAsyncPostMethod("post");
+        dispatcher.shutdown();
+    }
+
+    /**
+     * Check that the block policy holds the caller while the queue of four is full.
+     * @param pDel The delegator of the adder.
+     * @param pAdd The adder.
+     * @throws InterruptedException Interrupted waiting for the caller.
+     */
+    private static void checkBlock(final IDelegator pDel, final IAdd pAdd) throws InterruptedException {
+        final OCMAsyncDispatcher dispatcher = new OCMAsyncDispatcher(4, 1, OCMAsyncDispatcher.BLOCK, 1);
+        final CountDownLatch gate = new CountDownLatch(1);
+        final Audit audit = new Audit(gate, false);
+        pDel.addAsyncPostMethod(audit, "post", "add", dispatcher);
+
+        final Thread caller = caller(pAdd, 20);
+        Thread.sleep(100);
+        SampleChecks.expect("block caller waiting while the queue is full", true, caller.isAlive());
+        SampleChecks.expect("block submitted while the queue is full", true, dispatcher.getSubmitted() <= 5);
+        gate.countDown();
+        caller.join();
+        awaitDrained(dispatcher);
+        SampleChecks.expect("block submitted", 20L, dispatcher.getSubmitted());
+        SampleChecks.expect("block dropped", 0L, dispatcher.getDropped());
+        SampleChecks.expect("block processed", 20L, dispatcher.getProcessed());
+        pDel.delAsyncPostMethod("post");
+        dispatcher.shutdown();
+    }
+
+    /**
+     * Check that the sample policy queues every call until the queue of 64 is half full,
+     * then one call in four.
+     * @param pDel The delegator of the adder.
+     * @param pAdd The adder.
+     * @throws InterruptedException Interrupted waiting for the post-methods.
+     */
+    private static void checkSample(final IDelegator pDel, final IAdd pAdd) throws InterruptedException {
+        final OCMAsyncDispatcher dispatcher = new OCMAsyncDispatcher(64, 1, OCMAsyncDispatcher.SAMPLE, 4);
+        final CountDownLatch gate = new CountDownLatch(1);
+        final Audit audit = new Audit(gate, false);
+        pDel.addAsyncPostMethod(audit, "post", "add", dispatcher);
+
+        for (int i = 0; i < 100; i++) {
+            pAdd.add(i, 1);
+        }
+        System.out.println("sample submitted: " + dispatcher.getSubmitted());
+        SampleChecks.expect("sample submitted and dropped", 100L, dispatcher.getSubmitted() + dispatcher.getDropped());
+        SampleChecks.expect("sample submitted beyond half the queue but not all", true,
+                dispatcher.getSubmitted() > 33 && dispatcher.getSubmitted() < 64);
+        gate.countDown();
+        awaitDrained(dispatcher);
+        SampleChecks.expect("sample processed every submitted event", dispatcher.getSubmitted(), dispatcher.getProcessed());
+        pDel.delAsyncPostMethod("post");
+        dispatcher.shutdown();
+    }
+
+    /**
+     * Check that post-methods throwing an exception are counted as failed, and that events
+     * submitted after shut down are dropped.
+     * @param pDel The delegator of the adder.
+     * @param pAdd The adder.
+     * @throws InterruptedException Interrupted waiting for the post-methods.
+     */
+    private static void checkFailed(final IDelegator pDel, final IAdd pAdd) throws InterruptedException {
+        final OCMAsyncDispatcher dispatcher = new OCMAsyncDispatcher(64, 1, OCMAsyncDispatcher.DROP, 1);
+        final CountDownLatch gate = new CountDownLatch(0);
+        pDel.addAsyncPostMethod(new Audit(gate, true), "post", "add", dispatcher);
+
+        for (int i = 0; i < 10; i++) {
+            pAdd.add(i, 1);
+        }
+        awaitDrained(dispatcher);
+        SampleChecks.expect("failed post-methods", 10L, dispatcher.getFailed());
+        SampleChecks.expect("processed post-methods", 0L, dispatcher.getProcessed());
+        dispatcher.shutdown();
+        pAdd.add(1, 1);
+        SampleChecks.expect("dropped after shut down", 1L, dispatcher.getDropped());
+        pDel.delAsyncPostMethod("post");
+    }
+
+    /**
+     * Get the class of the exception failing an asynchronous call.
+     * @param future The future outcome of the call.
+     * @return The class of the exception; null if the call succeeded.
+     * @throws InterruptedException Interrupted waiting for the call.
+     */
+    private static Class<?> failure(final CompletableFuture<Integer> future) throws InterruptedException {
+        try {
+            future.get();
+            return null;
+        } catch (ExecutionException ex) {
+            return ex.getCause().getClass();
+        }
+    }
+
+    /**
+     * Check asynchronous invocation through a receptacle, including the timeout and cancel
+     * paths interrupting the thread running the call.
+     * @param pDel The delegator of the adder.
+     * @param pAdder The adder.
+     * @throws InterruptedException Interrupted waiting for a call.
+     * @throws ExecutionException A call expected to succeed failed.
+     */
+    private static void checkInvoker(final IDelegator pDel, final IUnknown pAdder)
+            throws InterruptedException, ExecutionException {
+        System.out.println("calls run on virtual threads: " + OCMAsyncInvoker.isVirtual());
+        final OCMSingleReceptacle<IAdd> recp = new OCMSingleReceptacle<>();
+        SampleChecks.expect("call when not connected", InvocationException.class, failure(recp.invokeAsync(intf -> intf.add(1, 2))));
+        recp.connectToRecp(pAdder, "IAdd", 1);
+        SampleChecks.expect("asynchronous add(1, 2)", 11, recp.invokeAsync(intf -> intf.add(1, 2)).get());
+
+        // A call outliving its timeout fails at once and its thread is interrupted
+        final Blocker timed = new Blocker();
+        pDel.addPreMethod(timed, "pre");
+        final long time0 = System.nanoTime();
+        SampleChecks.expect("call after a 100ms timeout", TimeoutException.class,
+                failure(recp.invokeAsync(intf -> intf.add(1, 2), 100, TimeUnit.MILLISECONDS)));
+        SampleChecks.expect("timed out before the call returned", true,
+                System.nanoTime() - time0 < TimeUnit.MILLISECONDS.toNanos(1000));
+        SampleChecks.expect("timed out call interrupted", true, timed.awaitInterrupted());
+        pDel.delPreMethod("pre");
+
+        // A cancelled call completes at once and its thread is interrupted
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        recp.setExecutor(executor);
+        final Blocker cancelled = new Blocker();
+        pDel.addPreMethod(cancelled, "pre");
+        final CompletableFuture<Integer> future = recp.invokeAsync(intf -> intf.add(1, 2));
+        SampleChecks.expect("cancelled call started", true, cancelled.awaitStarted());
+        SampleChecks.expect("cancel", true, future.cancel(true));
+        SampleChecks.expect("future cancelled", true, future.isCancelled());
+        SampleChecks.expect("cancelled call interrupted", true, cancelled.awaitInterrupted());
+        pDel.delPreMethod("pre");
+
+        // The executor's thread is free for the next call, which completes within its timeout
+        SampleChecks.expect("add(4, 5) within a 2s timeout", 17, recp.invokeAsync(intf -> intf.add(4, 5), 2, TimeUnit.SECONDS).get());
+        executor.shutdown();
+    }
+
+    /**
+     * @param args the command line arguments
+     * @throws InvalidComponentTypeException A component could not be created.
+     * @throws InterruptedException Interrupted waiting for a call.
+     * @throws ExecutionException A call expected to succeed failed.
+     */
+    public static void main(final String[] args) throws InvalidComponentTypeException, InterruptedException,
+            ExecutionException {
+        final OpenCOM runtime = new OpenCOM();
+        final IOpenCOM pIOCM = (IOpenCOM) runtime.queryInterface("IOpenCOM");
+        final IMetaInterception pMeta = (IMetaInterception) runtime.queryInterface("IMetaInterception");
+        final IUnknown pAdder = pIOCM.createInstance("uk.ac.aston.components.opencomj.calculator.adder.Adder", "Adder");
+        final IDelegator pDel = pMeta.getDelegator(pAdder, "IAdd");
+        final IAdd pAdd = pAdder.queryInterface(IAdd.class);
+
+        checkDrop(pDel, pAdd);
+        checkBlock(pDel, pAdd);
+        checkSample(pDel, pAdd);
+        checkFailed(pDel, pAdd);
+        checkInvoker(pDel, pAdder);
+        SampleChecks.report("asynchronous");
+    }
+
+}
@@ -0,0 +1,231 @@
+/*
+ * ConcurrentKernelTest.java
+ *
+ * OpenCOMJ is a flexible component model for reconfigurable reflection developed at Lancaster University.
+ * Copyright (C) 2022 Paul Grace
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program; if not,
+ * write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package uk.ac.aston.components.opencomj.sample;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import uk.ac.aston.components.opencomj.IOpenCOM;
+import uk.ac.aston.components.opencomj.IUnknown;
+import uk.ac.aston.components.opencomj.InvalidComponentTypeException;
+import uk.ac.aston.components.opencomj.OpenCOM;
+
+
+/**
+ * Stress test of the kernel under concurrent createInstance, connect and disconnect
+ * calls. The same amount of work is shared between 1, 2, 4... threads (up to the number
+ * of cores) and the throughput of each run is reported along with its speed up over
+ * one thread. Each run then checks that the graph is consistent. The number of
+ * component pairs can be given as the first command line argument (default 20000)
+ * and the maximum number of threads as the second (default the number of cores).
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class ConcurrentKernelTest {
+
+    /**
+     * The default number of adder/calculator pairs created in each run.
+     */
+    private static final int DEFAULT_PAIRS = 20000;
+
+    /**
+     * Creates a new instance of ConcurrentKernelTest.
+     */
+    private ConcurrentKernelTest() {
+    }
+
+    /**
+     * Worker thread creating, binding and unbinding its share of the components.
+     */
+    static class Worker extends Thread {
+
+        /**
+         * The kernel under test.
+         */
+        private final transient IOpenCOM pIOCM;
+
+        /**
+         * The worker number, used to make component names unique.
+         */
+        private final transient int worker;
+
+        /**
+         * The number of pairs created by this worker.
+         */
+        private final transient int pairs;
+
+        /**
+         * Every connection id handed out during the run.
+         */
+        private final transient Set<Long> connIDs;
+
+        /**
+         * Released once all workers are ready to start.
+         */
+        private final transient CountDownLatch start;
+
+        /**
+         * The number of failed kernel operations.
+         */
+        private final transient AtomicInteger failures;
+
+        /**
+         * Thread constructor.
+         * @param kernel The kernel under test.
+         * @param number The worker number.
+         * @param count The number of pairs to create.
+         * @param ids The set collecting connection ids.
+         * @param latch The start signal.
+         * @param errors The failure counter.
+         */
+        Worker(final IOpenCOM kernel, final int number, final int count, final Set<Long> ids,
+                final CountDownLatch latch, final AtomicInteger errors) {
+            super();
+            pIOCM = kernel;
+            worker = number;
+            pairs = count;
+            connIDs = ids;
+            start = latch;
+            failures = errors;
+        }
+
+        @Override
+        public void run() {
+            try {
+                start.await();
+                for (int i = 0; i < pairs; i++) {
+                    final IUnknown pAdder = pIOCM.createInstance("uk.ac.aston.components.opencomj.calculator.adder.Adder",
+                            "Adder-" + worker + "-" + i);
+                    final IUnknown pCalc = pIOCM.createInstance("uk.ac.aston.components.opencomj.calculator.calculator.Calculator",
+                            "Calculator-" + worker + "-" + i);
+                    final long connID = pIOCM.connect(pCalc, pAdder, "IAdd");
+                    if (connID < 0 || !connIDs.add(connID) || pIOCM.getConnectionInfo(connID) == null) {
+                        failures.incrementAndGet();
+                    }
+                    if (!pIOCM.disconnect(connID) || pIOCM.getConnectionInfo(connID) != null) {
+                        failures.incrementAndGet();
+                    }
+                }
+            } catch (InvalidComponentTypeException | InterruptedException ex) {
+                System.err.println(ex.getMessage());
+                failures.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Run the workload across a number of threads on a fresh kernel.
+     * @param threads The number of threads.
+     * @param totalPairs The total number of pairs to create.
+     * @return The elapsed time in nanoseconds.
+     * @throws InterruptedException Interrupted waiting for the workers.
+     */
+    private static long run(final int threads, final int totalPairs) throws InterruptedException {
+        final OpenCOM runtime = new OpenCOM();
+        final IOpenCOM pIOCM =  (IOpenCOM) runtime.queryInterface("IOpenCOM");
+        final Set<Long> connIDs = ConcurrentHashMap.newKeySet();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicInteger failures = new AtomicInteger();
+        final int pairs = totalPairs / threads;
+
+        final Worker[] workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(pIOCM, i, pairs, connIDs, latch, failures);
+            workers[i].start();
+        }
+        final long time0 = System.nanoTime();
+        latch.countDown();
+        for (Worker worker : workers) {
+            worker.join();
+        }
+        final long elapsed = System.nanoTime() - time0;
+
+        // Check the graph is consistent
+        final int components = pIOCM.enumComponents().size();
+        if (components != pairs * threads * 2) {
+            System.out.println("ERROR: expected " + (pairs * threads * 2) + " components, found " + components);
+        }
+        if (connIDs.size() != pairs * threads) {
+            System.out.println("ERROR: expected " + (pairs * threads) + " unique connection ids, found " + connIDs.size());
+        }
+        if (failures.get() != 0) {
+            System.out.println("ERROR: " + failures.get() + " failed kernel operations");
+        }
+        return elapsed;
+    }
+
+    /**
+     * Check that exactly one of many concurrent creations of the same name succeeds.
+     * @throws InterruptedException Interrupted waiting for the threads.
+     */
+    private static void checkUniqueNames() throws InterruptedException {
+        final OpenCOM runtime = new OpenCOM();
+        final IOpenCOM pIOCM =  (IOpenCOM) runtime.queryInterface("IOpenCOM");
+        final AtomicInteger created = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Thread[] threads = new Thread[Runtime.getRuntime().availableProcessors() * 2];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    latch.await();
+                    pIOCM.createInstance("uk.ac.aston.components.opencomj.calculator.adder.Adder", "Shared");
+                    created.incrementAndGet();
+                } catch (InvalidComponentTypeException | InterruptedException ex) {
+                    // Expected for all but one thread
+                }
+            });
+            threads[i].start();
+        }
+        latch.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        System.out.println("Concurrent creations of the same name that succeeded: " + created.get()
+                + " (components in graph: " + pIOCM.enumComponents().size() + ")");
+    }
+
+    /**
+     * @param args the command line arguments
+     * @throws InterruptedException Interrupted waiting for the workers.
+     */
+    public static void main(final String[] args) throws InterruptedException {
+        int totalPairs = DEFAULT_PAIRS;
+        if (args.length > 0) {
+            totalPairs = Integer.parseInt(args[0]);
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        if (args.length > 1) {
+            cores = Integer.parseInt(args[1]);
+        }
+
+        // Warm up the JIT before measuring
+        run(1, totalPairs / 10);
+
+        long single = 0;
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            final long elapsed = run(threads, totalPairs);
+            if (threads == 1) {
+                single = elapsed;
+            }
+            final long throughput = (totalPairs * 1000000000L) / elapsed;
+            System.out.println(threads + " threads: " + throughput + " create+create+connect+disconnect per second, speed up "
+                    + String.format("%.2f", (double) single / elapsed));
+        }
+        checkUniqueNames();
+    }
+
+}
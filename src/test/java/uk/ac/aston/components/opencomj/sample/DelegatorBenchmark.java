@@ -0,0 +1,236 @@
+/*
+ * DelegatorBenchmark.java
+ *
+ * OpenCOMJ is a flexible component model for reconfigurable reflection developed at Lancaster University.
+ * Copyright (C) 2022 Paul Grace
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program; if not,
+ * write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package uk.ac.aston.components.opencomj.sample;
+
+import uk.ac.aston.components.opencomj.DispatchTable;
+import uk.ac.aston.components.opencomj.IDelegator;
+import uk.ac.aston.components.opencomj.IMetaInterception;
+import uk.ac.aston.components.opencomj.IOpenCOM;
+import uk.ac.aston.components.opencomj.IUnknown;
+import uk.ac.aston.components.opencomj.InvalidComponentTypeException;
+import uk.ac.aston.components.opencomj.OpenCOM;
+import uk.ac.aston.components.opencomj.calculator.subtract.ISubtract;
+import uk.ac.aston.components.opencomj.calculator.subtract.Subtract;
+
+
+/**
+ * Measures the cost of calling a component through its delegator with each of the
+ * dispatch backends, against a direct call on the component. It then measures the
+ * cost of chains of 1, 5 and 10 pre and post methods against calling the same
+ * interceptor methods directly, and the cost of a method when the 10 pre and post
+ * methods are bound to other methods only, with and without latency recording. The number of calls can be given as the first
+ * command line argument (default 10000000).
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class DelegatorBenchmark {
+
+    /**
+     * The default number of calls measured for each backend.
+     */
+    private static final int DEFAULT_CALLS = 10000000;
+
+    /**
+     * The number of measured rounds; the first rounds warm up the JIT.
+     */
+    private static final int ROUNDS = 5;
+
+    /**
+     * The interceptor chain lengths measured.
+     */
+    private static final int[] CHAIN_LENGTHS = {1, 5, 10};
+
+    /**
+     * Interceptors that let every call through unchanged.
+     */
+    public static final class PassThrough {
+
+        /**
+         * Pre method allowing the call.
+         * @param method The method intercepted.
+         * @param args The arguments of the call.
+         * @return Always 0.
+         */
+        public int pre(final String method, final Object[] args) {
+            return 0;
+        }
+
+        /**
+         * Post method keeping the result.
+         * @param method The method intercepted.
+         * @param args The result followed by the arguments of the call.
+         * @return Always 0.
+         */
+        public int post(final String method, final Object[] args) {
+            return 0;
+        }
+    }
+
+    /**
+     * Creates a new instance of DelegatorBenchmark.
+     */
+    private DelegatorBenchmark() {
+    }
+
+    /**
+     * Call the subtract operation repeatedly.
+     * @param pSub The subtract interface to call.
+     * @param calls The number of calls.
+     * @return The elapsed time in nanoseconds.
+     */
+    private static long measure(final ISubtract pSub, final int calls) {
+        int sum = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            sum += pSub.subtract(i, 1);
+        }
+        final long elapsed = System.nanoTime() - start;
+        if (sum == 1) {
+            System.out.println();
+        }
+        return elapsed;
+    }
+
+    /**
+     * Call the interceptor methods and the subtract operation directly, as a chain of
+     * pre and post methods would.
+     * @param pSub The subtract component.
+     * @param interceptors The interceptor object.
+     * @param length The number of pre and of post methods.
+     * @param calls The number of calls.
+     * @return The elapsed time in nanoseconds.
+     */
+    private static long measureDirectChain(final ISubtract pSub, final PassThrough interceptors, final int length,
+            final int calls) {
+        int sum = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            final Object[] args = new Object[] {i, 1};
+            for (int j = 0; j < length; j++) {
+                sum += interceptors.pre("subtract", args);
+            }
+            final int result = pSub.subtract((Integer) args[0], (Integer) args[1]);
+            for (int j = 0; j < length; j++) {
+                sum += interceptors.post("subtract", new Object[] {result, args[0], args[1]});
+            }
+            sum += result;
+        }
+        final long elapsed = System.nanoTime() - start;
+        if (sum == 1) {
+            System.out.println();
+        }
+        return elapsed;
+    }
+
+    /**
+     * Create a subtract component whose delegators use the given backend.
+     * @param pIOCM The kernel.
+     * @param backend The dispatch backend.
+     * @return The subtract interface of the component.
+     * @throws InvalidComponentTypeException The component could not be created.
+     */
+    private static ISubtract create(final IOpenCOM pIOCM, final String backend) throws InvalidComponentTypeException {
+        System.setProperty(DispatchTable.BACKEND_PROPERTY, backend);
+        final IUnknown pSubIUnk = pIOCM.createInstance("uk.ac.aston.components.opencomj.calculator.subtract.Subtract",
+                "Subtract-" + backend);
+        return (ISubtract) pSubIUnk.queryInterface("ISubtract");
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(final String[] args) {
+        int calls = DEFAULT_CALLS;
+        if (args.length > 0) {
+            calls = Integer.parseInt(args[0]);
+        }
+
+        final OpenCOM runtime = new OpenCOM();
+        final IOpenCOM pIOCM =  (IOpenCOM) runtime.queryInterface("IOpenCOM");
+
+        try {
+            final ISubtract direct = new Subtract(runtime);
+            final ISubtract reflection = create(pIOCM, DispatchTable.REFLECTION);
+            final ISubtract handles = create(pIOCM, DispatchTable.METHODHANDLE);
+
+            for (int round = 1; round <= ROUNDS; round++) {
+                final long directTime = measure(direct, calls);
+                final long reflectionTime = measure(reflection, calls);
+                final long handleTime = measure(handles, calls);
+                System.out.println("Round " + round + ": direct " + String.format("%.1f", (double) directTime / calls)
+                        + " ns/call, reflection " + String.format("%.1f", (double) reflectionTime / calls)
+                        + " ns/call, methodhandle " + String.format("%.1f", (double) handleTime / calls) + " ns/call");
+            }
+
+            // Chains of interceptors on the subtract delegator
+            final IMetaInterception pIMeta = (IMetaInterception) runtime.queryInterface("IMetaInterception");
+            final IDelegator pDel = pIMeta.getDelegator((IUnknown) handles, "ISubtract");
+            final PassThrough interceptors = new PassThrough();
+            int attached = 0;
+            for (int length : CHAIN_LENGTHS) {
+                while (attached < length) {
+                    pDel.addPreMethod(interceptors, "pre");
+                    pDel.addPostMethod(interceptors, "post");
+                    attached++;
+                }
+                long chainTime = 0;
+                long directTime = 0;
+                for (int round = 1; round <= ROUNDS; round++) {
+                    chainTime = measure(handles, calls);
+                    directTime = measureDirectChain(direct, interceptors, length, calls);
+                }
+                System.out.println(length + " pre and post methods: delegator " + String.format("%.1f", (double) chainTime / calls)
+                        + " ns/call, direct chain " + String.format("%.1f", (double) directTime / calls) + " ns/call");
+            }
+
+            // The same chain bound to another method, which subtract calls skip
+            for (int i = 0; i < attached; i++) {
+                pDel.delPreMethod("pre");
+                pDel.delPostMethod("post");
+                pDel.addPreMethod(interceptors, "pre", "add");
+                pDel.addPostMethod(interceptors, "post", "add");
+            }
+            long unboundTime = 0;
+            for (int round = 1; round <= ROUNDS; round++) {
+                unboundTime = measure(handles, calls);
+            }
+            System.out.println(attached + " pre and post methods bound to other methods: delegator "
+                    + String.format("%.1f", (double) unboundTime / calls) + " ns/call");
+
+            // Latency recording with the interceptors still bound to other methods only
+            pDel.addLatencyRecorder();
+            long recordedTime = 0;
+            for (int round = 1; round <= ROUNDS; round++) {
+                recordedTime = measure(handles, calls);
+            }
+            System.out.println("Latency recorded: delegator " + String.format("%.1f", (double) recordedTime / calls)
+                    + " ns/call, " + pDel.getAttributeValue("latency.subtract.calls").getValue() + " calls, p50 "
+                    + pDel.getAttributeValue("latency.p50").getValue() + " ns, p99 "
+                    + pDel.getAttributeValue("latency.p99").getValue() + " ns");
+            pDel.delLatencyRecorder();
+            pDel.addLatencyRecorder(1);
+            for (int round = 1; round <= ROUNDS; round++) {
+                recordedTime = measure(handles, calls);
+            }
+            System.out.println("Latency of every call recorded: delegator " + String.format("%.1f", (double) recordedTime / calls)
+                    + " ns/call, p50 " + pDel.getAttributeValue("latency.p50").getValue() + " ns, p99 "
+                    + pDel.getAttributeValue("latency.p99").getValue() + " ns");
+            pDel.delLatencyRecorder();
+        } catch (InvalidComponentTypeException ex) {
+            System.err.println(ex.getMessage());
+        }
+    }
+
+}
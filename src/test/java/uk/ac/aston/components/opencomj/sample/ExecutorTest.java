@@ -0,0 +1,133 @@
+/*
+ * ExecutorTest.java
+ *
+ * OpenCOMJ is a flexible component model for reconfigurable reflection developed at Lancaster University.
+ * Copyright (C) 2022 Paul Grace
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program; if not,
+ * write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package uk.ac.aston.components.opencomj.sample;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.concurrent.ExecutionException;
+import uk.ac.aston.components.opencomj.IDelegator;
+import uk.ac.aston.components.opencomj.IMetaInterception;
+import uk.ac.aston.components.opencomj.IOpenCOM;
+import uk.ac.aston.components.opencomj.IUnknown;
+import uk.ac.aston.components.opencomj.InvalidComponentTypeException;
+import uk.ac.aston.components.opencomj.OCMAsyncInvoker;
+import uk.ac.aston.components.opencomj.OCMSingleReceptacle;
+import uk.ac.aston.components.opencomj.OpenCOM;
+import uk.ac.aston.components.opencomj.calculator.adder.IAdd;
+
+
+/**
+ * Test program for the executor of asynchronous invocations. Run from the jar built by
+ * the java21 profile on Java 21 or later, the executor is taken from META-INF/versions/21
+ * and each call must run on a virtual thread; run from the classes directory, or on an
+ * earlier Java, each call must run on a platform thread. For example:
+ * <pre>
+ * mvn package -DskipTests    (with JAVA_HOME a JDK 21)
+ * java -cp target/opencomj-1.0-BETA.jar:target/test-classes:&lt;dependencies&gt;
+ *     uk.ac.aston.components.opencomj.sample.ExecutorTest
+ * </pre>
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class ExecutorTest {
+
+    /**
+     * The class file of the executors, as found on the class path.
+     */
+    private static final String EXECUTORS = "uk/ac/aston/components/opencomj/OCMExecutors.class";
+
+    /**
+     * Creates a new instance of ExecutorTest.
+     */
+    private ExecutorTest() {
+    }
+
+    /**
+     * Interceptor recording the thread a call runs on.
+     */
+    public static final class ThreadRecorder {
+
+        /**
+         * The thread of the last call intercepted.
+         */
+        private transient volatile Thread thread;
+
+        /**
+         * Pre method recording the current thread.
+         * @param method The method intercepted.
+         * @param args The arguments of the call.
+         * @return 0 to continue the call.
+         */
+        public int pre(final String method, final Object[] args) {
+            thread = Thread.currentThread();
+            return 0;
+        }
+
+        /**
+         * Get the thread of the last call intercepted.
+         * @return The thread.
+         */
+        public Thread getThread() {
+            return thread;
+        }
+    }
+
+    /**
+     * Check whether a thread is virtual, on a Java that may have no virtual threads.
+     * @param thread The thread.
+     * @return true for a virtual thread; false if Java has none.
+     */
+    private static boolean isVirtual(final Thread thread) {
+        try {
+            final Method virtual = Thread.class.getMethod("isVirtual");
+            return (Boolean) virtual.invoke(thread);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * @param args the command line arguments
+     * @throws InvalidComponentTypeException The Adder could not be created.
+     * @throws InterruptedException Interrupted waiting for a call.
+     * @throws ExecutionException The call failed.
+     */
+    public static void main(final String[] args) throws InvalidComponentTypeException, InterruptedException,
+            ExecutionException {
+        final OpenCOM runtime = new OpenCOM();
+        final IOpenCOM pIOCM = (IOpenCOM) runtime.queryInterface("IOpenCOM");
+        final IMetaInterception pMeta = (IMetaInterception) runtime.queryInterface("IMetaInterception");
+        final IUnknown pAdder = pIOCM.createInstance("uk.ac.aston.components.opencomj.calculator.adder.Adder", "Adder");
+        final IDelegator pDel = pMeta.getDelegator(pAdder, "IAdd");
+        final ThreadRecorder recorder = new ThreadRecorder();
+        pDel.addPreMethod(recorder, "pre");
+
+        // The Java 21 executor is only in use if the class was loaded from the versioned entry
+        final URL executors = ExecutorTest.class.getClassLoader().getResource(EXECUTORS);
+        System.out.println("executors loaded from " + executors);
+        final boolean versioned = executors != null && executors.toString().contains("/META-INF/versions/21/");
+        SampleChecks.expect("calls run on virtual threads", versioned, OCMAsyncInvoker.isVirtual());
+
+        final OCMSingleReceptacle<IAdd> recp = new OCMSingleReceptacle<>();
+        recp.connectToRecp(pAdder, "IAdd", 1);
+        SampleChecks.expect("asynchronous add(1, 2)", 11, recp.invokeAsync(intf -> intf.add(1, 2)).get());
+        final Thread thread = recorder.getThread();
+        SampleChecks.expect("call thread named by the executor", true, thread.getName().startsWith("opencomj-invoke-"));
+        SampleChecks.expect("call thread virtual", versioned, isVirtual(thread));
+        SampleChecks.report("executor");
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * KernelBenchmark.java
+ *
+ * OpenCOMJ is a flexible component model for reconfigurable reflection developed at Lancaster University.
+ * Copyright (C) 2022 Paul Grace
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program; if not,
+ * write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package uk.ac.aston.components.opencomj.sample;
+
+import java.util.ArrayList;
+import java.util.List;
+import uk.ac.aston.components.opencomj.IMetaInterception;
+import uk.ac.aston.components.opencomj.IOpenCOM;
+import uk.ac.aston.components.opencomj.IUnknown;
+import uk.ac.aston.components.opencomj.InvalidComponentTypeException;
+import uk.ac.aston.components.opencomj.OCMConnInfo;
+import uk.ac.aston.components.opencomj.OpenCOM;
+
+
+/**
+ * Measures the cost of the kernel graph operations as the number of components
+ * in the system graph grows, and the cost of building the same graph through the
+ * batch operations. The number of components can be given as the first
+ * command line argument (default 100000).
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class KernelBenchmark {
+
+    /**
+     * The default number of components placed in the graph.
+     */
+    private static final int DEFAULT_COMPONENTS = 100000;
+
+    /**
+     * Creates a new instance of KernelBenchmark.
+     */
+    private KernelBenchmark() {
+    }
+
+    /**
+     * Print the average time of an operation.
+     * @param operation The name of the measured operation.
+     * @param start The start time in nanoseconds.
+     * @param count The number of operations performed.
+     */
+    private static void report(final String operation, final long start, final int count) {
+        final long elapsed = System.nanoTime() - start;
+        System.out.println(operation + ": " + count + " operations, " + (elapsed / count) + " ns/op");
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(final String[] args) {
+
+        int components = DEFAULT_COMPONENTS;
+        if (args.length > 0) {
+            components = Integer.parseInt(args[0]);
+        }
+
+        // Create the OpenCOM runtime & Get the IOpenCOM interface reference
+        final OpenCOM runtime = new OpenCOM();
+        final IOpenCOM pIOCM =  (IOpenCOM) runtime.queryInterface("IOpenCOM");
+        final IMetaInterception pIMeta = (IMetaInterception) runtime.queryInterface("IMetaInterception");
+
+        try {
+            // Fill the graph with adder components
+            final List<IUnknown> adders = new ArrayList<>(components);
+            long start = System.nanoTime();
+            for (int i = 0; i < components; i++) {
+                adders.add(pIOCM.createInstance("uk.ac.aston.components.opencomj.calculator.adder.Adder", "Adder" + i));
+            }
+            report("createInstance", start, components);
+
+            // Name and identity lookups across the whole graph
+            start = System.nanoTime();
+            for (int i = 0; i < components; i++) {
+                pIOCM.getComponentPIUnknown("ADDER" + i);
+            }
+            report("getComponentPIUnknown", start, components);
+
+            start = System.nanoTime();
+            for (IUnknown adder : adders) {
+                pIOCM.getComponentName(adder);
+                pIOCM.getComponentType(adder);
+            }
+            report("getComponentName+getComponentType", start, components);
+
+            start = System.nanoTime();
+            for (IUnknown adder : adders) {
+                pIMeta.getDelegator(adder, "IAdd");
+            }
+            report("getDelegator", start, components);
+
+            // Bind the calculator to each adder in turn
+            final IUnknown pCalcIUnk = pIOCM.createInstance("uk.ac.aston.components.opencomj.calculator.calculator.Calculator", "Calculator");
+            start = System.nanoTime();
+            for (IUnknown adder : adders) {
+                final long connID = pIOCM.connect(pCalcIUnk, adder, "IAdd");
+                pIOCM.getConnectionInfo(connID);
+                pIOCM.disconnect(connID);
+            }
+            report("connect+getConnectionInfo+disconnect", start, components);
+
+            start = System.nanoTime();
+            for (IUnknown adder : adders) {
+                pIOCM.deleteInstance(adder);
+            }
+            report("deleteInstance", start, components);
+
+            // The same graph built through the batch operations
+            start = System.nanoTime();
+            final List<IUnknown> batchAdders = pIOCM.createInstances("uk.ac.aston.components.opencomj.calculator.adder.Adder",
+                    "BatchAdder", components);
+            final List<IUnknown> batchCalcs = pIOCM.createInstances("uk.ac.aston.components.opencomj.calculator.calculator.Calculator",
+                    "BatchCalculator", components);
+            report("createInstances", start, components * 2);
+
+            final List<OCMConnInfo> bindings = new ArrayList<>(components);
+            for (int i = 0; i < components; i++) {
+                bindings.add(new OCMConnInfo(batchCalcs.get(i), batchAdders.get(i), "IAdd"));
+            }
+            start = System.nanoTime();
+            final List<Long> connIDs = pIOCM.connect(bindings);
+            report("connect(bindings)", start, components);
+            if (connIDs == null) {
+                System.out.println("ERROR: batch connect failed");
+            }
+            System.out.println("The number of components is : " + pIOCM.enumComponents().size());
+        } catch (InvalidComponentTypeException ex) {
+            System.err.println(ex.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * MemoTest.java
+ *
+ * OpenCOMJ is a flexible component model for reconfigurable reflection developed at Lancaster University.
+ * Copyright (C) 2022 Paul Grace
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program; if not,
+ * write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package uk.ac.aston.components.opencomj.sample;
+
+import uk.ac.aston.components.opencomj.IDelegator;
+import uk.ac.aston.components.opencomj.IMetaInterception;
+import uk.ac.aston.components.opencomj.IOpenCOM;
+import uk.ac.aston.components.opencomj.IUnknown;
+import uk.ac.aston.components.opencomj.InvalidComponentTypeException;
+import uk.ac.aston.components.opencomj.OCMMemoCache;
+import uk.ac.aston.components.opencomj.OpenCOM;
+import uk.ac.aston.components.opencomj.calculator.adder.IAdd;
+import uk.ac.aston.components.opencomj.calculator.calculator.ICalculator;
+
+
+/**
+ * Test of delegator memoization. It checks hits and misses on the @Idempotent IAdd.add,
+ * eviction by size and by time to live, and that connect, disconnect and deleteInstance
+ * invalidate the cache of the component whose receptacle changed: a calculator is rewired
+ * from an Adder (x+y+8) to a PlainAdder (x+y) and must return the new adder's result.
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class MemoTest {
+
+    /**
+     * The component type of the adder returning x+y+8.
+     */
+    private static final String ADDER = "uk.ac.aston.components.opencomj.calculator.adder.Adder";
+
+    /**
+     * The component type of the adder returning x+y.
+     */
+    private static final String PLAIN_ADDER = "uk.ac.aston.components.opencomj.calculator.adder.PlainAdder";
+
+    /**
+     * Creates a new instance of MemoTest.
+     */
+    private MemoTest() {
+    }
+
+    /**
+     * Check hits, misses and eviction by size on the adder's own delegator.
+     * @param pIOCM The kernel.
+     * @param pMeta The meta interception interface of the kernel.
+     * @throws InvalidComponentTypeException The adder could not be created.
+     */
+    private static void checkHitsAndSize(final IOpenCOM pIOCM, final IMetaInterception pMeta)
+            throws InvalidComponentTypeException {
+        final IUnknown pAdder = pIOCM.createInstance(ADDER, "SizeAdder");
+        final IDelegator pDel = pMeta.getDelegator(pAdder, "IAdd");
+        pDel.addMemoization(4, 0);
+        final OCMMemoCache cache = pDel.getMemoCache();
+        final IAdd pAdd = pAdder.queryInterface(IAdd.class);
+
+        SampleChecks.expect("first add(1, 2)", 11, pAdd.add(1, 2));
+        SampleChecks.expect("second add(1, 2)", 11, pAdd.add(1, 2));
+        SampleChecks.expect("hits", 1, cache.getHits());
+        SampleChecks.expect("misses", 1, cache.getMisses());
+
+        // Ten distinct calls through a cache of four
+        for (int i = 0; i < 10; i++) {
+            pAdd.add(i, 100);
+        }
+        SampleChecks.expect("entries after 11 distinct calls", 4, cache.size());
+        SampleChecks.expect("evictions", 7, cache.getEvictions());
+    }
+
+    /**
+     * Check that an entry expires after its time to live.
+     * @param pIOCM The kernel.
+     * @param pMeta The meta interception interface of the kernel.
+     * @throws InvalidComponentTypeException The adder could not be created.
+     * @throws InterruptedException Interrupted waiting for the entry to expire.
+     */
+    private static void checkTimeToLive(final IOpenCOM pIOCM, final IMetaInterception pMeta)
+            throws InvalidComponentTypeException, InterruptedException {
+        final IUnknown pAdder = pIOCM.createInstance(ADDER, "TtlAdder");
+        final IDelegator pDel = pMeta.getDelegator(pAdder, "IAdd");
+        pDel.addMemoization(100, 50);
+        final OCMMemoCache cache = pDel.getMemoCache();
+        final IAdd pAdd = pAdder.queryInterface(IAdd.class);
+
+        pAdd.add(5, 5);
+        pAdd.add(5, 5);
+        Thread.sleep(100);
+        pAdd.add(5, 5);
+        SampleChecks.expect("hits within the time to live", 1, cache.getHits());
+        SampleChecks.expect("misses including the expired entry", 2, cache.getMisses());
+    }
+
+    /**
+     * Check that rewiring the calculator's adder invalidates the calculator's cache.
+     * @param pIOCM The kernel.
+     * @param pMeta The meta interception interface of the kernel.
+     * @throws InvalidComponentTypeException A component could not be created.
+     */
+    private static void checkRewiring(final IOpenCOM pIOCM, final IMetaInterception pMeta)
+            throws InvalidComponentTypeException {
+        final IUnknown pCalc = pIOCM.createInstance("uk.ac.aston.components.opencomj.calculator.calculator.Calculator",
+                "Calculator");
+        final IUnknown pAdder = pIOCM.createInstance(ADDER, "Adder");
+        final IUnknown pPlain = pIOCM.createInstance(PLAIN_ADDER, "PlainAdder");
+        final IDelegator pDel = pMeta.getDelegator(pCalc, "ICalculator");
+        pDel.addMemoization("add", 100, 0);
+        final OCMMemoCache cache = pDel.getMemoCache();
+        final ICalculator pCalcIntf = pCalc.queryInterface(ICalculator.class);
+
+        final long connID = pIOCM.connect(pCalc, pAdder, "IAdd");
+        SampleChecks.expect("invalidations after connect", 1, cache.getInvalidations());
+        pCalcIntf.add(1, 2);
+        SampleChecks.expect("add(1, 2) through Adder", 11, pCalcIntf.add(1, 2));
+        SampleChecks.expect("hits", 1, cache.getHits());
+
+        // Rewire to the plain adder: the cached 11 must not be returned
+        pIOCM.disconnect(connID);
+        SampleChecks.expect("entries after disconnect", 0, cache.size());
+        pIOCM.connect(pCalc, pPlain, "IAdd");
+        SampleChecks.expect("add(1, 2) through PlainAdder", 3, pCalcIntf.add(1, 2));
+        SampleChecks.expect("invalidations after disconnect and connect", 3, cache.getInvalidations());
+
+        // Deleting the plain adder disconnects it; the next adder's result must be returned
+        pIOCM.deleteInstance(pPlain);
+        SampleChecks.expect("invalidations after deleteInstance", 4, cache.getInvalidations());
+        final IUnknown pAdder2 = pIOCM.createInstance(ADDER, "Adder2");
+        pIOCM.connect(pCalc, pAdder2, "IAdd");
+        SampleChecks.expect("add(1, 2) through the new Adder", 11, pCalcIntf.add(1, 2));
+    }
+
+    /**
+     * @param args the command line arguments
+     * @throws InvalidComponentTypeException A component could not be created.
+     * @throws InterruptedException Interrupted waiting for an entry to expire.
+     */
+    public static void main(final String[] args) throws InvalidComponentTypeException, InterruptedException {
+        final OpenCOM runtime = new OpenCOM();
+        final IOpenCOM pIOCM = (IOpenCOM) runtime.queryInterface("IOpenCOM");
+        final IMetaInterception pMeta = (IMetaInterception) runtime.queryInterface("IMetaInterception");
+
+        checkHitsAndSize(pIOCM, pMeta);
+        checkTimeToLive(pIOCM, pMeta);
+        checkRewiring(pIOCM, pMeta);
+        SampleChecks.report("memoization");
+    }
+
+}
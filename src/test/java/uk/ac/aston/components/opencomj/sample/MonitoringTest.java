@@ -0,0 +1,273 @@
+/*
+ * MonitoringTest.java
+ *
+ * OpenCOMJ is a flexible component model for reconfigurable reflection developed at Lancaster University.
+ * Copyright (C) 2022 Paul Grace
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program; if not,
+ * write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package uk.ac.aston.components.opencomj.sample;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import uk.ac.aston.components.opencomj.IDelegator;
+import uk.ac.aston.components.opencomj.IMetaInterception;
+import uk.ac.aston.components.opencomj.IOpenCOM;
+import uk.ac.aston.components.opencomj.IUnknown;
+import uk.ac.aston.components.opencomj.InvalidComponentTypeException;
+import uk.ac.aston.components.opencomj.OCMLatencyHistogram;
+import uk.ac.aston.components.opencomj.OCMTracer;
+import uk.ac.aston.components.opencomj.OpenCOM;
+import uk.ac.aston.components.opencomj.calculator.adder.IAdd;
+import uk.ac.aston.components.opencomj.calculator.calculator.ICalculator;
+
+
+/**
+ * Test of the monitoring of calls through delegators. It records known latencies in a
+ * histogram and checks that each percentile is reported to within its bucket, no more than
+ * 12.5% above the exact value, and that the delegator's latency attributes count every call.
+ * It then traces the calls of a calculator to its adder, checking the spans and their parents,
+ * the folded stack and JSON output, the sampling of whole traces and the span limit.
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class MonitoringTest {
+
+    /**
+     * The relative width of a histogram bucket.
+     */
+    private static final double BUCKET_WIDTH = 0.125;
+
+    /**
+     * Creates a new instance of MonitoringTest.
+     */
+    private MonitoringTest() {
+    }
+
+    /**
+     * Check that a reported latency is the exact one or at most a bucket above it.
+     * @param what The description of the latency.
+     * @param exact The exact latency in nanoseconds.
+     * @param reported The latency reported by the histogram.
+     */
+    private static void expectWithinBucket(final String what, final long exact, final long reported) {
+        SampleChecks.check(what + " for " + exact, reported, reported >= exact && reported <= exact * (1 + BUCKET_WIDTH),
+                "within 12.5% above " + exact);
+    }
+
+    /**
+     * Record one latency in a histogram timing every call.
+     * @param histogram The histogram.
+     * @param nanos The latency in nanoseconds.
+     */
+    private static void record(final OCMLatencyHistogram histogram, final long nanos) {
+        if (histogram.count()) {
+            histogram.record(nanos);
+        }
+    }
+
+    /**
+     * Check the percentiles of latencies spread evenly from 1us to 1ms, and of latencies
+     * mostly of 100us with a tail of 50ms.
+     */
+    private static void checkPercentiles() {
+        final OCMLatencyHistogram even = new OCMLatencyHistogram("even", 1);
+        for (int i = 1; i <= 1000; i++) {
+            record(even, i * 1000L);
+        }
+        final OCMLatencyHistogram.Snapshot evenSnapshot = even.snapshot();
+        SampleChecks.expect("calls timed", 1000L, evenSnapshot.getSampled());
+        expectWithinBucket("p50", 500000, evenSnapshot.getPercentile(50));
+        expectWithinBucket("p90", 900000, evenSnapshot.getPercentile(90));
+        expectWithinBucket("p99", 990000, evenSnapshot.getPercentile(99));
+        expectWithinBucket("p99.9", 999000, evenSnapshot.getPercentile(99.9));
+        expectWithinBucket("max", 1000000, evenSnapshot.getMax());
+        final double mean = evenSnapshot.getMean();
+        System.out.println("mean: " + mean + " for 500500");
+        SampleChecks.expect("mean within 12.5%", true, Math.abs(mean - 500500) < 500500 * BUCKET_WIDTH);
+
+        // The tail of 1% is seen by p99.9 only
+        final OCMLatencyHistogram tail = new OCMLatencyHistogram("tail", 1);
+        for (int i = 0; i < 1000; i++) {
+            record(tail, i < 990 ? 100000L : 50000000L);
+        }
+        final OCMLatencyHistogram.Snapshot tailSnapshot = tail.snapshot();
+        expectWithinBucket("p50 with a tail", 100000, tailSnapshot.getPercentile(50));
+        expectWithinBucket("p99 with a tail", 100000, tailSnapshot.getPercentile(99));
+        expectWithinBucket("p99.9 with a tail", 50000000, tailSnapshot.getPercentile(99.9));
+    }
+
+    /**
+     * Check that a sampling histogram counts every call but times one in its interval.
+     */
+    private static void checkSampling() {
+        final OCMLatencyHistogram sampled = new OCMLatencyHistogram("sampled", 16);
+        for (int i = 0; i < 1600; i++) {
+            record(sampled, 1000L);
+        }
+        final OCMLatencyHistogram.Snapshot snapshot = sampled.snapshot();
+        SampleChecks.expect("calls counted with an interval of 16", 1600L, snapshot.getCount());
+        SampleChecks.expect("calls timed with an interval of 16", 100L, snapshot.getSampled());
+        expectWithinBucket("p99 of the calls timed", 1000, snapshot.getPercentile(99));
+    }
+
+    /**
+     * Check the latency attributes of a delegator timing every call of an adder.
+     * @param pIOCM The kernel.
+     * @param pMeta The meta interception interface of the kernel.
+     * @throws InvalidComponentTypeException The adder could not be created.
+     */
+    private static void checkAttributes(final IOpenCOM pIOCM, final IMetaInterception pMeta)
+            throws InvalidComponentTypeException {
+        final IUnknown pAdder = pIOCM.createInstance("uk.ac.aston.components.opencomj.calculator.adder.Adder",
+                "Adder");
+        final IDelegator pDel = pMeta.getDelegator(pAdder, "IAdd");
+        // Replace the recorder attached when the opencomj.latency property is set
+        pDel.delLatencyRecorder();
+        SampleChecks.expect("recorder timing every call added", true, pDel.addLatencyRecorder(1));
+        final IAdd pAdd = pAdder.queryInterface(IAdd.class);
+        for (int i = 0; i < 1000; i++) {
+            pAdd.add(i, 1);
+        }
+        SampleChecks.expect("latency.calls", 1000L, pDel.getAttributeValue("latency.calls").getValue());
+        SampleChecks.expect("latency.add.sampled", 1000L, pDel.getAttributeValue("latency.add.sampled").getValue());
+        SampleChecks.expect("latency.errors", 0L, pDel.getAttributeValue("latency.errors").getValue());
+        final long p50 = (Long) pDel.getAttributeValue("latency.p50").getValue();
+        final long p99 = (Long) pDel.getAttributeValue("latency.p99").getValue();
+        System.out.println("latency.p50: " + p50 + ", latency.p99: " + p99);
+        SampleChecks.expect("p50 positive and not above p99", true, p50 > 0 && p50 <= p99);
+        pDel.delLatencyRecorder();
+        SampleChecks.expect("latency.calls after the recorder is removed", null, pDel.getAttributeValue("latency.calls"));
+    }
+
+    /**
+     * Get the spans of a tracer without a parent, one per trace.
+     * @param spans The spans.
+     * @return The root spans.
+     */
+    private static List<OCMTracer.Span> roots(final List<OCMTracer.Span> spans) {
+        final List<OCMTracer.Span> roots = new ArrayList<>();
+        for (OCMTracer.Span span : spans) {
+            if (span.getParentId() == 0) {
+                roots.add(span);
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * Check the trace of a calculator's add calling its adder, and the output of the tracer.
+     * @param pCalc The calculator, connected to an adder.
+     * @throws IOException The output could not be written.
+     */
+    private static void checkTrace(final ICalculator pCalc) throws IOException {
+        final OCMTracer tracer = OCMTracer.start(1, 1000);
+        pCalc.add(1, 2);
+        OCMTracer.stop();
+        final List<OCMTracer.Span> spans = tracer.getSpans();
+        SampleChecks.expect("spans of one add", 2, spans.size());
+        final OCMTracer.Span adder = spans.get(0);
+        final OCMTracer.Span calc = spans.get(1);
+        SampleChecks.expect("span ended first", "Adder:IAdd.add", adder.getFrame());
+        SampleChecks.expect("span ended last", "Calculator:ICalculator.add", calc.getFrame());
+        SampleChecks.expect("parent of the adder's span", calc.getSpanId(), adder.getParentId());
+        SampleChecks.expect("adder's span in the calculator's trace", calc.getTraceId(), adder.getTraceId());
+        SampleChecks.expect("calculator's span within its trace", true, calc.getDuration() >= adder.getDuration());
+
+        // Output as folded stacks and as trace events
+        final Path folded = Files.createTempFile("opencomj", ".folded");
+        final Path json = Files.createTempFile("opencomj", ".json");
+        tracer.writeFolded(folded.toString());
+        tracer.writeJson(json.toString());
+        final List<String> stacks = new ArrayList<>();
+        for (String line : Files.readAllLines(folded, StandardCharsets.UTF_8)) {
+            stacks.add(line.substring(0, line.lastIndexOf(' ')));
+        }
+        SampleChecks.expect("folded stacks", "[Calculator:ICalculator.add, Calculator:ICalculator.add;Adder:IAdd.add]",
+                new TreeSet<>(stacks).toString());
+        final String events = new String(Files.readAllBytes(json), StandardCharsets.UTF_8);
+        SampleChecks.expect("trace events", 2, events.split("\"ph\":\"X\"", -1).length - 1);
+        SampleChecks.expect("trace events name the adder's parent", true,
+                events.contains("\"parent\":\"" + Long.toHexString(calc.getSpanId()) + "\""));
+        Files.delete(folded);
+        Files.delete(json);
+
+        // Calls are no longer traced once stopped
+        pCalc.add(1, 2);
+        SampleChecks.expect("tracer active after stop", null, OCMTracer.getActive());
+        SampleChecks.expect("spans after stop", 2, tracer.getSpans().size());
+    }
+
+    /**
+     * Check that sampling keeps one trace in ten, each with all its spans, and that the
+     * spans beyond the tracer's limit are counted as dropped.
+     * @param pCalc The calculator, connected to an adder.
+     */
+    private static void checkTraceSampling(final ICalculator pCalc) {
+        final OCMTracer tracer = OCMTracer.start(10, 100000);
+        for (int i = 0; i < 1000; i++) {
+            pCalc.add(i, 1);
+        }
+        OCMTracer.stop();
+        final List<OCMTracer.Span> spans = tracer.getSpans();
+        final List<OCMTracer.Span> roots = roots(spans);
+        System.out.println("traces sampled from 1000 calls: " + roots.size());
+        SampleChecks.expect("traces sampled between 50 and 150", true, roots.size() >= 50 && roots.size() <= 150);
+        SampleChecks.expect("spans of the sampled traces", roots.size() * 2, spans.size());
+        final Set<Long> traces = new HashSet<>();
+        for (OCMTracer.Span root : roots) {
+            traces.add(root.getTraceId());
+        }
+        boolean complete = true;
+        for (OCMTracer.Span span : spans) {
+            complete &= traces.contains(span.getTraceId());
+        }
+        SampleChecks.expect("every span in a sampled trace", true, complete);
+
+        // A limit of five spans keeps the first five of ten traces' twenty spans
+        final OCMTracer limited = OCMTracer.start(1, 5);
+        for (int i = 0; i < 10; i++) {
+            pCalc.add(i, 1);
+        }
+        OCMTracer.stop();
+        SampleChecks.expect("spans kept", 5, limited.getSpans().size());
+        SampleChecks.expect("spans dropped", 15L, limited.getDropped());
+    }
+
+    /**
+     * @param args the command line arguments
+     * @throws InvalidComponentTypeException A component could not be created.
+     * @throws IOException The trace could not be written.
+     */
+    public static void main(final String[] args) throws InvalidComponentTypeException, IOException {
+        final OpenCOM runtime = new OpenCOM();
+        final IOpenCOM pIOCM = (IOpenCOM) runtime.queryInterface("IOpenCOM");
+        final IMetaInterception pMeta = (IMetaInterception) runtime.queryInterface("IMetaInterception");
+
+        checkPercentiles();
+        checkSampling();
+        checkAttributes(pIOCM, pMeta);
+
+        final IUnknown pCalc = pIOCM.createInstance("uk.ac.aston.components.opencomj.calculator.calculator.Calculator",
+                "Calculator");
+        pIOCM.connect(pCalc, pIOCM.getComponentPIUnknown("Adder"), "IAdd");
+        final ICalculator pCalcIntf = pCalc.queryInterface(ICalculator.class);
+        checkTrace(pCalcIntf);
+        checkTraceSampling(pCalcIntf);
+        SampleChecks.report("monitoring");
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * PrivacyPolicyTest.java
+ *
+ * OpenCOMJ is a flexible component model for reconfigurable reflection developed at Lancaster University.
+ * Copyright (C) 2022 Paul Grace
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program; if not,
+ * write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package uk.ac.aston.components.opencomj.sample;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import uk.ac.aston.components.opencomj.IMetaInterception;
+import uk.ac.aston.components.opencomj.IOpenCOM;
+import uk.ac.aston.components.opencomj.IUnknown;
+import uk.ac.aston.components.opencomj.InvalidComponentTypeException;
+import uk.ac.aston.components.opencomj.OpenCOM;
+import uk.ac.aston.components.opencomj.calculator.adder.IAdd;
+import uk.ac.aston.components.privacy.PrivacyDelegator;
+import uk.ac.aston.components.privacy.PrivacyPolicy;
+
+
+/**
+ * Test program for the treatments of a privacy policy. The right operand of IAdd.add
+ * is private data (action read, id age), and the Adder adds 8 to every sum, so the
+ * result shows the value the component received.
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class PrivacyPolicyTest {
+
+    /**
+     * The key of the hash treatment.
+     */
+    private static final long HASH_KEY = 42L;
+
+    /**
+     * Creates a new instance of PrivacyPolicyTest.
+     */
+    private PrivacyPolicyTest() {
+    }
+
+    /**
+     * Create a policy treating the private operand of IAdd.add.
+     * @param treatment The treatment of action read of id age.
+     * @return The policy.
+     */
+    private static PrivacyPolicy policy(final String treatment) {
+        final PrivacyPolicy policy = new PrivacyPolicy(HASH_KEY);
+        policy.addRule("read", "age", treatment);
+        return policy;
+    }
+
+    /**
+     * Check that a call is refused with a SecurityException, reaching the caller as it is.
+     * @param pAdd The adder interface.
+     */
+    private static void checkDenied(final IAdd pAdd) {
+        try {
+            SampleChecks.expect("deny add(1, 41)", "SecurityException", pAdd.add(1, 41));
+        } catch (RuntimeException ex) {
+            SampleChecks.expect("deny add(1, 41)", SecurityException.class, ex.getClass());
+        }
+    }
+
+    /**
+     * @param args the command line arguments
+     * @throws InvalidComponentTypeException The Adder could not be created.
+     */
+    public static void main(final String[] args) throws InvalidComponentTypeException {
+        final OpenCOM runtime = new OpenCOM();
+        final IOpenCOM pIOCM = (IOpenCOM) runtime.queryInterface("IOpenCOM");
+        final IMetaInterception pMeta = (IMetaInterception) runtime.queryInterface("IMetaInterception");
+        final IUnknown pAdder = pIOCM.createInstance("uk.ac.aston.components.opencomj.calculator.adder.Adder", "Adder");
+        final IAdd pAdd = pAdder.queryInterface(IAdd.class);
+        final PrivacyDelegator pDel = (PrivacyDelegator) pMeta.getDelegator(pAdder, "IAdd");
+
+        // Every call reports the private parameter, whatever its treatment
+        final AtomicInteger reported = new AtomicInteger();
+        pDel.setPrivacySink((component, method, parameter, action, id) -> reported.incrementAndGet());
+
+        pDel.setPolicy(policy(PrivacyPolicy.ALLOW));
+        SampleChecks.expect("allow add(1, 41)", 50, pAdd.add(1, 41));
+
+        pDel.setPolicy(policy(PrivacyPolicy.MASK));
+        SampleChecks.expect("mask add(1, 41)", 9, pAdd.add(1, 41));
+
+        pDel.setPolicy(policy(PrivacyPolicy.HASH));
+        final int hashed = pAdd.add(1, 41);
+        SampleChecks.expect("hash add(1, 41) again", hashed, pAdd.add(1, 41));
+        SampleChecks.expect("hash add(1, 41) hides the operand", true, hashed != 50);
+        SampleChecks.expect("hash add(1, 42) differs", true, pAdd.add(1, 42) != hashed + 1);
+        pDel.setPolicy(policy(PrivacyPolicy.HASH));
+        SampleChecks.expect("hash add(1, 41) under another policy with the same key", hashed, pAdd.add(1, 41));
+
+        pDel.setPolicy(policy(PrivacyPolicy.DROP));
+        SampleChecks.expect("drop add(1, 41)", 9, pAdd.add(1, 41));
+
+        pDel.setPolicy(policy(PrivacyPolicy.DENY));
+        checkDenied(pAdd);
+
+        // A changed rule takes effect once the policy is set again
+        final PrivacyPolicy changing = policy(PrivacyPolicy.DENY);
+        pDel.setPolicy(changing);
+        changing.addRule("read", "age", PrivacyPolicy.ALLOW);
+        checkDenied(pAdd);
+        pDel.setPolicy(changing);
+        SampleChecks.expect("allow add(1, 41) after the rule changed", 50, pAdd.add(1, 41));
+
+        // Rules for any action or id apply when no more specific rule does
+        final PrivacyPolicy wildcard = PrivacyPolicy.parse("*:age=deny, *:*=mask");
+        pDel.setPolicy(wildcard);
+        checkDenied(pAdd);
+        wildcard.addRule("read", "age", PrivacyPolicy.DROP);
+        pDel.setPolicy(wildcard);
+        SampleChecks.expect("drop add(1, 41) by the most specific rule", 9, pAdd.add(1, 41));
+
+        SampleChecks.expect("private parameters reported", 12, reported.get());
+        SampleChecks.report("privacy policy");
+    }
+
+}
@@ -19,6 +19,7 @@ import uk.ac.aston.components.opencomj.IUnknown;
 import uk.ac.aston.components.opencomj.InvalidComponentTypeException;
 import uk.ac.aston.components.opencomj.OpenCOM;
 import uk.ac.aston.components.opencomj.calculator.adder.IAdd;
+import uk.ac.aston.components.privacy.PrivacyDelegator;
 
 
 /**
@@ -43,7 +44,12 @@ public final class PrivacyTest {
             // Create the OpenCOM runtime & Get the IOpenCOM interface reference
             final OpenCOM runtime = new OpenCOM();
             final IOpenCOM pIOCM =  (IOpenCOM) runtime.queryInterface("IOpenCOM");
-            
+
+            // Report the private data passed to components on the console
+            PrivacyDelegator.setDefaultSink((component, method, parameter, action, id) ->
+                    System.out.println("Private data: " + component + "." + method + " parameter " + parameter
+                            + " action : " + action + " field : " + id));
+
             // Create the Adder component
             final IUnknown pAdderIUnk = (IUnknown) pIOCM.createInstance("uk.ac.aston.components.opencomj.calculator.adder.Adder", "Adder");
             final IAdd pICalc =  (IAdd) pAdderIUnk.queryInterface("IAdd");
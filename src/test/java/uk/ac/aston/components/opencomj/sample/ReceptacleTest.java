@@ -0,0 +1,372 @@
+/*
+ * ReceptacleTest.java
+ *
+ * OpenCOMJ is a flexible component model for reconfigurable reflection developed at Lancaster University.
+ * Copyright (C) 2022 Paul Grace
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program; if not,
+ * write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package uk.ac.aston.components.opencomj.sample;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import uk.ac.aston.components.opencomj.IMetaInterface;
+import uk.ac.aston.components.opencomj.IOpenCOM;
+import uk.ac.aston.components.opencomj.IUnknown;
+import uk.ac.aston.components.opencomj.InvalidComponentTypeException;
+import uk.ac.aston.components.opencomj.OCMAggregators;
+import uk.ac.aston.components.opencomj.OCMFanOutResult;
+import uk.ac.aston.components.opencomj.OCMMultiReceptacle;
+import uk.ac.aston.components.opencomj.OCMMultiReceptacleAffinity;
+import uk.ac.aston.components.opencomj.OCMMultiReceptacleContext;
+import uk.ac.aston.components.opencomj.OCMMultiReceptacleParallel;
+import uk.ac.aston.components.opencomj.OpenCOM;
+import uk.ac.aston.components.opencomj.ParallelInvocationException;
+import uk.ac.aston.components.opencomj.calculator.adder.IAdd;
+
+
+/**
+ * Test of the multi receptacles. It checks the result of each aggregator of a parallel
+ * receptacle, including partial failures and timeouts, and the distribution of calls by each
+ * balancing strategy of a load balancing receptacle, and that the index of a context receptacle
+ * follows attribute changes and disconnections. Last it checks that adding or removing one
+ * connection of an affinity receptacle moves only the keys of that connection, about 1/N of them.
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+public final class ReceptacleTest {
+
+    /**
+     * Creates a new instance of ReceptacleTest.
+     */
+    private ReceptacleTest() {
+    }
+
+    /**
+     * An adder taking a given time to answer, which returns x+y+delay or fails.
+     */
+    static final class Replica implements IUnknown, IAdd {
+
+        /**
+         * The time each call takes in milliseconds.
+         */
+        private final transient long delay;
+
+        /**
+         * True if each call fails.
+         */
+        private final transient boolean fail;
+
+        /**
+         * The number of calls made to the replica.
+         */
+        private final transient AtomicInteger calls = new AtomicInteger();
+
+        /**
+         * Creates a new replica.
+         * @param millis The time each call takes in milliseconds.
+         * @param failing True if each call fails.
+         */
+        Replica(final long millis, final boolean failing) {
+            delay = millis;
+            fail = failing;
+        }
+
+        @Override
+        public Object queryInterface(final String iName) {
+            return this;
+        }
+
+        @Override
+        public int add(final int xOperand, final int yOperand) {
+            calls.incrementAndGet();
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ex) {
+                    throw new IllegalStateException("Interrupted", ex);
+                }
+            }
+            if (fail) {
+                throw new IllegalArgumentException("Replica failed");
+            }
+            return xOperand + yOperand + (int) delay;
+        }
+
+        /**
+         * Get the number of calls made to the replica.
+         * @return The number of calls.
+         */
+        int getCalls() {
+            return calls.get();
+        }
+    }
+
+    /**
+     * Check each aggregator of a parallel receptacle over replicas answering in 100, 200
+     * and 300ms, then with a failing replica and with timeouts.
+     * @throws InterruptedException Interrupted waiting for a result.
+     * @throws ExecutionException An invocation expected to succeed failed.
+     */
+    private static void checkParallel() throws InterruptedException, ExecutionException {
+        final OCMMultiReceptacleParallel<IAdd> recp = new OCMMultiReceptacleParallel<>(IAdd.class);
+        recp.connectToRecp(new Replica(100, false), "IAdd", 1);
+        recp.connectToRecp(new Replica(200, false), "IAdd", 2);
+        recp.connectToRecp(new Replica(300, false), "IAdd", 3);
+
+        SampleChecks.expect("broadcast through the proxy", 103, recp.getInterface().add(1, 2));
+        SampleChecks.expect("collectAll", Arrays.asList(103, 203, 303),
+                recp.invokeParallel(intf -> intf.add(1, 2), OCMAggregators.collectAll()).get());
+        final long time0 = System.nanoTime();
+        SampleChecks.expect("firstSuccess", 103, recp.invokeParallel(intf -> intf.add(1, 2), OCMAggregators.firstSuccess()).get());
+        SampleChecks.expect("firstSuccess returned before the slowest call", true,
+                System.nanoTime() - time0 < TimeUnit.MILLISECONDS.toNanos(250));
+        SampleChecks.expect("reduce by sum", 609,
+                recp.invokeParallel(intf -> intf.add(1, 2), OCMAggregators.reduce(0, Integer::sum)).get());
+        SampleChecks.expect("quorum of 2", Arrays.asList(103, 203),
+                recp.invokeParallel(intf -> intf.add(1, 2), OCMAggregators.quorum(2)).get());
+
+        // A failing replica fails collectAll and is reported by connection id
+        recp.connectToRecp(new Replica(50, true), "IAdd", 4);
+        try {
+            recp.invokeParallel(intf -> intf.add(1, 2), OCMAggregators.collectAll()).get();
+            SampleChecks.expect("collectAll with a failing replica", "ParallelInvocationException", "a result");
+        } catch (ExecutionException ex) {
+            SampleChecks.expect("collectAll with a failing replica", ParallelInvocationException.class, ex.getCause().getClass());
+            SampleChecks.expect("failed connections", Collections.singleton(4L),
+                    ((ParallelInvocationException) ex.getCause()).getCalls().getFailures().keySet());
+        }
+        try {
+            recp.getInterface().add(1, 2);
+            SampleChecks.expect("broadcast through the proxy with a failing replica", "IllegalArgumentException", "a result");
+        } catch (RuntimeException ex) {
+            SampleChecks.expect("broadcast through the proxy with a failing replica", IllegalArgumentException.class, ex.getClass());
+        }
+
+        // Outcomes report the partial failure: one failure and one timeout after 250ms
+        final OCMFanOutResult<Integer> outcomes = recp.invokeParallel(intf -> intf.add(1, 2),
+                OCMAggregators.<Integer>outcomes(), 250, TimeUnit.MILLISECONDS).get();
+        SampleChecks.expect("results within the timeout", Arrays.asList(103, 203), outcomes.getResults());
+        SampleChecks.expect("failed or timed out connections", Arrays.asList(3L, 4L),
+                Arrays.asList(outcomes.getFailures().keySet().toArray()));
+        SampleChecks.expect("failure of the slowest call", TimeoutException.class, outcomes.getFailures().get(3L).getClass());
+
+        // A quorum that cannot be reached within the timeout fails
+        recp.disconnectFromRecp(4);
+        try {
+            recp.invokeParallel(intf -> intf.add(1, 2), OCMAggregators.quorum(3), 150, TimeUnit.MILLISECONDS).get();
+            SampleChecks.expect("quorum of 3 within 150ms", "ParallelInvocationException", "a result");
+        } catch (ExecutionException ex) {
+            SampleChecks.expect("quorum of 3 within 150ms", ParallelInvocationException.class, ex.getCause().getClass());
+        }
+    }
+
+    /**
+     * Check the distribution of each balancing strategy over four replicas, the first of them
+     * slow, and that no call remains outstanding once the calls return.
+     * @throws InterruptedException Interrupted waiting for the calls.
+     * @throws ExecutionException A call failed.
+     */
+    private static void checkBalancing() throws InterruptedException, ExecutionException {
+        final String[] strategies = {OCMMultiReceptacle.ROUND_ROBIN, OCMMultiReceptacle.RANDOM,
+            OCMMultiReceptacle.LEAST_OUTSTANDING, OCMMultiReceptacle.POWER_OF_TWO};
+        for (final String strategy : strategies) {
+            final OCMMultiReceptacle<IAdd> recp = new OCMMultiReceptacle<>("IAdd");
+            recp.setStrategy(strategy);
+            final Replica[] replicas = new Replica[4];
+            for (int i = 0; i < replicas.length; i++) {
+                replicas[i] = new Replica(i == 0 ? 30 : 1, false);
+                recp.connectToRecp(replicas[i], "IAdd", i);
+            }
+
+            // 400 calls from 8 threads through the receptacle's proxy
+            final IAdd pAdd = recp.getInterface();
+            final ExecutorService callers = Executors.newFixedThreadPool(8);
+            final List<Future<Integer>> calls = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                calls.add(callers.submit(() -> pAdd.add(1, 2)));
+            }
+            for (final Future<Integer> call : calls) {
+                call.get();
+            }
+            callers.shutdown();
+
+            final List<Integer> counts = new ArrayList<>();
+            int outstanding = 0;
+            for (int i = 0; i < replicas.length; i++) {
+                counts.add(replicas[i].getCalls());
+                outstanding += recp.getOutstanding(i);
+            }
+            System.out.println(strategy + " calls per replica: " + counts);
+            if (strategy.equals(OCMMultiReceptacle.ROUND_ROBIN)) {
+                SampleChecks.expect(strategy + " every replica called 100 times", true,
+                        Collections.frequency(counts, 100) == replicas.length);
+            } else if (strategy.equals(OCMMultiReceptacle.RANDOM)) {
+                SampleChecks.expect(strategy + " every replica within 50 of an even share", true,
+                        Collections.min(counts) >= 50 && Collections.max(counts) <= 150);
+            } else {
+                SampleChecks.expect(strategy + " slow replica under half an even share", true, counts.get(0) < 50);
+            }
+            SampleChecks.expect(strategy + " outstanding calls", 0, outstanding);
+        }
+
+        // An asynchronous call is outstanding until its future completes
+        final OCMMultiReceptacle<IAdd> recp = new OCMMultiReceptacle<>("IAdd");
+        recp.connectToRecp(new Replica(100, false), "IAdd", 1);
+        final CompletableFuture<Integer> future = recp.invokeAsync(intf -> intf.add(1, 2));
+        SampleChecks.expect("outstanding during an asynchronous call", 1, recp.getOutstanding(1));
+        SampleChecks.expect("asynchronous result", 103, future.get());
+        final long deadline = System.currentTimeMillis() + 1000;
+        while (recp.getOutstanding(1) != 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        SampleChecks.expect("outstanding after the asynchronous call", 0, recp.getOutstanding(1));
+        recp.disconnectFromRecp(1);
+        SampleChecks.expect("outstanding of a disconnected connection", -1, recp.getOutstanding(1));
+    }
+
+    /**
+     * Check that the context index follows attribute changes and disconnections. Four adders are
+     * connected in order, the first two in the regions eu and us.
+     * @param pIOCM The kernel.
+     * @throws InvalidComponentTypeException An adder could not be created.
+     */
+    private static void checkContext(final IOpenCOM pIOCM) throws InvalidComponentTypeException {
+        final OCMMultiReceptacleContext<IAdd> recp = new OCMMultiReceptacleContext<>("IAdd");
+        final IMetaInterface[] pMeta = new IMetaInterface[4];
+        for (int i = 0; i < pMeta.length; i++) {
+            final IUnknown pAdder = pIOCM.createInstance("uk.ac.aston.components.opencomj.calculator.adder.Adder",
+                    "ContextAdder" + i);
+            pMeta[i] = (IMetaInterface) pAdder;
+            recp.connectToRecp(pAdder, "IAdd", i);
+        }
+        pMeta[0].setAttributeValue("IAdd", "Interface", "region", "String", "eu");
+        pMeta[1].setAttributeValue("IAdd", "Interface", "region", "String", "us");
+        SampleChecks.expect("index of eu", 0, recp.getInterfaceContextIndex("region", "eu"));
+        SampleChecks.expect("index of us", 1, recp.getInterfaceContextIndex("region", "us"));
+        SampleChecks.expect("index of asia", -1, recp.getInterfaceContextIndex("region", "asia"));
+
+        // Attribute changes after the index was built
+        pMeta[2].setAttributeValue("IAdd", "Interface", "region", "String", "asia");
+        pMeta[0].setAttributeValue("IAdd", "Interface", "region", "String", "ap");
+        SampleChecks.expect("index of asia after it is set", 2, recp.getInterfaceContextIndex("region", "asia"));
+        SampleChecks.expect("index of eu after it is changed", -1, recp.getInterfaceContextIndex("region", "eu"));
+        SampleChecks.expect("index of ap after it is set", 0, recp.getInterfaceContextIndex("region", "ap"));
+
+        // Disconnecting the first adder removes it and moves the others down
+        recp.disconnectFromRecp(0);
+        SampleChecks.expect("index of ap after disconnect", -1, recp.getInterfaceContextIndex("region", "ap"));
+        SampleChecks.expect("index of us after disconnect", 0, recp.getInterfaceContextIndex("region", "us"));
+        SampleChecks.expect("index of asia after disconnect", 1, recp.getInterfaceContextIndex("region", "asia"));
+        SampleChecks.expect("add(1, 2) in asia", 11, recp.getInterfaceContext("region", "asia").add(1, 2));
+
+        // A disconnected adder's attribute changes no longer reach the receptacle
+        pMeta[0].setAttributeValue("IAdd", "Interface", "region", "String", "us");
+        SampleChecks.expect("index of us after the disconnected adder changes", 0, recp.getInterfaceContextIndex("region", "us"));
+    }
+
+    /**
+     * Map the keys to connections of an affinity receptacle.
+     * @param recp The receptacle.
+     * @param keys The number of keys.
+     * @return The connection id of each key.
+     */
+    private static Map<String, Long> locate(final OCMMultiReceptacleAffinity<IAdd> recp, final int keys) {
+        final Map<String, Long> located = new HashMap<>();
+        for (int k = 0; k < keys; k++) {
+            located.put("key" + k, recp.getConnectionID("key" + k));
+        }
+        return located;
+    }
+
+    /**
+     * Check that adding or removing one of ten shards moves only the keys of that shard.
+     */
+    private static void checkAffinity() {
+        final int keys = 20000;
+        final OCMMultiReceptacleAffinity<IAdd> recp = new OCMMultiReceptacleAffinity<>(IAdd.class);
+        final Replica[] shards = new Replica[11];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Replica(0, false);
+        }
+        for (int i = 0; i < 10; i++) {
+            recp.connectToRecp(shards[i], "IAdd", 100 + i);
+        }
+        final Map<String, Long> before = locate(recp, keys);
+        SampleChecks.expect("key0 reaches the interface of its shard", true,
+                recp.getInterface("key0") == shards[(int) (before.get("key0") - 100)]);
+
+        // Adding an eleventh shard moves about 1/11 of the keys, all to the new shard
+        recp.connectToRecp(shards[10], "IAdd", 110);
+        final Map<String, Long> added = locate(recp, keys);
+        int moved = 0;
+        int misplaced = 0;
+        for (final Map.Entry<String, Long> key : added.entrySet()) {
+            if (!key.getValue().equals(before.get(key.getKey()))) {
+                moved++;
+                if (key.getValue() != 110) {
+                    misplaced++;
+                }
+            }
+        }
+        System.out.println("keys moved by adding a shard: " + moved + " of " + keys);
+        SampleChecks.expect("keys moved by adding a shard within 5% and 14%", true, moved > keys / 20 && moved < keys * 14 / 100);
+        SampleChecks.expect("keys moved to other than the new shard", 0, misplaced);
+
+        // Removing it again restores the mapping
+        recp.disconnectFromRecp(110);
+        SampleChecks.expect("mapping restored by removing the added shard", true, before.equals(locate(recp, keys)));
+
+        // Removing a shard moves only its own keys
+        recp.disconnectFromRecp(103);
+        final Map<String, Long> removed = locate(recp, keys);
+        moved = 0;
+        misplaced = 0;
+        for (final Map.Entry<String, Long> key : removed.entrySet()) {
+            if (!key.getValue().equals(before.get(key.getKey()))) {
+                moved++;
+            }
+            if (before.get(key.getKey()) == 103 && key.getValue() == 103) {
+                misplaced++;
+            }
+        }
+        SampleChecks.expect("keys moved by removing a shard", Collections.frequency(before.values(), 103L), moved);
+        SampleChecks.expect("keys left on the removed shard", 0, misplaced);
+    }
+
+    /**
+     * @param args the command line arguments
+     * @throws InterruptedException Interrupted waiting for a result.
+     * @throws ExecutionException An invocation expected to succeed failed.
+     * @throws InvalidComponentTypeException A component could not be created.
+     */
+    public static void main(final String[] args) throws InterruptedException, ExecutionException,
+            InvalidComponentTypeException {
+        checkParallel();
+        checkBalancing();
+
+        final OpenCOM runtime = new OpenCOM();
+        checkContext((IOpenCOM) runtime.queryInterface("IOpenCOM"));
+        checkAffinity();
+        SampleChecks.report("receptacle");
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * SampleChecks.java
+ *
+ * OpenCOMJ is a flexible component model for reconfigurable reflection developed at Lancaster University.
+ * Copyright (C) 2022 Paul Grace
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program; if not,
+ * write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package uk.ac.aston.components.opencomj.sample;
+
+import java.util.Objects;
+
+
+/**
+ * The checks made by the sample programs. Each check prints the value checked, followed
+ * by an ERROR line if it is not the one expected; the program then reports how many
+ * checks failed.
+ * @author  Paul Grace
+ * @version 1.2.3
+ */
+final class SampleChecks {
+
+    /**
+     * The number of failed checks.
+     */
+    private static int failures;
+
+    /**
+     * Creates a new instance of SampleChecks.
+     */
+    private SampleChecks() {
+    }
+
+    /**
+     * Print a checked value, reporting an error if the check failed.
+     * @param what The description of the value.
+     * @param actual The value.
+     * @param passed True if the value is the one expected.
+     * @param expectation The value expected, as printed with the error.
+     */
+    static void check(final String what, final Object actual, final boolean passed, final String expectation) {
+        System.out.println(what + ": " + actual);
+        if (!passed) {
+            System.out.println("ERROR: expected " + what + " " + expectation);
+            failures++;
+        }
+    }
+
+    /**
+     * Print a checked value, reporting an error if it is not the one expected. Whole
+     * numbers are compared by value, so that an int may be expected of a long.
+     * @param what The description of the value.
+     * @param expected The expected value.
+     * @param actual The actual value.
+     */
+    static void expect(final String what, final Object expected, final Object actual) {
+        check(what, actual, Objects.equals(expected, actual) || (isWhole(expected) && isWhole(actual)
+                && ((Number) expected).longValue() == ((Number) actual).longValue()), String.valueOf(expected));
+    }
+
+    /**
+     * Check whether a value is a whole number.
+     * @param value The value.
+     * @return true for a Byte, Short, Integer or Long.
+     */
+    private static boolean isWhole(final Object value) {
+        return value instanceof Byte || value instanceof Short || value instanceof Integer || value instanceof Long;
+    }
+
+    /**
+     * Print the outcome of the checks of a sample program.
+     * @param subject What the program checks, e.g. memoization.
+     */
+    static void report(final String subject) {
+        System.out.println(failures == 0 ? "All " + subject + " checks passed" : "ERROR: " + failures + " checks failed");
+    }
+}